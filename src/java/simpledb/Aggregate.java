@@ -22,7 +22,8 @@ public class Aggregate extends Operator {
      * Constructor.
      * 
      * Implementation hint: depending on the type of afield, you will want to
-     * construct an {@link IntegerAggregator} or {@link StringAggregator} to help
+     * construct an {@link IntegerAggregator}, {@link StringAggregator} or
+     * {@link NumericAggregator} to help
      * you with your implementation of readNext().
      * 
      * 
@@ -46,14 +47,21 @@ public class Aggregate extends Operator {
         if (this.gfield == -1) {
             if (this.ctd.getFieldType(this.afield) == Type.INT_TYPE) {
                 this.helper = new IntegerAggregator(gfield, null, afield, aop);
-            } else if (this.ctd.getFieldType(this.afield) == Type.STRING_TYPE) {
+            } else if (this.ctd.getFieldType(this.afield) == Type.STRING_TYPE
+                    || this.ctd.getFieldType(this.afield) == Type.VARCHAR_TYPE) {
                 this.helper = new StringAggregator(gfield, null, afield, aop);
+            } else {
+                this.helper = new NumericAggregator(gfield, null, afield, this.ctd.getFieldType(this.afield), aop);
             }
         } else {
             if (this.ctd.getFieldType(this.afield) == Type.INT_TYPE) {
                 this.helper = new IntegerAggregator(gfield, this.ctd.getFieldType(this.gfield), afield, aop);
-            } else if (this.ctd.getFieldType(this.afield) == Type.STRING_TYPE) {
+            } else if (this.ctd.getFieldType(this.afield) == Type.STRING_TYPE
+                    || this.ctd.getFieldType(this.afield) == Type.VARCHAR_TYPE) {
                 this.helper = new StringAggregator(gfield, this.ctd.getFieldType(this.gfield), afield, aop);
+            } else {
+                this.helper = new NumericAggregator(gfield, this.ctd.getFieldType(this.gfield), afield,
+                        this.ctd.getFieldType(this.afield), aop);
             }
         }
     }
@@ -105,6 +113,20 @@ public class Aggregate extends Operator {
 	    return aop.toString();
     }
 
+    /**
+     * @return true if aop can be computed over a field of type type: COUNT
+     *         over any field, any operator over INT fields, and MIN, MAX,
+     *         SUM and AVG over the other numeric fields, except SUM over
+     *         DATE fields
+     */
+    public static boolean supports(Type type, Aggregator.Op aop) {
+        if (aop == Aggregator.Op.COUNT || type == Type.INT_TYPE) {
+            return true;
+        }
+        return type.isNumeric() && aop.ordinal() < Aggregator.Op.COUNT.ordinal()
+                && !(aop == Aggregator.Op.SUM && type == Type.DATE_TYPE);
+    }
+
     public void open() throws NoSuchElementException, DbException,
 	    TransactionAbortedException {
         this.child.open();
@@ -147,13 +169,15 @@ public class Aggregate extends Operator {
      * iterator.
      */
     public TupleDesc getTupleDesc() {
+        // counts are always INT, whatever the type of the aggregate field
+        Type aggType = this.aop == Aggregator.Op.COUNT ? Type.INT_TYPE : this.ctd.getFieldType(this.afield);
         if (this.gfield == -1) {
-            Type[] type = new Type[]{this.ctd.getFieldType(this.afield)};
+            Type[] type = new Type[]{aggType};
             String[] name = new String[]{this.aggregateFieldName() + "(" + nameOfAggregatorOp(this.aop) + ") ("
                     + this.ctd.getFieldName(this.afield) + ")"};
             return new TupleDesc(type, name);
         } else {
-            Type[] type = new Type[]{this.ctd.getFieldType(this.gfield), this.ctd.getFieldType(this.afield)};
+            Type[] type = new Type[]{this.ctd.getFieldType(this.gfield), aggType};
             String[] name = new String[]{this.groupFieldName(), this.aggregateFieldName() + "(" + nameOfAggregatorOp(this.aop) + ") ("
                     + this.ctd.getFieldName(this.afield) + ")"};
             return new TupleDesc(type, name);
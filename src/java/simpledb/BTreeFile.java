@@ -0,0 +1,636 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BTreeFile is a DbFile that stores tuples in a B+ tree, sorted on one key
+ * field, so that the tuples with a given key or in a range of keys are found
+ * by reading one page per level of the tree and then only the leaves that
+ * hold them. Duplicate keys are allowed.
+ * <p>
+ * Page 0 is a BTreeRootPtrPage pointing to the root of the tree, which is a
+ * BTreeLeafPage while the tree fits on one page and a BTreeInternalPage
+ * after that. Pages emptied by merges are recorded in BTreeHeaderPages and
+ * reused before the file grows.
+ * <p>
+ * Every page is read and modified through the BufferPool, so the pages of
+ * a B+ tree are locked, logged and rolled back like those of a HeapFile.
+ * Internal pages are locked READ_ONLY on the way down and READ_WRITE only
+ * when a split or a merge changes them.
+ *
+ * @see BTreeLeafPage
+ * @see BTreeInternalPage
+ */
+public class BTreeFile implements IndexFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int tableid;
+    // Pages freed by a still running transaction, which it must not reuse: if it aborted, the
+    // log could roll their old contents back over the new ones. Other transactions only see
+    // the freed pages in the header pages once the freeing transaction has released them.
+    // Entries are dropped when the freeing transaction completes; see transactionComplete.
+    private final Map<Integer, TransactionId> freedBy;
+
+    /**
+     * A step taken on the way down the tree: the internal page and the
+     * child that was followed.
+     */
+    private static class Step {
+        final BTreePageId pid;
+        final int child;
+
+        Step(BTreePageId pid, int child) {
+            this.pid = pid;
+            this.child = child;
+        }
+    }
+
+    /**
+     * Constructs a B+ tree file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this B+ tree
+     * @param keyField the field the tuples are sorted on
+     * @param td the TupleDesc of the tuples, which must have a fixed size
+     */
+    public BTreeFile(File f, int keyField, TupleDesc td) {
+        if (!td.isFixedLength()) {
+            throw new IllegalArgumentException("tuples in a B+ tree must have a fixed size");
+        }
+        this.f = f;
+        this.td = td;
+        this.keyField = keyField;
+        this.tableid = f.getAbsoluteFile().hashCode();
+        this.freedBy = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the File backing this BTreeFile on disk.
+     */
+    public File getFile() {
+        return this.f;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this BTreeFile, the hash code of
+     * the absolute file name of the file underlying it.
+     */
+    public int getId() {
+        return this.tableid;
+    }
+
+    /**
+     * Returns the TupleDesc of the tuples stored in this B+ tree.
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /**
+     * Returns the index of the field the tuples are sorted on.
+     */
+    public int keyField() {
+        return this.keyField;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        BTreePageId id = (BTreePageId) pid;
+        try {
+            byte[] b = BTreePage.createEmptyPageData();
+            if (id.getPageNumber() < numPages()) {
+                RandomAccessFile file = new RandomAccessFile(this.f, "r");
+                file.seek((long) BufferPool.getPageSize() * id.getPageNumber());
+                file.read(b);
+                file.close();
+            }
+            switch (id.getCategory()) {
+            case BTreePageId.ROOT_PTR:
+                return new BTreeRootPtrPage(id, b);
+            case BTreePageId.INTERNAL:
+                return new BTreeInternalPage(id, b);
+            case BTreePageId.LEAF:
+                return new BTreeLeafPage(id, b);
+            case BTreePageId.HEADER:
+                return new BTreeHeaderPage(id, b);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        throw new IllegalArgumentException("cannot read page " + pid);
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.f, "rw");
+        file.seek((long) BufferPool.getPageSize() * page.getId().getPageNumber());
+        file.write(page.getPageData());
+        file.close();
+    }
+
+    /**
+     * Returns the number of pages in this BTreeFile, including the root
+     * pointer, header and free pages.
+     */
+    public int numPages() {
+        return (int) (this.f.length() / BufferPool.getPageSize());
+    }
+
+    /**
+     * Fetches a page through the BufferPool, or from dirtypages if this
+     * operation has already modified it. Pages fetched READ_WRITE are added
+     * to dirtypages, which the caller returns to the BufferPool.
+     */
+    private Page getPage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        Page p = dirtypages.get(pid);
+        if (p != null) {
+            return p;
+        }
+        p = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirtypages.put(pid, p);
+        }
+        return p;
+    }
+
+    private BTreeRootPtrPage getRootPtrPage(TransactionId tid, Map<PageId, Page> dirtypages, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (BTreeRootPtrPage) getPage(tid, dirtypages, new BTreePageId(this.tableid, 0, BTreePageId.ROOT_PTR), perm);
+    }
+
+    /**
+     * Descends from the root to the leftmost leaf that may hold key, or to
+     * the first leaf if key is null, locking the leaf with perm.
+     *
+     * @return the leaf, or null if the tree is empty
+     */
+    private BTreeLeafPage findLeaf(TransactionId tid, Map<PageId, Page> dirtypages, Field key, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        BTreePageId pid = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY).getRootId();
+        if (pid == null) {
+            return null;
+        }
+        while (pid.getCategory() == BTreePageId.INTERNAL) {
+            BTreeInternalPage p = (BTreeInternalPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+            pid = p.getChildId(p.lowerChild(key));
+        }
+        return (BTreeLeafPage) getPage(tid, dirtypages, pid, perm);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(this.td)) {
+            throw new DbException("tuple does not match the TupleDesc of this file");
+        }
+        Map<PageId, Page> dirtypages = new HashMap<>();
+        Field key = t.getField(this.keyField);
+        BTreePageId pid = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY).getRootId();
+        if (pid == null) {
+            BTreeRootPtrPage rootPtr = getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE);
+            pid = getEmptyPage(tid, dirtypages, BTreePageId.LEAF).getId();
+            rootPtr.setRootId(pid);
+        }
+
+        Deque<Step> path = new ArrayDeque<>();
+        while (pid.getCategory() == BTreePageId.INTERNAL) {
+            BTreeInternalPage p = (BTreeInternalPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+            int child = p.upperChild(key);
+            path.push(new Step(pid, child));
+            pid = p.getChildId(child);
+        }
+        BTreeLeafPage leaf = (BTreeLeafPage) getPage(tid, dirtypages, pid, Permissions.READ_WRITE);
+        // the new page is allocated before the leaf overflows: the BufferPool
+        // may evict, and so write out, any page while another is read in
+        BTreeLeafPage right = leaf.getNumTuples() < leaf.getMaxTuples() ? null
+                : (BTreeLeafPage) getEmptyPage(tid, dirtypages, BTreePageId.LEAF);
+        leaf.insertTuple(t);
+        if (right != null) {
+            splitLeaf(tid, dirtypages, leaf, right, path);
+        }
+        return new ArrayList<>(dirtypages.values());
+    }
+
+    /**
+     * Moves the upper half of an overfull leaf to the empty leaf right, to
+     * its right, and adds right to the parent, splitting it in turn if needed.
+     */
+    private void splitLeaf(TransactionId tid, Map<PageId, Page> dirtypages, BTreeLeafPage leaf, BTreeLeafPage right,
+            Deque<Step> path) throws DbException, IOException, TransactionAbortedException {
+        List<Tuple> moved = leaf.tuples.subList(leaf.getNumTuples() / 2, leaf.getNumTuples());
+        right.tuples.addAll(moved);
+        moved.clear();
+
+        BTreePageId next = leaf.getRightSiblingId();
+        if (next != null) {
+            BTreeLeafPage nextPage = (BTreeLeafPage) getPage(tid, dirtypages, next, Permissions.READ_WRITE);
+            nextPage.leftPgNo = right.getId().getPageNumber();
+        }
+        right.rightPgNo = leaf.rightPgNo;
+        right.leftPgNo = leaf.getId().getPageNumber();
+        leaf.rightPgNo = right.getId().getPageNumber();
+        insertIntoParent(tid, dirtypages, path, leaf.getId(), right.getKey(0), right.getId());
+    }
+
+    /**
+     * Adds key and the page right, just split off from left, to the parent
+     * on top of path, or to a new root if left was the root.
+     */
+    private void insertIntoParent(TransactionId tid, Map<PageId, Page> dirtypages, Deque<Step> path,
+            BTreePageId left, Field key, BTreePageId right)
+            throws DbException, IOException, TransactionAbortedException {
+        if (path.isEmpty()) {
+            BTreeInternalPage root = (BTreeInternalPage) getEmptyPage(tid, dirtypages, BTreePageId.INTERNAL);
+            root.childCategory = left.getCategory();
+            root.children.add(left.getPageNumber());
+            root.keys.add(key);
+            root.children.add(right.getPageNumber());
+            getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE).setRootId(root.getId());
+            return;
+        }
+        Step s = path.pop();
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtypages, s.pid, Permissions.READ_WRITE);
+        // as for leaves, the new page is allocated before the parent overflows
+        BTreeInternalPage sibling = parent.getNumKeys() < parent.getMaxKeys() ? null
+                : (BTreeInternalPage) getEmptyPage(tid, dirtypages, BTreePageId.INTERNAL);
+        parent.keys.add(s.child, key);
+        parent.children.add(s.child + 1, right.getPageNumber());
+        if (sibling != null) {
+            // the middle key moves up, the keys and children after it to the new page
+            int n = parent.getNumKeys();
+            int mid = n / 2;
+            sibling.childCategory = parent.childCategory;
+            Field up = parent.keys.get(mid);
+            sibling.keys.addAll(parent.keys.subList(mid + 1, n));
+            sibling.children.addAll(parent.children.subList(mid + 1, n + 1));
+            parent.keys.subList(mid, n).clear();
+            parent.children.subList(mid + 1, n + 1).clear();
+            insertIntoParent(tid, dirtypages, path, parent.getId(), up, sibling.getId());
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        Map<PageId, Page> dirtypages = new HashMap<>();
+        BTreePageId root = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY).getRootId();
+        Deque<Step> path = new ArrayDeque<>();
+        BTreeLeafPage leaf = root == null ? null : findTuple(tid, dirtypages, root, t, path);
+        if (leaf == null) {
+            throw new DbException("tuple not found in " + this.f);
+        }
+        leaf = (BTreeLeafPage) getPage(tid, dirtypages, leaf.getId(), Permissions.READ_WRITE);
+        leaf.tuples.remove(leaf.indexOf(t));
+        t.setRecordId(null);
+        if (!path.isEmpty() && leaf.getNumTuples() < leaf.getMaxTuples() / 2) {
+            rebalanceLeaf(tid, dirtypages, path);
+        }
+        return new ArrayList<>(dirtypages.values());
+    }
+
+    /**
+     * Finds the leaf below pid holding a tuple with the same fields as t.
+     * As equal keys may be spread over several subtrees, every child that
+     * may hold the key of t is searched.
+     *
+     * @param path the steps taken from pid down to the leaf are pushed here
+     * @return the leaf, or null if t is not in this subtree
+     */
+    private BTreeLeafPage findTuple(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid, Tuple t,
+            Deque<Step> path) throws DbException, TransactionAbortedException {
+        if (pid.getCategory() == BTreePageId.LEAF) {
+            BTreeLeafPage leaf = (BTreeLeafPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+            return leaf.indexOf(t) >= 0 ? leaf : null;
+        }
+        BTreeInternalPage p = (BTreeInternalPage) getPage(tid, dirtypages, pid, Permissions.READ_ONLY);
+        Field key = t.getField(this.keyField);
+        for (int i = p.lowerChild(key), last = p.upperChild(key); i <= last; i++) {
+            path.push(new Step(pid, i));
+            BTreeLeafPage leaf = findTuple(tid, dirtypages, p.getChildId(i), t, path);
+            if (leaf != null) {
+                return leaf;
+            }
+            path.pop();
+        }
+        return null;
+    }
+
+    /**
+     * Merges the leaf reached by the top of path with a sibling, or evens
+     * out the tuples of the two if they do not fit on one page.
+     */
+    private void rebalanceLeaf(TransactionId tid, Map<PageId, Page> dirtypages, Deque<Step> path)
+            throws DbException, IOException, TransactionAbortedException {
+        Step s = path.pop();
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtypages, s.pid, Permissions.READ_WRITE);
+        // the key separating the leaf from its left sibling, or from its right one for the first child
+        int sep = s.child > 0 ? s.child - 1 : 0;
+        BTreeLeafPage left = (BTreeLeafPage) getPage(tid, dirtypages, parent.getChildId(sep), Permissions.READ_WRITE);
+        BTreeLeafPage right = (BTreeLeafPage) getPage(tid, dirtypages, parent.getChildId(sep + 1), Permissions.READ_WRITE);
+
+        if (left.getNumTuples() + right.getNumTuples() <= left.getMaxTuples()) {
+            left.tuples.addAll(right.tuples);
+            left.rightPgNo = right.rightPgNo;
+            BTreePageId next = right.getRightSiblingId();
+            if (next != null) {
+                BTreeLeafPage nextPage = (BTreeLeafPage) getPage(tid, dirtypages, next, Permissions.READ_WRITE);
+                nextPage.leftPgNo = left.getId().getPageNumber();
+            }
+            parent.keys.remove(sep);
+            parent.children.remove(sep + 1);
+            freePage(tid, dirtypages, right.getId());
+            rebalanceInternal(tid, dirtypages, parent, path);
+        } else {
+            List<Tuple> all = new ArrayList<>(left.tuples);
+            all.addAll(right.tuples);
+            int half = all.size() / 2;
+            left.tuples.clear();
+            left.tuples.addAll(all.subList(0, half));
+            right.tuples.clear();
+            right.tuples.addAll(all.subList(half, all.size()));
+            parent.keys.set(sep, right.getKey(0));
+        }
+    }
+
+    /**
+     * Merges an internal page that has fallen below half full with a
+     * sibling, pulling down the key between them, or evens out the two
+     * through the parent if they do not fit on one page. A root left with a
+     * single child is replaced by that child.
+     *
+     * @param path the steps from the root down to page
+     */
+    private void rebalanceInternal(TransactionId tid, Map<PageId, Page> dirtypages, BTreeInternalPage page,
+            Deque<Step> path) throws DbException, IOException, TransactionAbortedException {
+        if (path.isEmpty()) {
+            if (page.getNumKeys() == 0) {
+                getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE).setRootId(page.getChildId(0));
+                freePage(tid, dirtypages, page.getId());
+            }
+            return;
+        }
+        if (page.getNumKeys() >= page.getMaxKeys() / 2) {
+            return;
+        }
+        Step s = path.pop();
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirtypages, s.pid, Permissions.READ_WRITE);
+        int sep = s.child > 0 ? s.child - 1 : 0;
+        BTreeInternalPage left = (BTreeInternalPage) getPage(tid, dirtypages, parent.getChildId(sep), Permissions.READ_WRITE);
+        BTreeInternalPage right = (BTreeInternalPage) getPage(tid, dirtypages, parent.getChildId(sep + 1), Permissions.READ_WRITE);
+
+        List<Field> keys = new ArrayList<>(left.keys);
+        keys.add(parent.keys.get(sep));
+        keys.addAll(right.keys);
+        List<Integer> children = new ArrayList<>(left.children);
+        children.addAll(right.children);
+        left.keys.clear();
+        left.children.clear();
+        right.keys.clear();
+        right.children.clear();
+
+        if (keys.size() <= left.getMaxKeys()) {
+            left.keys.addAll(keys);
+            left.children.addAll(children);
+            parent.keys.remove(sep);
+            parent.children.remove(sep + 1);
+            freePage(tid, dirtypages, right.getId());
+            rebalanceInternal(tid, dirtypages, parent, path);
+        } else {
+            int half = keys.size() / 2;
+            left.keys.addAll(keys.subList(0, half));
+            left.children.addAll(children.subList(0, half + 1));
+            parent.keys.set(sep, keys.get(half));
+            right.keys.addAll(keys.subList(half + 1, keys.size()));
+            right.children.addAll(children.subList(half + 1, children.size()));
+        }
+    }
+
+    /**
+     * Returns an empty page of the given category, locked READ_WRITE and in
+     * dirtypages: a page freed by an earlier transaction if there is one,
+     * otherwise a new page at the end of the file.
+     */
+    private BTreePage getEmptyPage(TransactionId tid, Map<PageId, Page> dirtypages, int category)
+            throws DbException, IOException, TransactionAbortedException {
+        int pgNo = reuseFreePage(tid, dirtypages);
+        if (pgNo < 0) {
+            pgNo = appendEmptyPage();
+        } else {
+            // a free page holds nothing anyone can reach, so it is cleared without logging,
+            // dropping whatever was left of it in the BufferPool
+            Database.getBufferPool().discardPage(new BTreePageId(this.tableid, pgNo, BTreePageId.INTERNAL));
+            Database.getBufferPool().discardPage(new BTreePageId(this.tableid, pgNo, BTreePageId.LEAF));
+            writeEmptyPage(pgNo);
+        }
+        return (BTreePage) getPage(tid, dirtypages, new BTreePageId(this.tableid, pgNo, category), Permissions.READ_WRITE);
+    }
+
+    /**
+     * Takes a page from the free pages in the header pages, skipping those
+     * freed by tid itself.
+     *
+     * @return the page number, or -1 if there is no page to reuse
+     */
+    private int reuseFreePage(TransactionId tid, Map<PageId, Page> dirtypages)
+            throws DbException, TransactionAbortedException {
+        BTreePageId hid = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY).getHeaderId();
+        for (int index = 0; hid != null; index++) {
+            BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, dirtypages, hid, Permissions.READ_ONLY);
+            for (int slot = header.nextFree(0); slot >= 0; slot = header.nextFree(slot + 1)) {
+                int pgNo = index * BTreeHeaderPage.getNumSlots() + slot;
+                if (!tid.equals(this.freedBy.get(pgNo))) {
+                    header = (BTreeHeaderPage) getPage(tid, dirtypages, hid, Permissions.READ_WRITE);
+                    header.setFree(slot, false);
+                    this.freedBy.remove(pgNo);
+                    return pgNo;
+                }
+            }
+            hid = header.getNextId();
+        }
+        return -1;
+    }
+
+    /**
+     * Forgets which pages tid freed, now that it has committed or aborted:
+     * once committed anyone may reuse them, and once aborted the header
+     * pages no longer show them as free. Called by the BufferPool.
+     */
+    void transactionComplete(TransactionId tid) {
+        this.freedBy.values().removeIf(tid::equals);
+    }
+
+    /**
+     * @return the number of pages freed by transactions that are still
+     *   running
+     */
+    int numFreedByRunning() {
+        return this.freedBy.size();
+    }
+
+    /**
+     * Records page pid as free in its header page. The page stays in
+     * dirtypages: if the transaction aborts, the BufferPool must discard it
+     * along with the pages that pointed to it.
+     */
+    private void freePage(TransactionId tid, Map<PageId, Page> dirtypages, BTreePageId pid)
+            throws DbException, IOException, TransactionAbortedException {
+        int pgNo = pid.getPageNumber();
+        BTreeRootPtrPage rootPtr = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY);
+        BTreePageId hid = rootPtr.getHeaderId();
+        if (hid == null) {
+            rootPtr = getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE);
+            hid = new BTreePageId(this.tableid, appendEmptyPage(), BTreePageId.HEADER);
+            rootPtr.setHeaderId(hid);
+        }
+        // header pages are created as the pages they cover are freed
+        for (int index = pgNo / BTreeHeaderPage.getNumSlots(); index > 0; index--) {
+            BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, dirtypages, hid, Permissions.READ_ONLY);
+            BTreePageId next = header.getNextId();
+            if (next == null) {
+                header = (BTreeHeaderPage) getPage(tid, dirtypages, hid, Permissions.READ_WRITE);
+                next = new BTreePageId(this.tableid, appendEmptyPage(), BTreePageId.HEADER);
+                header.setNextId(next);
+            }
+            hid = next;
+        }
+        BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, dirtypages, hid, Permissions.READ_WRITE);
+        header.setFree(pgNo % BTreeHeaderPage.getNumSlots(), true);
+        this.freedBy.put(pgNo, tid);
+    }
+
+    /**
+     * Writes an empty page at the end of the file, after the root pointer
+     * page, and returns its page number.
+     */
+    private synchronized int appendEmptyPage() throws IOException {
+        int pgNo = Math.max(numPages(), 1);
+        writeEmptyPage(pgNo);
+        return pgNo;
+    }
+
+    private void writeEmptyPage(int pgNo) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.f, "rw");
+        file.seek((long) BufferPool.getPageSize() * pgNo);
+        file.write(BTreePage.createEmptyPageData());
+        file.close();
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(tid, null);
+    }
+
+    /**
+     * @return true unless op is NOT_EQUALS or LIKE, which do not select a
+     *   range of keys
+     */
+    public boolean supports(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    /**
+     * A lookup reads one page per level of the tree and then the fraction
+     * selectivity of the leaves.
+     */
+    public double estimatePagesRead(double selectivity) {
+        int pages = Math.max(numPages(), 1);
+        int fanout = BTreeInternalPage.getMaxKeys(this.td.getFieldType(this.keyField)) + 1;
+        double height = 1 + Math.ceil(Math.log(pages) / Math.log(fanout));
+        return height + selectivity * pages;
+    }
+
+    /**
+     * Returns an iterator over the tuples whose key field satisfies ipred,
+     * in key order. Only the leaves that may hold such tuples are read.
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        return new BTreeFileIterator(tid, ipred);
+    }
+
+    /**
+     * Walks the leaves from the first one that may hold a matching tuple,
+     * stopping at the first key past the range of ipred.
+     */
+    private class BTreeFileIterator extends AbstractDbFileIterator {
+
+        private final TransactionId tid;
+        private final IndexPredicate ipred;
+        private BTreeLeafPage page;
+        private int pos;
+
+        BTreeFileIterator(TransactionId tid, IndexPredicate ipred) {
+            this.tid = tid;
+            this.ipred = ipred;
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            Field start = null;
+            if (this.ipred != null) {
+                switch (this.ipred.getOp()) {
+                case EQUALS:
+                case GREATER_THAN:
+                case GREATER_THAN_OR_EQ:
+                    start = this.ipred.getField();
+                    break;
+                default:
+                    break;
+                }
+            }
+            this.page = findLeaf(this.tid, new HashMap<>(), start, Permissions.READ_ONLY);
+            this.pos = this.page == null ? 0 : this.page.lowerPos(start);
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (this.page != null) {
+                if (this.pos < this.page.getNumTuples()) {
+                    Tuple t = this.page.getTuple(this.pos++);
+                    if (this.ipred == null || this.ipred.matches(t.getField(keyField))) {
+                        return t;
+                    }
+                    if (pastRange()) {
+                        this.page = null;
+                    }
+                } else {
+                    BTreePageId next = this.page.getRightSiblingId();
+                    this.page = next == null ? null
+                            : (BTreeLeafPage) Database.getBufferPool().getPage(this.tid, next, Permissions.READ_ONLY);
+                    this.pos = 0;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return true if no key after one that does not match can match
+         */
+        private boolean pastRange() {
+            switch (this.ipred.getOp()) {
+            case EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQ:
+                return true;
+            default:
+                return false;
+            }
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            this.page = null;
+        }
+    }
+
+}
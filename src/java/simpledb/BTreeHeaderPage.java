@@ -0,0 +1,82 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * A header page of a BTreeFile: a bitmap of the pages that have been freed
+ * by merges and can be reused. Header pages are chained from the root
+ * pointer page; the i-th header page covers pages i * getNumSlots() up to
+ * (i + 1) * getNumSlots() - 1.
+ * <p>
+ * The page is the page number of the next header page (an int, 0 for none)
+ * followed by the bitmap.
+ *
+ * @see BTreeFile
+ */
+public class BTreeHeaderPage extends BTreePage {
+
+    private int nextPgNo;
+    private BitSet free;
+
+    public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        this.nextPgNo = buf.getInt(0);
+        byte[] bits = new byte[data.length - 4];
+        System.arraycopy(data, 4, bits, 0, bits.length);
+        this.free = BitSet.valueOf(bits);
+    }
+
+    @Override
+    BTreePage create(byte[] data) throws IOException {
+        return new BTreeHeaderPage(this.pid, data);
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.wrap(createEmptyPageData());
+        buf.putInt(0, this.nextPgNo);
+        byte[] bits = this.free.toByteArray();
+        System.arraycopy(bits, 0, buf.array(), 4, bits.length);
+        return buf.array();
+    }
+
+    /**
+     * @return the number of pages a header page covers
+     */
+    public static int getNumSlots() {
+        return (BufferPool.getPageSize() - 4) * 8;
+    }
+
+    /**
+     * @return the id of the next header page, or null if this is the last
+     */
+    public BTreePageId getNextId() {
+        if (this.nextPgNo == 0) {
+            return null;
+        }
+        return new BTreePageId(this.pid.getTableId(), this.nextPgNo, BTreePageId.HEADER);
+    }
+
+    public void setNextId(BTreePageId id) {
+        this.nextPgNo = id.getPageNumber();
+    }
+
+    public boolean isFree(int slot) {
+        return this.free.get(slot);
+    }
+
+    public void setFree(int slot, boolean value) {
+        this.free.set(slot, value);
+    }
+
+    /**
+     * @return the first free slot at or after from, or -1 if there is none
+     */
+    public int nextFree(int from) {
+        int slot = this.free.nextSetBit(from);
+        return slot < getNumSlots() ? slot : -1;
+    }
+
+}
@@ -0,0 +1,121 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * An internal page of a BTreeFile: n keys separating n + 1 children, which
+ * are either all internal pages or all leaf pages. Every key in the subtree
+ * of child i is at most key i, and every key in the subtree of child i + 1 is
+ * at least key i; equal keys may be found on both sides.
+ * <p>
+ * The page is the number of children (an int), the category of the children
+ * (a byte), the keys and then the page numbers of the children (ints).
+ *
+ * @see BTreeFile
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    private static final int HEADER_SIZE = 5;
+
+    final Type keyType;
+    int childCategory;
+    // keys.size() + 1 == children.size(), except on a new page with no children
+    final ArrayList<Field> keys;
+    final ArrayList<Integer> children;
+
+    public BTreeInternalPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.keyType = f.getTupleDesc().getFieldType(f.keyField());
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int n = buf.getInt(0);
+        this.childCategory = buf.get(4);
+        this.keys = new ArrayList<>();
+        this.children = new ArrayList<>();
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < n - 1; i++) {
+            this.keys.add(this.keyType.parse(buf, offset));
+            offset += this.keyType.getLen();
+        }
+        for (int i = 0; i < n; i++) {
+            this.children.add(buf.getInt(offset));
+            offset += 4;
+        }
+    }
+
+    @Override
+    BTreePage create(byte[] data) throws IOException {
+        return new BTreeInternalPage(this.pid, data);
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.wrap(createEmptyPageData());
+        buf.putInt(0, this.children.size());
+        buf.put(4, (byte) this.childCategory);
+        int offset = HEADER_SIZE;
+        for (Field k : this.keys) {
+            k.serialize(buf, offset);
+            offset += this.keyType.getLen();
+        }
+        for (int c : this.children) {
+            buf.putInt(offset, c);
+            offset += 4;
+        }
+        return buf.array();
+    }
+
+    /**
+     * @return the most keys an internal page with keys of type keyType holds
+     */
+    public static int getMaxKeys(Type keyType) {
+        return (BufferPool.getPageSize() - HEADER_SIZE - 4) / (keyType.getLen() + 4);
+    }
+
+    public int getMaxKeys() {
+        return getMaxKeys(this.keyType);
+    }
+
+    public int getNumKeys() {
+        return this.keys.size();
+    }
+
+    public BTreePageId getChildId(int i) {
+        return new BTreePageId(this.pid.getTableId(), this.children.get(i), this.childCategory);
+    }
+
+    /**
+     * @return the first child whose subtree may hold key, or the first child
+     *   if key is null
+     */
+    public int lowerChild(Field key) {
+        return key == null ? 0 : search(key, Predicate.Op.GREATER_THAN);
+    }
+
+    /**
+     * @return the last child whose subtree may hold key
+     */
+    public int upperChild(Field key) {
+        return search(key, Predicate.Op.GREATER_THAN_OR_EQ);
+    }
+
+    /**
+     * @return the number of keys k, which are sorted, for which
+     *   key.compare(op, k) holds
+     */
+    private int search(Field key, Predicate.Op op) {
+        int lo = 0;
+        int hi = this.keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.compare(op, this.keys.get(mid))) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+}
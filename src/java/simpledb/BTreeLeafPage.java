@@ -0,0 +1,208 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A leaf page of a BTreeFile: tuples sorted by the key field of the file,
+ * and the page numbers of the leaves to the left and the right, so range
+ * scans can walk the leaves without going back up the tree. Tuples with
+ * equal keys are kept in the order they were inserted.
+ * <p>
+ * The page is the number of tuples, the left and the right sibling page
+ * numbers (ints, 0 for none) and then the tuples, each getSize() bytes of
+ * the file's TupleDesc. The RecordId of a tuple is its position on the page,
+ * so it changes as other tuples are inserted and deleted.
+ *
+ * @see BTreeFile
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    private static final int HEADER_SIZE = 12;
+
+    final TupleDesc td;
+    final int keyField;
+    int leftPgNo;
+    int rightPgNo;
+    final ArrayList<Tuple> tuples;
+
+    public BTreeLeafPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.td = f.getTupleDesc();
+        this.keyField = f.keyField();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int n = buf.getInt(0);
+        this.leftPgNo = buf.getInt(4);
+        this.rightPgNo = buf.getInt(8);
+        this.tuples = new ArrayList<>(n);
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < n; i++) {
+            Tuple t = new Tuple(this.td);
+            for (int j = 0; j < this.td.numFields(); j++) {
+                t.setField(j, this.td.getFieldType(j).parse(buf, offset));
+                offset += this.td.getFieldType(j).getLen();
+            }
+            this.tuples.add(t);
+        }
+    }
+
+    @Override
+    BTreePage create(byte[] data) throws IOException {
+        return new BTreeLeafPage(this.pid, data);
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.wrap(createEmptyPageData());
+        buf.putInt(0, this.tuples.size());
+        buf.putInt(4, this.leftPgNo);
+        buf.putInt(8, this.rightPgNo);
+        int offset = HEADER_SIZE;
+        for (Tuple t : this.tuples) {
+            for (int j = 0; j < this.td.numFields(); j++) {
+                t.getField(j).serialize(buf, offset);
+                offset += this.td.getFieldType(j).getLen();
+            }
+        }
+        return buf.array();
+    }
+
+    /**
+     * @return the most tuples of td a leaf page holds
+     */
+    public static int getMaxTuples(TupleDesc td) {
+        return (BufferPool.getPageSize() - HEADER_SIZE) / td.getSize();
+    }
+
+    public int getMaxTuples() {
+        return getMaxTuples(this.td);
+    }
+
+    public int getNumTuples() {
+        return this.tuples.size();
+    }
+
+    /**
+     * @return a copy of tuple i, with its RecordId set, which the caller may
+     *   keep or change without changing the page
+     */
+    public Tuple getTuple(int i) {
+        Tuple t = copy(this.tuples.get(i));
+        t.setRecordId(new RecordId(this.pid, i));
+        return t;
+    }
+
+    private Tuple copy(Tuple t) {
+        Tuple c = new Tuple(this.td);
+        for (int j = 0; j < this.td.numFields(); j++) {
+            c.setField(j, t.getField(j));
+        }
+        return c;
+    }
+
+    public Field getKey(int i) {
+        return this.tuples.get(i).getField(this.keyField);
+    }
+
+    /**
+     * @return the id of the left sibling, or null if this is the first leaf
+     */
+    public BTreePageId getLeftSiblingId() {
+        return this.leftPgNo == 0 ? null : new BTreePageId(this.pid.getTableId(), this.leftPgNo, BTreePageId.LEAF);
+    }
+
+    /**
+     * @return the id of the right sibling, or null if this is the last leaf
+     */
+    public BTreePageId getRightSiblingId() {
+        return this.rightPgNo == 0 ? null : new BTreePageId(this.pid.getTableId(), this.rightPgNo, BTreePageId.LEAF);
+    }
+
+    /**
+     * @return the position of the first tuple whose key is at least key, or
+     *   0 if key is null
+     */
+    public int lowerPos(Field key) {
+        return key == null ? 0 : search(key, Predicate.Op.GREATER_THAN);
+    }
+
+    /**
+     * @return the position of the first tuple whose key is greater than key
+     */
+    public int upperPos(Field key) {
+        return search(key, Predicate.Op.GREATER_THAN_OR_EQ);
+    }
+
+    private int search(Field key, Predicate.Op op) {
+        int lo = 0;
+        int hi = this.tuples.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.compare(op, getKey(mid))) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Adds t after the tuples with the same key and sets its RecordId. The
+     * page may be left holding more than getMaxTuples() tuples, for the
+     * caller to split.
+     */
+    public void insertTuple(Tuple t) {
+        int i = upperPos(t.getField(this.keyField));
+        this.tuples.add(i, copy(t));
+        t.setRecordId(new RecordId(this.pid, i));
+    }
+
+    /**
+     * @return the position of a tuple with the same fields as t, or -1 if
+     *   there is none on this page
+     */
+    public int indexOf(Tuple t) {
+        Field key = t.getField(this.keyField);
+        for (int i = lowerPos(key); i < this.tuples.size() && getKey(i).equals(key); i++) {
+            if (sameFields(this.tuples.get(i), t)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean sameFields(Tuple a, Tuple b) {
+        for (int j = 0; j < this.td.numFields(); j++) {
+            if (!a.getField(j).equals(b.getField(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return an iterator over the tuples on this page, in key order
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<>() {
+
+            private int idx = 0;
+
+            @Override
+            public boolean hasNext() {
+                return idx < tuples.size();
+            }
+
+            @Override
+            public Tuple next() {
+                if (idx >= tuples.size()) {
+                    throw new NoSuchElementException();
+                }
+                return getTuple(idx++);
+            }
+        };
+    }
+
+}
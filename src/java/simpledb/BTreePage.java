@@ -0,0 +1,15 @@
+package simpledb;
+
+/**
+ * A page of a BTreeFile: its root pointer, a header page, an internal page
+ * or a leaf.
+ *
+ * @see BTreeFile
+ */
+public abstract class BTreePage extends DecodedPage<BTreePageId> {
+
+    BTreePage(BTreePageId id, byte[] data) {
+        super(id, data);
+    }
+
+}
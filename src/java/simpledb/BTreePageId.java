@@ -0,0 +1,87 @@
+package simpledb;
+
+/** Unique identifier for the pages of a BTreeFile. */
+public class BTreePageId implements PageId {
+
+    // categories of pages, each stored in its own Page class
+    public static final int ROOT_PTR = 0;
+    public static final int INTERNAL = 1;
+    public static final int LEAF = 2;
+    public static final int HEADER = 3;
+
+    private int tableId;
+    private int pageNo;
+    private int category;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific B+ tree file.
+     *
+     * @param tableId The B+ tree file that is being referenced
+     * @param pgNo The page number in that file.
+     * @param category The category of the page: ROOT_PTR, INTERNAL, LEAF or HEADER
+     */
+    public BTreePageId(int tableId, int pgNo, int category) {
+        this.tableId = tableId;
+        this.pageNo = pgNo;
+        this.category = category;
+    }
+
+    /** @return the B+ tree file associated with this PageId */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /**
+     * @return the page number in the file getTableId() associated with
+     *   this PageId
+     */
+    public int getPageNumber() {
+        return this.pageNo;
+    }
+
+    /** @return the category of this page: ROOT_PTR, INTERNAL, LEAF or HEADER */
+    public int getCategory() {
+        return this.category;
+    }
+
+    /**
+     * @return a hash code for this page, from its file, page number and
+     *   category
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return this.tableId + this.pageNo * 4 + this.category;
+    }
+
+    /**
+     * Compares one PageId to another.
+     *
+     * @param o The object to compare against (must be a PageId)
+     * @return true if the objects are equal (e.g., file ids, page numbers
+     *   and categories are the same)
+     */
+    public boolean equals(Object o) {
+        if (o instanceof BTreePageId) {
+            BTreePageId p = (BTreePageId) o;
+            return p.tableId == this.tableId && p.pageNo == this.pageNo && p.category == this.category;
+        } else {
+            return false;
+        }
+    }
+
+    public String toString() {
+        return "(" + this.tableId + ", " + this.pageNo + ", " + this.category + ")";
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.  Size of returned array must contain
+     *  number of integers that corresponds to number of args to one of the
+     *  constructors.
+     */
+    public int[] serialize() {
+        return new int[] { this.tableId, this.pageNo, this.category };
+    }
+
+}
@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The first page of every BTreeFile. It holds the page number and category
+ * of the root page, which move as the tree grows and shrinks, and the page
+ * number of the first header page. A page number of 0 means there is no such
+ * page, as page 0 is always this page.
+ *
+ * @see BTreeFile
+ */
+public class BTreeRootPtrPage extends BTreePage {
+
+    private int rootPgNo;
+    private int rootCategory;
+    private int headerPgNo;
+
+    /**
+     * Create a BTreeRootPtrPage from a set of bytes of data read from disk:
+     * the root page number (an int), its category (a byte) and the first
+     * header page number (an int).
+     */
+    public BTreeRootPtrPage(BTreePageId id, byte[] data) throws IOException {
+        super(id, data);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        this.rootPgNo = buf.getInt(0);
+        this.rootCategory = buf.get(4);
+        this.headerPgNo = buf.getInt(5);
+    }
+
+    @Override
+    BTreePage create(byte[] data) throws IOException {
+        return new BTreeRootPtrPage(this.pid, data);
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.wrap(createEmptyPageData());
+        buf.putInt(0, this.rootPgNo);
+        buf.put(4, (byte) this.rootCategory);
+        buf.putInt(5, this.headerPgNo);
+        return buf.array();
+    }
+
+    /**
+     * @return the id of the root page, or null if the tree is empty
+     */
+    public BTreePageId getRootId() {
+        if (this.rootPgNo == 0) {
+            return null;
+        }
+        return new BTreePageId(this.pid.getTableId(), this.rootPgNo, this.rootCategory);
+    }
+
+    public void setRootId(BTreePageId id) {
+        this.rootPgNo = id.getPageNumber();
+        this.rootCategory = id.getCategory();
+    }
+
+    /**
+     * @return the id of the first header page, or null if there is none
+     */
+    public BTreePageId getHeaderId() {
+        if (this.headerPgNo == 0) {
+            return null;
+        }
+        return new BTreePageId(this.pid.getTableId(), this.headerPgNo, BTreePageId.HEADER);
+    }
+
+    public void setHeaderId(BTreePageId id) {
+        this.headerPgNo = id.getPageNumber();
+    }
+
+}
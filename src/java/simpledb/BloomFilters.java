@@ -0,0 +1,140 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Bloom filters on chosen columns of a HeapFile, one per page and column,
+ * so that a scan with an equality predicate on such a column, or the probe
+ * side of a hash join on it, can skip the pages that cannot hold the value.
+ * They suit columns with many distinct values, where a zone map range
+ * rarely rules a page out.
+ * <p>
+ * Each filter has about ten bits for every tuple a page can hold and sets
+ * four of them for a value, so around one page in a hundred that does not
+ * hold a value is still read for it.
+ * <p>
+ * The filters are kept in the side file file.bloom, as the bits of the
+ * filter of each column of each page. They are kept up to date as
+ * described in {@link PageSummary}.
+ *
+ * @see HeapFile#setBloomFilters
+ */
+public class BloomFilters extends PageSummary {
+
+    private static final int HASHES = 4;
+
+    // the size of each filter, in longs
+    private final int words;
+    // filter of column i of page p at words (p * columns.length + i) * words ...
+    private long[] bits;
+
+    /**
+     * Opens the Bloom filters on the given columns of the heap file heap,
+     * with TupleDesc td, reading them from the side file if it matches.
+     */
+    public BloomFilters(File heap, TupleDesc td, int[] columns) {
+        super(heap, td, columns, ".bloom");
+        int maxTuples = td.isFixedLength()
+                ? BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1)
+                : BufferPool.getPageSize() / (td.getMinSize() + SlottedHeapPage.SLOT_SIZE);
+        this.words = Math.max(1, (10 * maxTuples + 63) / 64);
+        this.bits = new long[0];
+        load();
+    }
+
+    protected int entrySize() {
+        return 8 * this.words * this.columns.length;
+    }
+
+    protected void grow(int pno) {
+        int size = (pno + 1) * this.columns.length * this.words;
+        if (size > this.bits.length) {
+            this.bits = Arrays.copyOf(this.bits, Math.max(size, this.bits.length * 2));
+        }
+    }
+
+    protected void clear(int pno) {
+        int base = pno * this.columns.length * this.words;
+        Arrays.fill(this.bits, base, base + this.columns.length * this.words, 0L);
+    }
+
+    protected void get(int pno, ByteBuffer buf, int offset) {
+        int base = pno * this.columns.length * this.words;
+        for (int w = 0; w < this.columns.length * this.words; w++) {
+            this.bits[base + w] = buf.getLong(offset + 8 * w);
+        }
+    }
+
+    protected void put(int pno, ByteBuffer buf, int offset) {
+        int base = pno * this.columns.length * this.words;
+        for (int w = 0; w < this.columns.length * this.words; w++) {
+            buf.putLong(offset + 8 * w, this.bits[base + w]);
+        }
+    }
+
+    /**
+     * @return the hash of v the bits of a filter are picked from
+     */
+    private static long hash(Field v) {
+        // spread the bits of hashCode, which is the value itself for an IntField
+        long h = v.hashCode() * 0x9e3779b97f4a7c15L;
+        h ^= h >>> 32;
+        h *= 0xbf58476d1ce4e5b9L;
+        return h ^ (h >>> 29);
+    }
+
+    private void add(int pno, int i, Field v) {
+        int base = (pno * this.columns.length + i) * this.words;
+        long h = hash(v);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int k = 0; k < HASHES; k++) {
+            int bit = Math.floorMod(h1 + k * h2, 64 * this.words);
+            this.bits[base + bit / 64] |= 1L << (bit % 64);
+        }
+    }
+
+    private boolean contains(int pno, int i, Field v) {
+        int base = (pno * this.columns.length + i) * this.words;
+        long h = hash(v);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int k = 0; k < HASHES; k++) {
+            int bit = Math.floorMod(h1 + k * h2, 64 * this.words);
+            if ((this.bits[base + bit / 64] & (1L << (bit % 64))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void add(int pno, Tuple t) {
+        for (int i = 0; i < this.columns.length; i++) {
+            add(pno, i, t.getField(this.columns[i]));
+        }
+    }
+
+    protected boolean mayMatch(int pno, Predicate p) {
+        // only EQUALS predicates can rule a page out
+        return p.getOp() != Predicate.Op.EQUALS || contains(pno, this.column[p.getField()], p.getOperand());
+    }
+
+    /**
+     * @return false if no tuple on page pno has one of values in field,
+     *   which must have filters
+     */
+    public synchronized boolean mayContainAny(int pno, int field, Collection<Field> values) {
+        if (!isKnown(pno)) {
+            return true;
+        }
+        for (Field v : values) {
+            if (contains(pno, this.column[field], v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
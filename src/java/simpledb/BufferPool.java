@@ -72,18 +72,60 @@ public class BufferPool {
      */
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
-        if (this.pages.size() >= this.numPages) {
-            evictPage();
+        LockManager.Read read = LockManager.Read.OWN_WRITES;
+        if (perm.equals(Permissions.READ_ONLY) && this.lockManager.isOptimistic(tid)) {
+            read = this.lockManager.recordRead(tid, pid);
+        } else {
+            lockPage(tid, pid, perm);
         }
-        this.lockManager.acquire(tid, pid, perm);
 
-        if (this.pages.containsKey(pid)) {
-            return this.pages.get(pid);
-        } else {
-            Page p = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-            this.pages.put(pid, p);
-            return p;
+        Page p;
+        // Lock acquisition may block, so only the page table itself is guarded by the monitor
+        synchronized (this) {
+            p = this.pages.get(pid);
+            if (p == null) {
+                if (this.pages.size() >= this.numPages) {
+                    evictPage();
+                }
+                p = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+                this.pages.put(pid, p);
+            }
         }
+        if (read == LockManager.Read.COPY) {
+            // Other transactions may write the cached page in place, so it is copied, outside the
+            // lock manager. A writer that locks the page meanwhile may tear the copy, which is
+            // then dropped: the read already cannot validate.
+            Page copy = null;
+            try {
+                copy = p.copy();
+            } catch (RuntimeException e) {
+                if (this.lockManager.unchanged(tid, pid)) {
+                    throw e;
+                }
+            }
+            if (copy != null && this.lockManager.unchanged(tid, pid)) {
+                return copy;
+            }
+            read = LockManager.Read.BEFORE_IMAGE;
+        }
+        return read == LockManager.Read.BEFORE_IMAGE ? p.getBeforeImage() : p;
+    }
+
+    /**
+     * Lock a page on behalf of a transaction without fetching it, e.g. a
+     * page that is about to be appended to its file.
+     * May block if the lock cannot be acquired.
+     *
+     * @param tid the ID of the transaction requesting the lock
+     * @param pid the ID of the page to lock
+     * @param perm the requested permissions on the page
+     */
+    public void lockPage(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException, DbException {
+        if (perm.equals(Permissions.READ_WRITE) && this.lockManager.isReadOnly(tid)) {
+            throw new DbException("read-only transaction " + tid.getId() + " cannot write page " + pid);
+        }
+        this.lockManager.acquire(tid, pid, perm);
     }
 
     /**
@@ -108,6 +150,71 @@ public class BufferPool {
         transactionComplete(tid, true);
     }
 
+    /**
+     * Run the given transaction under optimistic concurrency control. Its
+     * READ_ONLY page requests take no locks; instead the version of each page
+     * read is recorded and checked by {@link #validate} before commit. They
+     * return a private copy of the page, so the transaction never reads a
+     * page while another writes it.
+     * Pages it writes are still locked exclusively, since pages in the
+     * buffer pool are shared between transactions.
+     *
+     * @param tid the ID of the transaction to run optimistically
+     */
+    public void beginOptimistic(TransactionId tid) {
+        this.lockManager.beginOptimistic(tid);
+    }
+
+    /**
+     * Check that no page read by an optimistic transaction has been written
+     * by another transaction since it was read.
+     *
+     * @param tid the ID of the transaction to validate
+     * @return true if the transaction may commit, false if it must abort
+     */
+    public boolean validate(TransactionId tid) {
+        return this.lockManager.validate(tid);
+    }
+
+    /**
+     * Declare tid a read-only transaction. Its pages are only ever locked
+     * shared, requesting {@link Permissions#READ_WRITE} fails with a
+     * DbException, and completing it just releases its locks.
+     *
+     * @param tid the transaction to declare read-only
+     */
+    public void beginReadOnly(TransactionId tid) {
+        this.lockManager.beginReadOnly(tid);
+    }
+
+    /**
+     * Choose how deadlocks between transactions waiting for page locks are
+     * resolved. Defaults to {@link LockManager.DeadlockPolicy#DETECTION}.
+     *
+     * @param policy the deadlock policy to use for subsequent lock requests
+     */
+    public void setDeadlockPolicy(LockManager.DeadlockPolicy policy) {
+        this.lockManager.setDeadlockPolicy(policy);
+    }
+
+    /**
+     * Set how long a transaction waits for a lock before aborting under the
+     * {@link LockManager.DeadlockPolicy#TIMEOUT} policy.
+     *
+     * @param millis the lock timeout in milliseconds
+     */
+    public void setLockTimeout(long millis) {
+        this.lockManager.setTimeout(millis);
+    }
+
+    /**
+     * Returns the lock contention counters kept by the lock manager, per
+     * page and per table.
+     */
+    public LockStats getLockStats() {
+        return this.lockManager.getStats();
+    }
+
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
         return this.lockManager.holdsLock(tid, p);
@@ -122,27 +229,48 @@ public class BufferPool {
      */
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
-        if (commit) {
-            for (PageId p : this.pages.keySet()) {
-                Page page = this.pages.get(p);
-                if (tid.equals(page.isDirty())) {
-                    Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
-                    Database.getLogFile().force();
-                    page.setBeforeImage();
+        // A read-only transaction never dirties a page, so there is nothing to log or discard
+        if (this.lockManager.isReadOnly(tid)) {
+            this.lockManager.removeAllHeld(tid);
+            return;
+        }
+        synchronized (this) {
+            if (commit) {
+                for (PageId p : this.pages.keySet()) {
+                    Page page = this.pages.get(p);
+                    if (tid.equals(page.isDirty())) {
+                        Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
+                        Database.getLogFile().force();
+                        page.setBeforeImage();
+                    }
                 }
-            }
-        } else {
-            List<PageId> toDiscard = new ArrayList<>();
-            for (PageId p : this.pages.keySet()) {
-                if (tid.equals(this.pages.get(p).isDirty())) {
-                    toDiscard.add(p);
+            } else {
+                List<PageId> toDiscard = new ArrayList<>();
+                for (PageId p : this.pages.keySet()) {
+                    if (tid.equals(this.pages.get(p).isDirty())) {
+                        toDiscard.add(p);
+                    }
+                }
+                for (PageId pid : toDiscard) {
+                    this.discardPage(pid);
+                    // the aborted changes may have filled the page
+                    DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
+                    if (f instanceof HeapFile) {
+                        ((HeapFile) f).mayHaveFreeSpace(pid.getPageNumber());
+                    }
                 }
             }
-            for (PageId pid : toDiscard) {
-                this.discardPage(pid);
+            // a B+ tree tid freed pages of has a header page tid still holds, even if it was evicted
+            for (PageId pid : this.lockManager.heldPages(tid)) {
+                if (pid instanceof BTreePageId && ((BTreePageId) pid).getCategory() == BTreePageId.HEADER) {
+                    DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
+                    if (f instanceof BTreeFile) {
+                        ((BTreeFile) f).transactionComplete(tid);
+                    }
+                }
             }
+            this.lockManager.removeAllHeld(tid);
         }
-        this.lockManager.removeAllHeld(tid);
     }
 
     /**
@@ -156,20 +284,27 @@ public class BufferPool {
      * been dirtied to the cache (replacing any existing versions of those pages) so 
      * that future requests see up-to-date pages. 
      *
+     * The tuple is also added to every index on the table.
+     *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
      * @param t the tuple to add
      */
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
-        HeapFile f = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
+        DbFile f = Database.getCatalog().getDatabaseFile(tableId);
         ArrayList<Page> dirty = f.insertTuple(tid, t);
-        for (Page p : dirty) {
-            p.markDirty(true, tid);
-            if (this.pages.size() > this.numPages) {
-                evictPage();
+        for (Index index : Database.getCatalog().getIndexes(tableId)) {
+            dirty.addAll(index.insertEntry(tid, t));
+        }
+        synchronized (this) {
+            for (Page p : dirty) {
+                p.markDirty(true, tid);
+                if (this.pages.size() > this.numPages) {
+                    evictPage();
+                }
+                this.pages.put(p.getId(), p);
             }
-            this.pages.put(p.getId(), p);
         }
     }
 
@@ -183,17 +318,26 @@ public class BufferPool {
      * been dirtied to the cache (replacing any existing versions of those pages) so 
      * that future requests see up-to-date pages. 
      *
+     * The tuple is also removed from every index on the table.
+     *
      * @param tid the transaction deleting the tuple.
      * @param t the tuple to delete
      */
     public void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
         int tableId = t.getRecordId().getPageId().getTableId();
-        HeapFile f = (HeapFile) Database.getCatalog().getDatabaseFile(tableId);
-        ArrayList<Page> dirty = f.deleteTuple(tid, t);
-        for (Page p : dirty) {
-            p.markDirty(true, tid);
-            this.pages.put(p.getId(), p);
+        DbFile f = Database.getCatalog().getDatabaseFile(tableId);
+        ArrayList<Page> dirty = new ArrayList<>();
+        // index entries are found by the RecordId, so they go first
+        for (Index index : Database.getCatalog().getIndexes(tableId)) {
+            dirty.addAll(index.deleteEntry(tid, t));
+        }
+        dirty.addAll(f.deleteTuple(tid, t));
+        synchronized (this) {
+            for (Page p : dirty) {
+                p.markDirty(true, tid);
+                this.pages.put(p.getId(), p);
+            }
         }
     }
 
@@ -233,8 +377,8 @@ public class BufferPool {
                 Database.getLogFile().force();
                 p.setBeforeImage();
             }
-            HeapFile hf = (HeapFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
-            hf.writePage(p);
+            DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            f.writePage(p);
             p.markDirty(false, null);
         }
     }
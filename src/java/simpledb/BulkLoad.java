@@ -0,0 +1,101 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * Appends the tuples read from the child operator to the table specified in
+ * the constructor with {@link HeapFile#bulkLoad}, writing whole pages to the
+ * end of the file instead of inserting tuple by tuple through the buffer
+ * pool.
+ */
+public class BulkLoad extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private TransactionId t;
+    private OpIterator child;
+    private int tableId;
+    private TupleDesc td;
+    private boolean called;
+
+    /**
+     * Constructor.
+     *
+     * @param t
+     *            The transaction running the load.
+     * @param child
+     *            The child operator from which to read tuples to be loaded.
+     * @param tableId
+     *            The table to load the tuples into. It must be a HeapFile.
+     * @throws DbException
+     *             if TupleDesc of child differs from table into which we are to
+     *             load, or the table is not a HeapFile.
+     */
+    public BulkLoad(TransactionId t, OpIterator child, int tableId)
+            throws DbException {
+        this.t = t;
+        this.child = child;
+        this.tableId = tableId;
+        this.called = false;
+        this.td = new TupleDesc(new Type[]{Type.INT_TYPE});
+        if (!Database.getCatalog().getTupleDesc(tableId).equals(child.getTupleDesc())) {
+            throw new DbException("Incorrect TupleDesc.");
+        }
+        if (!(Database.getCatalog().getDatabaseFile(tableId) instanceof HeapFile)) {
+            throw new DbException("Bulk loading is only supported for heap files.");
+        }
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        this.child.open();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        this.called = false;
+        this.child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.child.rewind();
+        this.called = false;
+    }
+
+    /**
+     * Loads all tuples read from child into the table.
+     *
+     * @return A 1-field tuple containing the number of loaded records, or
+     *         null if called more than once.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (this.called) {
+            return null;
+        }
+        HeapFile f = (HeapFile) Database.getCatalog().getDatabaseFile(this.tableId);
+        int count = 0;
+        try {
+            count = f.bulkLoad(this.t, this.child);
+        } catch (IOException e) {
+            throw new DbException("bulk load failed: " + e.getMessage());
+        }
+        Tuple r = new Tuple(this.td);
+        r.setField(0, new IntField(count));
+        this.called = true;
+        return r;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+}
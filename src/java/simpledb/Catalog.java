@@ -20,6 +20,9 @@ public class Catalog {
 
     private Map<Integer, Table> idToTable;
     private Map<String, Integer> nameToID;
+    // indexes by the id of their index file, and by the id of their table
+    private Map<Integer, Index> idToIndex;
+    private Map<Integer, List<Index>> tableToIndexes;
 
     /**
      * A help class to facilitate organizing the information
@@ -58,6 +61,8 @@ public class Catalog {
     public Catalog() {
         this.idToTable = new HashMap<>();
         this.nameToID = new HashMap<>();
+        this.idToIndex = new HashMap<>();
+        this.tableToIndexes = new HashMap<>();
     }
 
     /**
@@ -90,6 +95,38 @@ public class Catalog {
         addTable(file, (UUID.randomUUID()).toString());
     }
 
+    /**
+     * Add a secondary index on a table already in the catalog. The index is
+     * maintained by {@link BufferPool#insertTuple} and
+     * {@link BufferPool#deleteTuple} from then on, and its B+ tree or hash
+     * file can be looked up like a table with {@link #getDatabaseFile}.
+     */
+    public void addIndex(Index index) {
+        this.idToIndex.put(index.getFile().getId(), index);
+        this.tableToIndexes.computeIfAbsent(index.getTableId(), k -> new ArrayList<>()).add(index);
+    }
+
+    /**
+     * Returns the field the tuples of the specified table are stored in
+     * ascending order of, or -1 if they are in no particular order.
+     *
+     * @see HeapFile#setClusterKey
+     */
+    public int getClusterKey(int tableid) throws NoSuchElementException {
+        DbFile file = getDatabaseFile(tableid);
+        if (file instanceof HeapFile && ((HeapFile) file).isClustered()) {
+            return ((HeapFile) file).getClusterKey();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the indexes on the specified table, which may be empty.
+     */
+    public List<Index> getIndexes(int tableid) {
+        return this.tableToIndexes.getOrDefault(tableid, Collections.emptyList());
+    }
+
     /**
      * Return the id of the table with a specified name,
      * @throws NoSuchElementException if the table doesn't exist
@@ -111,19 +148,25 @@ public class Catalog {
         if (this.idToTable.containsKey(tableid)) {
             return this.idToTable.get(tableid).getFile().getTupleDesc();
         }
+        if (this.idToIndex.containsKey(tableid)) {
+            return this.idToIndex.get(tableid).getFile().getTupleDesc();
+        }
         throw new NoSuchElementException("Cannot find table with specified ID.");
     }
 
     /**
      * Returns the DbFile that can be used to read the contents of the
-     * specified table.
+     * specified table or index.
      * @param tableid The id of the table, as specified by the DbFile.getId()
-     *     function passed to addTable
+     *     function passed to addTable, or the id of the file of an index
      */
     public DbFile getDatabaseFile(int tableid) throws NoSuchElementException {
         if (this.idToTable.containsKey(tableid)) {
             return this.idToTable.get(tableid).getFile();
         }
+        if (this.idToIndex.containsKey(tableid)) {
+            return this.idToIndex.get(tableid).getFile();
+        }
         throw new NoSuchElementException("Cannot find table with specified ID.");
     }
 
@@ -149,10 +192,20 @@ public class Catalog {
     public void clear() {
         this.idToTable.clear();
         this.nameToID.clear();
+        this.idToIndex.clear();
+        this.tableToIndexes.clear();
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * A column may be annotated with pk, to make it the primary key, with
+     * index, to keep a secondary B+ tree index on it in the file
+     * table.column.idx, with hash, to keep a hash index on it in the file
+     * table.column.hidx, with bloom, to keep Bloom filters of its values
+     * on each page in the file table.dat.bloom, with zone, to keep the range
+     * of its values on each page in the file table.dat.zones (INT columns
+     * only), and with cluster, to cluster
+     * the table on it (see {@link HeapFile#setClusterKey}).
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -170,6 +223,11 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<String> indexed = new ArrayList<String>();
+                ArrayList<String> hashed = new ArrayList<String>();
+                ArrayList<Integer> bloom = new ArrayList<Integer>();
+                ArrayList<Integer> zone = new ArrayList<Integer>();
+                int clusterKey = -1;
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -177,15 +235,33 @@ public class Catalog {
                         types.add(Type.INT_TYPE);
                     else if (els2[1].trim().toLowerCase().equals("string"))
                         types.add(Type.STRING_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("varchar"))
+                        types.add(Type.VARCHAR_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("long"))
+                        types.add(Type.LONG_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("double"))
+                        types.add(Type.DOUBLE_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("date"))
+                        types.add(Type.DATE_TYPE);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    for (int i = 2; i < els2.length; i++) {
+                        if (els2[i].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[i].trim().equals("index"))
+                            indexed.add(els2[0].trim());
+                        else if (els2[i].trim().equals("hash"))
+                            hashed.add(els2[0].trim());
+                        else if (els2[i].trim().equals("bloom"))
+                            bloom.add(names.size() - 1);
+                        else if (els2[i].trim().equals("zone") && types.get(types.size() - 1) == Type.INT_TYPE)
+                            zone.add(names.size() - 1);
+                        else if (els2[i].trim().equals("cluster"))
+                            clusterKey = names.size() - 1;
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[i]);
                             System.exit(0);
                         }
                     }
@@ -194,10 +270,29 @@ public class Catalog {
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
                 HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                int[] bloomAr = new int[bloom.size()];
+                for (int i = 0; i < bloomAr.length; i++) {
+                    bloomAr[i] = bloom.get(i);
+                }
+                tabHf.setBloomFilters(bloomAr);
+                int[] zoneAr = new int[zone.size()];
+                for (int i = 0; i < zoneAr.length; i++) {
+                    zoneAr[i] = zone.get(i);
+                }
+                tabHf.setZoneMap(zoneAr);
+                if (clusterKey >= 0) {
+                    tabHf.setClusterKey(clusterKey);
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
+                for (String column : indexed) {
+                    loadIndex(new File(baseFolder+"/"+name+"."+column+".idx"), name, tabHf, column, false);
+                }
+                for (String column : hashed) {
+                    loadIndex(new File(baseFolder+"/"+name+"."+column+".hidx"), name, tabHf, column, true);
+                }
             }
-        } catch (IOException e) {
+        } catch (IOException | DbException | TransactionAbortedException e) {
             e.printStackTrace();
             System.exit(0);
         } catch (IndexOutOfBoundsException e) {
@@ -205,5 +300,23 @@ public class Catalog {
             System.exit(0);
         }
     }
-}
 
+    /**
+     * Opens the index in idxFile on a column of a table just loaded, adding
+     * it to the catalog, and builds it if the file is new and the table is
+     * not empty.
+     */
+    private void loadIndex(File idxFile, String name, HeapFile tabHf, String column, boolean hash)
+            throws IOException, DbException, TransactionAbortedException {
+        boolean build = !idxFile.exists() && tabHf.numPages() > 0;
+        Index index = new Index(idxFile, tabHf.getId(), tabHf.getTupleDesc().fieldNameToIndex(column), hash);
+        addIndex(index);
+        if (build) {
+            Transaction tr = new Transaction();
+            tr.start();
+            int n = index.build(tr.getId());
+            tr.commit();
+            System.out.println("Built index on " + name + "." + column + " with " + n + " entries");
+        }
+    }
+}
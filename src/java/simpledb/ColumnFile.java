@@ -0,0 +1,390 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A read-only table stored column by column, for analytic queries that only
+ * touch a few columns of wide tables. The values of each column are kept on
+ * their own run of {@link ColumnPage}s, each in the encoding that takes the
+ * fewest bytes for its values, so a scan of some of the columns reads only
+ * their pages.
+ * <p>
+ * The first page of the file is a directory: the number of rows and of
+ * columns, and then for each column the number of its first page and how
+ * many pages it has (ints). The pages of the columns follow, one column
+ * after the other, and then the number of the first row on each of them
+ * (ints), so a scan can go straight to the page of a row. The directory and
+ * the row numbers are read when the file is opened and never go through the
+ * BufferPool.
+ * <p>
+ * Column files are built from a HeapFile with {@link #convert} and cannot be
+ * changed afterwards; a table that changes has to be converted again.
+ *
+ * @see ColumnPage
+ * @see SeqScan#SeqScan(TransactionId, int, String, List, int[])
+ */
+public class ColumnFile implements DbFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private int numRows;
+    // the first page and the number of pages of each column
+    private final int[] firstPage;
+    private final int[] numPages;
+    // the first row on each page, from page 1 on
+    private int[] pageFirstRow;
+
+    /**
+     * Opens a column file with TupleDesc td, reading its directory. A file
+     * that is missing or empty has no rows.
+     *
+     * @throws IOException if the file cannot be read or its directory does
+     *   not match td
+     */
+    public ColumnFile(File f, TupleDesc td) throws IOException {
+        this.f = f;
+        this.td = td;
+        this.firstPage = new int[td.numFields()];
+        this.numPages = new int[td.numFields()];
+        this.pageFirstRow = new int[1];
+        if (!f.exists() || f.length() == 0) {
+            return;
+        }
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try {
+            this.numRows = file.readInt();
+            if (file.readInt() != td.numFields()) {
+                throw new IOException("column file " + f + " does not have " + td.numFields() + " columns");
+            }
+            for (int i = 0; i < td.numFields(); i++) {
+                this.firstPage[i] = file.readInt();
+                this.numPages[i] = file.readInt();
+            }
+            long rowIndex = (long) numPages() * BufferPool.getPageSize();
+            if (rowIndex + 4L * (numPages() - 1) != f.length()) {
+                throw new IOException("corrupt column file " + f);
+            }
+            byte[] b = new byte[4 * (numPages() - 1)];
+            file.seek(rowIndex);
+            file.readFully(b);
+            ByteBuffer buf = ByteBuffer.wrap(b);
+            this.pageFirstRow = new int[numPages()];
+            for (int p = 1; p < this.pageFirstRow.length; p++) {
+                this.pageFirstRow[p] = buf.getInt();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the tuples of source to dest as a column file, overwriting it,
+     * and returns it. Pages are read straight from source's file, once for
+     * each column, so source must not have dirty pages in the BufferPool.
+     */
+    public static ColumnFile convert(HeapFile source, File dest) throws IOException {
+        TupleDesc td = source.getTupleDesc();
+        int pageSize = BufferPool.getPageSize();
+        ByteBuffer dir = ByteBuffer.allocate(pageSize);
+        dir.putInt(4, td.numFields());
+        int rows = 0;
+        int pno = 1;
+        ArrayList<Integer> firstRows = new ArrayList<>();
+        RandomAccessFile out = new RandomAccessFile(dest, "rw");
+        try {
+            out.setLength(0);
+            out.seek(pageSize);
+            for (int i = 0; i < td.numFields(); i++) {
+                dir.putInt(8 + 8 * i, pno);
+                ColumnPage.Encoder encoder = new ColumnPage.Encoder(td.getFieldType(i));
+                int row = 0;
+                int firstRow = 0;
+                for (int src = 0; src < source.numPages(); src++) {
+                    Iterator<Tuple> it = ((TuplePage) source.readPage(new HeapPageId(source.getId(), src))).iterator();
+                    while (it.hasNext()) {
+                        Field field = it.next().getField(i);
+                        if (!encoder.add(field)) {
+                            out.write(encoder.encode(firstRow));
+                            firstRows.add(firstRow);
+                            pno++;
+                            firstRow = row;
+                            if (!encoder.add(field)) {
+                                throw new IOException("value " + field + " does not fit on a page");
+                            }
+                        }
+                        row++;
+                    }
+                }
+                if (!encoder.isEmpty()) {
+                    out.write(encoder.encode(firstRow));
+                    firstRows.add(firstRow);
+                    pno++;
+                }
+                dir.putInt(12 + 8 * i, pno - dir.getInt(8 + 8 * i));
+                rows = row;
+            }
+            ByteBuffer index = ByteBuffer.allocate(4 * firstRows.size());
+            for (int firstRow : firstRows) {
+                index.putInt(firstRow);
+            }
+            out.write(index.array());
+            dir.putInt(0, rows);
+            out.seek(0);
+            out.write(dir.array());
+        } finally {
+            out.close();
+        }
+        return new ColumnFile(dest, td);
+    }
+
+    /**
+     * Returns the File backing this ColumnFile on disk.
+     */
+    public File getFile() {
+        return this.f;
+    }
+
+    // see DbFile.java for javadocs
+    public int getId() {
+        return this.f.getAbsoluteFile().hashCode();
+    }
+
+    // see DbFile.java for javadocs
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /**
+     * @return the number of rows in this file
+     */
+    public int numRows() {
+        return this.numRows;
+    }
+
+    /**
+     * @return the number of pages in this file, including the directory
+     */
+    public int numPages() {
+        int n = 1;
+        for (int p : this.numPages) {
+            n += p;
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of pages holding the values of column i
+     */
+    public int numPages(int i) {
+        return this.numPages[i];
+    }
+
+    /**
+     * @return the number of the first page holding the values of column i
+     */
+    int firstPage(int i) {
+        return this.firstPage[i];
+    }
+
+    // see DbFile.java for javadocs
+    public ColumnPage readPage(PageId pid) {
+        int pno = pid.getPageNumber();
+        if (pno < 1 || pno >= numPages()) {
+            throw new IllegalArgumentException("page " + pno + " is not a column page of " + this.f);
+        }
+        try {
+            byte[] data = new byte[BufferPool.getPageSize()];
+            RandomAccessFile file = new RandomAccessFile(this.f, "r");
+            try {
+                file.seek((long) pno * data.length);
+                file.readFully(data);
+            } finally {
+                file.close();
+            }
+            return new ColumnPage(new HeapPageId(pid.getTableId(), pno), data);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        // column pages never change, but writing one back is harmless
+        RandomAccessFile file = new RandomAccessFile(this.f, "rw");
+        try {
+            file.seek((long) page.getId().getPageNumber() * BufferPool.getPageSize());
+            file.write(page.getPageData());
+        } finally {
+            file.close();
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("column file " + this.f + " is read-only; convert the table again");
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("column file " + this.f + " is read-only; convert the table again");
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        int[] columns = new int[this.td.numFields()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = i;
+        }
+        return iterator(tid, columns, Collections.emptyList());
+    }
+
+    /**
+     * Returns an iterator over the rows of this file that satisfy every
+     * predicate in predicates, as tuples of only the given columns, in that
+     * order. Only the pages of those columns and of the columns the
+     * predicates refer to are read, and the pages of the other columns are
+     * only read for the rows that match.
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns, List<Predicate> predicates) {
+        return new ColumnFileIterator(tid, columns, predicates);
+    }
+
+    /**
+     * @return the number of the page of column i holding the value of row
+     */
+    private int pageOf(int i, int row) {
+        // the last page of the column whose first row is at most row
+        int lo = this.firstPage[i];
+        int hi = this.firstPage[i] + this.numPages[i] - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (this.pageFirstRow[mid] <= row) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Reads the values of one column, keeping the page of the last row read.
+     */
+    private class ColumnCursor {
+
+        private final TransactionId tid;
+        private final int column;
+        private ColumnPage page;
+
+        ColumnCursor(TransactionId tid, int column) {
+            this.tid = tid;
+            this.column = column;
+        }
+
+        /**
+         * @return the value of the column in row
+         */
+        Field getField(int row) throws DbException, TransactionAbortedException {
+            if (this.page == null || row < this.page.getFirstRow()
+                    || row >= this.page.getFirstRow() + this.page.getNumRows()) {
+                this.page = (ColumnPage) Database.getBufferPool().getPage(this.tid,
+                        new HeapPageId(getId(), pageOf(this.column, row)), Permissions.READ_ONLY);
+            }
+            return this.page.getField(row);
+        }
+    }
+
+    private class ColumnFileIterator extends AbstractDbFileIterator {
+
+        private final TransactionId tid;
+        private final int[] columns;
+        private final TupleDesc outTd;
+        private final List<Predicate> predicates;
+        // the value each predicate was last evaluated on, by identity, and its result, as
+        // the rows of a run or with the same dictionary entry share a Field
+        private final Field[] lastValue;
+        private final boolean[] lastResult;
+        private final HashMap<Integer, ColumnCursor> cursors = new HashMap<>();
+        private boolean opened;
+        private int row;
+
+        ColumnFileIterator(TransactionId tid, int[] columns, List<Predicate> predicates) {
+            this.tid = tid;
+            this.columns = columns;
+            Type[] types = new Type[columns.length];
+            String[] names = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                types[i] = td.getFieldType(columns[i]);
+                names[i] = td.getFieldName(columns[i]);
+            }
+            this.outTd = new TupleDesc(types, names);
+            this.predicates = predicates;
+            this.lastValue = new Field[predicates.size()];
+            this.lastResult = new boolean[predicates.size()];
+        }
+
+        public void open() {
+            this.opened = true;
+            this.row = 0;
+        }
+
+        public void rewind() {
+            super.close();
+            this.cursors.clear();
+            Arrays.fill(this.lastValue, null);
+            this.row = 0;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            this.cursors.clear();
+            this.opened = false;
+        }
+
+        private Field getField(int column) throws DbException, TransactionAbortedException {
+            ColumnCursor cursor = this.cursors.get(column);
+            if (cursor == null) {
+                cursor = new ColumnCursor(this.tid, column);
+                this.cursors.put(column, cursor);
+            }
+            return cursor.getField(this.row);
+        }
+
+        private boolean matches() throws DbException, TransactionAbortedException {
+            for (int i = 0; i < this.predicates.size(); i++) {
+                Predicate p = this.predicates.get(i);
+                Field f = getField(p.getField());
+                if (f != this.lastValue[i]) {
+                    this.lastValue[i] = f;
+                    this.lastResult[i] = f.compare(p.getOp(), p.getOperand());
+                }
+                if (!this.lastResult[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (!this.opened) {
+                return null;
+            }
+            for (; this.row < numRows; this.row++) {
+                if (matches()) {
+                    Tuple t = new Tuple(this.outTd);
+                    for (int i = 0; i < this.columns.length; i++) {
+                        t.setField(i, getField(this.columns[i]));
+                    }
+                    this.row++;
+                    return t;
+                }
+            }
+            return null;
+        }
+    }
+
+}
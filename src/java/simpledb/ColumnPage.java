@@ -0,0 +1,371 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A page of one column of a {@link ColumnFile}: the values of the column for
+ * a run of consecutive rows, in whichever of these encodings takes the
+ * fewest bytes for them:
+ * <ul>
+ * <li>PLAIN, the values back to back;</li>
+ * <li>RUN_LENGTH, the number of runs (an int) and then each run of equal
+ * values as the value and the length of the run (an int);</li>
+ * <li>DICTIONARY, the number of distinct values (an int), the distinct
+ * values, and then for each row the position of its value among them, in
+ * one byte if there are at most 256 distinct values and two otherwise;</li>
+ * <li>FRAME_OF_REFERENCE, for INT, LONG and DATE columns, the smallest value
+ * (a long), the width w of the differences (a byte), and then for each row
+ * the difference between its value and the smallest one, in w bytes.</li>
+ * </ul>
+ * The page starts with a header of the encoding and the type of the column
+ * (a byte each), the number of the first row and the number of rows (ints),
+ * so it can be decoded without the file. The values are decoded when the
+ * page is read; rows with the same value in a run or a dictionary share one
+ * Field.
+ * <p>
+ * Column pages are written once, when the file is built, and never change.
+ *
+ * @see ColumnFile
+ */
+public class ColumnPage implements Page {
+
+    static final int HEADER_SIZE = 10;
+
+    /**
+     * The ways the values of a column page can be stored.
+     */
+    public enum Encoding {
+        PLAIN, RUN_LENGTH, DICTIONARY, FRAME_OF_REFERENCE
+    }
+
+    private final HeapPageId pid;
+    private final byte[] data;
+    private final Encoding encoding;
+    private final Type type;
+    private final int firstRow;
+    private final Field[] values;
+    private TransactionId dirtyTid;
+
+    /**
+     * Decodes the column page stored in data.
+     */
+    public ColumnPage(HeapPageId id, byte[] data) {
+        this.pid = id;
+        this.data = data;
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        this.encoding = Encoding.values()[buf.get(0)];
+        this.type = Type.values()[buf.get(1)];
+        this.firstRow = buf.getInt(2);
+        this.values = new Field[buf.getInt(6)];
+        int offset = HEADER_SIZE;
+        switch (this.encoding) {
+        case PLAIN:
+            for (int i = 0; i < this.values.length; i++) {
+                this.values[i] = this.type.parse(buf, offset);
+                offset += this.type.getLen(buf, offset);
+            }
+            break;
+        case RUN_LENGTH:
+            int runs = buf.getInt(offset);
+            offset += 4;
+            for (int r = 0, i = 0; r < runs; r++) {
+                Field f = this.type.parse(buf, offset);
+                offset += this.type.getLen(buf, offset);
+                int n = buf.getInt(offset);
+                offset += 4;
+                Arrays.fill(this.values, i, i + n, f);
+                i += n;
+            }
+            break;
+        case DICTIONARY:
+            Field[] dict = new Field[buf.getInt(offset)];
+            offset += 4;
+            for (int d = 0; d < dict.length; d++) {
+                dict[d] = this.type.parse(buf, offset);
+                offset += this.type.getLen(buf, offset);
+            }
+            for (int i = 0; i < this.values.length; i++) {
+                if (dict.length <= 256) {
+                    this.values[i] = dict[buf.get(offset + i) & 0xff];
+                } else {
+                    this.values[i] = dict[buf.getShort(offset + 2 * i) & 0xffff];
+                }
+            }
+            break;
+        case FRAME_OF_REFERENCE:
+            long base = buf.getLong(offset);
+            int width = buf.get(offset + 8);
+            offset += 9;
+            for (int i = 0; i < this.values.length; i++) {
+                long delta = 0;
+                for (int b = 0; b < width; b++) {
+                    delta = (delta << 8) | (buf.get(offset++) & 0xff);
+                }
+                this.values[i] = numeric(this.type, base + delta);
+            }
+            break;
+        }
+    }
+
+    /**
+     * @return the field of type type holding v, for a type that can be
+     *   stored with frame of reference
+     */
+    private static Field numeric(Type type, long v) {
+        switch (type) {
+        case INT_TYPE:
+            return new IntField((int) v);
+        case DATE_TYPE:
+            return new DateField((int) v);
+        default:
+            return new LongField(v);
+        }
+    }
+
+    public HeapPageId getId() {
+        return this.pid;
+    }
+
+    /**
+     * @return the encoding of the values on this page
+     */
+    public Encoding getEncoding() {
+        return this.encoding;
+    }
+
+    /**
+     * @return the number of the first row whose value is on this page
+     */
+    public int getFirstRow() {
+        return this.firstRow;
+    }
+
+    /**
+     * @return the number of rows whose values are on this page
+     */
+    public int getNumRows() {
+        return this.values.length;
+    }
+
+    /**
+     * @return the value of the column in row, which must be on this page
+     */
+    public Field getField(int row) {
+        return this.values[row - this.firstRow];
+    }
+
+    public TransactionId isDirty() {
+        return this.dirtyTid;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirtyTid = dirty ? tid : null;
+    }
+
+    public byte[] getPageData() {
+        return this.data.clone();
+    }
+
+    /** A column page never changes, so it is its own before image. */
+    public ColumnPage getBeforeImage() {
+        return this;
+    }
+
+    /** A column page never changes, so it is its own copy. */
+    public ColumnPage copy() {
+        return this;
+    }
+
+    public void setBeforeImage() {
+    }
+
+    /**
+     * Collects the values of one column for a page, keeping track of how
+     * many bytes each encoding would take for them, and encodes them in the
+     * smallest.
+     */
+    static class Encoder {
+
+        private final Type type;
+        private final int capacity;
+        private final List<Field> values = new ArrayList<>();
+        private int plainSize;
+        private int runLengthSize;
+        private Field last;
+        private final HashMap<Field, Integer> dict = new HashMap<>();
+        private int dictSize;
+        private long min;
+        private long max;
+
+        Encoder(Type type) {
+            this.type = type;
+            this.capacity = BufferPool.getPageSize() - HEADER_SIZE;
+            clear();
+        }
+
+        private void clear() {
+            this.values.clear();
+            this.plainSize = 0;
+            this.runLengthSize = 4;
+            this.last = null;
+            this.dict.clear();
+            this.dictSize = 4;
+            this.min = Long.MAX_VALUE;
+            this.max = Long.MIN_VALUE;
+        }
+
+        boolean isEmpty() {
+            return this.values.isEmpty();
+        }
+
+        private static int codeWidth(int distinct) {
+            return distinct <= 256 ? 1 : distinct <= 65536 ? 2 : Integer.MAX_VALUE;
+        }
+
+        private static int deltaWidth(long min, long max) {
+            // the difference is treated as unsigned, so it is exact even if it overflows
+            return (64 - Long.numberOfLeadingZeros(max - min) + 7) / 8;
+        }
+
+        private boolean forType() {
+            return this.type == Type.INT_TYPE || this.type == Type.LONG_TYPE || this.type == Type.DATE_TYPE;
+        }
+
+        private long size(int n, int plain, int runLength, int dictSize, int distinct, long min, long max) {
+            long best = Math.min(plain, runLength);
+            if (codeWidth(distinct) != Integer.MAX_VALUE) {
+                best = Math.min(best, dictSize + (long) n * codeWidth(distinct));
+            }
+            if (forType()) {
+                best = Math.min(best, 9 + (long) n * deltaWidth(min, max));
+            }
+            return best;
+        }
+
+        /**
+         * Adds f, the value of the next row, unless the values would no
+         * longer fit on a page in any encoding.
+         *
+         * @return false if f was not added
+         */
+        boolean add(Field f) {
+            int len = this.type.getLen(f);
+            int plain = this.plainSize + len;
+            int runLength = this.runLengthSize + (this.last != null && this.last.equals(f) ? 0 : len + 4);
+            boolean known = this.dict.containsKey(f);
+            int dictSize = this.dictSize + (known ? 0 : len);
+            int distinct = this.dict.size() + (known ? 0 : 1);
+            long v = forType() ? ((NumericField) f).longValue() : 0;
+            long min = Math.min(this.min, v);
+            long max = Math.max(this.max, v);
+            if (size(this.values.size() + 1, plain, runLength, dictSize, distinct, min, max) > this.capacity) {
+                return false;
+            }
+            this.values.add(f);
+            this.plainSize = plain;
+            this.runLengthSize = runLength;
+            this.last = f;
+            if (!known) {
+                this.dict.put(f, this.dict.size());
+            }
+            this.dictSize = dictSize;
+            this.min = min;
+            this.max = max;
+            return true;
+        }
+
+        /**
+         * Encodes the values added since the last call as a page whose
+         * first row is firstRow, and starts a new page.
+         */
+        byte[] encode(int firstRow) {
+            int n = this.values.size();
+            Encoding encoding = Encoding.PLAIN;
+            long best = this.plainSize;
+            if (forType() && 9 + (long) n * deltaWidth(this.min, this.max) < best) {
+                encoding = Encoding.FRAME_OF_REFERENCE;
+                best = 9 + (long) n * deltaWidth(this.min, this.max);
+            }
+            if (codeWidth(this.dict.size()) != Integer.MAX_VALUE
+                    && this.dictSize + (long) n * codeWidth(this.dict.size()) < best) {
+                encoding = Encoding.DICTIONARY;
+                best = this.dictSize + (long) n * codeWidth(this.dict.size());
+            }
+            if (this.runLengthSize < best) {
+                encoding = Encoding.RUN_LENGTH;
+            }
+
+            ByteBuffer buf = ByteBuffer.wrap(HeapPage.createEmptyPageData());
+            buf.put(0, (byte) encoding.ordinal());
+            buf.put(1, (byte) this.type.ordinal());
+            buf.putInt(2, firstRow);
+            buf.putInt(6, n);
+            int offset = HEADER_SIZE;
+            switch (encoding) {
+            case PLAIN:
+                for (Field f : this.values) {
+                    offset = put(buf, offset, f);
+                }
+                break;
+            case RUN_LENGTH:
+                int runs = 0;
+                int runsOffset = offset;
+                offset += 4;
+                for (int i = 0; i < n; ) {
+                    int j = i + 1;
+                    while (j < n && this.values.get(j).equals(this.values.get(i))) {
+                        j++;
+                    }
+                    offset = put(buf, offset, this.values.get(i));
+                    buf.putInt(offset, j - i);
+                    offset += 4;
+                    runs++;
+                    i = j;
+                }
+                buf.putInt(runsOffset, runs);
+                break;
+            case DICTIONARY:
+                Field[] entries = new Field[this.dict.size()];
+                for (Map.Entry<Field, Integer> e : this.dict.entrySet()) {
+                    entries[e.getValue()] = e.getKey();
+                }
+                buf.putInt(offset, entries.length);
+                offset += 4;
+                for (Field f : entries) {
+                    offset = put(buf, offset, f);
+                }
+                for (Field f : this.values) {
+                    int code = this.dict.get(f);
+                    if (entries.length <= 256) {
+                        buf.put(offset++, (byte) code);
+                    } else {
+                        buf.putShort(offset, (short) code);
+                        offset += 2;
+                    }
+                }
+                break;
+            case FRAME_OF_REFERENCE:
+                int width = deltaWidth(this.min, this.max);
+                buf.putLong(offset, this.min);
+                buf.put(offset + 8, (byte) width);
+                offset += 9;
+                for (Field f : this.values) {
+                    long delta = ((NumericField) f).longValue() - this.min;
+                    for (int b = width - 1; b >= 0; b--) {
+                        buf.put(offset++, (byte) (delta >>> (8 * b)));
+                    }
+                }
+                break;
+            }
+            clear();
+            return buf.array();
+        }
+
+        private int put(ByteBuffer buf, int offset, Field f) {
+            f.serialize(buf, offset);
+            return offset + this.type.getLen(f);
+        }
+    }
+
+}
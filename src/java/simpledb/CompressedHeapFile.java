@@ -0,0 +1,313 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A HeapFile for cold tables that stores every page deflated, trading CPU
+ * for disk space and I/O. Pages are decompressed when they are read, so the
+ * BufferPool and everything above it only ever see ordinary HeapPages or
+ * SlottedHeapPages.
+ * <p>
+ * The file starts with a header holding the offset of a page-offset index
+ * and the number of pages, followed by the compressed pages back to back
+ * and the index, which gives the offset (a long) and length (an int) of
+ * the extent of each page. A page may not fill its extent: the compressed
+ * data ends itself, and the rest of the extent is unused.
+ * <p>
+ * Pages can still be written. A page that still fits in its extent when
+ * compressed is written over it in place, as a HeapFile writes its pages.
+ * The others get new extents, with some room to grow, which are appended
+ * with a new index after the current index and forced to disk before the
+ * header is switched to the new index, so a crash in between leaves the old
+ * index in use. Their old extents and the old index are left as garbage;
+ * once the garbage outgrows the live extents and index, the file is
+ * compacted by copying the live extents to a new file, which then replaces
+ * it.
+ *
+ * @see HeapFile
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    private static final int INDEX_ENTRY_SIZE = 12;
+    private static final int HEADER_SIZE = 12;
+    // the share of its compressed length a rewritten page gets as room to grow
+    private static final int SLACK = 8;
+
+    // offset and compressed length of each page
+    private long[] offsets;
+    private int[] lengths;
+    private int numPages;
+    // where the index starts, or 0 if the file has no header yet
+    private long indexOffset;
+    // where the index ends, which is where the next extents are written
+    private long end = HEADER_SIZE;
+
+    /**
+     * Opens a compressed heap file, reading its page-offset index. A file
+     * that is missing or empty holds no pages.
+     *
+     * @throws IOException if the file cannot be read or its header is corrupt
+     */
+    public CompressedHeapFile(File f, TupleDesc td) throws IOException {
+        super(f, td);
+        this.offsets = new long[16];
+        this.lengths = new int[16];
+        if (!f.exists() || f.length() == 0) {
+            return;
+        }
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try {
+            this.indexOffset = file.readLong();
+            int n = file.readInt();
+            this.end = this.indexOffset + (long) n * INDEX_ENTRY_SIZE;
+            // anything after the index is left from a write that did not finish
+            if (this.indexOffset < HEADER_SIZE || n < 0 || this.end > f.length()) {
+                throw new IOException("corrupt compressed heap file " + f);
+            }
+            this.offsets = new long[Math.max(16, n)];
+            this.lengths = new int[Math.max(16, n)];
+            byte[] index = new byte[n * INDEX_ENTRY_SIZE];
+            file.seek(this.indexOffset);
+            file.readFully(index);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+            for (int i = 0; i < n; i++) {
+                this.offsets[i] = in.readLong();
+                this.lengths[i] = in.readInt();
+            }
+            this.numPages = n;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes a compressed copy of source to dest, overwriting it, and
+     * returns it. Pages are read straight from source's file, so source must
+     * not have dirty pages in the BufferPool.
+     */
+    public static CompressedHeapFile compress(HeapFile source, File dest) throws IOException {
+        dest.delete();
+        CompressedHeapFile out = new CompressedHeapFile(dest, source.getTupleDesc());
+        List<byte[]> batch = new ArrayList<>();
+        for (int pno = 0; pno < source.numPages(); pno++) {
+            batch.add(source.readPage(new HeapPageId(source.getId(), pno)).getPageData());
+            if (batch.size() == BULK_LOAD_BATCH) {
+                out.append(batch);
+                batch.clear();
+            }
+        }
+        out.append(batch);
+        return out;
+    }
+
+    /**
+     * Returns the number of pages in this file, which is not related to its
+     * length on disk.
+     */
+    @Override
+    public synchronized int numPages() {
+        return this.numPages;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid) {
+        try {
+            int pno = pid.getPageNumber();
+            byte[] extent;
+            synchronized (this) {
+                if (pno >= this.numPages) {
+                    // like reading past the end of a HeapFile
+                    return newPage(new HeapPageId(pid.getTableId(), pno), HeapPage.createEmptyPageData());
+                }
+                extent = new byte[this.lengths[pno]];
+                RandomAccessFile file = new RandomAccessFile(getFile(), "r");
+                file.seek(this.offsets[pno]);
+                file.readFully(extent);
+                file.close();
+            }
+            Inflater inflater = new Inflater();
+            inflater.setInput(extent);
+            byte[] b = new byte[BufferPool.getPageSize()];
+            int n = inflater.inflate(b);
+            inflater.end();
+            if (n != b.length) {
+                throw new IOException("corrupt page " + pno + " in " + getFile());
+            }
+            return newPage(new HeapPageId(pid.getTableId(), pno), b);
+        } catch (IOException | DataFormatException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void writePage(Page page) throws IOException {
+        writePages(Collections.singletonList((TuplePage) page));
+    }
+
+    @Override
+    void writePages(List<TuplePage> pages) throws IOException {
+        List<byte[]> data = new ArrayList<>();
+        for (TuplePage p : pages) {
+            data.add(p.getPageData());
+        }
+        synchronized (this) {
+            int first = pages.get(0).getId().getPageNumber();
+            if (first > this.numPages) {
+                // the pages before first are appended empty, as they read past the end of the file
+                List<byte[]> padded = new ArrayList<>();
+                for (int i = this.numPages; i < first; i++) {
+                    padded.add(HeapPage.createEmptyPageData());
+                }
+                padded.addAll(data);
+                data = padded;
+                first = this.numPages;
+            }
+            if (first + data.size() > this.numPages) {
+                // only the pages at the end of the file are appended; the rest replace existing pages
+                int existing = Math.max(0, this.numPages - first);
+                List<byte[]> replaced = data.subList(0, existing);
+                write(first, replaced);
+                append(data.subList(existing, data.size()));
+            } else {
+                write(first, data);
+            }
+        }
+        written(pages);
+    }
+
+    /**
+     * Adds pages to the end of the file.
+     */
+    private synchronized void append(List<byte[]> pages) throws IOException {
+        int first = this.numPages;
+        this.numPages += pages.size();
+        if (this.numPages > this.offsets.length) {
+            int capacity = Math.max(this.numPages, this.offsets.length * 2);
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+        }
+        write(first, pages);
+    }
+
+    /**
+     * Compresses pages first, first + 1, ... and writes those that fit in
+     * their extent in place. The others are written after the current
+     * index, followed by the new index, and the header is pointed at the new
+     * index once both are on disk. Compacts the file if that leaves it with
+     * more garbage than live data.
+     */
+    private synchronized void write(int first, List<byte[]> pages) throws IOException {
+        if (pages.isEmpty() && this.indexOffset > 0) {
+            return;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] buf = new byte[BufferPool.getPageSize() * 2];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long offset = this.end;
+        RandomAccessFile file = new RandomAccessFile(getFile(), "rw");
+        try {
+            for (int i = 0; i < pages.size(); i++) {
+                int pno = first + i;
+                deflater.reset();
+                deflater.setInput(pages.get(i));
+                deflater.finish();
+                int len = deflater.deflate(buf);
+                if (len <= this.lengths[pno]) {
+                    file.seek(this.offsets[pno]);
+                    file.write(buf, 0, len);
+                    continue;
+                }
+                // a page that is rewritten is likely to be rewritten again, so give it room to grow
+                int extent = this.lengths[pno] == 0 ? len : len + len / SLACK;
+                bytes.write(buf, 0, len);
+                bytes.write(new byte[extent - len]);
+                this.offsets[pno] = offset;
+                this.lengths[pno] = extent;
+                offset += extent;
+            }
+            if (bytes.size() == 0 && this.indexOffset > 0) {
+                return;
+            }
+
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int i = 0; i < this.numPages; i++) {
+                out.writeLong(this.offsets[i]);
+                out.writeInt(this.lengths[i]);
+            }
+            out.flush();
+
+            file.seek(this.end);
+            file.write(bytes.toByteArray());
+            file.getFD().sync();
+            file.seek(0);
+            file.writeLong(offset);
+            file.writeInt(this.numPages);
+            file.getFD().sync();
+            this.indexOffset = offset;
+            this.end = offset + (long) this.numPages * INDEX_ENTRY_SIZE;
+            file.setLength(this.end);
+        } finally {
+            deflater.end();
+            file.close();
+        }
+        long live = HEADER_SIZE + (long) this.numPages * INDEX_ENTRY_SIZE;
+        for (int i = 0; i < this.numPages; i++) {
+            live += this.lengths[i];
+        }
+        if (this.end - live > live) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the extents of the pages back to back to a new file, followed
+     * by the index, and replaces the file with it once it is on disk.
+     */
+    private synchronized void compact() throws IOException {
+        File tmp = new File(getFile().getPath() + ".compact");
+        long[] offsets = new long[this.offsets.length];
+        long offset = HEADER_SIZE;
+        RandomAccessFile in = new RandomAccessFile(getFile(), "r");
+        RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+        try {
+            file.setLength(0);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.getFD())));
+            out.writeLong(0);
+            out.writeInt(this.numPages);
+            for (int i = 0; i < this.numPages; i++) {
+                byte[] extent = new byte[this.lengths[i]];
+                in.seek(this.offsets[i]);
+                in.readFully(extent);
+                out.write(extent);
+                offsets[i] = offset;
+                offset += extent.length;
+            }
+            for (int i = 0; i < this.numPages; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(this.lengths[i]);
+            }
+            out.flush();
+            file.seek(0);
+            file.writeLong(offset);
+            file.getFD().sync();
+        } finally {
+            in.close();
+            file.close();
+        }
+        Files.move(tmp.toPath(), getFile().toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.offsets = offsets;
+        this.indexOffset = offset;
+        this.end = offset + (long) this.numPages * INDEX_ENTRY_SIZE;
+    }
+
+}
@@ -0,0 +1,111 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Instance of Field that stores a calendar date as the number of days since
+ * 1970-01-01, and reads and prints it in ISO format (yyyy-mm-dd).
+ */
+public class DateField implements NumericField {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int days;
+
+    /**
+     * @return the number of days between 1970-01-01 and this date
+     */
+    public int getValue() {
+        return days;
+    }
+
+    public long longValue() {
+        return days;
+    }
+
+    public double doubleValue() {
+        return days;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param days The number of days between 1970-01-01 and this date
+     */
+    public DateField(int days) {
+        this.days = days;
+    }
+
+    /**
+     * @return the DateField for the ISO date s, e.g. 2024-02-29
+     * @throws IllegalArgumentException if s is not a valid date
+     */
+    public static DateField parse(String s) {
+        try {
+            return new DateField((int) LocalDate.parse(s).toEpochDay());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("bad date " + s, e);
+        }
+    }
+
+    public String toString() {
+        return LocalDate.ofEpochDay(days).toString();
+    }
+
+    public int hashCode() {
+        return days;
+    }
+
+    public boolean equals(Object field) {
+        return ((DateField) field).days == days;
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeInt(days);
+    }
+
+    public void serialize(ByteBuffer buf, int offset) {
+        buf.putInt(offset, days);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws IllegalCastException if val is not a DateField
+     * @see Field#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+
+        DateField dVal = (DateField) val;
+
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return days == dVal.days;
+        case NOT_EQUALS:
+            return days != dVal.days;
+        case GREATER_THAN:
+            return days > dVal.days;
+        case GREATER_THAN_OR_EQ:
+            return days >= dVal.days;
+        case LESS_THAN:
+            return days < dVal.days;
+        case LESS_THAN_OR_EQ:
+            return days <= dVal.days;
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the Type of this field.
+     * @return Type.DATE_TYPE
+     */
+	public Type getType() {
+		return Type.DATE_TYPE;
+	}
+}
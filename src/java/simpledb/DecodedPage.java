@@ -0,0 +1,104 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * State shared by pages that are decoded into Java objects when they are
+ * read and encoded again by getPageData, such as the pages of a BTreeFile or
+ * a HashFile, so subclasses only deal with their own lists of keys,
+ * children, tuples or buckets.
+ * <p>
+ * The before image is the bytes the page was created from, replaced by the
+ * current contents whenever setBeforeImage is called.
+ *
+ * @see BTreePage
+ * @see HashPage
+ */
+public abstract class DecodedPage<P extends PageId> implements Page {
+
+    final P pid;
+    private TransactionId dirtyTid;
+
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    DecodedPage(P id, byte[] data) {
+        this.pid = id;
+        this.dirtyTid = null;
+        this.oldData = data.clone();
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public P getId() {
+        return this.pid;
+    }
+
+    /**
+     * Creates a page of the same class as this one from data.
+     */
+    abstract DecodedPage<P> create(byte[] data) throws IOException;
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public DecodedPage<P> getBeforeImage(){
+        try {
+            synchronized(oldDataLock)
+            {
+                return create(oldData);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public DecodedPage<P> copy() {
+        try {
+            return create(getPageData());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        oldData = getPageData().clone();
+        }
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        if (dirty) {
+            this.dirtyTid = tid;
+        } else {
+            this.dirtyTid = null;
+        }
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return this.dirtyTid;
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * page of any kind.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+}
@@ -1,6 +1,8 @@
 package simpledb;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The delete operator. Delete reads tuples from its child operator and removes
@@ -52,9 +54,13 @@ public class Delete extends Operator {
     }
 
     /**
-     * Deletes tuples as they are read from the child operator. Deletes are
+     * Deletes the tuples read from the child operator. Deletes are
      * processed via the buffer pool (which can be accessed via the
      * Database.getBufferPool() method.
+     * <p>
+     * All the tuples are read before any is deleted: an index scan child
+     * walks the index pages that deleting its tuples removes entries from,
+     * and would skip tuples if they were deleted as they were read.
      * 
      * @return A 1-field tuple containing the number of deleted records.
      * @see Database#getBufferPool
@@ -64,9 +70,12 @@ public class Delete extends Operator {
         if (this.called) {
             return null;
         } else {
-            int count = 0;
+            List<Tuple> tuples = new ArrayList<>();
             while (this.child.hasNext()) {
-                Tuple n = this.child.next();
+                tuples.add(this.child.next());
+            }
+            int count = 0;
+            for (Tuple n : tuples) {
                 try {
                     Database.getBufferPool().deleteTuple(this.t, n);
                 } catch (IOException f) {
@@ -0,0 +1,79 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Instance of Field that stores a single double precision number.
+ */
+public class DoubleField implements NumericField {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double value;
+
+    public double getValue() {
+        return value;
+    }
+
+    public long longValue() {
+        return (long) value;
+    }
+
+    public double doubleValue() {
+        return value;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param d The value of this field.
+     */
+    public DoubleField(double d) {
+        value = d;
+    }
+
+    public String toString() {
+        return Double.toString(value);
+    }
+
+    public int hashCode() {
+        if (value == Math.rint(value) && value >= -0x1p63 && value < 0x1p63) {
+            // hash as the INT or LONG field it is equal to
+            return NumericField.hash((long) value);
+        }
+        return Double.hashCode(value);
+    }
+
+    public boolean equals(Object field) {
+        return NumericField.equals(this, field);
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeDouble(value);
+    }
+
+    public void serialize(ByteBuffer buf, int offset) {
+        buf.putDouble(offset, value);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws ClassCastException if val is not an INT, LONG or DOUBLE field
+     * @see Field#compare
+     * @see NumericField#compare(NumericField, Field)
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return NumericField.satisfies(op, NumericField.compare(this, val));
+    }
+
+    /**
+     * Return the Type of this field.
+     * @return Type.DOUBLE_TYPE
+     */
+	public Type getType() {
+		return Type.DOUBLE_TYPE;
+	}
+}
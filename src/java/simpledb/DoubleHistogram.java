@@ -0,0 +1,136 @@
+package simpledb;
+
+/** A class to represent a fixed-width histogram over a single LONG, DOUBLE
+ * or DATE field, whose values are histogrammed as doubles.
+ */
+public class DoubleHistogram {
+
+    private final int[] histogramBuckets;
+    private final double min, max, width;
+    private int numTup;
+
+    /**
+     * Create a new DoubleHistogram.
+     *
+     * @param buckets The number of buckets to split the input value into.
+     * @param min The minimum value that will ever be passed to this class for histogramming
+     * @param max The maximum value that will ever be passed to this class for histogramming
+     */
+    public DoubleHistogram(int buckets, double min, double max) {
+        this.histogramBuckets = new int[buckets];
+        this.min = min;
+        this.max = max;
+        this.width = (max - min) / buckets;
+        this.numTup = 0;
+    }
+
+    private int bucket(double v) {
+        if (width == 0) {
+            return 0;
+        }
+        return (int) Math.max(0, Math.min(histogramBuckets.length - 1, (v - min) / width));
+    }
+
+    /**
+     * Add a value to the set of values that you are keeping a histogram of.
+     * @param v Value to add to the histogram
+     */
+    public void addValue(double v) {
+        this.histogramBuckets[bucket(v)] += 1;
+        numTup += 1;
+    }
+
+    /**
+     * Estimate the fraction of values equal to v, assuming the values in a
+     * bucket are distinct, except that a bucket at least one wide has at most
+     * one value per whole number, as LONG and DATE values do, and that all
+     * values are equal if min == max.
+     */
+    private double equalTo(double v) {
+        if (v < min || v > max) {
+            return 0;
+        }
+        int h = histogramBuckets[bucket(v)];
+        double distinct = width == 0 ? 1 : Math.max(1, width < 1 ? h : Math.min(h, width));
+        return h / distinct / numTup;
+    }
+
+    /**
+     * Estimate the fraction of values less than v, assuming values are spread
+     * evenly within each bucket.
+     */
+    private double lessThan(double v) {
+        if (v <= min) {
+            return 0;
+        } else if (v > max) {
+            return 1;
+        }
+        int b = bucket(v);
+        double part = width == 0 ? 0 : (v - (min + b * width)) / width;
+        double result = histogramBuckets[b] * part;
+        for (int i = 0; i < b; i++) {
+            result += histogramBuckets[i];
+        }
+        return result / numTup;
+    }
+
+    /**
+     * Estimate the fraction of values greater than v, assuming values are
+     * spread evenly within each bucket.
+     */
+    private double greaterThan(double v) {
+        if (v >= max) {
+            return 0;
+        } else if (v < min) {
+            return 1;
+        }
+        int b = bucket(v);
+        double part = width == 0 ? 0 : (min + (b + 1) * width - v) / width;
+        double result = histogramBuckets[b] * part;
+        for (int i = b + 1; i < histogramBuckets.length; i++) {
+            result += histogramBuckets[i];
+        }
+        return result / numTup;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this table.
+     *
+     * @param op Operator
+     * @param v Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, double v) {
+        if (numTup == 0) {
+            return 0;
+        }
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return equalTo(v);
+            case NOT_EQUALS:
+                return 1 - equalTo(v);
+            case GREATER_THAN:
+                return greaterThan(v);
+            case GREATER_THAN_OR_EQ:
+                return Math.min(1, greaterThan(v) + equalTo(v));
+            case LESS_THAN:
+                return lessThan(v);
+            case LESS_THAN_OR_EQ:
+                return Math.min(1, lessThan(v) + equalTo(v));
+        }
+        return 1.0;
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.histogramBuckets.length; i++) {
+            sb.append("[").append(min + i * width).append(", ").append(min + (i + 1) * width)
+                    .append("): ").append(this.histogramBuckets[i]).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Interface for values of fields in tuples in SimpleDB.
@@ -14,6 +15,15 @@ public interface Field extends Serializable{
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * Write the bytes representing this field into buf, starting at offset.
+     * Writes exactly {@link Type#getLen()} bytes, in the same format as
+     * {@link #serialize(DataOutputStream)}.
+     * @param buf The buffer to write to.
+     * @param offset The position in buf of the first byte of this field.
+     */
+    void serialize(ByteBuffer buf, int offset);
+
     /**
      * Compare the value of this field object to the passed in value.
      * @param op The operator
@@ -0,0 +1,233 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * The free-space map of a HeapFile: the number of bytes each page has for
+ * new tuples, as {@link TuplePage#getFreeSpace} reports it, so that an
+ * insert goes straight to a page with room for its tuple instead of reading
+ * the pages before it.
+ * <p>
+ * The free space is kept as the leaves of a tree in which every node holds
+ * the most free space of the pages below it, so the first page at or after
+ * a given one with enough room is found in time logarithmic in the number
+ * of pages, and updating a page takes as long. A page whose free space is
+ * not known yet, as is every page of a file that was just opened, may have
+ * room for any tuple.
+ * <p>
+ * The map is only a hint: a page it offers is checked with
+ * {@link TuplePage#hasRoomFor} before inserting into it.
+ * <p>
+ * The free space of the pages as they are on disk is kept in the side file
+ * file.fsm, so a file that is opened again knows which pages are full
+ * without reading them. Like the side files of a {@link PageSummary} it
+ * starts with the length and modification time of the heap file when it
+ * was last written, then the page size, then the free space of each page
+ * as a char, and it is only read back if these still match. It is written
+ * whenever pages of the heap file are.
+ */
+class FreeSpaceMap {
+
+    // the free space of a page that is not known
+    private static final char UNKNOWN = Character.MAX_VALUE;
+    // the largest free space kept; pages with more are kept with this much
+    private static final char MOST = UNKNOWN - 1;
+    private static final int HEADER_SIZE = 20;
+
+    private final File f;
+    private final File heap;
+    private final TupleDesc td;
+    // the number of leaves; pages numbered from there on are not known
+    private int size;
+    // node i has children 2i and 2i+1, and page p is the leaf at size + p
+    private char[] tree;
+
+    /**
+     * Opens the map of the heap file heap, with TupleDesc td, reading the
+     * free space of its pages from the side file if it matches.
+     */
+    FreeSpaceMap(File heap, TupleDesc td) {
+        this.f = new File(heap.getPath() + ".fsm");
+        this.heap = heap;
+        this.td = td;
+        this.size = 64;
+        this.tree = new char[2 * this.size];
+        Arrays.fill(this.tree, UNKNOWN);
+        load();
+    }
+
+    /**
+     * Returns the side file holding the free space of the pages.
+     */
+    File getFile() {
+        return this.f;
+    }
+
+    /**
+     * Reads the free space of the pages from the side file, if it matches
+     * the heap file, and deletes it if it does not.
+     */
+    private synchronized void load() {
+        if (!this.f.exists()) {
+            return;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(this.f, "r");
+            boolean matches;
+            try {
+                matches = file.length() >= HEADER_SIZE && file.readLong() == this.heap.length()
+                        && file.readLong() == this.heap.lastModified() && file.readInt() == BufferPool.getPageSize();
+                if (matches) {
+                    byte[] b = new byte[(int) file.length() - HEADER_SIZE];
+                    file.readFully(b);
+                    ByteBuffer buf = ByteBuffer.wrap(b);
+                    int pages = b.length / 2;
+                    if (pages > 0) {
+                        grow(pages - 1);
+                    }
+                    for (int pno = 0; pno < pages; pno++) {
+                        this.tree[this.size + pno] = buf.getChar(2 * pno);
+                    }
+                    for (int node = this.size - 1; node > 0; node--) {
+                        this.tree[node] = (char) Math.max(this.tree[2 * node], this.tree[2 * node + 1]);
+                    }
+                }
+            } finally {
+                file.close();
+            }
+            if (!matches) {
+                // written for another version of the heap file
+                this.f.delete();
+            }
+        } catch (IOException e) {
+            // the map is only a hint: without it every page may have room
+            e.printStackTrace();
+            Arrays.fill(this.tree, UNKNOWN);
+        }
+    }
+
+    /**
+     * @return the free space a page needs for t to fit on it
+     */
+    private int need(Tuple t) {
+        return Math.min(MOST, this.td.isFixedLength() ? this.td.getSize() : SlottedHeapPage.spaceFor(t));
+    }
+
+    /**
+     * @return the first page number at or after pno that may have room for
+     *   t; pages past those the map knows of always may
+     */
+    synchronized int next(int pno, Tuple t) {
+        if (pno >= this.size) {
+            return pno;
+        }
+        int found = find(1, 0, this.size, pno, need(t));
+        return found < 0 ? this.size : found;
+    }
+
+    /**
+     * @return the first page at or after pno, below node, whose leaves are
+     *   the pages from lo up to hi, with at least need free, or -1
+     */
+    private int find(int node, int lo, int hi, int pno, int need) {
+        if (hi <= pno || this.tree[node] < need) {
+            return -1;
+        }
+        if (hi - lo == 1) {
+            return lo;
+        }
+        int mid = (lo + hi) >>> 1;
+        int found = find(2 * node, lo, mid, pno, need);
+        return found >= 0 ? found : find(2 * node + 1, mid, hi, pno, need);
+    }
+
+    /**
+     * Records the free space of page p.
+     */
+    synchronized void update(TuplePage p) {
+        set(p.getId().getPageNumber(), (char) Math.min(MOST, p.getFreeSpace()));
+    }
+
+    /**
+     * Records the free space of pages, just written to the heap file, and
+     * writes it to the side file.
+     */
+    synchronized void written(List<? extends TuplePage> pages) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.f, "rw");
+        try {
+            for (TuplePage p : pages) {
+                update(p);
+                int pno = p.getId().getPageNumber();
+                long at = HEADER_SIZE + 2L * pno;
+                long end = Math.max(HEADER_SIZE, file.length());
+                if (end < at) {
+                    // the pages in between were not written through this map
+                    byte[] unknown = new byte[(int) (at - end)];
+                    Arrays.fill(unknown, (byte) 0xff);
+                    file.seek(end);
+                    file.write(unknown);
+                }
+                file.seek(at);
+                file.writeChar(this.tree[this.size + pno]);
+            }
+            file.seek(0);
+            file.writeLong(this.heap.length());
+            file.writeLong(this.heap.lastModified());
+            file.writeInt(BufferPool.getPageSize());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Records that the pages from first up to first + n have no room, as
+     * while they are handed out for writing.
+     */
+    synchronized void setFull(int first, int n) {
+        for (int pno = first; pno < first + n; pno++) {
+            set(pno, (char) 0);
+        }
+    }
+
+    /**
+     * Forgets the free space of page pno, so the next insert that gets to it
+     * checks the page itself.
+     */
+    synchronized void forget(int pno) {
+        if (pno < this.size) {
+            set(pno, UNKNOWN);
+        }
+    }
+
+    private void set(int pno, char free) {
+        if (pno >= this.size) {
+            grow(pno);
+        }
+        int node = this.size + pno;
+        this.tree[node] = free;
+        for (node /= 2; node > 0; node /= 2) {
+            this.tree[node] = (char) Math.max(this.tree[2 * node], this.tree[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Makes room for page pno, which is not known.
+     */
+    private void grow(int pno) {
+        int size = this.size;
+        while (size <= pno) {
+            size *= 2;
+        }
+        char[] tree = new char[2 * size];
+        Arrays.fill(tree, size, 2 * size, UNKNOWN);
+        System.arraycopy(this.tree, this.size, tree, size, this.size);
+        for (int node = size - 1; node > 0; node--) {
+            tree[node] = (char) Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+        this.size = size;
+        this.tree = tree;
+    }
+
+}
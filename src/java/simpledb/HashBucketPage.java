@@ -0,0 +1,174 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A bucket page of a HashFile: the tuples whose key hashes to the bucket, in
+ * no particular order. A bucket that cannot be split any further, because
+ * its tuples all have the same hash or the directory is as large as it can
+ * be, continues on overflow pages chained from it.
+ * <p>
+ * The page is the local depth of the bucket, the page number of the next
+ * overflow page (0 for none), the number of tuples (ints) and then the
+ * tuples, each getSize() bytes of the file's TupleDesc. The RecordId of a
+ * tuple is its position on the page, so it changes as other tuples are
+ * deleted.
+ *
+ * @see HashFile
+ */
+public class HashBucketPage extends HashPage {
+
+    private static final int HEADER_SIZE = 12;
+
+    final TupleDesc td;
+    int depth;
+    int nextPgNo;
+    final ArrayList<Tuple> tuples;
+
+    public HashBucketPage(HashPageId id, byte[] data) throws IOException {
+        super(id, data);
+        this.td = Database.getCatalog().getDatabaseFile(id.getTableId()).getTupleDesc();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        this.depth = buf.getInt(0);
+        this.nextPgNo = buf.getInt(4);
+        int n = buf.getInt(8);
+        this.tuples = new ArrayList<>(n);
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < n; i++) {
+            Tuple t = new Tuple(this.td);
+            for (int j = 0; j < this.td.numFields(); j++) {
+                t.setField(j, this.td.getFieldType(j).parse(buf, offset));
+                offset += this.td.getFieldType(j).getLen();
+            }
+            this.tuples.add(t);
+        }
+    }
+
+    @Override
+    HashPage create(byte[] data) throws IOException {
+        return new HashBucketPage(this.pid, data);
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.wrap(createEmptyPageData());
+        buf.putInt(0, this.depth);
+        buf.putInt(4, this.nextPgNo);
+        buf.putInt(8, this.tuples.size());
+        int offset = HEADER_SIZE;
+        for (Tuple t : this.tuples) {
+            for (int j = 0; j < this.td.numFields(); j++) {
+                t.getField(j).serialize(buf, offset);
+                offset += this.td.getFieldType(j).getLen();
+            }
+        }
+        return buf.array();
+    }
+
+    /**
+     * @return the most tuples of td a bucket page holds
+     */
+    public static int getMaxTuples(TupleDesc td) {
+        return (BufferPool.getPageSize() - HEADER_SIZE) / td.getSize();
+    }
+
+    public int getMaxTuples() {
+        return getMaxTuples(this.td);
+    }
+
+    public int getNumTuples() {
+        return this.tuples.size();
+    }
+
+    /**
+     * @return the local depth of the bucket: the number of low bits of the
+     *   hash its keys all share
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * @return the id of the next overflow page of the bucket, or null if
+     *   this is the last page
+     */
+    public HashPageId getNextId() {
+        return this.nextPgNo == 0 ? null : new HashPageId(this.pid.getTableId(), this.nextPgNo);
+    }
+
+    /**
+     * @return a copy of tuple i, with its RecordId set, which the caller may
+     *   keep or change without changing the page
+     */
+    public Tuple getTuple(int i) {
+        Tuple t = copy(this.tuples.get(i));
+        t.setRecordId(new RecordId(this.pid, i));
+        return t;
+    }
+
+    private Tuple copy(Tuple t) {
+        Tuple c = new Tuple(this.td);
+        for (int j = 0; j < this.td.numFields(); j++) {
+            c.setField(j, t.getField(j));
+        }
+        return c;
+    }
+
+    /**
+     * Adds t to the page, which must not be full, and sets its RecordId.
+     */
+    public void insertTuple(Tuple t) {
+        if (this.tuples.size() >= getMaxTuples()) {
+            throw new IllegalStateException("the bucket page is full");
+        }
+        this.tuples.add(copy(t));
+        t.setRecordId(new RecordId(this.pid, this.tuples.size() - 1));
+    }
+
+    /**
+     * @return the position of a tuple with the same fields as t, or -1 if
+     *   there is none on this page
+     */
+    public int indexOf(Tuple t) {
+        for (int i = 0; i < this.tuples.size(); i++) {
+            if (sameFields(this.tuples.get(i), t)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean sameFields(Tuple a, Tuple b) {
+        for (int j = 0; j < this.td.numFields(); j++) {
+            if (!a.getField(j).equals(b.getField(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return an iterator over the tuples on this page
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<>() {
+
+            private int idx = 0;
+
+            @Override
+            public boolean hasNext() {
+                return idx < tuples.size();
+            }
+
+            @Override
+            public Tuple next() {
+                if (idx >= tuples.size()) {
+                    throw new NoSuchElementException();
+                }
+                return getTuple(idx++);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,93 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The first page of every HashFile: the global depth d of the file and the
+ * 2^d entries of the directory, the page numbers of the buckets. Entry i is
+ * the bucket of the keys whose hash ends in the d low bits of i; several
+ * entries point to the same bucket when its local depth is less than d. A
+ * page number of 0 means there is no bucket yet, as page 0 is always this
+ * page.
+ *
+ * @see HashFile
+ */
+public class HashDirectoryPage extends HashPage {
+
+    private int depth;
+    private int[] buckets;
+
+    /**
+     * Create a HashDirectoryPage from a set of bytes of data read from disk:
+     * the global depth (an int) and then the bucket page numbers (ints).
+     */
+    public HashDirectoryPage(HashPageId id, byte[] data) throws IOException {
+        super(id, data);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        this.depth = buf.getInt(0);
+        this.buckets = new int[1 << this.depth];
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = buf.getInt(4 + 4 * i);
+        }
+    }
+
+    @Override
+    HashPage create(byte[] data) throws IOException {
+        return new HashDirectoryPage(this.pid, data);
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.wrap(createEmptyPageData());
+        buf.putInt(0, this.depth);
+        for (int i = 0; i < this.buckets.length; i++) {
+            buf.putInt(4 + 4 * i, this.buckets[i]);
+        }
+        return buf.array();
+    }
+
+    /**
+     * @return the greatest global depth whose directory fits on a page
+     */
+    public static int getMaxDepth() {
+        return 31 - Integer.numberOfLeadingZeros((BufferPool.getPageSize() - 4) / 4);
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * @return the page number of the bucket of the keys with the given hash,
+     *   or 0 if the file is empty
+     */
+    public int getBucket(int hash) {
+        return this.buckets[hash & (this.buckets.length - 1)];
+    }
+
+    /**
+     * Points the directory entries whose low depth bits are those of hash
+     * at bucket pgNo.
+     */
+    public void setBucket(int hash, int depth, int pgNo) {
+        for (int i = hash & ((1 << depth) - 1); i < this.buckets.length; i += 1 << depth) {
+            this.buckets[i] = pgNo;
+        }
+    }
+
+    /**
+     * Doubles the directory, so that each bucket is pointed to by twice as
+     * many entries.
+     */
+    public void grow() {
+        if (this.depth >= getMaxDepth()) {
+            throw new IllegalStateException("the directory is full");
+        }
+        int[] grown = new int[this.buckets.length * 2];
+        System.arraycopy(this.buckets, 0, grown, 0, this.buckets.length);
+        System.arraycopy(this.buckets, 0, grown, this.buckets.length, this.buckets.length);
+        this.buckets = grown;
+        this.depth++;
+    }
+
+}
@@ -4,6 +4,12 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * It builds a hash table from batches of the left child's tuples and probes
+ * it with the tuples of the right child. If the right child is a SeqScan of
+ * a table with Bloom filters on the join field, and a batch has few enough
+ * distinct keys, the scan only reads the pages whose filters may hold one
+ * of them.
  */
 public class HashEquiJoin extends Operator {
 
@@ -52,6 +58,8 @@ public class HashEquiJoin extends Operator {
     
     HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
     public final static int MAP_SIZE = 20000;
+    // the most distinct keys of a batch checked against the Bloom filters of each page
+    public final static int PROBE_KEYS = 1000;
 
     private boolean loadMap() throws DbException, TransactionAbortedException {
         int cnt = 0;
@@ -71,11 +79,30 @@ public class HashEquiJoin extends Operator {
 
     }
 
+    /**
+     * Lets a SeqScan right child skip the pages whose Bloom filters hold
+     * none of the keys of the batch just loaded. Takes effect when the
+     * child is next opened or rewound.
+     */
+    private void probeKeys() {
+        if (child2 instanceof SeqScan) {
+            ArrayList<Field> keys = null;
+            if (map.size() <= PROBE_KEYS) {
+                keys = new ArrayList<Field>();
+                for (Object key : map.keySet()) {
+                    keys.add((Field) key);
+                }
+            }
+            ((SeqScan) child2).probeKeys(pred.getField2(), keys);
+        }
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
-        child2.open();
         loadMap();
+        probeKeys();
+        child2.open();
         super.open();
     }
 
@@ -91,7 +118,10 @@ public class HashEquiJoin extends Operator {
 
     public void rewind() throws DbException, TransactionAbortedException {
         child1.rewind();
+        loadMap();
+        probeKeys();
         child2.rewind();
+        listIt = null;
     }
 
     transient Iterator<Tuple> listIt = null;
@@ -151,8 +181,9 @@ public class HashEquiJoin extends Operator {
         }
 
         // child2 is done: advance child1
-        child2.rewind();
         if (loadMap()) {
+            probeKeys();
+            child2.rewind();
             return fetchNext();
         }
 
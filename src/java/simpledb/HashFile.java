@@ -0,0 +1,447 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * HashFile is a DbFile that stores tuples in an extendible hash table on one
+ * key field, so that the tuples with a given key are found by reading the
+ * directory and the bucket the key hashes to. Unlike a BTreeFile it cannot
+ * answer range predicates, only equality.
+ * <p>
+ * Page 0 is a HashDirectoryPage mapping the low bits of the hash of a key to
+ * a HashBucketPage. A full bucket is split in two on the next bit of the
+ * hash, doubling the directory when the bucket already uses all of its bits.
+ * A bucket that no split can divide, because its tuples all hash the same or
+ * the directory has reached the size of a page, continues on overflow pages
+ * instead. Buckets are not merged as tuples are deleted.
+ * <p>
+ * Every page is read and modified through the BufferPool, so the pages of a
+ * hash file are locked, logged and rolled back like those of a HeapFile.
+ *
+ * @see HashDirectoryPage
+ * @see HashBucketPage
+ */
+public class HashFile implements IndexFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int tableid;
+
+    /**
+     * Constructs a hash file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this hash file
+     * @param keyField the field the tuples are hashed on
+     * @param td the TupleDesc of the tuples, which must have a fixed size
+     */
+    public HashFile(File f, int keyField, TupleDesc td) {
+        if (!td.isFixedLength()) {
+            throw new IllegalArgumentException("tuples in a hash file must have a fixed size");
+        }
+        this.f = f;
+        this.td = td;
+        this.keyField = keyField;
+        this.tableid = f.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * Returns the File backing this HashFile on disk.
+     */
+    public File getFile() {
+        return this.f;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this HashFile, the hash code of
+     * the absolute file name of the file underlying it.
+     */
+    public int getId() {
+        return this.tableid;
+    }
+
+    /**
+     * Returns the TupleDesc of the tuples stored in this hash file.
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /**
+     * Returns the index of the field the tuples are hashed on.
+     */
+    public int keyField() {
+        return this.keyField;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        HashPageId id = (HashPageId) pid;
+        try {
+            byte[] b = HashPage.createEmptyPageData();
+            if (id.getPageNumber() < numPages()) {
+                RandomAccessFile file = new RandomAccessFile(this.f, "r");
+                file.seek((long) BufferPool.getPageSize() * id.getPageNumber());
+                file.read(b);
+                file.close();
+            }
+            if (id.getPageNumber() == 0) {
+                return new HashDirectoryPage(id, b);
+            }
+            return new HashBucketPage(id, b);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        throw new IllegalArgumentException("cannot read page " + pid);
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.f, "rw");
+        file.seek((long) BufferPool.getPageSize() * page.getId().getPageNumber());
+        file.write(page.getPageData());
+        file.close();
+    }
+
+    /**
+     * Returns the number of pages in this HashFile, including the directory
+     * and the overflow pages.
+     */
+    public int numPages() {
+        return (int) (this.f.length() / BufferPool.getPageSize());
+    }
+
+    /**
+     * Spreads the hash code of key over all of its bits, as the directory
+     * uses only the low ones and the hash codes of IntFields are the values.
+     */
+    static int hash(Field key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Fetches a page through the BufferPool, or from dirtypages if this
+     * operation has already modified it. Pages fetched READ_WRITE are added
+     * to dirtypages, which the caller returns to the BufferPool.
+     */
+    private Page getPage(TransactionId tid, Map<PageId, Page> dirtypages, HashPageId pid, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        Page p = dirtypages.get(pid);
+        if (p != null) {
+            return p;
+        }
+        p = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirtypages.put(pid, p);
+        }
+        return p;
+    }
+
+    private HashDirectoryPage getDirectoryPage(TransactionId tid, Map<PageId, Page> dirtypages, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (HashDirectoryPage) getPage(tid, dirtypages, new HashPageId(this.tableid, 0), perm);
+    }
+
+    /**
+     * @return the pages of the bucket starting at page pgNo, read-only
+     */
+    private ArrayList<HashBucketPage> getChain(TransactionId tid, Map<PageId, Page> dirtypages, int pgNo)
+            throws DbException, TransactionAbortedException {
+        ArrayList<HashBucketPage> chain = new ArrayList<>();
+        for (HashPageId id = new HashPageId(this.tableid, pgNo); id != null; id = chain.get(chain.size() - 1).getNextId()) {
+            chain.add((HashBucketPage) getPage(tid, dirtypages, id, Permissions.READ_ONLY));
+        }
+        return chain;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(this.td)) {
+            throw new DbException("tuple does not match the TupleDesc of this file");
+        }
+        Map<PageId, Page> dirtypages = new HashMap<>();
+        int hash = hash(t.getField(this.keyField));
+        while (true) {
+            HashDirectoryPage dir = getDirectoryPage(tid, dirtypages, Permissions.READ_ONLY);
+            int pgNo = dir.getBucket(hash);
+            if (pgNo == 0) {
+                dir = getDirectoryPage(tid, dirtypages, Permissions.READ_WRITE);
+                HashBucketPage bucket = getEmptyPage(tid, dirtypages, 0);
+                dir.setBucket(0, 0, bucket.getId().getPageNumber());
+                bucket.insertTuple(t);
+                break;
+            }
+            ArrayList<HashBucketPage> chain = getChain(tid, dirtypages, pgNo);
+            HashBucketPage free = null;
+            for (HashBucketPage page : chain) {
+                if (page.getNumTuples() < page.getMaxTuples()) {
+                    free = page;
+                    break;
+                }
+            }
+            if (free != null) {
+                free = (HashBucketPage) getPage(tid, dirtypages, free.getId(), Permissions.READ_WRITE);
+                free.insertTuple(t);
+                break;
+            }
+            if (chain.get(0).getDepth() < HashDirectoryPage.getMaxDepth() && canSplit(chain, hash)) {
+                // then try again, in whichever half the tuple now hashes to
+                split(tid, dirtypages, chain, hash);
+            } else {
+                // as in BTreeFile, the new page is allocated before any page is modified: the
+                // BufferPool may evict, and so write out, any page while another is read in
+                HashBucketPage last = (HashBucketPage) getPage(tid, dirtypages,
+                        chain.get(chain.size() - 1).getId(), Permissions.READ_WRITE);
+                HashBucketPage overflow = getEmptyPage(tid, dirtypages, last.getDepth());
+                last.nextPgNo = overflow.getId().getPageNumber();
+                overflow.insertTuple(t);
+                break;
+            }
+        }
+        return new ArrayList<>(dirtypages.values());
+    }
+
+    /**
+     * @return true if the tuples of the bucket and a new tuple with the given
+     *   hash do not all hash the same, so that splitting the bucket may
+     *   divide them
+     */
+    private boolean canSplit(ArrayList<HashBucketPage> chain, int hash) {
+        for (HashBucketPage page : chain) {
+            for (Tuple t : page.tuples) {
+                if (hash(t.getField(this.keyField)) != hash) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the full bucket made of the pages of chain, holding the keys
+     * with the given hash, on the next bit of the hash: the tuples with the
+     * bit set move to a new bucket. The directory is doubled first if the
+     * bucket already uses all of its bits.
+     */
+    private void split(TransactionId tid, Map<PageId, Page> dirtypages, ArrayList<HashBucketPage> chain, int hash)
+            throws DbException, IOException, TransactionAbortedException {
+        int depth = chain.get(0).getDepth();
+        ArrayList<Tuple> stay = new ArrayList<>();
+        ArrayList<Tuple> move = new ArrayList<>();
+        for (HashBucketPage page : chain) {
+            for (Tuple t : page.tuples) {
+                if ((hash(t.getField(this.keyField)) >>> depth & 1) == 0) {
+                    stay.add(t);
+                } else {
+                    move.add(t);
+                }
+            }
+        }
+
+        // fetch and allocate every page before modifying any
+        HashDirectoryPage dir = getDirectoryPage(tid, dirtypages, Permissions.READ_WRITE);
+        ArrayList<HashBucketPage> pages = new ArrayList<>();
+        for (HashBucketPage page : chain) {
+            pages.add((HashBucketPage) getPage(tid, dirtypages, page.getId(), Permissions.READ_WRITE));
+        }
+        int max = chain.get(0).getMaxTuples();
+        ArrayList<HashBucketPage> moved = new ArrayList<>();
+        do {
+            moved.add(getEmptyPage(tid, dirtypages, depth + 1));
+        } while (moved.size() * max < move.size());
+
+        if (depth == dir.getDepth()) {
+            dir.grow();
+        }
+        fill(pages, stay, depth + 1);
+        fill(moved, move, depth + 1);
+        dir.setBucket(hash & ((1 << depth) - 1) | 1 << depth, depth + 1, moved.get(0).getId().getPageNumber());
+    }
+
+    /**
+     * Refills the pages of a bucket with tuples, in order, chaining them and
+     * setting their local depth. Pages left over are kept, empty, at the end
+     * of the chain.
+     */
+    private static void fill(ArrayList<HashBucketPage> pages, ArrayList<Tuple> tuples, int depth) {
+        Iterator<Tuple> it = tuples.iterator();
+        for (int i = 0; i < pages.size(); i++) {
+            HashBucketPage page = pages.get(i);
+            page.depth = depth;
+            page.tuples.clear();
+            while (it.hasNext() && page.getNumTuples() < page.getMaxTuples()) {
+                page.insertTuple(it.next());
+            }
+            if (i + 1 < pages.size()) {
+                page.nextPgNo = pages.get(i + 1).getId().getPageNumber();
+            }
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        Map<PageId, Page> dirtypages = new HashMap<>();
+        int pgNo = getDirectoryPage(tid, dirtypages, Permissions.READ_ONLY).getBucket(hash(t.getField(this.keyField)));
+        if (pgNo != 0) {
+            for (HashBucketPage page : getChain(tid, dirtypages, pgNo)) {
+                if (page.indexOf(t) >= 0) {
+                    page = (HashBucketPage) getPage(tid, dirtypages, page.getId(), Permissions.READ_WRITE);
+                    page.tuples.remove(page.indexOf(t));
+                    t.setRecordId(null);
+                    return new ArrayList<>(dirtypages.values());
+                }
+            }
+        }
+        throw new DbException("tuple not found in " + this.f);
+    }
+
+    /**
+     * Returns a new bucket page with the given local depth at the end of the
+     * file, locked READ_WRITE and in dirtypages.
+     */
+    private HashBucketPage getEmptyPage(TransactionId tid, Map<PageId, Page> dirtypages, int depth)
+            throws DbException, IOException, TransactionAbortedException {
+        HashPageId pid = new HashPageId(this.tableid, appendEmptyPage());
+        HashBucketPage page = (HashBucketPage) getPage(tid, dirtypages, pid, Permissions.READ_WRITE);
+        page.depth = depth;
+        return page;
+    }
+
+    /**
+     * Writes an empty page at the end of the file, after the directory page,
+     * and returns its page number.
+     */
+    private synchronized int appendEmptyPage() throws IOException {
+        int pgNo = Math.max(numPages(), 1);
+        RandomAccessFile file = new RandomAccessFile(this.f, "rw");
+        file.seek((long) BufferPool.getPageSize() * pgNo);
+        file.write(HashPage.createEmptyPageData());
+        file.close();
+        return pgNo;
+    }
+
+    /**
+     * @return true only for EQUALS: hashing keeps no order between keys
+     */
+    public boolean supports(Predicate.Op op) {
+        return op == Predicate.Op.EQUALS;
+    }
+
+    /**
+     * A lookup reads the directory and then the pages of one bucket, which
+     * hold about the fraction selectivity of the bucket pages when many
+     * tuples share the key.
+     */
+    public double estimatePagesRead(double selectivity) {
+        return 1 + Math.max(1, selectivity * (numPages() - 1));
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashFileIterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples whose key field equals the field of
+     * ipred, which only reads the bucket of that key.
+     *
+     * @throws IllegalArgumentException if the operator of ipred is not EQUALS
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        if (!supports(ipred.getOp())) {
+            throw new IllegalArgumentException("a hash file cannot answer " + ipred.getOp());
+        }
+        return new HashFileIterator(tid, ipred);
+    }
+
+    /**
+     * Walks the pages of the bucket of the key of ipred, or every bucket page
+     * of the file if ipred is null.
+     */
+    private class HashFileIterator extends AbstractDbFileIterator {
+
+        private final TransactionId tid;
+        private final IndexPredicate ipred;
+        private HashBucketPage page;
+        private int pos;
+        // the page to read after the current one when scanning the whole file
+        private int nextPgNo;
+        private int numPages;
+
+        HashFileIterator(TransactionId tid, IndexPredicate ipred) {
+            this.tid = tid;
+            this.ipred = ipred;
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            this.pos = 0;
+            this.page = null;
+            if (this.ipred == null) {
+                this.numPages = numPages();
+                this.nextPgNo = 1;
+                return;
+            }
+            HashDirectoryPage dir = (HashDirectoryPage) Database.getBufferPool().getPage(this.tid,
+                    new HashPageId(tableid, 0), Permissions.READ_ONLY);
+            int pgNo = dir.getBucket(hash(this.ipred.getField()));
+            if (pgNo != 0) {
+                this.page = readBucket(new HashPageId(tableid, pgNo));
+            }
+        }
+
+        private HashBucketPage readBucket(HashPageId pid) throws DbException, TransactionAbortedException {
+            return (HashBucketPage) Database.getBufferPool().getPage(this.tid, pid, Permissions.READ_ONLY);
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (true) {
+                if (this.page != null && this.pos < this.page.getNumTuples()) {
+                    Tuple t = this.page.getTuple(this.pos++);
+                    if (this.ipred == null || this.ipred.matches(t.getField(keyField))) {
+                        return t;
+                    }
+                    continue;
+                }
+                this.pos = 0;
+                if (this.ipred != null) {
+                    HashPageId next = this.page == null ? null : this.page.getNextId();
+                    if (next == null) {
+                        this.page = null;
+                        return null;
+                    }
+                    this.page = readBucket(next);
+                } else {
+                    if (this.nextPgNo >= this.numPages) {
+                        this.page = null;
+                        return null;
+                    }
+                    this.page = readBucket(new HashPageId(tableid, this.nextPgNo++));
+                }
+            }
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            this.page = null;
+        }
+    }
+
+}
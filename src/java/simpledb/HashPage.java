@@ -0,0 +1,14 @@
+package simpledb;
+
+/**
+ * A page of a HashFile: its directory or a bucket.
+ *
+ * @see HashFile
+ */
+public abstract class HashPage extends DecodedPage<HashPageId> {
+
+    HashPage(HashPageId id, byte[] data) {
+        super(id, data);
+    }
+
+}
@@ -0,0 +1,72 @@
+package simpledb;
+
+/** Unique identifier for the pages of a HashFile. */
+public class HashPageId implements PageId {
+
+    private int tableId;
+    private int pageNo;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific hash file. Page 0 is the directory; the others are buckets.
+     *
+     * @param tableId The hash file that is being referenced
+     * @param pgNo The page number in that file.
+     */
+    public HashPageId(int tableId, int pgNo) {
+        this.tableId = tableId;
+        this.pageNo = pgNo;
+    }
+
+    /** @return the hash file associated with this PageId */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /**
+     * @return the page number in the file getTableId() associated with
+     *   this PageId
+     */
+    public int getPageNumber() {
+        return this.pageNo;
+    }
+
+    /**
+     * @return a hash code for this page, from its file and page number
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return this.tableId + this.pageNo;
+    }
+
+    /**
+     * Compares one PageId to another.
+     *
+     * @param o The object to compare against (must be a PageId)
+     * @return true if the objects are equal (e.g., file ids and page numbers
+     *   are the same)
+     */
+    public boolean equals(Object o) {
+        if (o instanceof HashPageId) {
+            HashPageId p = (HashPageId) o;
+            return p.tableId == this.tableId && p.pageNo == this.pageNo;
+        } else {
+            return false;
+        }
+    }
+
+    public String toString() {
+        return "(" + this.tableId + ", " + this.pageNo + ")";
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.  Size of returned array must contain
+     *  number of integers that corresponds to number of args to one of the
+     *  constructors.
+     */
+    public int[] serialize() {
+        return new int[] { this.tableId, this.pageNo };
+    }
+
+}
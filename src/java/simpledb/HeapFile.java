@@ -3,21 +3,53 @@ package simpledb;
 import java.io.*;
 import java.nio.Buffer;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * HeapFile is an implementation of a DbFile that stores a collection of tuples
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor. Tables with variable-length fields are stored on
+ * SlottedHeapPages instead.
+ * <p>
+ * A file can be clustered on a key field with {@link #setClusterKey}: bulk
+ * loads then sort their tuples on the key and {@link #cluster} rewrites the
+ * file in key order, so that scans of key ranges stop early and a query
+ * ordered by the key needs no sort.
  * 
  * @see simpledb.HeapPage#HeapPage
+ * @see simpledb.SlottedHeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+    // Number of pages bulkLoad builds before logging and appending them
+    static final int BULK_LOAD_BATCH = 64;
+
     private File f;
     private TupleDesc td;
+    // the free space of each page, to find a page with room for an insert; kept in file.fsm
+    private final FreeSpaceMap fsm;
+    // summaries of the values on each page, to skip pages in scans with predicates
+    private final List<PageSummary> summaries;
+    // guards the cluster state below; never held while calling the log or the lock manager
+    private final Object orderLock = new Object();
+    // the field the file is clustered on, or -1; see setClusterKey
+    private int clusterKey = -1;
+    // true while the tuples are stored in ascending order of clusterKey
+    private boolean ordered;
+    // the largest key stored while ordered, or null if there is none yet
+    private Field lastKey;
+    // the number of calls to insertTuple, so cluster can tell if one happened while it ran
+    private long inserts;
+    // the transaction of a running cluster, whose inserts fill the pages in sequence from fillFrom
+    private TransactionId filling;
+    private int fillFrom;
+    // the page numbers allocatePages has handed out, some of which may not be written yet
+    private int allocated;
+    // the number of tuples bulkLoad and cluster sort in memory at a time
+    private int sortRun = TupleSorter.DEFAULT_RUN;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -29,6 +61,8 @@ public class HeapFile implements DbFile {
     public HeapFile(File f, TupleDesc td) {
         this.f = f;
         this.td = td;
+        this.fsm = new FreeSpaceMap(f, td);
+        this.summaries = new CopyOnWriteArrayList<PageSummary>();
     }
 
     /**
@@ -40,6 +74,273 @@ public class HeapFile implements DbFile {
         return this.f;
     }
 
+    /**
+     * Keeps the range of the values of the given INT fields on each page, so
+     * that scans with a predicate on one of them skip the pages whose range
+     * cannot satisfy it. Ranges that were kept for the same fields before
+     * are read back from their side file; pages without one are covered
+     * once a scan has read them. With no fields, the file stops keeping
+     * ranges and their side file is deleted.
+     *
+     * @throws IllegalArgumentException if one of columns is not an INT field
+     */
+    public void setZoneMap(int... columns) {
+        setSummary(ZoneMap.class, columns.length == 0 ? null : new ZoneMap(this.f, this.td, columns));
+    }
+
+    /**
+     * Returns the zone map of this file, or null if it has none.
+     */
+    public ZoneMap getZoneMap() {
+        return summary(ZoneMap.class);
+    }
+
+    /**
+     * Keeps a Bloom filter for each page on the given fields, so that scans
+     * with an equality predicate on one of them, and the probe side of a
+     * hash join on one of them, skip the pages that cannot hold the value.
+     * Filters that were kept for the same fields before are read back from
+     * their side file; pages without one are filtered once a scan has read
+     * them. With no fields, the file stops keeping filters and their side
+     * file is deleted.
+     */
+    public void setBloomFilters(int... columns) {
+        setSummary(BloomFilters.class, columns.length == 0 ? null : new BloomFilters(this.f, this.td, columns));
+    }
+
+    /**
+     * Returns the Bloom filters of this file, or null if it has none.
+     */
+    public BloomFilters getBloomFilters() {
+        return summary(BloomFilters.class);
+    }
+
+    /**
+     * @return the summary of class c this file keeps, or null if it has none
+     */
+    private <S extends PageSummary> S summary(Class<S> c) {
+        for (PageSummary s : this.summaries) {
+            if (c.isInstance(s)) {
+                return c.cast(s);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the summary of class c this file keeps with s, or drops it
+     * and its side file if s is null.
+     */
+    private synchronized void setSummary(Class<? extends PageSummary> c, PageSummary s) {
+        PageSummary old = summary(c);
+        if (old != null) {
+            this.summaries.remove(old);
+            if (s == null) {
+                old.delete();
+            }
+        }
+        if (s != null) {
+            this.summaries.add(s);
+        }
+    }
+
+    /**
+     * Clusters this file on field: bulk loads sort their tuples on it, and
+     * {@link #cluster} stores the tuples in its order. Whether they are in
+     * order now is read from the side file file.cluster, which is written
+     * whenever the file is written while it is in order and holds the length
+     * and modification time of the file, the key field and the largest key.
+     * A side file that does not match the file, or another key, means that
+     * the tuples are not in order until the next cluster.
+     * <p>
+     * Inserting a single tuple ends the order, as it goes into the first
+     * free slot; deleting tuples keeps it, and so does a bulk load whose
+     * keys are no smaller than the ones already stored.
+     */
+    public void setClusterKey(int field) {
+        synchronized (this.orderLock) {
+            this.clusterKey = field;
+            this.ordered = this.f.length() == 0;
+            this.lastKey = null;
+            File cf = clusterFile();
+            if (this.ordered || !cf.exists()) {
+                return;
+            }
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cf)));
+                try {
+                    if (in.readLong() == this.f.length() && in.readLong() == this.f.lastModified()
+                            && in.readInt() == field) {
+                        this.lastKey = in.readBoolean() ? this.td.getFieldType(field).parse(in) : null;
+                        this.ordered = true;
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException | java.text.ParseException e) {
+                // the order is only used when it is known to hold
+                e.printStackTrace();
+                this.ordered = false;
+            }
+        }
+    }
+
+    /**
+     * @return the field this file is clustered on, or -1 if it is not
+     *   clustered
+     */
+    public int getClusterKey() {
+        synchronized (this.orderLock) {
+            return this.clusterKey;
+        }
+    }
+
+    /**
+     * @return true if the tuples of this file are stored in ascending order
+     *   of its cluster key
+     */
+    public boolean isClustered() {
+        synchronized (this.orderLock) {
+            return this.clusterKey >= 0 && this.ordered;
+        }
+    }
+
+    private File clusterFile() {
+        return new File(this.f.getPath() + ".cluster");
+    }
+
+    /**
+     * Writes the side file recording that the tuples are in order, for the
+     * file as it is now. The caller holds orderLock.
+     */
+    private void saveOrder() throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(clusterFile())));
+        try {
+            out.writeLong(this.f.length());
+            out.writeLong(this.f.lastModified());
+            out.writeInt(this.clusterKey);
+            out.writeBoolean(this.lastKey != null);
+            if (this.lastKey != null) {
+                this.lastKey.serialize(out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Records that the tuples may no longer be in order. The caller holds
+     * orderLock.
+     */
+    private void orderLost() {
+        if (this.ordered) {
+            this.ordered = false;
+            clusterFile().delete();
+        }
+    }
+
+    /**
+     * Sets the number of tuples bulkLoad and cluster sort in memory at a
+     * time; more are sorted in runs written to temporary files and merged.
+     *
+     * @see TupleSorter
+     */
+    void setSortRun(int tuples) {
+        this.sortRun = tuples;
+    }
+
+    /**
+     * Stores the tuples of this file in ascending order of field, which
+     * becomes its cluster key, in a transaction of its own. All the tuples
+     * are deleted and then inserted again in order, through the BufferPool,
+     * so indexes on the table follow and an abort restores the file; they
+     * are sorted with a {@link TupleSorter}, so only a run of them is held in
+     * memory at a time. The inserts fill the pages in sequence, never going
+     * back to an earlier page even if a smaller tuple would fit there, and
+     * the file is only taken to be in order if a scan finds it so.
+     *
+     * @return the number of tuples in the file
+     */
+    public int cluster(int field) throws DbException, IOException, TransactionAbortedException {
+        setClusterKey(field);
+        Transaction tr = new Transaction();
+        tr.start();
+        long before;
+        boolean inOrder;
+        Field last = null;
+        TupleSorter sorter = new TupleSorter(this.td, field, this.sortRun);
+        int count;
+        try {
+            DbFileIterator it = iterator(tr.getId());
+            it.open();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                sorter.add(t);
+                Database.getBufferPool().deleteTuple(tr.getId(), t);
+            }
+            it.close();
+            count = sorter.size();
+            synchronized (this.orderLock) {
+                this.filling = tr.getId();
+                this.fillFrom = 0;
+            }
+            OpIterator sorted = sorter.iterator();
+            try {
+                sorted.open();
+                while (sorted.hasNext()) {
+                    Tuple t = sorted.next();
+                    Database.getBufferPool().insertTuple(tr.getId(), getId(), t);
+                    last = t.getField(field);
+                }
+            } finally {
+                sorted.close();
+                synchronized (this.orderLock) {
+                    this.filling = null;
+                }
+            }
+            inOrder = inOrder(tr.getId(), field);
+            synchronized (this.orderLock) {
+                before = this.inserts;
+            }
+            tr.commit();
+        } catch (DbException | IOException | TransactionAbortedException | RuntimeException e) {
+            tr.abort();
+            throw e;
+        } finally {
+            sorter.clear();
+        }
+        synchronized (this.orderLock) {
+            if (inOrder && this.inserts == before && this.clusterKey == field) {
+                this.ordered = true;
+                this.lastKey = last;
+                saveOrder();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if a scan of this file by tid returns its tuples in
+     *   ascending order of field
+     */
+    private boolean inOrder(TransactionId tid, int field) throws DbException, TransactionAbortedException {
+        DbFileIterator it = iterator(tid);
+        it.open();
+        try {
+            Field last = null;
+            while (it.hasNext()) {
+                Field key = it.next().getField(field);
+                if (last != null && key.compare(Predicate.Op.LESS_THAN, last)) {
+                    return false;
+                }
+                last = key;
+            }
+            return true;
+        } finally {
+            it.close();
+        }
+    }
+
     /**
      * Returns an ID uniquely identifying this HeapFile. Implementation note:
      * you will need to generate this tableid somewhere to ensure that each
@@ -70,7 +371,7 @@ public class HeapFile implements DbFile {
             file.seek(((long) BufferPool.getPageSize() * pid.getPageNumber()));
             file.read(b);
             file.close();
-            return new HeapPage(new HeapPageId(pid.getTableId(), pid.getPageNumber()), b);
+            return newPage(new HeapPageId(pid.getTableId(), pid.getPageNumber()), b);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException f) {
@@ -79,12 +380,24 @@ public class HeapFile implements DbFile {
         return null;
     }
 
+    /**
+     * Creates a page of this file from its bytes: a HeapPage if every tuple
+     * of this file has the same size, otherwise a SlottedHeapPage.
+     */
+    TuplePage newPage(HeapPageId pid, byte[] data) throws IOException {
+        if (this.td.isFixedLength()) {
+            return new HeapPage(pid, data);
+        }
+        return new SlottedHeapPage(pid, data);
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         RandomAccessFile file = new RandomAccessFile(this.f, "rw");
         file.seek(((long) BufferPool.getPageSize() * page.getId().getPageNumber()));
         file.write(page.getPageData());
         file.close();
+        written(Collections.singletonList((TuplePage) page));
     }
 
     /**
@@ -97,90 +410,406 @@ public class HeapFile implements DbFile {
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
+        int start = 0;
+        synchronized (this.orderLock) {
+            this.inserts++;
+            orderLost();
+            if (tid.equals(this.filling)) {
+                start = this.fillFrom;
+            }
+        }
         ArrayList<Page> list = new ArrayList<>();
-        for (int pno = 0; pno < this.numPages(); pno++) {
+        for (int pno = this.fsm.next(start, t); pno < this.numPages(); pno = this.fsm.next(pno + 1, t)) {
             PageId pid = new HeapPageId(this.getId(), pno);
-            HeapPage hp = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
-            if (hp.getNumEmptySlots() > 0) {
-                hp = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            TuplePage hp = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+            if (hp.hasRoomFor(t)) {
+                hp = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
                 hp.insertTuple(t);
+                for (PageSummary s : this.summaries) {
+                    s.insert(pno, t);
+                }
+                this.fsm.update(hp);
+                filled(tid, pno);
                 list.add(hp);
                 break;
             } else {
+                this.fsm.update(hp);
                 Database.getBufferPool().releasePage(tid, pid);
             }
         }
         if (list.isEmpty()) {
-            HeapPage p = new HeapPage(new HeapPageId(this.getId(), this.numPages()), new byte[BufferPool.getPageSize()]);
+            int pno = allocatePages(1);
+            TuplePage p = newPage(new HeapPageId(this.getId(), pno), HeapPage.createEmptyPageData());
             p.insertTuple(t);
             this.writePage(p);
+            this.fsm.update(p);
+            filled(tid, pno);
             list.add(p);
         }
         return list;
     }
 
+    /**
+     * Records that tid inserted a tuple into page pno, so that the next
+     * insert of a running cluster starts there.
+     */
+    private void filled(TransactionId tid, int pno) {
+        synchronized (this.orderLock) {
+            if (tid.equals(this.filling)) {
+                this.fillFrom = pno;
+            }
+        }
+    }
+
+    /**
+     * Hands out n consecutive page numbers at the end of the file. Until the
+     * caller writes the pages, they are marked full in the free-space map,
+     * so insertTuple does not use them. Only this method holds the monitor
+     * of the file, and for no longer than it takes to count.
+     *
+     * @return the first of the page numbers
+     */
+    private synchronized int allocatePages(int n) {
+        int first = Math.max(this.allocated, this.numPages());
+        this.allocated = first + n;
+        this.fsm.setFull(first, n);
+        return first;
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         PageId pid = t.getRecordId().getPageId();
 
-        HeapPage deletion = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        TuplePage deletion = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
         deletion.deleteTuple(t);
+        this.fsm.update(deletion);
 
         ArrayList<Page> list = new ArrayList<>();
         list.add(deletion);
         return list;
     }
 
+    /**
+     * Appends the tuples produced by tuples to the end of this file on behalf
+     * of transaction tid, without going through the buffer pool. Pages are
+     * filled in memory and, a batch at a time, given page numbers at the end
+     * of the file, locked exclusively, logged, the log forced once, and then
+     * written sequentially; copies the BufferPool holds of them are
+     * discarded. An abort rolls the pages back to empty pages through the log
+     * like any other write. Indexes on the table are updated through the
+     * BufferPool once the pages are written.
+     * <p>
+     * If the file is clustered, the tuples are sorted on the key first, with
+     * a {@link TupleSorter} that holds only a run of them in memory at a
+     * time, so a file that was in order stays in order unless they have
+     * smaller keys than the ones already stored.
+     * <p>
+     * The RecordIds of the loaded tuples are not set to their place in the
+     * file; read the pages back for those.
+     *
+     * @return the number of tuples loaded
+     */
+    public int bulkLoad(TransactionId tid, OpIterator tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        int key = getClusterKey();
+        if (key < 0) {
+            return load(tid, tuples, -1);
+        }
+        TupleSorter sorter = new TupleSorter(this.td, key, this.sortRun);
+        OpIterator sorted = sorter.iterator();
+        try {
+            while (tuples.hasNext()) {
+                sorter.add(tuples.next());
+            }
+            sorted.open();
+            return load(tid, sorted, key);
+        } finally {
+            sorted.close();
+            sorter.clear();
+        }
+    }
+
+    /**
+     * Appends tuples to the end of this file for bulkLoad. If key is not -1
+     * the tuples come in ascending order of the cluster key key.
+     */
+    private int load(TransactionId tid, OpIterator tuples, int key)
+            throws DbException, IOException, TransactionAbortedException {
+        int count = 0;
+        List<byte[]> batch = new ArrayList<>();
+        List<Integer> firsts = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        // the pages are numbered when they are appended, so the RecordIds the tuples get here are not theirs
+        HeapPageId scratch = new HeapPageId(this.getId(), 0);
+        TuplePage page = null;
+        Field high = null;
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            if (page == null || !page.hasRoomFor(t)) {
+                if (page != null) {
+                    batch.add(page.getPageData());
+                }
+                if (batch.size() == BULK_LOAD_BATCH) {
+                    loaded(high);
+                    firsts.add(this.appendPages(tid, batch));
+                    sizes.add(batch.size());
+                    batch.clear();
+                }
+                page = newPage(scratch, HeapPage.createEmptyPageData());
+            }
+            if (key >= 0 && high == null) {
+                synchronized (this.orderLock) {
+                    if (this.lastKey != null && t.getField(key).compare(Predicate.Op.LESS_THAN, this.lastKey)) {
+                        orderLost();
+                    }
+                }
+            }
+            page.insertTuple(t);
+            if (key >= 0) {
+                high = t.getField(key);
+            }
+            count++;
+        }
+        if (page != null) {
+            loaded(high);
+            batch.add(page.getPageData());
+            firsts.add(this.appendPages(tid, batch));
+            sizes.add(batch.size());
+        }
+        for (Index index : Database.getCatalog().getIndexes(this.getId())) {
+            for (int b = 0; b < firsts.size(); b++) {
+                for (int i = firsts.get(b); i < firsts.get(b) + sizes.get(b); i++) {
+                    PageId pid = new HeapPageId(this.getId(), i);
+                    Iterator<Tuple> it = ((TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY)).iterator();
+                    while (it.hasNext()) {
+                        Database.getBufferPool().insertTuple(tid, index.getFile().getId(), index.entry(it.next()));
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records that the tuples bulkLoad is about to append to a clustered
+     * file have keys no larger than high, or does nothing if high is null.
+     */
+    private void loaded(Field high) {
+        if (high != null) {
+            synchronized (this.orderLock) {
+                this.lastKey = high;
+            }
+        }
+    }
+
+    /**
+     * Appends pages with the given contents at the end of the file: gives
+     * them page numbers, locks them, logs them, forces the log, writes them
+     * and drops any copy of them from the BufferPool, such as an empty page a
+     * scan read past the end of the file.
+     *
+     * @return the page number of the first page
+     */
+    private int appendPages(TransactionId tid, List<byte[]> data)
+            throws IOException, DbException, TransactionAbortedException {
+        int first = allocatePages(data.size());
+        List<TuplePage> pages = new ArrayList<>();
+        int locked = 0;
+        try {
+            for (int i = 0; i < data.size(); i++) {
+                HeapPageId pid = new HeapPageId(this.getId(), first + i);
+                Database.getBufferPool().lockPage(tid, pid, Permissions.READ_WRITE);
+                locked++;
+                TuplePage empty = newPage(pid, HeapPage.createEmptyPageData());
+                TuplePage p = newPage(pid, data.get(i));
+                Database.getLogFile().logWrite(tid, empty, p);
+                pages.add(p);
+            }
+            Database.getLogFile().force();
+            this.writePages(pages);
+        } finally {
+            for (int i = 0; i < data.size(); i++) {
+                if (i < locked) {
+                    Database.getBufferPool().discardPage(new HeapPageId(this.getId(), first + i));
+                }
+                // pages that were not written read as empty pages
+                mayHaveFreeSpace(first + i);
+            }
+        }
+        for (TuplePage p : pages) {
+            this.fsm.update(p);
+        }
+        return first;
+    }
+
+    /**
+     * Writes pages, which must be consecutive and start no later than the
+     * end of the file, in one sequential pass.
+     */
+    void writePages(List<TuplePage> pages) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.f, "rw");
+        file.seek((long) BufferPool.getPageSize() * pages.get(0).getId().getPageNumber());
+        for (TuplePage p : pages) {
+            file.write(p.getPageData());
+        }
+        file.close();
+        written(pages);
+    }
+
+    /**
+     * Brings the free-space map and the page summaries up to date with
+     * pages, which have just been written to the file.
+     */
+    void written(List<? extends TuplePage> pages) throws IOException {
+        this.fsm.written(pages);
+        for (PageSummary s : this.summaries) {
+            s.written(pages);
+        }
+        synchronized (this.orderLock) {
+            if (isClustered()) {
+                saveOrder();
+            }
+        }
+    }
+
+    /**
+     * Clears the free-space map entry of page pno, so the next insert
+     * checks the page itself. Used when changes to the page are discarded.
+     */
+    void mayHaveFreeSpace(int pno) {
+        this.fsm.forget(pno);
+    }
+
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
         return new HeapFileIterator(tid, this);
     }
 
+    /**
+     * Returns an iterator over the tuples of this file that satisfy every
+     * predicate in predicates, which apply to the fields of this file. Pages
+     * whose zone map ranges or Bloom filters show that none of their tuples
+     * can satisfy the predicates are not read at all, and in a clustered file
+     * the scan stops at the first page with a key above the range of the
+     * predicates on the key.
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> predicates) {
+        return new HeapFileIterator(tid, this, predicates);
+    }
+
     public class HeapFileIterator implements DbFileIterator {
 
         private boolean opened;
-        private HeapPage currPage;
+        private TuplePage currPage;
         private int currNo;
         private TransactionId tid;
         private HeapFile file;
         private Iterator<Tuple> currIterator;
+        private final List<Predicate> predicates;
+        // the field and values of setProbeKeys, or null
+        private int probeField;
+        private Collection<Field> probeKeys;
+        // in a clustered file, predicates a tuple past the end of the key range satisfies
+        private List<Predicate> pastEnd;
+        private boolean done;
 
         public HeapFileIterator(TransactionId tid, HeapFile file) {
+            this(tid, file, Collections.emptyList());
+        }
+
+        public HeapFileIterator(TransactionId tid, HeapFile file, List<Predicate> predicates) {
             this.opened = false;
             this.tid = tid;
             this.file = file;
+            this.predicates = predicates;
         }
 
         private void setCurrPage() throws TransactionAbortedException, DbException {
-            this.currPage = (HeapPage) Database.getBufferPool().getPage(this.tid,
+            this.currPage = (TuplePage) Database.getBufferPool().getPage(this.tid,
                     new HeapPageId(file.getId(), this.currNo), Permissions.READ_ONLY);
-            this.currIterator = this.currPage.iterator();
+            // the page evaluates the predicates, and creates tuples only for the slots that match
+            this.currIterator = this.currPage.iterator(this.predicates);
+            if (this.currPage.isDirty() == null) {
+                // a clean page holds what is on disk, so its range can be learned from it
+                for (PageSummary s : file.summaries) {
+                    s.read(this.currPage);
+                }
+            }
+        }
+
+        /**
+         * Only reads the pages whose Bloom filters on field may hold one of
+         * keys from now on, or every page again if keys is null. The tuples
+         * are not filtered: a page that is read returns all its tuples that
+         * satisfy the predicates. Has no effect if field has no filters.
+         */
+        public void setProbeKeys(int field, Collection<Field> keys) {
+            this.probeField = field;
+            this.probeKeys = keys;
+        }
+
+        /**
+         * @return false if the summaries of page pno show that it has no
+         *   tuple to return
+         */
+        private boolean mayMatch(int pno) {
+            for (PageSummary s : file.summaries) {
+                if (!s.mayMatch(pno, this.predicates)) {
+                    return false;
+                }
+            }
+            BloomFilters blooms = file.getBloomFilters();
+            return this.probeKeys == null || blooms == null || !blooms.covers(this.probeField)
+                    || blooms.mayContainAny(pno, this.probeField, this.probeKeys);
+        }
+
+        /**
+         * Moves to the next page that may hold a matching tuple.
+         *
+         * @return false if there is none
+         */
+        private boolean nextPage() throws TransactionAbortedException, DbException {
+            if (this.done) {
+                return false;
+            }
+            if (this.currPage != null) {
+                for (Predicate p : this.pastEnd) {
+                    if (this.currPage.iterator(Collections.singletonList(p)).hasNext()) {
+                        // the keys only grow from here on
+                        this.done = true;
+                        return false;
+                    }
+                }
+            }
+            // the first page is read even if the file is empty
+            while (this.currNo < Math.max(file.numPages(), 1) - 1) {
+                this.currNo++;
+                if (mayMatch(this.currNo)) {
+                    setCurrPage();
+                    return true;
+                }
+            }
+            return false;
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
             this.opened = true;
-            this.currNo = 0;
-            setCurrPage();
+            rewind();
         }
 
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
-            if (this.opened) {
-                if (this.currIterator.hasNext()) {
-                    return true;
-                } else {
-                    while (this.currNo < file.numPages()-1) {
-                        this.currNo++;
-                        setCurrPage();
-                        if (this.currIterator.hasNext()) {
-                            return true;
-                        }
-                    }
+            if (!this.opened) {
+                return false;
+            }
+            while (this.currIterator == null || !this.currIterator.hasNext()) {
+                if (!nextPage()) {
+                    return false;
                 }
             }
-            return false;
+            return true;
         }
 
         @Override
@@ -194,8 +823,24 @@ public class HeapFile implements DbFile {
 
         @Override
         public void rewind() throws DbException, TransactionAbortedException {
-            this.currNo = 0;
-            setCurrPage();
+            this.currNo = -1;
+            this.currPage = null;
+            this.currIterator = null;
+            this.pastEnd = new ArrayList<>();
+            this.done = false;
+            if (file.isClustered()) {
+                for (Predicate p : this.predicates) {
+                    if (p.getField() != file.getClusterKey()) {
+                        continue;
+                    }
+                    if (p.getOp() == Predicate.Op.EQUALS || p.getOp() == Predicate.Op.LESS_THAN_OR_EQ) {
+                        this.pastEnd.add(new Predicate(p.getField(), Predicate.Op.GREATER_THAN, p.getOperand()));
+                    } else if (p.getOp() == Predicate.Op.LESS_THAN) {
+                        this.pastEnd.add(new Predicate(p.getField(), Predicate.Op.GREATER_THAN_OR_EQ, p.getOperand()));
+                    }
+                }
+            }
+            nextPage();
         }
 
         @Override
@@ -207,4 +852,3 @@ public class HeapFile implements DbFile {
     }
 
 }
-
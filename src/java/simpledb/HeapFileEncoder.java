@@ -1,7 +1,14 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.*;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -93,134 +100,213 @@ public class HeapFileEncoder {
 
       int nrecbytes = 0;
       for (int i = 0; i < numFields ; i++) {
+          // tables with VARCHAR fields are stored on slotted pages; load them with COPY instead
+          if (!typeAr[i].isFixedLength())
+              throw new IOException("cannot encode variable-length field type " + typeAr[i]);
           nrecbytes += typeAr[i].getLen();
       }
       int nrecords = (npagebytes * 8) /  (nrecbytes * 8 + 1);  //floor comes for free
-      
+
     //  per record, we need one bit; there are nrecords per page, so we need
     // nrecords bits, i.e., ((nrecords/32)+1) integers.
     int nheaderbytes = (nrecords / 8);
     if (nheaderbytes * 8 < nrecords)
         nheaderbytes++;  //ceiling
-    int nheaderbits = nheaderbytes * 8;
-
-    BufferedReader br = new BufferedReader(new FileReader(inFile));
-    FileOutputStream os = new FileOutputStream(outFile);
-
-    // our numbers probably won't be much larger than 1024 digits
-    char buf[] = new char[1024];
-
-    int curpos = 0;
-    int recordcount = 0;
-    int npages = 0;
-    int fieldNo = 0;
-
-    ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-    DataOutputStream headerStream = new DataOutputStream(headerBAOS);
-    ByteArrayOutputStream pageBAOS = new ByteArrayOutputStream(npagebytes);
-    DataOutputStream pageStream = new DataOutputStream(pageBAOS);
-
-    boolean done = false;
-    boolean first = true;
-    while (!done) {
-        int c = br.read();
-        
-        // Ignore Windows/Notepad special line endings
-        if (c == '\r')
-            continue;
-
-        if (c == '\n') {
-            if (first)
-                continue;
-            recordcount++;
-            first = true;
-        } else
-            first = false;
-        if (c == fieldSeparator || c == '\n' || c == '\r') {
-            String s = new String(buf, 0, curpos);
-            if (typeAr[fieldNo] == Type.INT_TYPE) {
-                try {
-                    pageStream.writeInt(Integer.parseInt(s.trim()));
-                } catch (NumberFormatException e) {
-                    System.out.println ("BAD LINE : " + s);
+
+    // The input is read in large chunks that end on a line boundary. Worker
+    // threads parse and encode the records of each chunk, and this thread
+    // packs the encoded records into pages in input order and writes them.
+    final int recbytes = nrecbytes;
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService workers = Executors.newFixedThreadPool(threads);
+    ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<Future<ByteBuffer>>();
+    FileChannel in = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+    FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+        PageWriter pages = new PageWriter(out, npagebytes, nrecbytes, nrecords, nheaderbytes);
+        byte[] buf = new byte[CHUNK_BYTES];
+        int len = 0;
+        boolean eof = false;
+        while (!eof) {
+            // fill the buffer, growing it if a single line does not fit
+            if (len == buf.length)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            while (len < buf.length) {
+                int n = in.read(ByteBuffer.wrap(buf, len, buf.length - len));
+                if (n < 0) {
+                    eof = true;
+                    break;
                 }
+                len += n;
             }
-            else   if (typeAr[fieldNo] == Type.STRING_TYPE) {
-                s = s.trim();
-                int overflow = Type.STRING_LEN - s.length();
-                if (overflow < 0) {
-                    String news = s.substring(0,Type.STRING_LEN);
-                    s  = news;
-                }
-                pageStream.writeInt(s.length());
-                pageStream.writeBytes(s);
-                while (overflow-- > 0)
-                    pageStream.write((byte)0);
+
+            int end = len;
+            if (!eof) {
+                while (end > 0 && buf[end - 1] != '\n')
+                    end--;
+                if (end == 0)
+                    continue;
             }
-            curpos = 0;
-            if (c == '\n')
-                fieldNo = 0;
-            else
-                fieldNo++;
-            
-        } else if (c == -1) {
-            done = true;
-            
-        } else {
-            buf[curpos++] = (char)c;
-            continue;
-        }
-        
-        // if we wrote a full page of records, or if we're done altogether,
-        // write out the header of the page.
-        //
-        // in the header, write a 1 for bits that correspond to records we've
-        // written and 0 for empty slots.
-        //
-        // when we're done, also flush the page to disk, but only if it has
-        // records on it.  however, if this file is empty, do flush an empty
-        // page to disk.
-        if (recordcount >= nrecords
-            || done && recordcount > 0
-            || done && npages == 0) {
-            int i = 0;
-            byte headerbyte = 0;
-            
-            for (i=0; i<nheaderbits; i++) {
-                if (i < recordcount)
-                    headerbyte |= (1 << (i % 8));
-                
-                if (((i+1) % 8) == 0) {
-                    headerStream.writeByte(headerbyte);
-                    headerbyte = 0;
+            final byte[] chunk = Arrays.copyOf(buf, end);
+            System.arraycopy(buf, end, buf, 0, len - end);
+            len -= end;
+            pending.add(workers.submit(new Callable<ByteBuffer>() {
+                public ByteBuffer call() {
+                    return encodeRecords(chunk, numFields, typeAr, fieldSeparator, recbytes);
                 }
-            }
-            
-            if (i % 8 > 0)
-                headerStream.writeByte(headerbyte);
-            
-            // pad the rest of the page with zeroes
-            
-            for (i=0; i<(npagebytes - (recordcount * nrecbytes + nheaderbytes)); i++)
-                pageStream.writeByte(0);
-            
-            // write header and body to file
-            headerStream.flush();
-            headerBAOS.writeTo(os);
-            pageStream.flush();
-            pageBAOS.writeTo(os);
-            
-            // reset header and body for next page
-            headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-            headerStream = new DataOutputStream(headerBAOS);
-            pageBAOS = new ByteArrayOutputStream(npagebytes);
-            pageStream = new DataOutputStream(pageBAOS);
-            
-            recordcount = 0;
-            npages++;
+            }));
+
+            // bound the number of encoded chunks held in memory
+            while (pending.size() > 2 * threads || (eof && !pending.isEmpty()))
+                pages.add(await(pending.poll()));
         }
+        pages.finish();
+    } finally {
+        workers.shutdownNow();
+        in.close();
+        out.close();
     }
-    br.close();
-    os.close();
+  }
+
+  // Bytes of input text handed to a worker at a time
+  static final int CHUNK_BYTES = 1 << 20;
+
+  private static ByteBuffer await(Future<ByteBuffer> f) throws IOException {
+      try {
+          return f.get();
+      } catch (InterruptedException e) {
+          throw new IOException(e);
+      } catch (ExecutionException e) {
+          throw new IOException(e.getCause());
+      }
+  }
+
+  /**
+   * Parses the lines of a chunk of text and encodes them as consecutive
+   * records of nrecbytes bytes each. Blank lines are skipped; missing
+   * fields and unparseable integers are reported and stored as zeroes.
+   *
+   * @return a buffer whose remaining bytes are the encoded records
+   */
+  static ByteBuffer encodeRecords(byte[] chunk, int numFields, Type[] typeAr,
+                                  char fieldSeparator, int nrecbytes) {
+      String text = new String(chunk, StandardCharsets.UTF_8);
+      int lines = 1;
+      for (byte b : chunk)
+          if (b == '\n')
+              lines++;
+      ByteBuffer records = ByteBuffer.allocate(lines * nrecbytes);
+
+      int start = 0;
+      while (start < text.length()) {
+          int eol = text.indexOf('\n', start);
+          if (eol < 0)
+              eol = text.length();
+          int lineEnd = eol;
+          // Ignore Windows/Notepad special line endings
+          if (lineEnd > start && text.charAt(lineEnd - 1) == '\r')
+              lineEnd--;
+          if (lineEnd > start) {
+              int record = records.position();
+              int fieldStart = start;
+              for (int i = 0; i < numFields; i++) {
+                  int fieldEnd = text.indexOf(fieldSeparator, fieldStart);
+                  if (fieldEnd < 0 || fieldEnd > lineEnd)
+                      fieldEnd = lineEnd;
+                  String s = fieldStart <= lineEnd ? text.substring(fieldStart, fieldEnd).trim() : "";
+                  if (fieldStart > lineEnd)
+                      System.out.println ("BAD LINE : " + text.substring(start, lineEnd));
+                  if (typeAr[i] == Type.INT_TYPE) {
+                      int v = 0;
+                      try {
+                          v = Integer.parseInt(s);
+                      } catch (NumberFormatException e) {
+                          System.out.println ("BAD LINE : " + s);
+                      }
+                      records.putInt(v);
+                  }
+                  else   if (typeAr[i] == Type.STRING_TYPE) {
+                      if (s.length() > Type.STRING_LEN)
+                          s = s.substring(0,Type.STRING_LEN);
+                      int field = records.position();
+                      records.putInt(s.length());
+                      for (int c = 0; c < s.length(); c++)
+                          records.put((byte) s.charAt(c));
+                      records.position(field + Type.STRING_TYPE.getLen());
+                  }
+                  else {
+                      int field = records.position();
+                      try {
+                          typeAr[i].parse(s).serialize(records, field);
+                      } catch (IllegalArgumentException e) {
+                          System.out.println ("BAD LINE : " + s);
+                      }
+                      records.position(field + typeAr[i].getLen());
+                  }
+                  fieldStart = fieldEnd + 1;
+              }
+              records.position(record + nrecbytes);
+          }
+          start = eol + 1;
+      }
+      records.flip();
+      return records;
+  }
+
+  /**
+   * Packs encoded records into pages and writes each page once it is full.
+   */
+  private static class PageWriter {
+      private final FileChannel out;
+      private final int nrecbytes;
+      private final int nrecords;
+      private final int nheaderbytes;
+      private final ByteBuffer page;
+      private int recordcount = 0;
+      private int npages = 0;
+
+      PageWriter(FileChannel out, int npagebytes, int nrecbytes, int nrecords, int nheaderbytes) {
+          this.out = out;
+          this.nrecbytes = nrecbytes;
+          this.nrecords = nrecords;
+          this.nheaderbytes = nheaderbytes;
+          this.page = ByteBuffer.allocate(npagebytes);
+      }
+
+      void add(ByteBuffer records) throws IOException {
+          while (records.hasRemaining()) {
+              int n = Math.min(records.remaining(), (nrecords - recordcount) * nrecbytes);
+              page.position(nheaderbytes + recordcount * nrecbytes);
+              ByteBuffer slice = records.duplicate();
+              slice.limit(slice.position() + n);
+              page.put(slice);
+              records.position(records.position() + n);
+              recordcount += n / nrecbytes;
+              if (recordcount == nrecords)
+                  flush();
+          }
+      }
+
+      // in the header, write a 1 for bits that correspond to records we've
+      // written and 0 for empty slots.
+      private void flush() throws IOException {
+          byte[] bytes = page.array();
+          Arrays.fill(bytes, 0, recordcount / 8, (byte) 0xff);
+          if (recordcount % 8 > 0)
+              bytes[recordcount / 8] = (byte) ((1 << (recordcount % 8)) - 1);
+          page.clear();
+          while (page.hasRemaining())
+              out.write(page);
+          Arrays.fill(bytes, (byte) 0);
+          recordcount = 0;
+          npages++;
+      }
+
+      // write the last partial page, or an empty page if the file is empty
+      void finish() throws IOException {
+          if (recordcount > 0 || npages == 0)
+              flush();
+      }
   }
 }
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -11,15 +12,23 @@ import java.io.*;
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte header[];
-    final Tuple tuples[];
     final int numSlots;
+    final int headerSize;
+    // offset of each field from the start of a tuple
+    final int fieldOffsets[];
+    // the page itself; tuples are decoded from it on demand and written straight into it
+    ByteBuffer data;
+    // true if tuple views may be reading data, which must then be copied before it is written
+    private volatile boolean shared;
     private TransactionId dirtyTid;
+    // number of slots whose header bit is clear, kept up to date by markSlotUsed
+    private int numEmpty;
 
+    // the page as of the last setBeforeImage(), or null if it has not been written since
     byte[] oldData;
     private final Byte oldDataLock=new Byte((byte)0);
 
@@ -35,6 +44,8 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The bytes are copied and kept as they are; tuples are only decoded
+     * when they are read.
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
@@ -43,24 +54,24 @@ public class HeapPage implements Page {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
+        this.headerSize = getHeaderSize();
         this.dirtyTid = null;
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
 
-        setBeforeImage();
+        this.fieldOffsets = new int[td.numFields()];
+        for (int j = 1; j < fieldOffsets.length; j++)
+            fieldOffsets[j] = fieldOffsets[j - 1] + td.getFieldType(j - 1).getLen();
+
+        byte[] bytes = new byte[BufferPool.getPageSize()];
+        System.arraycopy(data, 0, bytes, 0, Math.min(data.length, bytes.length));
+        this.data = ByteBuffer.wrap(bytes);
+        this.oldData = null;
+
+        int used = 0;
+        for (int i = 0; i < headerSize; i++)
+            used += Integer.bitCount(bytes[i] & 0xff);
+        if (numSlots % 8 != 0) // ignore the padding bits after the last slot
+            used -= Integer.bitCount((bytes[headerSize - 1] & 0xff) >>> (numSlots % 8));
+        this.numEmpty = numSlots - used;
     }
 
     /** Retrieve the number of tuples on this page.
@@ -86,9 +97,10 @@ public class HeapPage implements Page {
             byte[] oldDataRef = null;
             synchronized(oldDataLock)
             {
-                oldDataRef = oldData;
+                // an unwritten page is its own before image
+                oldDataRef = oldData == null ? data.array() : oldData;
+                return new HeapPage(pid,oldDataRef);
             }
-            return new HeapPage(pid,oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -97,10 +109,43 @@ public class HeapPage implements Page {
         return null;
     }
     
+    public HeapPage copy() {
+        try {
+            return new HeapPage(pid, data.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        oldData = null;
+        }
+    }
+
+    /**
+     * Saves the current contents of the page as its before image, unless
+     * that has already been done since the last setBeforeImage(), and gives
+     * the page a copy of its data to write if tuple views are reading it.
+     * Called before every change to the page, so pages that are only read
+     * never copy their data, and views never see a change.
+     */
+    private void captureBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == null) {
+            // the views keep reading the old array, which nothing writes again
+            oldData = shared ? data.array() : data.array().clone();
+            if (shared)
+                data = ByteBuffer.wrap(oldData.clone());
+        } else if (shared) {
+            data = ByteBuffer.wrap(data.array().clone());
+        }
+        shared = false;
         }
     }
 
@@ -112,37 +157,50 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return the offset in the page of the first byte of slot slotId
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
+    private int slotOffset(int slotId) {
+        return headerSize + slotId * td.getSize();
+    }
+
+    /**
+     * A tuple backed by a slot of this page. A field is only decoded, and
+     * then cached, the first time it is read, and the RecordId is only
+     * created when asked for, so rows that are read and rejected by a scan
+     * cost little more than this object. The view reads the page data as it
+     * was when the view was created: the page copies its data before the
+     * next change, and setting a field of the view only changes the view.
+     */
+    private class TupleView extends Tuple {
+
+        private static final long serialVersionUID = 1L;
+        private final ByteBuffer bytes;
+        private final int slotId;
+
+        TupleView(int slotId) {
+            super(td, null);
+            this.bytes = data;
+            this.slotId = slotId;
+            shared = true;
         }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+        @Override
+        public Field getField(int i) {
+            Field f = super.getField(i);
+            if (f == null) {
+                f = td.getFieldType(i).parse(bytes, slotOffset(slotId) + fieldOffsets[i]);
+                super.setField(i, f);
             }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+            return f;
         }
 
-        return t;
+        @Override
+        public RecordId getRecordId() {
+            if (super.getRecordId() == null) {
+                super.setRecordId(new RecordId(pid, slotId));
+            }
+            return super.getRecordId();
+        }
     }
 
     /**
@@ -157,64 +215,7 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        return data.array().clone();
     }
 
     /**
@@ -243,8 +244,10 @@ public class HeapPage implements Page {
         if (!isSlotUsed(tupleno) || !(t.getRecordId().getPageId().equals(this.pid))) {
             throw new DbException("Tuple not found");
         }
+        captureBeforeImage();
         markSlotUsed(tupleno, false);
-        this.tuples[tupleno] = null;
+        int offset = slotOffset(tupleno);
+        Arrays.fill(data.array(), offset, offset + td.getSize(), (byte) 0);
     }
 
     /**
@@ -258,13 +261,13 @@ public class HeapPage implements Page {
         if (!t.getTupleDesc().equals(this.td) || getNumEmptySlots() <= 0) {
             throw new DbException("Error inserting tuple");
         }
-        for (int i = 0; i < this.numSlots; i++) {
-            if (!isSlotUsed(i)) {
-                markSlotUsed(i, true);
-                t.setRecordId(new RecordId(this.pid, i));
-                this.tuples[i] = t;
-                break;
-            }
+        captureBeforeImage();
+        int i = nextSlot(0, false);
+        markSlotUsed(i, true);
+        t.setRecordId(new RecordId(this.pid, i));
+        int offset = slotOffset(i);
+        for (int j = 0; j < td.numFields(); j++) {
+            t.getField(j).serialize(data, offset + fieldOffsets[j]);
         }
     }
 
@@ -291,13 +294,31 @@ public class HeapPage implements Page {
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        int total = 0;
-        for (int i = 0; i < this.numSlots; i++) {
-            if (!isSlotUsed(i)) {
-                total++;
-            }
+        return this.numEmpty;
+    }
+
+    /**
+     * Returns the bytes of the empty slots on this page.
+     */
+    public int getFreeSpace() {
+        return this.numEmpty * this.td.getSize();
+    }
+
+    /**
+     * Returns true if the page has an empty slot.
+     */
+    public boolean hasRoomFor(Tuple t) {
+        return this.numEmpty > 0;
+    }
+
+    /**
+     * @return the tuple in slot slotId, or null if the slot is empty
+     */
+    public Tuple getTuple(int slotId) {
+        if (slotId < 0 || slotId >= numSlots || !isSlotUsed(slotId)) {
+            return null;
         }
-        return total;
+        return new TupleView(slotId);
     }
 
     /**
@@ -306,7 +327,7 @@ public class HeapPage implements Page {
     public boolean isSlotUsed(int i) {
         int position = i / 8;
         int sub = i % 8;
-        return ((this.header[position] >> sub) & 1) != 0;
+        return ((this.data.get(position) >> sub) & 1) != 0;
     }
 
     /**
@@ -315,13 +336,53 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
         int position = i / 8;
         int sub = i % 8;
+        byte b = this.data.get(position);
+        if (value == isSlotUsed(i)) {
+            return;
+        }
         if (value) {
-            this.header[position] = (byte) (this.header[position] | (1 << sub));
+            this.data.put(position, (byte) (b | (1 << sub)));
+            this.numEmpty--;
         } else {
-            this.header[position] = (byte) (this.header[position] &~ (1 << sub));
+            this.data.put(position, (byte) (b &~ (1 << sub)));
+            this.numEmpty++;
         }
     }
 
+    /**
+     * Returns the first slot at or after from that is filled (if used is
+     * true) or empty (if used is false), or numSlots if there is none.
+     * Aligned runs of the header are scanned 64 slots at a time.
+     */
+    private int nextSlot(int from, boolean used) {
+        int i = from;
+        while (i < this.numSlots) {
+            int position = i / 8;
+            int sub = i % 8;
+            long word;
+            int bits;
+            if (sub == 0 && position + 8 <= this.headerSize) {
+                // slot i + k is bit k of the little-endian word
+                word = Long.reverseBytes(this.data.getLong(position));
+                bits = 64;
+            } else {
+                word = (this.data.get(position) & 0xff) >>> sub;
+                bits = 8 - sub;
+            }
+            if (!used) {
+                word = ~word;
+            }
+            if (bits < 64) {
+                word &= (1L << bits) - 1;
+            }
+            if (word != 0) {
+                return Math.min(i + Long.numberOfTrailingZeros(word), this.numSlots);
+            }
+            i += bits;
+        }
+        return this.numSlots;
+    }
+
     /**
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
@@ -329,24 +390,108 @@ public class HeapPage implements Page {
     public Iterator<Tuple> iterator() {
         return new Iterator<>() {
 
-            private int idx = 0;
-            private int numEmpty = getNumEmptySlots();
-            private int numSlot = getNumTuples() - numEmpty;
+            private int idx = nextSlot(0, true);
 
             @Override
             public boolean hasNext() {
-                return idx < numSlot;
+                return idx < numSlots;
             }
 
             @Override
             public Tuple next() {
-                while (!isSlotUsed(idx)) {
-                    idx++;
+                if (idx >= numSlots) {
+                    throw new NoSuchElementException();
                 }
-                return tuples[idx++];
+                Tuple t = new TupleView(idx);
+                idx = nextSlot(idx + 1, true);
+                return t;
             }
         };
     }
 
-}
+    /**
+     * @return an iterator over the tuples on this page that satisfy every
+     *   predicate in predicates. The predicates are evaluated on the bytes of
+     *   each slot, so no tuple is created for the slots that do not match.
+     */
+    public Iterator<Tuple> iterator(List<Predicate> predicates) {
+        if (predicates.isEmpty()) {
+            return iterator();
+        }
+        return new Iterator<>() {
 
+            private int idx = nextMatch(0);
+
+            private int nextMatch(int from) {
+                int i = nextSlot(from, true);
+                while (i < numSlots && !matches(i, predicates)) {
+                    i = nextSlot(i + 1, true);
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return idx < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (idx >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = new TupleView(idx);
+                idx = nextMatch(idx + 1);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * @return true if the tuple in slot slotId satisfies every predicate.
+     *   INT fields are compared as they are stored, without creating an
+     *   IntField; other fields are decoded one at a time.
+     */
+    private boolean matches(int slotId, List<Predicate> predicates) {
+        int offset = slotOffset(slotId);
+        for (Predicate p : predicates) {
+            int field = p.getField();
+            Type type = td.getFieldType(field);
+            if (type == Type.INT_TYPE && p.getOperand() instanceof IntField) {
+                int cmp = Integer.compare(data.getInt(offset + fieldOffsets[field]),
+                        ((IntField) p.getOperand()).getValue());
+                if (!holds(p.getOp(), cmp)) {
+                    return false;
+                }
+            } else if (!type.parse(data, offset + fieldOffsets[field]).compare(p.getOp(), p.getOperand())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if a value that compares to the operand as cmp does
+     *   satisfies op, with LIKE meaning equality as for IntField
+     */
+    private static boolean holds(Predicate.Op op, int cmp) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return cmp == 0;
+        case NOT_EQUALS:
+            return cmp != 0;
+        case GREATER_THAN:
+            return cmp > 0;
+        case GREATER_THAN_OR_EQ:
+            return cmp >= 0;
+        case LESS_THAN:
+            return cmp < 0;
+        case LESS_THAN_OR_EQ:
+            return cmp <= 0;
+        default:
+            return false;
+        }
+    }
+
+}
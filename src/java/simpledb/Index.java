@@ -0,0 +1,278 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A secondary index on one column of a HeapFile table. The index is a
+ * BTreeFile or a HashFile of entries holding the column value and the
+ * RecordId of the tuple, as its page and slot numbers, keyed on the value.
+ * The BufferPool keeps the entries in step with the table as tuples are
+ * inserted and deleted, so a lookup reads the index pages holding the
+ * matching entries and then only the heap pages holding the matching tuples.
+ * <p>
+ * A B+ tree index answers equality and range predicates; a hash index only
+ * equality, reading fewer pages to do so.
+ * <p>
+ * An index can also include the values of other columns in its entries, so
+ * that a query using only the key and those columns is answered from the
+ * index alone, without reading the table (see {@link #covers}).
+ * <p>
+ * Every entry has the same size, so VARCHAR values are stored as
+ * fixed-size STRING_TYPE fields, which hold any VARCHAR value, and read
+ * back as VarcharFields.
+ *
+ * @see Catalog#addIndex
+ * @see BTreeFile
+ * @see HashFile
+ */
+public class Index {
+
+    private final int tableId;
+    private final int keyField;
+    // the other columns whose values the entries hold, after the page and slot
+    private final int[] included;
+    private final IndexFile file;
+
+    /**
+     * Opens the B+ tree index on field keyField of table tableId stored in
+     * f. The table must already be in the catalog. A new index is empty; see
+     * {@link #build}.
+     */
+    public Index(File f, int tableId, int keyField) {
+        this(f, tableId, keyField, false);
+    }
+
+    /**
+     * Opens the index on field keyField of table tableId stored in f, a
+     * hash index if hash is true and a B+ tree index otherwise.
+     */
+    public Index(File f, int tableId, int keyField, boolean hash) {
+        this(f, tableId, keyField, hash, new int[0]);
+    }
+
+    /**
+     * Opens the index on field keyField of table tableId stored in f, a
+     * hash index if hash is true and a B+ tree index otherwise, whose
+     * entries also hold the values of the fields in included.
+     */
+    public Index(File f, int tableId, int keyField, boolean hash, int[] included) {
+        this.tableId = tableId;
+        this.keyField = keyField;
+        this.included = included.clone();
+        TupleDesc td = entryDesc(Database.getCatalog().getTupleDesc(tableId), keyField, included);
+        this.file = hash ? new HashFile(f, 0, td) : new BTreeFile(f, 0, td);
+    }
+
+    /**
+     * @return the TupleDesc of the entries of an index on field keyField of
+     *   a table with TupleDesc td: the key, then the page and slot of the
+     *   tuple, then the included fields
+     */
+    static TupleDesc entryDesc(TupleDesc td, int keyField, int[] included) {
+        Type[] types = new Type[3 + included.length];
+        String[] names = new String[3 + included.length];
+        types[0] = storedType(td.getFieldType(keyField));
+        names[0] = td.getFieldName(keyField);
+        types[1] = types[2] = Type.INT_TYPE;
+        names[1] = "page";
+        names[2] = "slot";
+        for (int i = 0; i < included.length; i++) {
+            types[3 + i] = storedType(td.getFieldType(included[i]));
+            names[3 + i] = td.getFieldName(included[i]);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    private static Type storedType(Type type) {
+        return type == Type.VARCHAR_TYPE ? Type.STRING_TYPE : type;
+    }
+
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    public int getKeyField() {
+        return this.keyField;
+    }
+
+    /**
+     * @return the fields of the table, other than the key, whose values the
+     *   entries hold
+     */
+    public int[] getIncluded() {
+        return this.included.clone();
+    }
+
+    /**
+     * @return the position of field of the table in the entries, or -1 if
+     *   the entries do not hold it
+     */
+    int entryField(int field) {
+        if (field == this.keyField) {
+            return 0;
+        }
+        for (int i = 0; i < this.included.length; i++) {
+            if (this.included[i] == field) {
+                return 3 + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the values of all of fields, fields of the table, can
+     *   be read from the entries, so a query using only them needs only the
+     *   index
+     */
+    public boolean covers(Collection<Integer> fields) {
+        for (int field : fields) {
+            if (entryField(field) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the B+ tree or hash file holding the entries of this index
+     */
+    public IndexFile getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return true if a lookup can answer a predicate with operator op
+     */
+    public boolean supports(Predicate.Op op) {
+        return this.file.supports(op);
+    }
+
+    /**
+     * @return the index entry of t, which must have a RecordId in the table
+     */
+    public Tuple entry(Tuple t) {
+        Tuple e = new Tuple(this.file.getTupleDesc());
+        e.setField(0, stored(t.getField(this.keyField)));
+        e.setField(1, new IntField(t.getRecordId().getPageId().getPageNumber()));
+        e.setField(2, new IntField(t.getRecordId().getTupleNumber()));
+        for (int i = 0; i < this.included.length; i++) {
+            e.setField(3 + i, stored(t.getField(this.included[i])));
+        }
+        return e;
+    }
+
+    /**
+     * @return f as it is stored in the index
+     */
+    private static Field stored(Field f) {
+        if (f instanceof VarcharField) {
+            return new StringField(((StringField) f).getValue(), Type.STRING_LEN);
+        }
+        return f;
+    }
+
+    /**
+     * @return f, read from the entries, as a value of a field of the table
+     *   of type type
+     */
+    static Field tableValue(Field f, Type type) {
+        if (type == Type.VARCHAR_TYPE) {
+            return new VarcharField(((StringField) f).getValue());
+        }
+        return f;
+    }
+
+    /**
+     * Adds the entry of t, just inserted into the table, to the index.
+     * @return the pages that were modified
+     */
+    ArrayList<Page> insertEntry(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        return this.file.insertTuple(tid, entry(t));
+    }
+
+    /**
+     * Removes the entry of t, about to be deleted from the table, from the
+     * index.
+     * @return the pages that were modified
+     */
+    ArrayList<Page> deleteEntry(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        return this.file.deleteTuple(tid, entry(t));
+    }
+
+    /**
+     * Adds an entry for every tuple in the table, for a new index on a table
+     * that already has tuples.
+     *
+     * @return the number of entries added
+     */
+    public int build(TransactionId tid) throws DbException, IOException, TransactionAbortedException {
+        DbFileIterator it = Database.getCatalog().getDatabaseFile(this.tableId).iterator(tid);
+        int count = 0;
+        it.open();
+        while (it.hasNext()) {
+            Database.getBufferPool().insertTuple(tid, this.file.getId(), entry(it.next()));
+            count++;
+        }
+        it.close();
+        return count;
+    }
+
+    /**
+     * Returns an iterator over the entries whose key satisfies ipred, or
+     * over all entries if ipred is null, without reading the table. The
+     * values of the fields {@link #covers} accepts are read from them with
+     * {@link #entryField} and {@link #tableValue}.
+     */
+    public DbFileIterator entries(TransactionId tid, IndexPredicate ipred) {
+        if (ipred == null) {
+            return this.file.iterator(tid);
+        }
+        return this.file.indexIterator(tid, new IndexPredicate(ipred.getOp(), stored(ipred.getField())));
+    }
+
+    /**
+     * Returns an iterator over the tuples of the table whose key field
+     * satisfies ipred, in key order for a B+ tree index. The heap page of each tuple is fetched
+     * through the BufferPool as its entry is read.
+     */
+    public DbFileIterator lookup(TransactionId tid, IndexPredicate ipred) {
+        DbFileIterator entries = entries(tid, ipred);
+        return new AbstractDbFileIterator() {
+
+            @Override
+            public void open() throws DbException, TransactionAbortedException {
+                entries.open();
+            }
+
+            @Override
+            protected Tuple readNext() throws DbException, TransactionAbortedException {
+                while (entries.hasNext()) {
+                    Tuple e = entries.next();
+                    PageId pid = new HeapPageId(tableId, ((IntField) e.getField(1)).getValue());
+                    TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                    Tuple t = page.getTuple(((IntField) e.getField(2)).getValue());
+                    if (t != null) {
+                        return t;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void rewind() throws DbException, TransactionAbortedException {
+                super.close();
+                entries.rewind();
+            }
+
+            @Override
+            public void close() {
+                super.close();
+                entries.close();
+            }
+        };
+    }
+
+}
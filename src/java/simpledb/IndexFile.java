@@ -0,0 +1,41 @@
+package simpledb;
+
+/**
+ * A DbFile holding the entries of an {@link Index}, which can return the
+ * entries whose key field satisfies a predicate without reading the whole
+ * file.
+ *
+ * @see BTreeFile
+ * @see HashFile
+ */
+public interface IndexFile extends DbFile {
+
+    /**
+     * @return the index of the field the entries are looked up by
+     */
+    public int keyField();
+
+    /**
+     * @return the number of pages in the file
+     */
+    public int numPages();
+
+    /**
+     * @return true if {@link #indexIterator} can answer a predicate with
+     *   operator op
+     */
+    public boolean supports(Predicate.Op op);
+
+    /**
+     * Returns an iterator over the entries whose key field satisfies ipred,
+     * whose operator must be one this file supports.
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred);
+
+    /**
+     * Estimates the number of pages of this file a lookup reads to find the
+     * entries matching a predicate with the given selectivity.
+     */
+    public double estimatePagesRead(double selectivity);
+
+}
@@ -0,0 +1,205 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexJoin is an index nested-loop join. Instead of rescanning the inner
+ * relation for every outer tuple, it looks the matching inner tuples up in
+ * an {@link Index} on the inner join field, so only the index pages and
+ * heap pages of the matches are read.
+ * <p>
+ * The inner child must be a SeqScan or an IndexScan of the indexed table,
+ * possibly under Filters or with predicates pushed into the SeqScan. It is
+ * never read itself: its predicates are applied to the tuples each probe of
+ * the index returns.
+ */
+public class IndexJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate p;
+    private final Index index;
+    private OpIterator child1, child2;
+
+    private TransactionId tid;
+    private ArrayList<Predicate> innerPredicates;
+    private Tuple outer;
+    private DbFileIterator probe;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children; its operator must
+     *            be one the index can answer (see {@link Index#supports})
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            The scan of the right(inner) relation to join
+     * @param index
+     *            An index on the field p.getField2() of the inner relation
+     */
+    public IndexJoin(JoinPredicate p, OpIterator child1, OpIterator child2, Index index) {
+        if (!index.supports(p.getOperator())) {
+            throw new IllegalArgumentException("an index cannot answer " + p.getOperator());
+        }
+        if (index.getKeyField() != p.getField2()) {
+            throw new IllegalArgumentException("the index is not on the join field");
+        }
+        this.p = p;
+        this.index = index;
+        setChildren(new OpIterator[] { child1, child2 });
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return this.p;
+    }
+
+    public Index getIndex() {
+        return this.index;
+    }
+
+    /**
+     * @return the field name of join field1, quantified by alias or table name
+     */
+    public String getJoinField1Name() {
+        return this.child1.getTupleDesc().getFieldName(this.p.getField1());
+    }
+
+    /**
+     * @return the field name of join field2, quantified by alias or table name
+     */
+    public String getJoinField2Name() {
+        return this.child2.getTupleDesc().getFieldName(this.p.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return TupleDesc.merge(this.child1.getTupleDesc(), this.child2.getTupleDesc());
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        this.child1.open();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        closeProbe();
+        this.outer = null;
+        this.child1.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        closeProbe();
+        this.outer = null;
+        this.child1.rewind();
+    }
+
+    private void closeProbe() {
+        if (this.probe != null) {
+            this.probe.close();
+            this.probe = null;
+        }
+    }
+
+    /**
+     * Returns the next outer tuple concatenated with a matching inner tuple,
+     * probing the index once for each outer tuple.
+     *
+     * @return The next matching tuple, or null if there are no more.
+     * @see Join#fetchNext
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (this.probe != null) {
+                while (this.probe.hasNext()) {
+                    Tuple inner = this.probe.next();
+                    if (matches(inner)) {
+                        return Join.merge(this.outer, inner);
+                    }
+                }
+                closeProbe();
+            }
+            if (!this.child1.hasNext()) {
+                return null;
+            }
+            this.outer = this.child1.next();
+            // outer.f1 op inner.f2, as a predicate on the inner key
+            this.probe = this.index.lookup(this.tid, new IndexPredicate(
+                    reverse(this.p.getOperator()), this.outer.getField(this.p.getField1())));
+            this.probe.open();
+        }
+    }
+
+    private boolean matches(Tuple inner) {
+        for (Predicate pred : this.innerPredicates) {
+            if (!pred.filter(inner)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the operator op2 such that a op b is b op2 a
+     */
+    private static Predicate.Op reverse(Predicate.Op op) {
+        switch (op) {
+        case LESS_THAN:
+            return Predicate.Op.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        case GREATER_THAN:
+            return Predicate.Op.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        default:
+            return op;
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child1, this.child2 };
+    }
+
+    /**
+     * Sets the children, collecting the predicates of the inner child and the
+     * transaction its scan runs as a part of.
+     */
+    @Override
+    public void setChildren(OpIterator[] children) {
+        ArrayList<Predicate> preds = new ArrayList<>();
+        OpIterator inner = children[1];
+        while (inner instanceof Filter) {
+            preds.add(((Filter) inner).getPredicate());
+            inner = ((Filter) inner).getChildren()[0];
+        }
+        int tableId;
+        if (inner instanceof IndexScan) {
+            IndexScan s = (IndexScan) inner;
+            if (s.getColumns() != null) {
+                throw new IllegalArgumentException("the inner child of an IndexJoin must return whole tuples");
+            }
+            IndexPredicate ipred = s.getPredicate();
+            preds.add(new Predicate(s.getIndex().getKeyField(), ipred.getOp(), ipred.getField()));
+            tableId = s.getIndex().getTableId();
+            this.tid = s.getTransactionId();
+        } else if (inner instanceof SeqScan) {
+            SeqScan s = (SeqScan) inner;
+            preds.addAll(s.getPredicates());
+            tableId = Database.getCatalog().getTableId(s.getTableName());
+            this.tid = s.getTransactionId();
+        } else {
+            throw new IllegalArgumentException("the inner child of an IndexJoin must scan a table");
+        }
+        if (tableId != this.index.getTableId()) {
+            throw new IllegalArgumentException("the index is not on the inner table");
+        }
+        this.child1 = children[0];
+        this.child2 = children[1];
+        this.innerPredicates = preds;
+    }
+
+}
@@ -0,0 +1,48 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * IndexPredicate compares the key field of an index to a constant. It is
+ * used by indexes to find the range of keys a lookup has to visit.
+ */
+public class IndexPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Predicate.Op op;
+    private final Field fieldvalue;
+
+    /**
+     * Constructor.
+     *
+     * @param op
+     *            the comparison to apply to the key field
+     * @param fvalue
+     *            the constant the key field is compared to
+     */
+    public IndexPredicate(Predicate.Op op, Field fvalue) {
+        this.op = op;
+        this.fieldvalue = fvalue;
+    }
+
+    public Field getField() {
+        return this.fieldvalue;
+    }
+
+    public Predicate.Op getOp() {
+        return this.op;
+    }
+
+    /**
+     * @return true if a key satisfies this predicate
+     */
+    public boolean matches(Field key) {
+        return key.compare(this.op, this.fieldvalue);
+    }
+
+    public String toString() {
+        return this.op + " " + this.fieldvalue;
+    }
+
+}
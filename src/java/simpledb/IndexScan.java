@@ -0,0 +1,213 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads only the tuples of a table whose
+ * indexed field satisfies an equality or range predicate, by looking them up
+ * in an {@link Index} on the table instead of reading every page. Tuples are
+ * returned in the order of the indexed field if the index is a B+ tree.
+ * <p>
+ * An index-only scan returns only some fields of the table, all of which
+ * the index entries hold, and never reads the table at all.
+ */
+public class IndexScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final String alias;
+    private final Index index;
+    private final IndexPredicate ipred;
+    private final int[] columns;
+    private final DbFileIterator it;
+    private final TupleDesc td;
+
+    /**
+     * Creates a scan over the tuples of the table of index whose key field
+     * satisfies ipred, as a part of the specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param index
+     *            the index to look the tuples up in
+     * @param ipred
+     *            the predicate on the key field of the index, whose operator
+     *            the index must support (see {@link Index#supports})
+     * @param tableAlias
+     *            the alias of the table, as for {@link SeqScan}; the returned
+     *            tupleDesc has fields named tableAlias.fieldName
+     */
+    public IndexScan(TransactionId tid, Index index, IndexPredicate ipred, String tableAlias) {
+        this(tid, index, ipred, tableAlias, null);
+    }
+
+    /**
+     * Creates a scan over the tuples of the table of index whose key field
+     * satisfies ipred, with only the given fields of the table. If columns
+     * is not null, the index must cover them (see {@link Index#covers}),
+     * and their values are read from the index entries alone.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param index
+     *            the index to look the tuples up in
+     * @param ipred
+     *            the predicate on the key field of the index, whose operator
+     *            the index must support, or null for every tuple if columns
+     *            is not null
+     * @param tableAlias
+     *            the alias of the table, as for {@link SeqScan}
+     * @param columns
+     *            the fields of the table the returned tuples have, in that
+     *            order, or null for all of them
+     */
+    public IndexScan(TransactionId tid, Index index, IndexPredicate ipred, String tableAlias, int[] columns) {
+        if (ipred == null ? columns == null : !index.supports(ipred.getOp())) {
+            throw new IllegalArgumentException("an index cannot answer " + ipred);
+        }
+        TupleDesc temp = Database.getCatalog().getTupleDesc(index.getTableId());
+        if (columns != null) {
+            for (int c : columns) {
+                if (index.entryField(c) < 0) {
+                    throw new IllegalArgumentException("the index does not hold " + temp.getFieldName(c));
+                }
+            }
+        }
+        this.tid = tid;
+        this.alias = tableAlias;
+        this.index = index;
+        this.ipred = ipred;
+        this.columns = columns;
+        int[] fields = columns;
+        if (fields == null) {
+            fields = new int[temp.numFields()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = i;
+            }
+        }
+        Type[] typeAr = new Type[fields.length];
+        String[] fieldAr = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            typeAr[i] = temp.getFieldType(fields[i]);
+            fieldAr[i] = this.alias + "." + temp.getFieldName(fields[i]);
+        }
+        this.td = new TupleDesc(typeAr, fieldAr);
+        this.it = columns == null ? index.lookup(tid, ipred) : new EntryIterator(index.entries(tid, ipred));
+    }
+
+    /**
+     * @return the name of the table the operator scans, as in the catalog
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(this.index.getTableId());
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return this.alias;
+    }
+
+    /**
+     * @return the transaction this scan is running as a part of
+     */
+    public TransactionId getTransactionId() {
+        return this.tid;
+    }
+
+    public Index getIndex() {
+        return this.index;
+    }
+
+    /**
+     * @return the predicate on the key field, or null if this is an
+     *   index-only scan of every entry
+     */
+    public IndexPredicate getPredicate() {
+        return this.ipred;
+    }
+
+    /**
+     * @return the fields of the table this scan returns, read from the index
+     *   alone, or null if it returns whole tuples of the table
+     */
+    public int[] getColumns() {
+        return this.columns;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        this.it.open();
+    }
+
+    /**
+     * @return the TupleDesc of the table, with field names prefixed with the
+     *         tableAlias string from the constructor
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return this.it.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        return this.it.next();
+    }
+
+    public void close() {
+        this.it.close();
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        this.it.rewind();
+    }
+
+    /**
+     * Turns index entries into tuples of the fields this scan returns.
+     */
+    private class EntryIterator extends AbstractDbFileIterator {
+
+        private final DbFileIterator entries;
+        // the position in the entries of each field returned
+        private final int[] positions;
+
+        EntryIterator(DbFileIterator entries) {
+            this.entries = entries;
+            this.positions = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                this.positions[i] = index.entryField(columns[i]);
+            }
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            this.entries.open();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            super.close();
+            this.entries.rewind();
+        }
+
+        public void close() {
+            super.close();
+            this.entries.close();
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (!this.entries.hasNext()) {
+                return null;
+            }
+            Tuple e = this.entries.next();
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < this.positions.length; i++) {
+                t.setField(i, Index.tableValue(e.getField(this.positions[i]), td.getFieldType(i)));
+            }
+            return t;
+        }
+    }
+}
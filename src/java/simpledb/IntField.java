@@ -1,11 +1,12 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Instance of Field that stores a single integer.
  */
-public class IntField implements Field {
+public class IntField implements NumericField {
     
 	private static final long serialVersionUID = 1L;
 	
@@ -15,6 +16,14 @@ public class IntField implements Field {
         return value;
     }
 
+    public long longValue() {
+        return value;
+    }
+
+    public double doubleValue() {
+        return value;
+    }
+
     /**
      * Constructor.
      *
@@ -33,22 +42,33 @@ public class IntField implements Field {
     }
 
     public boolean equals(Object field) {
-        return ((IntField) field).value == value;
+        if (field instanceof IntField) {
+            return ((IntField) field).value == value;
+        }
+        return NumericField.equals(this, field);
     }
 
     public void serialize(DataOutputStream dos) throws IOException {
         dos.writeInt(value);
     }
 
+    public void serialize(ByteBuffer buf, int offset) {
+        buf.putInt(offset, value);
+    }
+
     /**
      * Compare the specified field to the value of this Field.
      * Return semantics are as specified by Field.compare
      *
-     * @throws IllegalCastException if val is not an IntField
+     * @throws ClassCastException if val is not an INT, LONG or DOUBLE field
      * @see Field#compare
+     * @see NumericField#compare(NumericField, Field)
      */
     public boolean compare(Predicate.Op op, Field val) {
 
+        if (!(val instanceof IntField)) {
+            return NumericField.satisfies(op, NumericField.compare(this, val));
+        }
         IntField iVal = (IntField) val;
 
         switch (op) {
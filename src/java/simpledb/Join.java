@@ -145,7 +145,7 @@ public class Join extends Operator {
         return null;
     }
 
-    private Tuple merge(Tuple t1, Tuple t2) {
+    static Tuple merge(Tuple t1, Tuple t2) {
         Tuple result = new Tuple(TupleDesc.merge(t1.getTupleDesc(), t2.getTupleDesc()));
         for (int i = 0; i < t1.getTupleDesc().numFields(); i++) {
             result.setField(i, t1.getField(i));
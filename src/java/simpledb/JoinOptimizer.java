@@ -68,7 +68,11 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        if (lj instanceof LogicalIndexJoinNode) {
+            j = new IndexJoin(p, plan1, plan2, ((LogicalIndexJoinNode) lj).index);
+        } else {
+            j = new Join(p,plan1,plan2);
+        }
 
         return j;
 
@@ -96,7 +100,8 @@ public class JoinOptimizer {
      *            side of the query
      * @param cost2
      *            Estimated cost of one full scan of the table on the right-hand
-     *            side of the query
+     *            side of the query, or, if j is a {@link LogicalIndexJoinNode},
+     *            of one probe of its index
      * @return An estimate of the cost of this query, in terms of cost1 and
      *         cost2
      */
@@ -106,6 +111,10 @@ public class JoinOptimizer {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Lab 3.
             return card1 + cost1 + cost2;
+        } else if (j instanceof LogicalIndexJoinNode) {
+            // the index is probed once per outer tuple, instead of scanning
+            // and comparing every inner tuple
+            return cost1 + card1 * cost2;
         } else {
             // Insert your code here.
             // HINT: You may need to use the variable "j" if you implemented
@@ -226,6 +235,10 @@ public class JoinOptimizer {
             HashMap<String, Double> filterSelectivities, boolean explain)
             throws ParsingException {
 
+        if (this.joins.isEmpty()) {
+            // a query over a single table
+            return new Vector<LogicalJoinNode>();
+        }
         PlanCache pc = new PlanCache();
         for (int i = 1; i <= this.joins.size(); i++) {
             for (Set<LogicalJoinNode> s : enumerateSubsets(this.joins, i)) {
@@ -310,16 +323,18 @@ public class JoinOptimizer {
         double t1cost, t2cost;
         int t1card, t2card;
         boolean leftPkey, rightPkey;
+        // whether each side is a base table, rather than prevBest
+        boolean t1Base = true, t2Base = true;
 
         if (news.isEmpty()) { // base case -- both are base relations
             prevBest = new Vector<LogicalJoinNode>();
-            t1cost = stats.get(table1Name).estimateScanCost();
+            t1cost = scanCost(stats, table1Name, j.t1Alias);
             t1card = stats.get(table1Name).estimateTableCardinality(
                     filterSelectivities.get(j.t1Alias));
             leftPkey = isPkey(j.t1Alias, j.f1PureName);
 
-            t2cost = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateScanCost();
+            t2cost = table2Alias == null ? 0 : scanCost(stats, table2Name,
+                    table2Alias);
             t2card = table2Alias == null ? 0 : stats.get(table2Name)
                     .estimateTableCardinality(
                             filterSelectivities.get(j.t2Alias));
@@ -345,9 +360,10 @@ public class JoinOptimizer {
                 // subtree is
                 t1card = bestCard;
                 leftPkey = hasPkey(prevBest);
+                t1Base = false;
 
-                t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateScanCost();
+                t2cost = j.t2Alias == null ? 0 : scanCost(stats, table2Name,
+                        j.t2Alias);
                 t2card = j.t2Alias == null ? 0 : stats.get(table2Name)
                         .estimateTableCardinality(
                                 filterSelectivities.get(j.t2Alias));
@@ -361,7 +377,8 @@ public class JoinOptimizer {
                 // subtree is
                 t2card = bestCard;
                 rightPkey = hasPkey(prevBest);
-                t1cost = stats.get(table1Name).estimateScanCost();
+                t2Base = false;
+                t1cost = scanCost(stats, table1Name, j.t1Alias);
                 t1card = stats.get(table1Name).estimateTableCardinality(
                         filterSelectivities.get(j.t1Alias));
                 leftPkey = isPkey(j.t1Alias, j.f1PureName);
@@ -378,6 +395,32 @@ public class JoinOptimizer {
 
         LogicalJoinNode j2 = j.swapInnerOuter();
         double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
+
+        // probe an index on the join field of the inner side instead, if it
+        // is a base table that has one, choosing the cheapest such index
+        if (t2Base) {
+            for (LogicalIndexJoinNode ij : indexJoins(j)) {
+                double cost = estimateJoinCost(ij, t1card, t2card, t1cost,
+                        estimateProbeCost(ij, t1card, t2card, leftPkey,
+                                rightPkey, stats));
+                if (cost < cost1) {
+                    j = ij;
+                    cost1 = cost;
+                }
+            }
+        }
+        if (t1Base) {
+            for (LogicalIndexJoinNode ij2 : indexJoins(j2)) {
+                double cost = estimateJoinCost(ij2, t2card, t1card, t2cost,
+                        estimateProbeCost(ij2, t2card, t1card, rightPkey,
+                                leftPkey, stats));
+                if (cost < cost2) {
+                    j2 = ij2;
+                    cost2 = cost;
+                }
+            }
+        }
+
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
@@ -399,6 +442,61 @@ public class JoinOptimizer {
         return cc;
     }
 
+    /**
+     * Return j as a {@link LogicalIndexJoinNode} for every index on field f2
+     * of table t2 of j that can answer the join predicate
+     */
+    private List<LogicalIndexJoinNode> indexJoins(LogicalJoinNode j) {
+        List<LogicalIndexJoinNode> ijs = new ArrayList<LogicalIndexJoinNode>();
+        if (j instanceof LogicalSubplanJoinNode)
+            return ijs;
+        int tableId = this.p.getTableId(j.t2Alias);
+        List<Index> indexes = Database.getCatalog().getIndexes(tableId);
+        if (indexes.isEmpty())
+            return ijs;
+        int field = Database.getCatalog().getTupleDesc(tableId)
+                .fieldNameToIndex(j.f2PureName);
+        for (Index index : indexes) {
+            if (index.getKeyField() == field && index.supports(j.p))
+                ijs.add(new LogicalIndexJoinNode(j, index));
+        }
+        return ijs;
+    }
+
+    /**
+     * Estimate the cost of one probe of the index of j, given the
+     * cardinalities of the outer side and of the inner side after its
+     * filters. A probe reads the inner tuples matching one outer tuple,
+     * before the filters of the inner side are applied.
+     */
+    private double estimateProbeCost(LogicalIndexJoinNode j, int card1,
+            int card2, boolean t1pkey, boolean t2pkey,
+            HashMap<String, TableStats> stats) {
+        TableStats s = stats.get(Database.getCatalog().getTableName(
+                this.p.getTableId(j.t2Alias)));
+        double sel = 0;
+        if (j.p == Predicate.Op.EQUALS && t2pkey) {
+            // at most one inner tuple matches
+            sel = 1.0 / Math.max(s.totalTuples(), 1);
+        } else if (card1 > 0 && card2 > 0) {
+            sel = Math.min(1.0, estimateJoinCardinality(j, card1, card2,
+                    t1pkey, t2pkey, stats) / ((double) card1 * card2));
+        }
+        return s.estimateIndexScanCost(j.index, sel);
+    }
+
+    /**
+     * Return the cost of reading the base table tableName, under alias, with
+     * the access path chosen by the logical plan: an index scan if
+     * {@link LogicalPlan#physicalPlan} picked one for the table, otherwise a
+     * sequential scan.
+     */
+    private double scanCost(HashMap<String, TableStats> stats,
+            String tableName, String alias) {
+        Double cost = this.p.getScanCost(alias);
+        return cost != null ? cost : stats.get(tableName).estimateScanCost();
+    }
+
     /**
      * Return true if the specified table is in the list of joins, false
      * otherwise
@@ -6,14 +6,43 @@ import java.util.*;
  */
 public class LockManager {
 
+    // Ways of resolving deadlocks between transactions waiting for locks
+    public enum DeadlockPolicy {
+        // Abort a waiting transaction once it closes a cycle in the waits-for graph
+        DETECTION,
+        // A transaction waits only for younger lock holders; a younger requester aborts itself
+        WAIT_DIE,
+        // A transaction aborts younger lock holders; a younger requester waits
+        WOUND_WAIT,
+        // Abort a transaction that has waited longer than the lock timeout
+        TIMEOUT
+    }
+
+    // A request waiting in a page's queue
+    private static class LockRequest {
+
+        private final TransactionId tid;
+        private final Permissions perms;
+        private final boolean upgrade;
+
+        private LockRequest(TransactionId tid, Permissions perms, boolean upgrade) {
+            this.tid = tid;
+            this.perms = perms;
+            this.upgrade = upgrade;
+        }
+    }
+
     public class LocksOnPage {
 
         private TransactionId exclusiveLock;
         private Set<TransactionId> sharedLocks;
+        // Requests waiting for this page, granted in order. Upgrades are queued ahead of all other requests.
+        private LinkedList<LockRequest> waiting;
 
         public LocksOnPage() {
             this.sharedLocks = new HashSet<>();
             this.exclusiveLock = null;
+            this.waiting = new LinkedList<>();
         }
 
         public void addSharedLock(TransactionId tid) {
@@ -53,37 +82,84 @@ public class LockManager {
             return this.exclusiveLock != null || this.sharedLocks.size() != 0;
         }
 
+        // Returns true if tid could be granted a lock with permissions perms given the current holders
+        public boolean compatible(TransactionId tid, Permissions perms) {
+            if (this.exclusiveLock != null && !this.exclusiveLock.equals(tid)) {
+                return false;
+            }
+            if (perms.equals(Permissions.READ_WRITE)) {
+                return this.sharedLocks.isEmpty() || (this.sharedLocks.size() == 1 && this.sharedLocks.contains(tid));
+            }
+            return true;
+        }
+
+        public void grant(TransactionId tid, Permissions perms) {
+            if (perms.equals(Permissions.READ_ONLY)) {
+                addSharedLock(tid);
+            } else {
+                removeSharedLock(tid);
+                setExclusiveLock(tid);
+            }
+        }
+
+        // Queues a request, placing upgrades behind earlier upgrades but ahead of everything else
+        private void enqueue(LockRequest request) {
+            if (!request.upgrade) {
+                this.waiting.addLast(request);
+                return;
+            }
+            int i = 0;
+            while (i < this.waiting.size() && this.waiting.get(i).upgrade) {
+                i++;
+            }
+            this.waiting.add(i, request);
+        }
+
     }
 
+    // Version recorded for a page that another transaction was writing when it was read
+    private static final long STALE = -1;
+
+    // Default time a transaction waits for a lock under the TIMEOUT policy, in milliseconds
+    public static final long DEFAULT_TIMEOUT = 500;
+
     private Map<PageId, LocksOnPage> locks;
-    private Map<TransactionId, HashSet<TransactionId>> dependencies;
+    // For each waiting transaction, the transactions it is waiting for
+    private Map<TransactionId, Set<TransactionId>> waitsFor;
+    private Map<PageId, Long> versions;
+    private Map<TransactionId, Map<PageId, Long>> readSets;
+    private Set<TransactionId> wounded;
+    private Set<TransactionId> readOnly;
+    private DeadlockPolicy policy;
+    private long timeout;
+    private final LockStats stats;
 
     public LockManager() {
         this.locks = new HashMap<>();
-        this.dependencies = new HashMap<>();
+        this.waitsFor = new HashMap<>();
+        this.versions = new HashMap<>();
+        this.readSets = new HashMap<>();
+        this.wounded = new HashSet<>();
+        this.readOnly = new HashSet<>();
+        this.policy = DeadlockPolicy.DETECTION;
+        this.timeout = DEFAULT_TIMEOUT;
+        this.stats = new LockStats();
     }
 
-    // Checks if there are any deadlocks relating to transaction tid
+    // Checks if transaction tid is part of a cycle in the waits-for graph
     public synchronized boolean deadlocked(TransactionId tid) {
-        if (this.dependencies.keySet().size() <= 1) {
-            return false;
+        Set<TransactionId> visited = new HashSet<>();
+        LinkedList<TransactionId> stack = new LinkedList<>();
+        if (this.waitsFor.containsKey(tid)) {
+            stack.addAll(this.waitsFor.get(tid));
         }
-        if (this.dependencies.containsKey(tid)) {
-            Map<TransactionId, Integer> visited = new HashMap<>();
-            LinkedList<TransactionId> queue = new LinkedList<>();
-            visited.put(tid, 1);
-            queue.add(tid);
-
-            while (queue.size() != 0) {
-                TransactionId s = queue.poll();
-                if (!visited.containsKey(s)) {
-                    visited.put(s, 1);
-                    if (this.dependencies.containsKey(s)) {
-                        queue.addAll(this.dependencies.get(s));
-                    }
-                } else {
-                    return true;
-                }
+        while (!stack.isEmpty()) {
+            TransactionId t = stack.pop();
+            if (t.equals(tid)) {
+                return true;
+            }
+            if (visited.add(t) && this.waitsFor.containsKey(t)) {
+                stack.addAll(this.waitsFor.get(t));
             }
         }
         return false;
@@ -91,65 +167,139 @@ public class LockManager {
 
     // Acquires a lock for Transaction tid on page with PageId pid.
     // Uses perms to determine if the lock is exclusive or shared.
-    public void acquire(TransactionId tid, PageId pid, Permissions perms) throws TransactionAbortedException {
-        if (this.locks.containsKey(pid) && this.locks.get(pid).holdsExclusiveLock(tid)) {
+    // Requests that cannot be granted immediately wait in the page's FIFO queue; while waiting,
+    // the deadlock policy decides whether tid keeps waiting or aborts.
+    public synchronized void acquire(TransactionId tid, PageId pid, Permissions perms) throws TransactionAbortedException {
+        if (!this.locks.containsKey(pid)) {
+            this.locks.put(pid, new LocksOnPage());
+        }
+        LocksOnPage onPage = this.locks.get(pid);
+        if (onPage.holdsExclusiveLock(tid) || (perms.equals(Permissions.READ_ONLY) && onPage.holdsSharedLock(tid))) {
+            return;
+        }
+        if (onPage.waiting.isEmpty() && onPage.compatible(tid, perms)) {
+            onPage.grant(tid, perms);
+            this.stats.acquired(pid);
             return;
         }
 
-        synchronized (this) {
-            if (isLocked(pid)) {
-                if (this.locks.get(pid).exclusivelyLocked() && !this.locks.get(pid).exclusiveLock.equals(tid)) {
-                    if (!this.dependencies.containsKey(this.locks.get(pid).exclusiveLock)) {
-                        this.dependencies.put(this.locks.get(pid).exclusiveLock, new HashSet<>());
-                    }
-                    this.dependencies.get(this.locks.get(pid).exclusiveLock).add(tid);
-                } else if (this.locks.get(pid).sharedLocks.size() > 0 && perms.equals(Permissions.READ_WRITE)) {
-                    for (TransactionId t : this.locks.get(pid).sharedLocks) {
-                        if (!t.equals(tid)) {
-                            if (!this.dependencies.containsKey(t)) {
-                                this.dependencies.put(t, new HashSet<>());
+        LockRequest request = new LockRequest(tid, perms, onPage.holdsSharedLock(tid));
+        onPage.enqueue(request);
+        // Requests already waiting may now be queued behind this one, so let them recompute what they wait for
+        notifyAll();
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        boolean granted = false;
+        try {
+            while (true) {
+                if (this.policy == DeadlockPolicy.WOUND_WAIT && this.wounded.contains(tid)) {
+                    throw new TransactionAbortedException();
+                }
+                if (onPage.waiting.getFirst() == request && onPage.compatible(tid, perms)) {
+                    onPage.waiting.removeFirst();
+                    onPage.grant(tid, perms);
+                    granted = true;
+                    this.stats.acquired(pid);
+                    // The next request in the queue may be compatible as well
+                    notifyAll();
+                    return;
+                }
+                Set<TransactionId> blockers = blockers(onPage, request);
+                long waitFor = 0;
+                switch (this.policy) {
+                    case DETECTION:
+                        this.waitsFor.put(tid, blockers);
+                        if (deadlocked(tid)) {
+                            throw new TransactionAbortedException();
+                        }
+                        break;
+                    case WAIT_DIE:
+                        // A younger transaction never waits for an older one
+                        for (TransactionId blocker : blockers) {
+                            if (tid.getId() > blocker.getId()) {
+                                throw new TransactionAbortedException();
+                            }
+                        }
+                        break;
+                    case WOUND_WAIT:
+                        // An older transaction aborts the younger ones in its way instead of waiting for them
+                        for (TransactionId blocker : blockers) {
+                            if (tid.getId() < blocker.getId() && this.wounded.add(blocker)) {
+                                notifyAll();
                             }
-                            this.dependencies.get(t).add(tid);
                         }
-                    }
+                        break;
+                    case TIMEOUT:
+                        waitFor = this.timeout - (System.currentTimeMillis() - start);
+                        if (waitFor <= 0) {
+                            throw new TransactionAbortedException();
+                        }
+                        break;
                 }
-            }
-        }
-
-        while (true) {
-            synchronized (this) {
-                if (deadlocked(tid)) {
+                try {
+                    wait(waitFor);
+                } catch (InterruptedException e) {
                     throw new TransactionAbortedException();
                 }
-                if (!this.locks.containsKey(pid)) {
-                    this.locks.put(pid, new LocksOnPage());
-                    if (perms.equals(Permissions.READ_ONLY)) {
-                        this.locks.get(pid).addSharedLock(tid);
-                    } else {
-                        this.locks.get(pid).setExclusiveLock(tid);
-                    }
-                    return;
-                } else if (!this.locks.get(pid).exclusivelyLocked()) {
-                    if (perms.equals(Permissions.READ_ONLY)) {
-                        this.locks.get(pid).addSharedLock(tid);
-                        return;
-                    }
-                    if (this.locks.get(pid).holdsSharedLock(tid) && this.locks.get(pid).sharedLocks.size() == 1) {
-                        this.locks.get(pid).removeSharedLock(tid);
-                        this.locks.get(pid).setExclusiveLock(tid);
-                        return;
-                    }
-                } else {
-                    if (this.locks.get(pid).exclusivelyLocked() && this.locks.get(pid).exclusiveLock.equals(tid)) {
-                        return;
-                    }
+            }
+        } catch (TransactionAbortedException e) {
+            this.stats.aborted(pid, request.upgrade);
+            throw e;
+        } finally {
+            this.stats.waited(pid, System.nanoTime() - startNanos);
+            this.waitsFor.remove(tid);
+            if (!granted) {
+                onPage.waiting.remove(request);
+                if (!onPage.isLocked() && onPage.waiting.isEmpty()) {
+                    this.locks.remove(pid);
                 }
+                // Requests queued behind this one may now be grantable
+                notifyAll();
+            }
+        }
+    }
+
+    // Returns the transactions that request must wait for: holders of conflicting locks
+    // and the transactions queued ahead of it
+    private Set<TransactionId> blockers(LocksOnPage onPage, LockRequest request) {
+        Set<TransactionId> blockers = new HashSet<>();
+        if (onPage.exclusivelyLocked() && !onPage.exclusiveLock.equals(request.tid)) {
+            blockers.add(onPage.exclusiveLock);
+        }
+        if (request.perms.equals(Permissions.READ_WRITE)) {
+            blockers.addAll(onPage.sharedLocks);
+        }
+        for (LockRequest ahead : onPage.waiting) {
+            if (ahead == request) {
+                break;
             }
+            blockers.add(ahead.tid);
         }
+        blockers.remove(request.tid);
+        return blockers;
+    }
+
+    // Sets the policy used to resolve deadlocks between transactions waiting for locks
+    public synchronized void setDeadlockPolicy(DeadlockPolicy policy) {
+        this.policy = policy;
+    }
+
+    public synchronized DeadlockPolicy getDeadlockPolicy() {
+        return this.policy;
+    }
 
+    // Returns the lock contention counters collected by this lock manager
+    public LockStats getStats() {
+        return this.stats;
     }
 
-    // Releases the lock on page pid held by transaction tid.
+    // Sets how long, in milliseconds, a transaction waits for a lock under the TIMEOUT policy before aborting
+    public synchronized void setTimeout(long millis) {
+        this.timeout = millis;
+    }
+
+    // Releases the lock on page pid held by transaction tid. The read set of an optimistic tid keeps pid.
+    // Releasing an exclusive lock bumps the version of the page, since its holder may have written it.
     public synchronized void release(TransactionId tid, PageId pid) {
         if (this.isLocked(pid)) {
             if (this.locks.get(pid).holdsSharedLock(tid)) {
@@ -157,11 +307,15 @@ public class LockManager {
             }
             if (this.locks.get(pid).holdsExclusiveLock(tid)) {
                 this.locks.get(pid).removeExclusiveLock(tid);
+                // versions are only compared against read sets, so other pages need none
+                if (readByAny(pid)) {
+                    this.versions.put(pid, versionOf(pid) + 1);
+                }
             }
-            // Maybe we don't need this check?
-            if (this.locks.get(pid).sharedLocks.size() == 0 && !this.locks.get(pid).exclusivelyLocked()) {
+            if (!this.locks.get(pid).isLocked() && this.locks.get(pid).waiting.isEmpty()) {
                 this.locks.remove(pid);
             }
+            notifyAll();
         }
     }
 
@@ -172,21 +326,37 @@ public class LockManager {
 
     // Returns true if the transaction tid holds a lock on the page pid
     public synchronized boolean holdsLock(TransactionId tid, PageId pid) {
-        return this.locks.get(pid).holdsExclusiveLock(tid) || this.locks.get(pid).holdsSharedLock(tid);
+        return this.locks.containsKey(pid)
+                && (this.locks.get(pid).holdsExclusiveLock(tid) || this.locks.get(pid).holdsSharedLock(tid));
     }
 
-    // Removes all held locks held by tid
-    public synchronized void removeAllHeld(TransactionId tid) {
-        List<PageId> toRelease = new ArrayList<>();
+    // Returns the pages tid holds a lock on
+    public synchronized List<PageId> heldPages(TransactionId tid) {
+        List<PageId> held = new ArrayList<>();
         for (PageId pid : this.locks.keySet()) {
             if (this.locks.get(pid).holdsExclusiveLock(tid) || this.locks.get(pid).holdsSharedLock(tid)) {
-                toRelease.add(pid);
+                held.add(pid);
             }
         }
+        return held;
+    }
+
+    // Removes all held locks held by tid
+    public synchronized void removeAllHeld(TransactionId tid) {
+        List<PageId> toRelease = heldPages(tid);
         for (PageId pid : toRelease) {
             this.release(tid, pid);
         }
-        this.dependencies.remove(tid);
+        Map<PageId, Long> reads = this.readSets.remove(tid);
+        if (reads != null) {
+            for (PageId pid : reads.keySet()) {
+                if (!readByAny(pid)) {
+                    this.versions.remove(pid);
+                }
+            }
+        }
+        this.wounded.remove(tid);
+        this.readOnly.remove(tid);
     }
 
     // Method that checks if a transaction holds any locks -- Used in BufferPool's flushPage()
@@ -199,11 +369,109 @@ public class LockManager {
         return false;
     }
 
+    // Marks tid as a read-only transaction. It may only take shared locks.
+    public synchronized void beginReadOnly(TransactionId tid) {
+        this.readOnly.add(tid);
+    }
+
+    // Returns true if tid was started with beginReadOnly and has not yet completed
+    public synchronized boolean isReadOnly(TransactionId tid) {
+        return this.readOnly.contains(tid);
+    }
+
+    // Marks tid as an optimistic transaction. Its reads take no locks and are
+    // instead recorded in a read set that is checked by validate() at commit.
+    public synchronized void beginOptimistic(TransactionId tid) {
+        this.readSets.put(tid, new HashMap<>());
+    }
+
+    // Returns true if tid was started with beginOptimistic and has not yet completed
+    public synchronized boolean isOptimistic(TransactionId tid) {
+        return this.readSets.containsKey(tid);
+    }
+
+    // What an optimistic transaction reads of a page, as decided by recordRead()
+    enum Read {
+        // the page in the buffer pool, which holds its own writes
+        OWN_WRITES,
+        // a copy of the page, which no other transaction has written since the read was recorded
+        COPY,
+        // the before image of the page, as another transaction is writing it or has written it since
+        BEFORE_IMAGE
+    }
+
+    // Records that optimistic transaction tid read page pid, along with the version of the page it saw,
+    // and decides what it reads. Pages that tid has already locked exclusively hold its own writes and
+    // need no validation. A read of a page being written by another transaction is marked stale.
+    public synchronized Read recordRead(TransactionId tid, PageId pid) {
+        if (this.locks.containsKey(pid) && this.locks.get(pid).holdsExclusiveLock(tid)) {
+            return Read.OWN_WRITES;
+        }
+        Map<PageId, Long> reads = this.readSets.get(tid);
+        if (!reads.containsKey(pid)) {
+            reads.put(pid, writeLockedByOther(tid, pid) ? STALE : versionOf(pid));
+        }
+        return unchanged(tid, pid) ? Read.COPY : Read.BEFORE_IMAGE;
+    }
+
+    // Returns true if no other transaction is writing page pid or has written it since optimistic
+    // transaction tid recorded reading it, so a copy of the page taken since then is not torn.
+    public synchronized boolean unchanged(TransactionId tid, PageId pid) {
+        Long seen = this.readSets.get(tid).get(pid);
+        return seen != null && seen == versionOf(pid) && !writeLockedByOther(tid, pid);
+    }
+
+    // Validates the read set of optimistic transaction tid. Returns false if any page it read
+    // was being written by another transaction at the time, has been written since,
+    // or is currently exclusively locked by another transaction.
+    public synchronized boolean validate(TransactionId tid) {
+        if (!this.readSets.containsKey(tid)) {
+            return true;
+        }
+        for (Map.Entry<PageId, Long> read : this.readSets.get(tid).entrySet()) {
+            PageId pid = read.getKey();
+            if (read.getValue() != versionOf(pid) || writeLockedByOther(tid, pid)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns true if any optimistic transaction has read page pid
+    private boolean readByAny(PageId pid) {
+        for (Map<PageId, Long> reads : this.readSets.values()) {
+            if (reads.containsKey(pid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the number of pages whose version is kept; used by tests
+    synchronized int numVersions() {
+        return this.versions.size();
+    }
+
+    private long versionOf(PageId pid) {
+        Long version = this.versions.get(pid);
+        return version == null ? 0 : version;
+    }
+
+    private boolean writeLockedByOther(TransactionId tid, PageId pid) {
+        return this.locks.containsKey(pid) && this.locks.get(pid).exclusivelyLocked()
+                && !this.locks.get(pid).holdsExclusiveLock(tid);
+    }
+
     // Used to reset the lock manager.
     // Done by removing all locks stored in the manager.
     public void reset() {
         this.locks.clear();
-        this.dependencies.clear();
+        this.waitsFor.clear();
+        this.versions.clear();
+        this.readSets.clear();
+        this.wounded.clear();
+        this.readOnly.clear();
+        this.stats.reset();
     }
 
 }
@@ -0,0 +1,171 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock contention counters kept by the LockManager, per page and per table.
+ * Counters are LongAdders, so recording is cheap enough to leave on; the
+ * only allocation happens the first time a page or table is seen. Only the
+ * most recently locked pages keep counters, so their number stays bounded
+ * however large the database is; the table counters cover every page.
+ */
+public class LockStats {
+
+    // Default number of pages that keep counters
+    public static final int DEFAULT_MAX_PAGES = 1024;
+
+    // Number of wait-time histogram buckets. Bucket i counts waits of less than 2^i microseconds;
+    // the last bucket also counts everything longer.
+    public static final int BUCKETS = 24;
+
+    // Counters for a single page or table
+    public static class Counters {
+
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder waits = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder deadlockAborts = new LongAdder();
+        private final LongAdder upgradeFailures = new LongAdder();
+        private final LongAdder[] waitHistogram = new LongAdder[BUCKETS];
+
+        // Counters of a page or table no lock has been requested on
+        private static final Counters NONE = new Counters();
+
+        private Counters() {
+            for (int i = 0; i < BUCKETS; i++) {
+                this.waitHistogram[i] = new LongAdder();
+            }
+        }
+
+        // Number of locks granted
+        public long getAcquisitions() {
+            return this.acquisitions.sum();
+        }
+
+        // Number of requests that could not be granted immediately
+        public long getWaits() {
+            return this.waits.sum();
+        }
+
+        // Total time spent waiting, in nanoseconds
+        public long getWaitNanos() {
+            return this.waitNanos.sum();
+        }
+
+        // Number of waiting transactions aborted by the deadlock policy
+        public long getDeadlockAborts() {
+            return this.deadlockAborts.sum();
+        }
+
+        // Number of shared-to-exclusive upgrades that ended in an abort
+        public long getUpgradeFailures() {
+            return this.upgradeFailures.sum();
+        }
+
+        // Returns the wait-time histogram; see BUCKETS
+        public long[] getWaitHistogram() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = this.waitHistogram[i].sum();
+            }
+            return counts;
+        }
+
+        private void waited(long nanos, int bucket) {
+            this.waits.increment();
+            this.waitNanos.add(nanos);
+            this.waitHistogram[bucket].increment();
+        }
+
+    }
+
+    // The pages that keep counters, least recently locked first
+    private final LinkedHashMap<PageId, Counters> pages;
+    private final Map<Integer, Counters> tables;
+
+    public LockStats() {
+        this(DEFAULT_MAX_PAGES);
+    }
+
+    // Creates stats that keep counters for at most maxPages pages, dropping the least recently locked
+    public LockStats(int maxPages) {
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageId, Counters> eldest) {
+                return size() > maxPages;
+            }
+        };
+        this.tables = new ConcurrentHashMap<>();
+    }
+
+    void acquired(PageId pid) {
+        page(pid).acquisitions.increment();
+        table(pid).acquisitions.increment();
+    }
+
+    void waited(PageId pid, long nanos) {
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000));
+        page(pid).waited(nanos, bucket);
+        table(pid).waited(nanos, bucket);
+    }
+
+    void aborted(PageId pid, boolean upgrade) {
+        page(pid).deadlockAborts.increment();
+        table(pid).deadlockAborts.increment();
+        if (upgrade) {
+            page(pid).upgradeFailures.increment();
+            table(pid).upgradeFailures.increment();
+        }
+    }
+
+    private Counters page(PageId pid) {
+        synchronized (this.pages) {
+            return this.pages.computeIfAbsent(pid, k -> new Counters());
+        }
+    }
+
+    private Counters table(PageId pid) {
+        return this.tables.computeIfAbsent(pid.getTableId(), k -> new Counters());
+    }
+
+    // Returns the counters for page pid, or null if no lock has been requested on it since the last
+    // reset, or it has not been locked recently enough to keep its counters
+    public Counters forPage(PageId pid) {
+        synchronized (this.pages) {
+            return this.pages.get(pid);
+        }
+    }
+
+    // Returns the counters for the table with id tableId, all zero if no lock has been requested on it
+    // since the last reset
+    public Counters forTable(int tableId) {
+        return this.tables.getOrDefault(tableId, Counters.NONE);
+    }
+
+    // Returns up to n of the pages that keep counters, ordered by the total time transactions spent
+    // waiting on them
+    public List<PageId> hotSpots(int n) {
+        Map<PageId, Long> waited = new HashMap<>();
+        synchronized (this.pages) {
+            for (Map.Entry<PageId, Counters> e : this.pages.entrySet()) {
+                waited.put(e.getKey(), e.getValue().getWaitNanos());
+            }
+        }
+        List<PageId> sorted = new ArrayList<>(waited.keySet());
+        sorted.sort((a, b) -> Long.compare(waited.get(b), waited.get(a)));
+        return sorted.subList(0, Math.min(n, sorted.size()));
+    }
+
+    // Drops all counters
+    public void reset() {
+        synchronized (this.pages) {
+            this.pages.clear();
+        }
+        this.tables.clear();
+    }
+
+}
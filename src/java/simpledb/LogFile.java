@@ -490,9 +490,9 @@ public class LogFile {
                 // Actually undoing everything
                 while (!undo.isEmpty()) {
                     Page beforeImage = undo.pop();
-                    HeapFile hf = (HeapFile) Database.getCatalog().getDatabaseFile(beforeImage.getId().getTableId());
+                    DbFile f = Database.getCatalog().getDatabaseFile(beforeImage.getId().getTableId());
                     Database.getBufferPool().discardPage(beforeImage.getId());
-                    hf.writePage(beforeImage);
+                    f.writePage(beforeImage);
                 }
             }
         }
@@ -555,9 +555,9 @@ public class LogFile {
                             readPageData(raf); // Skip over beforeImage
                             Page afterImage = readPageData(raf);
                             PageId pid = afterImage.getId();
-                            HeapFile hf = (HeapFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
+                            DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
                             Database.getBufferPool().discardPage(pid);
-                            hf.writePage(afterImage);
+                            f.writePage(afterImage);
                             break;
                         case BEGIN_RECORD:
                             tidToFirstLogRecord.put(tid, offset);
@@ -603,9 +603,21 @@ public class LogFile {
                     Page b = readPageData(raf);
                     offset = raf.readLong();
                     System.out.println("< UPDATE " + tid + " " + a.getId().getTableId() + ", " + a.getId().getPageNumber() + ", OFFSET: " + offset + " >");
-                    Iterator<Tuple> itr = ((HeapPage) b).iterator();
-                    while (itr.hasNext()) {
-                        System.out.println(itr.next());
+                    if (b instanceof TuplePage) {
+                        Iterator<Tuple> itr = ((TuplePage) b).iterator();
+                        while (itr.hasNext()) {
+                            System.out.println(itr.next());
+                        }
+                    } else if (b instanceof BTreeLeafPage) {
+                        Iterator<Tuple> itr = ((BTreeLeafPage) b).iterator();
+                        while (itr.hasNext()) {
+                            System.out.println(itr.next());
+                        }
+                    } else if (b instanceof HashBucketPage) {
+                        Iterator<Tuple> itr = ((HashBucketPage) b).iterator();
+                        while (itr.hasNext()) {
+                            System.out.println(itr.next());
+                        }
                     }
                     break;
                 case BEGIN_RECORD:
@@ -0,0 +1,18 @@
+package simpledb;
+
+/** A LogicalIndexJoinNode represents a join of two tables in a
+ * LogicalQueryPlan that is computed by probing an index on f2 of the
+ * inner table, t2, once per outer tuple, rather than by scanning t2 --
+ * inherits state from {@link LogicalJoinNode}
+ */
+public class LogicalIndexJoinNode extends LogicalJoinNode {
+
+    /** The index on f2 of t2 */
+    Index index;
+
+    public LogicalIndexJoinNode(LogicalJoinNode j, Index index) {
+        super(j.t1Alias, j.t2Alias, j.f1PureName, j.f2PureName, j.p);
+        this.index = index;
+    }
+
+}
@@ -6,6 +6,10 @@ import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.Collections;
+import java.util.Arrays;
 
 /**
  * LogicalPlan represents a logical query plan that has been through
@@ -27,6 +31,7 @@ public class LogicalPlan {
     private Vector<LogicalFilterNode> filters;
     private HashMap<String, OpIterator> subplanMap;
     private HashMap<String,Integer> tableMap;
+    private HashMap<String,Double> scanCosts;
 
     private Vector<LogicalSelectListNode> selectList;
     private String groupByField = null;
@@ -45,6 +50,7 @@ public class LogicalPlan {
         tables = new Vector<LogicalScanNode>();
         subplanMap = new HashMap<String, OpIterator>();
         tableMap = new HashMap<String,Integer>();
+        scanCosts = new HashMap<String,Double>();
 
         selectList = new Vector<LogicalSelectListNode>();
         this.query = "";
@@ -76,6 +82,19 @@ public class LogicalPlan {
         return tableMap.get(alias);
     }
     
+    /** Given a table alias, return the estimated cost of the access path {@link #physicalPlan}
+        chose for it, if it chose an {@link IndexScan}, a SeqScan of some of the columns of
+        a {@link ColumnFile}, or a SeqScan of a key range of a clustered table.
+
+        @param alias the table alias
+        @return the cost of reading the table through its index, its columns or its key range,
+          or null if the table is read with a full SeqScan, costing
+          {@link TableStats#estimateScanCost}
+     */
+    public Double getScanCost(String alias) {
+        return scanCosts.get(alias);
+    }
+
     public HashMap<String,Integer> getTableAliasToIdMapping()
     {
         return this.tableMap;
@@ -258,6 +277,79 @@ public class LogicalPlan {
 
     }
 
+    /** Return the fields of the table with the given alias that the select list, the
+     *  joins, the GROUP BY or the ORDER BY of this plan refer to, which are the fields a
+     *  scan of the table has to return once its filters are applied.
+     *  @param alias the alias of a table added via {@link #addScan}
+     *  @return the positions of the fields in the table, at least one, or null if the
+     *    select list has *
+     */
+    private TreeSet<Integer> referencedFields(String alias) {
+        ArrayList<String> names = new ArrayList<String>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.equals("null.*") && si.aggOp == null) {
+                return null;
+            }
+            names.add(si.fname);
+        }
+        for (LogicalJoinNode lj : joins) {
+            names.add(lj.f1QuantifiedName);
+            names.add(lj.f2QuantifiedName);
+        }
+        names.add(aggField);
+        names.add(groupByField);
+        names.add(oByField);
+
+        TupleDesc td = Database.getCatalog().getTupleDesc(getTableId(alias));
+        TreeSet<Integer> fields = new TreeSet<Integer>();
+        for (String name : names) {
+            if (name == null || !name.startsWith(alias + ".")) {
+                continue;
+            }
+            try {
+                fields.add(td.fieldNameToIndex(name.substring(alias.length() + 1)));
+            } catch (NoSuchElementException e) {
+                // not a field of the table, such as the name of an aggregate
+            }
+        }
+        if (fields.isEmpty()) {
+            // a tuple per row is still needed, to count it
+            fields.add(0);
+        }
+        return fields;
+    }
+
+    /**
+     * @return true if the table with alias may be the inner table of an
+     *   {@link IndexJoin}, which needs whole tuples of it: it is joined on a
+     *   field with an index
+     */
+    private boolean mayBeIndexJoined(String alias) {
+        TupleDesc td = Database.getCatalog().getTupleDesc(getTableId(alias));
+        for (LogicalJoinNode lj : joins) {
+            String field;
+            if (alias.equals(lj.t1Alias)) {
+                field = lj.f1PureName;
+            } else if (alias.equals(lj.t2Alias)) {
+                field = lj.f2PureName;
+            } else {
+                continue;
+            }
+            int f;
+            try {
+                f = td.fieldNameToIndex(field);
+            } catch (NoSuchElementException e) {
+                continue;
+            }
+            for (Index index : Database.getCatalog().getIndexes(getTableId(alias))) {
+                if (index.getKeyField() == f) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /** Convert the aggregate operator name s into an Aggregator.op operation.
      *  @throws ParsingException if s is not a valid operator name 
      */
@@ -289,6 +381,10 @@ public class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        HashMap<String,ArrayList<Predicate>> predicates = new HashMap<String,ArrayList<Predicate>>();
+        HashMap<String,IndexScan> indexScans = new HashMap<String,IndexScan>();
+        HashMap<String,Predicate> indexPredicates = new HashMap<String,Predicate>();
+        scanCosts.clear();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
@@ -323,10 +419,11 @@ public class LogicalPlan {
             } catch (java.util.NoSuchElementException e) {
                 throw new ParsingException("Unknown field in filter expression " + lf.fieldQuantifiedName);
             }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c).intValue());
-            else
-                f = new StringField(lf.c, Type.STRING_LEN);
+            try {
+                f = ftyp.parse(lf.c);
+            } catch (IllegalArgumentException e) {
+                throw new ParsingException("Bad constant " + lf.c + " for field " + lf.fieldQuantifiedName);
+            }
 
             Predicate p = null;
             try {
@@ -334,7 +431,7 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            predicates.computeIfAbsent(lf.tableAlias, k -> new ArrayList<Predicate>()).add(p);
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
@@ -342,8 +439,146 @@ public class LogicalPlan {
             filterSelectivities.put(lf.tableAlias, filterSelectivities.get(lf.tableAlias) * sel);
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
+
+            // a scan of a table clustered on the field reads about the share of its pages that
+            // hold the range, as it stops after the range and a zone map on the key, if the table
+            // keeps one, skips the pages before it
+            if (Database.getCatalog().getClusterKey(this.getTableId(lf.tableAlias)) == p.getField()
+                    && (ftyp == Type.INT_TYPE || lf.p == Predicate.Op.EQUALS
+                        || lf.p == Predicate.Op.LESS_THAN || lf.p == Predicate.Op.LESS_THAN_OR_EQ)) {
+                double cost = s.estimateScanCost() * sel;
+                Double best = scanCosts.get(lf.tableAlias);
+                if (best == null || cost < best) {
+                    scanCosts.put(lf.tableAlias, cost);
+                    indexScans.remove(lf.tableAlias);
+                    indexPredicates.remove(lf.tableAlias);
+                }
+            }
+
+            // read the table through an index on the field instead, if that is cheaper than a
+            // scan and than any index already considered for the table
+            for (Index index : Database.getCatalog().getIndexes(this.getTableId(lf.tableAlias))) {
+                if (index.getKeyField() != p.getField() || !index.supports(lf.p))
+                    continue;
+                double cost = s.estimateIndexScanCost(index, sel);
+                Double best = scanCosts.get(lf.tableAlias);
+                if (cost < (best == null ? s.estimateScanCost() : best)) {
+                    scanCosts.put(lf.tableAlias, cost);
+                    indexScans.put(lf.tableAlias, new IndexScan(t, index,
+                            new IndexPredicate(lf.p, f), lf.tableAlias));
+                    indexPredicates.put(lf.tableAlias, p);
+                }
+            }
+        }
+
+        // the predicate an IndexScan answers needs no Filter; the others filter its output.
+        // Without an index the predicates are pushed into the SeqScan, which evaluates them
+        // on the pages of the table rather than on tuples
+        for (Map.Entry<String, ArrayList<Predicate>> e : predicates.entrySet()) {
+            OpIterator subplan;
+            if (indexScans.containsKey(e.getKey())) {
+                subplan = indexScans.get(e.getKey());
+                for (Predicate p : e.getValue()) {
+                    if (p != indexPredicates.get(e.getKey())) {
+                        subplan = new Filter(p, subplan);
+                    }
+                }
+            } else {
+                subplan = new SeqScan(t, this.getTableId(e.getKey()), e.getKey(), e.getValue());
+            }
+            subplanMap.put(e.getKey(), subplan);
+        }
+
+        // a table stored by column is scanned for the fields the rest of the plan uses only
+        for (LogicalScanNode table : tables) {
+            if (indexScans.containsKey(table.alias)
+                    || !(Database.getCatalog().getDatabaseFile(table.t) instanceof ColumnFile)) {
+                continue;
+            }
+            TreeSet<Integer> columns = referencedFields(table.alias);
+            if (columns == null) {
+                continue;
+            }
+            List<Predicate> preds = predicates.containsKey(table.alias)
+                    ? predicates.get(table.alias) : Collections.<Predicate>emptyList();
+            TreeSet<Integer> read = new TreeSet<Integer>(columns);
+            for (Predicate p : preds) {
+                read.add(p.getField());
+            }
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+            scanCosts.put(table.alias, s.estimateScanCost(read));
+            int[] cols = new int[columns.size()];
+            int i = 0;
+            for (int c : columns) {
+                cols[i++] = c;
+            }
+            subplanMap.put(table.alias, new SeqScan(t, table.t, table.alias, preds, cols));
         }
         
+        // a table whose fields the query uses are all held by an index is read from the index
+        // alone, if that is cheaper than the access path chosen so far
+        for (LogicalScanNode table : tables) {
+            if (!(Database.getCatalog().getDatabaseFile(table.t) instanceof HeapFile)
+                    || mayBeIndexJoined(table.alias)) {
+                continue;
+            }
+            TreeSet<Integer> read = referencedFields(table.alias);
+            if (read == null) {
+                continue;
+            }
+            List<Predicate> preds = predicates.containsKey(table.alias)
+                    ? predicates.get(table.alias) : Collections.<Predicate>emptyList();
+            for (Predicate p : preds) {
+                read.add(p.getField());
+            }
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+            Double best = scanCosts.get(table.alias);
+            double bestCost = best == null ? s.estimateScanCost() : best;
+            Index bestIndex = null;
+            Predicate bestPred = null;
+            for (Index index : Database.getCatalog().getIndexes(table.t)) {
+                if (!index.covers(read)) {
+                    continue;
+                }
+                // a predicate on the key limits the entries read; without one every entry is
+                Predicate keyPred = null;
+                double sel = 1.0;
+                for (Predicate p : preds) {
+                    if (p.getField() == index.getKeyField() && index.supports(p.getOp())) {
+                        keyPred = p;
+                        sel = s.estimateSelectivity(p.getField(), p.getOp(), p.getOperand());
+                        break;
+                    }
+                }
+                double cost = s.estimateIndexOnlyScanCost(index, sel);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestIndex = index;
+                    bestPred = keyPred;
+                }
+            }
+            if (bestIndex == null) {
+                continue;
+            }
+            int[] cols = new int[read.size()];
+            int i = 0;
+            for (int c : read) {
+                cols[i++] = c;
+            }
+            OpIterator subplan = new IndexScan(t, bestIndex,
+                    bestPred == null ? null : new IndexPredicate(bestPred.getOp(), bestPred.getOperand()),
+                    table.alias, cols);
+            // the other predicates filter the fields the scan returns
+            for (Predicate p : preds) {
+                if (p != bestPred) {
+                    subplan = new Filter(new Predicate(Arrays.binarySearch(cols, p.getField()), p.getOp(),
+                            p.getOperand()), subplan);
+                }
+            }
+            scanCosts.put(table.alias, bestCost);
+            subplanMap.put(table.alias, subplan);
+        }
+
         JoinOptimizer jo = new JoinOptimizer(this,joins);
 
         joins = jo.orderJoins(statsMap,filterSelectivities,explain);
@@ -462,6 +697,10 @@ public class LogicalPlan {
             TupleDesc td = node.getTupleDesc();
             Aggregate aggNode;
             try {
+                Type aggType = td.getFieldType(td.fieldNameToIndex(aggField));
+                if (!Aggregate.supports(aggType, getAggOp(aggOp))) {
+                    throw new ParsingException("Cannot compute " + aggOp + " over " + aggType + " field " + aggField);
+                }
                 aggNode = new Aggregate(node,
                                         td.fieldNameToIndex(aggField),
                                         groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
@@ -475,7 +714,11 @@ public class LogicalPlan {
         }
 
         if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+            int field = node.getTupleDesc().fieldNameToIndex(oByField);
+            // a scan of a table clustered on the field already returns its tuples in order
+            if (!oByAsc || !(node instanceof SeqScan) || !((SeqScan) node).isSortedOn(field)) {
+                node = new OrderBy(field, oByAsc, node);
+            }
         }
 
         return new Project(outFields, outTypes, node);
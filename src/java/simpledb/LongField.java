@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Instance of Field that stores a single 64-bit integer.
+ */
+public class LongField implements NumericField {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long value;
+
+    public long getValue() {
+        return value;
+    }
+
+    public long longValue() {
+        return value;
+    }
+
+    public double doubleValue() {
+        return value;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param l The value of this field.
+     */
+    public LongField(long l) {
+        value = l;
+    }
+
+    public String toString() {
+        return Long.toString(value);
+    }
+
+    public int hashCode() {
+        return NumericField.hash(value);
+    }
+
+    public boolean equals(Object field) {
+        return NumericField.equals(this, field);
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeLong(value);
+    }
+
+    public void serialize(ByteBuffer buf, int offset) {
+        buf.putLong(offset, value);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws ClassCastException if val is not an INT, LONG or DOUBLE field
+     * @see Field#compare
+     * @see NumericField#compare(NumericField, Field)
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return NumericField.satisfies(op, NumericField.compare(this, val));
+    }
+
+    /**
+     * Return the Type of this field.
+     * @return Type.LONG_TYPE
+     */
+	public Type getType() {
+		return Type.LONG_TYPE;
+	}
+}
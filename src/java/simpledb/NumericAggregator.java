@@ -0,0 +1,134 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Knows how to compute some aggregate over a set of LongFields, DoubleFields
+ * or DateFields. Sums are kept as longs for LONG and DATE fields and as
+ * doubles for DOUBLE fields; the results of MIN, MAX, SUM and AVG have the
+ * type of the aggregate field, and COUNT results are INT.
+ */
+public class NumericAggregator implements Aggregator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int gbfield, afield;
+    private final Type afieldtype;
+    private final Op what;
+    private final TupleDesc td;
+    // running aggregate of each group, keyed by group-by value, or by null if there is no grouping
+    private final Map<Field, Group> groups;
+
+    private static class Group implements java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int count;
+        long longSum;
+        double doubleSum;
+        Field min, max;
+    }
+
+    /**
+     * Aggregate constructor
+     *
+     * @param gbfield
+     *            the 0-based index of the group-by field in the tuple, or
+     *            NO_GROUPING if there is no grouping
+     * @param gbfieldtype
+     *            the type of the group by field (e.g., Type.INT_TYPE), or null
+     *            if there is no grouping
+     * @param afield
+     *            the 0-based index of the aggregate field in the tuple
+     * @param afieldtype
+     *            the type of the aggregate field; LONG_TYPE, DOUBLE_TYPE or
+     *            DATE_TYPE
+     * @param what
+     *            the aggregation operator
+     * @throws IllegalArgumentException if what is not MIN, MAX, SUM, AVG or
+     *            COUNT, or is SUM over a DATE field; the planner rejects
+     *            these with a ParsingException first
+     * @see Aggregate#supports
+     */
+    public NumericAggregator(int gbfield, Type gbfieldtype, int afield, Type afieldtype, Op what) {
+        if (what.ordinal() > Op.COUNT.ordinal() || !Aggregate.supports(afieldtype, what)) {
+            throw new IllegalArgumentException("unsupported aggregate " + what + " over " + afieldtype);
+        }
+        this.gbfield = gbfield;
+        this.afield = afield;
+        this.afieldtype = afieldtype;
+        this.what = what;
+        Type resultType = what == Op.COUNT ? Type.INT_TYPE : afieldtype;
+        if (gbfield == NO_GROUPING) {
+            this.td = new TupleDesc(new Type[]{resultType});
+        } else {
+            this.td = new TupleDesc(new Type[]{gbfieldtype, resultType});
+        }
+        this.groups = new LinkedHashMap<>();
+    }
+
+    /**
+     * Merge a new tuple into the aggregate, grouping as indicated in the
+     * constructor
+     *
+     * @param tup
+     *            the Tuple containing an aggregate field and a group-by field
+     */
+    public void mergeTupleIntoGroup(Tuple tup) {
+        Field key = this.gbfield == NO_GROUPING ? null : tup.getField(this.gbfield);
+        Group g = this.groups.computeIfAbsent(key, k -> new Group());
+        NumericField agg = (NumericField) tup.getField(this.afield);
+        g.count++;
+        g.longSum += agg.longValue();
+        g.doubleSum += agg.doubleValue();
+        if (g.min == null || agg.compare(Predicate.Op.LESS_THAN, g.min)) {
+            g.min = agg;
+        }
+        if (g.max == null || agg.compare(Predicate.Op.GREATER_THAN, g.max)) {
+            g.max = agg;
+        }
+    }
+
+    private Field result(Group g) {
+        switch (this.what) {
+            case MIN:
+                return g.min;
+            case MAX:
+                return g.max;
+            case COUNT:
+                return new IntField(g.count);
+            case SUM:
+                return this.afieldtype == Type.DOUBLE_TYPE ? new DoubleField(g.doubleSum) : new LongField(g.longSum);
+            case AVG:
+                if (this.afieldtype == Type.DOUBLE_TYPE) {
+                    return new DoubleField(g.doubleSum / g.count);
+                } else if (this.afieldtype == Type.DATE_TYPE) {
+                    return new DateField((int) (g.longSum / g.count));
+                }
+                return new LongField(g.longSum / g.count);
+        }
+        return null;
+    }
+
+    /**
+     * Create a OpIterator over group aggregate results.
+     *
+     * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
+     *         if using group, or a single (aggregateVal) if no grouping. There
+     *         are no results if no tuples were merged.
+     */
+    public OpIterator iterator() {
+        List<Tuple> results = new ArrayList<>();
+        for (Map.Entry<Field, Group> e : this.groups.entrySet()) {
+            Tuple t = new Tuple(this.td);
+            if (this.gbfield == NO_GROUPING) {
+                t.setField(0, result(e.getValue()));
+            } else {
+                t.setField(0, e.getKey());
+                t.setField(1, result(e.getValue()));
+            }
+            results.add(t);
+        }
+        return new TupleIterator(this.td, results);
+    }
+
+}
@@ -0,0 +1,105 @@
+package simpledb;
+
+/**
+ * A Field whose value is a number, so that aggregates and histograms can
+ * treat INT, LONG, DOUBLE and DATE fields alike. A DATE is the number of
+ * days since 1970-01-01.
+ * <p>
+ * INT, LONG and DOUBLE fields compare, and are equal, by value whatever
+ * their types, so that a column of one type can be joined with a column of
+ * another; equal values have the same hash code. DATE fields only compare
+ * with DATE fields.
+ */
+public interface NumericField extends Field {
+
+    /**
+     * @return the value of this field, truncated to a long if it is a DOUBLE
+     */
+    public long longValue();
+
+    /**
+     * @return the value of this field as a double
+     */
+    public double doubleValue();
+
+    /**
+     * Compares the values of a and b, which are both INT, LONG or DOUBLE
+     * fields, of any of these types, or both DATE fields.
+     *
+     * @return less than, equal to or greater than zero as a is less than,
+     *   equal to or greater than b
+     * @throws ClassCastException if b is not a NumericField, or only one of
+     *   a and b is a DATE
+     */
+    static int compare(NumericField a, Field b) {
+        NumericField n = (NumericField) b;
+        Type ta = a.getType(), tb = b.getType();
+        if ((ta == Type.DATE_TYPE) != (tb == Type.DATE_TYPE)) {
+            throw new ClassCastException("cannot compare " + ta + " with " + tb);
+        }
+        if (ta != Type.DOUBLE_TYPE && tb != Type.DOUBLE_TYPE) {
+            return Long.compare(a.longValue(), n.longValue());
+        } else if (ta == tb) {
+            return Double.compare(a.doubleValue(), n.doubleValue());
+        } else if (ta == Type.DOUBLE_TYPE) {
+            return compare(a.doubleValue(), n.longValue());
+        }
+        return -compare(n.doubleValue(), a.longValue());
+    }
+
+    /**
+     * Compares d with l exactly, even where l has no exact double.
+     */
+    private static int compare(double d, long l) {
+        if (Double.isNaN(d) || d >= 0x1p63) {
+            return 1;
+        } else if (d < -0x1p63) {
+            return -1;
+        }
+        long whole = (long) d;
+        if (whole != l) {
+            return Long.compare(whole, l);
+        }
+        // d is l plus a fraction with the sign of d
+        return d - whole > 0 ? 1 : d - whole < 0 ? -1 : 0;
+    }
+
+    /**
+     * @return true if a comparison that returned cmp satisfies op
+     */
+    static boolean satisfies(Predicate.Op op, int cmp) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return cmp == 0;
+        case NOT_EQUALS:
+            return cmp != 0;
+        case GREATER_THAN:
+            return cmp > 0;
+        case GREATER_THAN_OR_EQ:
+            return cmp >= 0;
+        case LESS_THAN:
+            return cmp < 0;
+        case LESS_THAN_OR_EQ:
+            return cmp <= 0;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if o is an INT, LONG or DOUBLE field with the same value
+     *   as a, which is one too
+     */
+    static boolean equals(NumericField a, Object o) {
+        return o instanceof NumericField && ((Field) o).getType() != Type.DATE_TYPE && compare(a, (Field) o) == 0;
+    }
+
+    /**
+     * @return the hash code of an INT, LONG or DOUBLE field whose value is
+     *   the integer v
+     */
+    static int hash(long v) {
+        return v == (int) v ? (int) v : Long.hashCode(v);
+    }
+
+}
@@ -51,6 +51,13 @@ public interface Page {
     */
     public Page getBeforeImage();
 
+    /**
+     * Returns a copy of this page, which later changes to this page do not
+     * affect. Optimistic transactions read copies of the pages in the
+     * BufferPool, since other transactions may be writing those.
+     */
+    public Page copy();
+
     /*
      * a transaction that wrote this page just committed it.
      * copy current content to the before image.
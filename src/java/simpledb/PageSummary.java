@@ -0,0 +1,256 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A summary of the values of chosen columns on each page of a HeapFile,
+ * such as a {@link ZoneMap} or {@link BloomFilters}, so that a scan with
+ * predicates on those columns can skip the pages that cannot satisfy them.
+ * <p>
+ * A summary only ever has to cover the values on its page, not be exact.
+ * Inserting a tuple adds its values to the summary of its page. Deleting one
+ * leaves the summary as it is, as an abort puts the tuple back without an
+ * insert; the summary is rebuilt from the tuples whenever the page is
+ * written to disk, which is also how rolled back and recovered pages are
+ * restored. A page whose summary is not known, as for files written by
+ * {@link HeapFileEncoder}, is never skipped until a scan reads it while it
+ * matches the disk.
+ * <p>
+ * The summaries are kept in a side file next to the heap file: a header
+ * with the length and modification time of the heap file when the side file
+ * was last written and the columns it covers, then for each page a byte
+ * that is 1 if its summary is known and the summary itself. A side file
+ * whose header does not match is deleted.
+ * <p>
+ * Subclasses hold the summaries of the pages in memory and are only called
+ * while holding the lock on this object.
+ *
+ * @see HeapFile#iterator(TransactionId, List)
+ */
+public abstract class PageSummary {
+
+    private final File f;
+    private final File heap;
+    // the summarized columns, in field order
+    protected final int[] columns;
+    // the position of each field of the table in columns, or -1 if it is not summarized
+    protected final int[] column;
+    private final int headerSize;
+    private final BitSet known;
+
+    /**
+     * Creates the summary of the given columns of the heap file heap, with
+     * TupleDesc td, kept in the side file heap + suffix. The subclass reads
+     * the side file with {@link #load} once it is set up.
+     */
+    protected PageSummary(File heap, TupleDesc td, int[] columns, String suffix) {
+        this.f = new File(heap.getPath() + suffix);
+        this.heap = heap;
+        this.columns = columns.clone();
+        Arrays.sort(this.columns);
+        this.column = new int[td.numFields()];
+        Arrays.fill(this.column, -1);
+        for (int i = 0; i < this.columns.length; i++) {
+            this.column[this.columns[i]] = i;
+        }
+        this.headerSize = 20 + 4 * this.columns.length;
+        this.known = new BitSet();
+    }
+
+    /**
+     * @return the size of the summary of a page in the side file, in bytes
+     */
+    protected abstract int entrySize();
+
+    /**
+     * Makes room for the summary of page pno.
+     */
+    protected abstract void grow(int pno);
+
+    /**
+     * Sets the summary of page pno, for which there is room, to that of a
+     * page without tuples.
+     */
+    protected abstract void clear(int pno);
+
+    /**
+     * Adds t, on page pno, to its summary.
+     */
+    protected abstract void add(int pno, Tuple t);
+
+    /**
+     * Reads the summary of page pno, for which there is room, from buf at
+     * offset.
+     */
+    protected abstract void get(int pno, ByteBuffer buf, int offset);
+
+    /**
+     * Writes the summary of page pno to buf at offset.
+     */
+    protected abstract void put(int pno, ByteBuffer buf, int offset);
+
+    /**
+     * @return false if no tuple on page pno, whose summary is known, can
+     *   satisfy p, which applies to a summarized field
+     */
+    protected abstract boolean mayMatch(int pno, Predicate p);
+
+    /**
+     * Returns the side file holding the summaries.
+     */
+    public File getFile() {
+        return this.f;
+    }
+
+    /**
+     * @return the fields of the table that are summarized
+     */
+    public int[] getColumns() {
+        return this.columns.clone();
+    }
+
+    /**
+     * @return true if field is summarized
+     */
+    public boolean covers(int field) {
+        return this.column[field] >= 0;
+    }
+
+    /**
+     * Reads the summaries from the side file, if it matches the heap file.
+     */
+    protected final synchronized void load() {
+        if (!this.f.exists()) {
+            return;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(this.f, "r");
+            boolean matches;
+            try {
+                matches = file.length() >= this.headerSize && file.readLong() == this.heap.length()
+                        && file.readLong() == this.heap.lastModified() && file.readInt() == this.columns.length;
+                for (int i = 0; matches && i < this.columns.length; i++) {
+                    matches = file.readInt() == this.columns[i];
+                }
+                if (matches) {
+                    byte[] b = new byte[(int) file.length() - this.headerSize];
+                    file.readFully(b);
+                    ByteBuffer buf = ByteBuffer.wrap(b);
+                    int size = 1 + entrySize();
+                    for (int pno = 0; (pno + 1) * size <= b.length; pno++) {
+                        if (buf.get(pno * size) == 1) {
+                            grow(pno);
+                            get(pno, buf, pno * size + 1);
+                            this.known.set(pno);
+                        }
+                    }
+                }
+            } finally {
+                file.close();
+            }
+            if (!matches) {
+                // written for another version of the heap file, or other columns
+                delete();
+            }
+        } catch (IOException e) {
+            // the summaries are only hints: without them every page is read
+            e.printStackTrace();
+            this.known.clear();
+        }
+    }
+
+    /**
+     * Forgets the summaries and deletes the side file, as when the heap file
+     * stops keeping them.
+     */
+    public synchronized void delete() {
+        this.known.clear();
+        this.f.delete();
+    }
+
+    /**
+     * Adds t, just inserted into page pno, to its summary.
+     */
+    public synchronized void insert(int pno, Tuple t) {
+        if (this.known.get(pno)) {
+            add(pno, t);
+        }
+    }
+
+    /**
+     * Builds the summary of page p from the values on it, if it is not known
+     * yet. p must hold what is on disk, as a clean page in the BufferPool
+     * does.
+     */
+    public void read(TuplePage p) {
+        if (!isKnown(p.getId().getPageNumber())) {
+            compute(p);
+        }
+    }
+
+    /**
+     * @return true if the summary of page pno is known
+     */
+    protected synchronized boolean isKnown(int pno) {
+        return this.known.get(pno);
+    }
+
+    private synchronized void compute(TuplePage p) {
+        int pno = p.getId().getPageNumber();
+        grow(pno);
+        clear(pno);
+        this.known.set(pno);
+        Iterator<Tuple> it = p.iterator();
+        while (it.hasNext()) {
+            add(pno, it.next());
+        }
+    }
+
+    /**
+     * Rebuilds the summaries of pages, just written to the heap file, from
+     * the values on them, and writes them to the side file.
+     */
+    public synchronized void written(List<? extends TuplePage> pages) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.f, "rw");
+        try {
+            int size = 1 + entrySize();
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            for (TuplePage p : pages) {
+                compute(p);
+                int pno = p.getId().getPageNumber();
+                buf.put(0, (byte) 1);
+                put(pno, buf, 1);
+                file.seek(this.headerSize + (long) pno * size);
+                file.write(buf.array());
+            }
+            file.seek(0);
+            file.writeLong(this.heap.length());
+            file.writeLong(this.heap.lastModified());
+            file.writeInt(this.columns.length);
+            for (int c : this.columns) {
+                file.writeInt(c);
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return false if no tuple on page pno can satisfy every predicate in
+     *   predicates, which apply to the fields of the table
+     */
+    public synchronized boolean mayMatch(int pno, List<Predicate> predicates) {
+        if (!this.known.get(pno)) {
+            return true;
+        }
+        for (Predicate p : predicates) {
+            if (covers(p.getField()) && !mayMatch(pno, p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
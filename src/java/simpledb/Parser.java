@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -356,23 +358,31 @@ public class Parser {
                     throw new simpledb.ParsingException(
                             "Complex expressions not allowed in INSERT statements.");
                 ZConstant zc = (ZConstant) e;
+                Type type = td.getFieldType(i);
                 if (zc.getType() == ZConstant.NUMBER) {
-                    if (td.getFieldType(i) != Type.INT_TYPE) {
+                    if (!type.isNumeric() || type == Type.DATE_TYPE) {
                         throw new simpledb.ParsingException("Value "
                                 + zc.getValue()
-                                + " is not an integer, expected a string.");
+                                + " is a number, expected a " + type + ".");
+                    }
+                    try {
+                        t.setField(i, type.parse(zc.getValue()));
+                    } catch (IllegalArgumentException ex) {
+                        throw new simpledb.ParsingException("Value "
+                                + zc.getValue() + " is not a " + type + ".");
                     }
-                    IntField f = new IntField(new Integer(zc.getValue()));
-                    t.setField(i, f);
                 } else if (zc.getType() == ZConstant.STRING) {
-                    if (td.getFieldType(i) != Type.STRING_TYPE) {
+                    if (type.isNumeric() && type != Type.DATE_TYPE) {
                         throw new simpledb.ParsingException("Value "
                                 + zc.getValue()
-                                + " is a string, expected an integer.");
+                                + " is a string, expected a " + type + ".");
+                    }
+                    try {
+                        t.setField(i, type.parse(zc.getValue()));
+                    } catch (IllegalArgumentException ex) {
+                        throw new simpledb.ParsingException("Value "
+                                + zc.getValue() + " is not a " + type + ".");
                     }
-                    StringField f = new StringField(zc.getValue(),
-                            Type.STRING_LEN);
-                    t.setField(i, f);
                 } else {
                     throw new simpledb.ParsingException(
                             "Only string or int fields are supported.");
@@ -501,18 +511,137 @@ public class Parser {
         }
     }
 
+    /**
+     * A COPY table FROM 'file' [DELIMITER 'c'] statement, which bulk loads a
+     * delimited text file into a table. Zql does not know this statement, so
+     * it is recognized before the statement is handed to Zql.
+     */
+    static class CopyStatement implements ZStatement {
+        private static final long serialVersionUID = 1L;
+
+        static final Pattern PATTERN = Pattern.compile(
+                "\\s*copy\\s+(\\S+)\\s+from\\s+'([^']*)'(?:\\s+delimiter\\s+'(.)')?\\s*;?\\s*",
+                Pattern.CASE_INSENSITIVE);
+
+        final String table;
+        final String file;
+        final char delimiter;
+
+        CopyStatement(String table, String file, char delimiter) {
+            this.table = table;
+            this.file = file;
+            this.delimiter = delimiter;
+        }
+
+        public String toString() {
+            return "COPY " + table + " FROM '" + file + "' DELIMITER '" + delimiter + "'";
+        }
+    }
+
+    /**
+     * A CLUSTER table [ON field] statement, which stores the tuples of a
+     * table in order of field, or of the field it is already clustered on.
+     * Like COPY, it is recognized before the statement is handed to Zql.
+     */
+    static class ClusterStatement implements ZStatement {
+        private static final long serialVersionUID = 1L;
+
+        static final Pattern PATTERN = Pattern.compile(
+                "\\s*cluster\\s+([^\\s;]+)(?:\\s+on\\s+([^\\s;]+))?\\s*;?\\s*",
+                Pattern.CASE_INSENSITIVE);
+
+        final String table;
+        final String field;
+
+        ClusterStatement(String table, String field) {
+            this.table = table;
+            this.field = field;
+        }
+
+        public String toString() {
+            return "CLUSTER " + table + (field == null ? "" : " ON " + field);
+        }
+    }
+
+    private ZStatement readStatement(InputStream is) throws IOException, Zql.ParseException {
+        byte[] bytes = is.readAllBytes();
+        Matcher m = CopyStatement.PATTERN.matcher(new String(bytes, "UTF-8"));
+        if (m.matches()) {
+            return new CopyStatement(m.group(1), m.group(2),
+                    m.group(3) == null ? ',' : m.group(3).charAt(0));
+        }
+        m = ClusterStatement.PATTERN.matcher(new String(bytes, "UTF-8"));
+        if (m.matches()) {
+            return new ClusterStatement(m.group(1), m.group(2));
+        }
+        return new ZqlParser(new ByteArrayInputStream(bytes)).readStatement();
+    }
+
+    public Query handleCopyStatement(CopyStatement s, TransactionId tid)
+            throws DbException, simpledb.ParsingException {
+        int tableId;
+        try {
+            tableId = Database.getCatalog().getTableId(s.table);
+        } catch (NoSuchElementException e) {
+            throw new simpledb.ParsingException("Unknown table : " + s.table);
+        }
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableId);
+        Query copyQ = new Query(tid);
+        copyQ.setPhysicalPlan(new BulkLoad(tid,
+                new TextScan(new File(s.file), td, s.delimiter), tableId));
+        return copyQ;
+    }
+
+    /**
+     * Clusters a table, in a transaction of its own, so it cannot be run
+     * inside a user transaction.
+     */
+    public void handleClusterStatement(ClusterStatement s)
+            throws DbException, IOException, TransactionAbortedException, simpledb.ParsingException {
+        if (this.inUserTrans) {
+            throw new simpledb.ParsingException("CLUSTER cannot run inside a transaction");
+        }
+        int tableId;
+        try {
+            tableId = Database.getCatalog().getTableId(s.table);
+        } catch (NoSuchElementException e) {
+            throw new simpledb.ParsingException("Unknown table : " + s.table);
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        if (!(file instanceof HeapFile)) {
+            throw new simpledb.ParsingException("Only heap files can be clustered: " + s.table);
+        }
+        HeapFile hf = (HeapFile) file;
+        int field = hf.getClusterKey();
+        if (s.field != null) {
+            String name = s.field.startsWith(s.table + ".") ? s.field.substring(s.table.length() + 1) : s.field;
+            try {
+                field = hf.getTupleDesc().fieldNameToIndex(name);
+            } catch (NoSuchElementException e) {
+                throw new simpledb.ParsingException("Unknown field " + s.field);
+            }
+        } else if (field < 0) {
+            throw new simpledb.ParsingException("Table " + s.table + " has no cluster key; use CLUSTER table ON field");
+        }
+        int n = hf.cluster(field);
+        System.out.println("Clustered " + n + " tuples of " + s.table + " on "
+                + hf.getTupleDesc().getFieldName(field));
+    }
+
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
-            ZStatement s = p.readStatement();
+            ZStatement s = readStatement(is);
             System.out.println(s);
 
             Query query = null;
             if (s instanceof ZTransactStmt)
                 handleTransactStatement((ZTransactStmt) s);
+            else if (s instanceof ClusterStatement)
+                handleClusterStatement((ClusterStatement) s);
             else {
                 if (!this.inUserTrans) {
-                    curtrans = new Transaction();
+                    // An autocommit SELECT cannot write, so it skips logging
+                    curtrans = new Transaction(false, s instanceof ZQuery);
                     curtrans.start();
                     System.out.println("Started a new transaction tid = "
                             + curtrans.getId().getId());
@@ -527,6 +656,9 @@ public class Parser {
                     else if (s instanceof ZQuery)
                         query = handleQueryStatement((ZQuery) s,
                                 curtrans.getId());
+                    else if (s instanceof CopyStatement)
+                        query = handleCopyStatement((CopyStatement) s,
+                                curtrans.getId());
                     else {
                         System.out
                                 .println("Can't parse "
@@ -582,7 +714,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "copy", "cluster" };
 
     public static void main(String argv[]) throws IOException {
 
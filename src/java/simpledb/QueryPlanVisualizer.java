@@ -9,10 +9,12 @@ public class QueryPlanVisualizer {
 
     static final String JOIN = "J";
     static final String HASH_JOIN = "J(H)";
+    static final String INDEX_JOIN = "J(I)";
     static final String SELECT = "σ";
     static final String PROJECT = "π";
     static final String RENAME = "P";
     static final String SCAN = "scan";
+    static final String INDEX_SCAN = "iscan";
     static final String ORDERBY = "o";
     static final String GROUPBY = "g";
     static final String SPACE = "  ";
@@ -26,7 +28,7 @@ public class QueryPlanVisualizer {
         Operator o = (Operator) root;
         OpIterator[] children = o.getChildren();
 
-        if (o instanceof Join || o instanceof HashEquiJoin) {
+        if (o instanceof Join || o instanceof HashEquiJoin || o instanceof IndexJoin) {
             int d1 = this.calculateQueryPlanTreeDepth(children[0]);
             int d2 = this.calculateQueryPlanTreeDepth(children[1]);
             return Math.max(d1, d2) + 3;
@@ -65,24 +67,50 @@ public class QueryPlanVisualizer {
         int adjustDepth = currentDepth == 0 ? -1 : 0;
         SubTreeDescriptor thisNode = new SubTreeDescriptor(null, null);
 
-        if (queryPlan instanceof SeqScan) {
-            SeqScan s = (SeqScan) queryPlan;
-            String tableName = s.getTableName();
-            String alias = s.getAlias();
+        if (queryPlan instanceof SeqScan || queryPlan instanceof IndexScan) {
+            String scan, tableName, alias, cond = "";
+            if (queryPlan instanceof SeqScan) {
+                SeqScan s = (SeqScan) queryPlan;
+                scan = SCAN;
+                tableName = s.getTableName();
+                alias = s.getAlias();
+                // the predicates apply to the fields of the table, which the scan may not return
+                TupleDesc td = Database.getCatalog().getTupleDesc(s.getTableId());
+                for (Predicate p : s.getPredicates()) {
+                    cond += ", " + alias + "." + td.getFieldName(p.getField())
+                            + p.getOp() + p.getOperand();
+                }
+                if (s.getColumns() != null) {
+                    cond += ", cols " + s.getTupleDesc().numFields() + "/" + td.numFields();
+                }
+            } else {
+                IndexScan s = (IndexScan) queryPlan;
+                scan = INDEX_SCAN;
+                tableName = s.getTableName();
+                alias = s.getAlias();
+                TupleDesc td = Database.getCatalog().getTupleDesc(s.getIndex().getTableId());
+                if (s.getPredicate() != null) {
+                    cond = ", " + alias + "." + td.getFieldName(s.getIndex().getKeyField())
+                            + s.getPredicate().getOp() + s.getPredicate().getField();
+                }
+                if (s.getColumns() != null) {
+                    cond += ", index only";
+                }
+            }
 //            TupleDesc td = s.getTupleDesc();
             if (!tableName.equals(alias))
                 alias = " " + alias;
             else
                 alias = "";
             thisNode.text = String
-                    .format("%1$s(%2$s)", SCAN, tableName + alias);
-            if (SCAN.length() / 2 < parentUpperBarStartShift) {
+                    .format("%1$s(%2$s)", scan, tableName + alias + cond);
+            if (scan.length() / 2 < parentUpperBarStartShift) {
                 thisNode.upBarPosition = currentStartPosition
                         + parentUpperBarStartShift;
                 thisNode.textStartPosition = thisNode.upBarPosition
-                        - SCAN.length() / 2;
+                        - scan.length() / 2;
             } else {
-                thisNode.upBarPosition = currentStartPosition + SCAN.length()
+                thisNode.upBarPosition = currentStartPosition + scan.length()
                         / 2;
                 thisNode.textStartPosition = currentStartPosition;
             }
@@ -107,18 +135,19 @@ public class QueryPlanVisualizer {
             Operator plan = (Operator) queryPlan;
             OpIterator[] children = plan.getChildren();
 
-            if (plan instanceof Join) {
-                Join j = (Join) plan;
-                TupleDesc td = j.getTupleDesc();
-                JoinPredicate jp = j.getJoinPredicate();
+            if (plan instanceof Join || plan instanceof IndexJoin) {
+                String join = plan instanceof Join ? JOIN : INDEX_JOIN;
+                TupleDesc td = plan.getTupleDesc();
+                JoinPredicate jp = plan instanceof Join ? ((Join) plan)
+                        .getJoinPredicate() : ((IndexJoin) plan).getJoinPredicate();
                 String field1 = td.getFieldName(jp.getField1());
                 String field2 = td.getFieldName(jp.getField2()
                         + children[0].getTupleDesc().numFields());
-                thisNode.text = String.format("%1$s(%2$s),card:%3$d", JOIN,
-                        field1 + jp.getOperator() + field2,j.getEstimatedCardinality());
+                thisNode.text = String.format("%1$s(%2$s),card:%3$d", join,
+                        field1 + jp.getOperator() + field2,plan.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
-                if (JOIN.length() / 2 > parentUpperBarStartShift)
-                    upBarShift = JOIN.length() / 2;
+                if (join.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = join.length() / 2;
 
                 SubTreeDescriptor left = this.buildTree(queryPlanDepth,
                         currentDepth + adjustDepth + 3, children[0],
@@ -128,7 +157,7 @@ public class QueryPlanVisualizer {
                         currentStartPosition + left.width + SPACE.length(), 0);
                 thisNode.upBarPosition = (left.upBarPosition + right.upBarPosition) / 2;
                 thisNode.textStartPosition = thisNode.upBarPosition
-                        - JOIN.length() / 2;
+                        - join.length() / 2;
                 thisNode.width = Math.max(
                         left.width + right.width + SPACE.length(),
                         thisNode.textStartPosition + thisNode.text.length()
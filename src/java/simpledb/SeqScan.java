@@ -16,6 +16,8 @@ public class SeqScan implements OpIterator {
     private TransactionId tid;
     private DbFileIterator it;
     private TupleDesc td;
+    private List<Predicate> predicates;
+    private int[] columns;
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -34,18 +36,80 @@ public class SeqScan implements OpIterator {
      *            tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, Collections.emptyList());
+    }
+
+    /**
+     * Creates a sequential scan over the specified table that only returns
+     * the tuples satisfying every predicate in predicates, which apply to the
+     * fields of the table. A HeapFile evaluates them on its pages, so tuples
+     * that do not match are never created; other files are filtered here.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table, as for
+     *            {@link #SeqScan(TransactionId, int, String)}
+     * @param predicates
+     *            the conjunction of predicates the returned tuples satisfy
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, List<Predicate> predicates) {
+        this(tid, tableid, tableAlias, predicates, null);
+    }
+
+    /**
+     * Creates a sequential scan over the specified table that only returns
+     * the tuples satisfying every predicate in predicates, with only the
+     * given fields of the table. A ColumnFile reads only the pages of those
+     * fields and of the fields the predicates refer to; other files read
+     * whole tuples and drop the other fields here.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table, as for
+     *            {@link #SeqScan(TransactionId, int, String)}
+     * @param predicates
+     *            the conjunction of predicates the returned tuples satisfy
+     * @param columns
+     *            the fields of the table the returned tuples have, in that
+     *            order, or null for all of them
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, List<Predicate> predicates, int[] columns) {
         this.alias = tableAlias;
         this.tid = tid;
         this.ID = tableid;
-        this.it = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        this.predicates = predicates;
+        this.columns = columns;
         TupleDesc temp = Database.getCatalog().getTupleDesc(this.ID);
-        Type[] typeAr = new Type[temp.numFields()];
-        String[] fieldAr = new String[temp.numFields()];
-        for (int i = 0; i < temp.numFields(); i++) {
-            typeAr[i] = temp.getFieldType(i);
-            fieldAr[i] = this.alias + "." + temp.getFieldName(i);
+        if (columns == null) {
+            columns = new int[temp.numFields()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = i;
+            }
+        }
+        Type[] typeAr = new Type[columns.length];
+        String[] fieldAr = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            typeAr[i] = temp.getFieldType(columns[i]);
+            fieldAr[i] = this.alias + "." + temp.getFieldName(columns[i]);
         }
         this.td = new TupleDesc(typeAr, fieldAr);
+
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof ColumnFile) {
+            this.it = ((ColumnFile) file).iterator(tid, columns, predicates);
+        } else if (file instanceof HeapFile && this.columns == null) {
+            this.it = ((HeapFile) file).iterator(tid, predicates);
+        } else if (predicates.isEmpty() && this.columns == null) {
+            this.it = file.iterator(tid);
+        } else {
+            this.it = new FilterIterator(file.iterator(tid), predicates, this.columns, this.td);
+        }
     }
 
     /**
@@ -64,6 +128,46 @@ public class SeqScan implements OpIterator {
         return this.alias;
     }
 
+    /**
+     * @return the predicates every tuple this scan returns satisfies, which
+     *   apply to the fields of the table
+     */
+    public List<Predicate> getPredicates() {
+        return this.predicates;
+    }
+
+    /**
+     * @return the fields of the table this scan returns, or null if it
+     *   returns all of them
+     */
+    public int[] getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * @return true if this scan returns its tuples in ascending order of
+     *   field, a field of the tuples it returns, as it reads a table
+     *   clustered on it
+     */
+    public boolean isSortedOn(int field) {
+        int key = Database.getCatalog().getClusterKey(this.ID);
+        return key >= 0 && (this.columns == null ? field : this.columns[field]) == key;
+    }
+
+    /**
+     * @return the id of the table this scan reads
+     */
+    public int getTableId() {
+        return this.ID;
+    }
+
+    /**
+     * @return the transaction this scan is running as a part of
+     */
+    public TransactionId getTransactionId() {
+        return this.tid;
+    }
+
     /**
      * Reset the tableid, and tableAlias of this operator.
      * @param tableid
@@ -85,6 +189,31 @@ public class SeqScan implements OpIterator {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
 
+    /**
+     * Only reads the pages of a HeapFile whose Bloom filters on field may
+     * hold one of keys, from the next open or rewind on, or every page
+     * again if keys is null. The tuples of the pages that are read are not
+     * filtered by keys, so a hash join passes the keys it will probe with.
+     *
+     * @param field the field of the tuples this scan returns the keys are
+     *   values of
+     * @return false if the table has no Bloom filters on field, so every
+     *   page is read anyway
+     */
+    public boolean probeKeys(int field, Collection<Field> keys) {
+        DbFile file = Database.getCatalog().getDatabaseFile(this.ID);
+        if (!(file instanceof HeapFile) || !(this.it instanceof HeapFile.HeapFileIterator)) {
+            return false;
+        }
+        BloomFilters blooms = ((HeapFile) file).getBloomFilters();
+        int tableField = this.columns == null ? field : this.columns[field];
+        if (blooms == null || !blooms.covers(tableField)) {
+            return false;
+        }
+        ((HeapFile.HeapFileIterator) this.it).setProbeKeys(tableField, keys);
+        return true;
+    }
+
     public void open() throws DbException, TransactionAbortedException {
         this.it.open();
     }
@@ -120,4 +249,65 @@ public class SeqScan implements OpIterator {
             TransactionAbortedException {
         this.it.rewind();
     }
+
+    /**
+     * Returns the tuples of a file iterator that satisfy every predicate,
+     * with only the given fields if columns is not null.
+     */
+    private static class FilterIterator extends AbstractDbFileIterator {
+
+        private final DbFileIterator child;
+        private final List<Predicate> predicates;
+        private final int[] columns;
+        private final TupleDesc td;
+
+        FilterIterator(DbFileIterator child, List<Predicate> predicates, int[] columns, TupleDesc td) {
+            this.child = child;
+            this.predicates = predicates;
+            this.columns = columns;
+            this.td = td;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            this.child.open();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            super.close();
+            this.child.rewind();
+        }
+
+        public void close() {
+            super.close();
+            this.child.close();
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (this.child.hasNext()) {
+                Tuple t = this.child.next();
+                if (!matches(t)) {
+                    continue;
+                }
+                if (this.columns == null) {
+                    return t;
+                }
+                Tuple projected = new Tuple(this.td);
+                for (int i = 0; i < this.columns.length; i++) {
+                    projected.setField(i, t.getField(this.columns[i]));
+                }
+                projected.setRecordId(t.getRecordId());
+                return projected;
+            }
+            return null;
+        }
+
+        private boolean matches(Tuple t) {
+            for (Predicate p : this.predicates) {
+                if (!p.filter(t)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,420 @@
+package simpledb;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * SlottedHeapPage stores one page of a HeapFile whose tuples have
+ * variable-length fields, so a tuple only takes as many bytes as its values
+ * need rather than the maximum size of its TupleDesc.
+ * <p>
+ * The page starts with a four byte header: the number of entries in the slot
+ * directory, then the offset of the lowest byte of tuple data (0 meaning the
+ * end of the page). The slot directory follows, one four byte entry per slot
+ * holding the offset and length of its tuple; an offset of 0 marks an empty
+ * slot. Tuple data grows down from the end of the page, each tuple being its
+ * fields back to back in the format of {@link Field#serialize(ByteBuffer, int)}.
+ * The slot number of a tuple never changes, so its RecordId stays valid while
+ * the tuple data is moved to compact the page.
+ *
+ * @see HeapFile
+ * @see HeapPage
+ */
+public class SlottedHeapPage implements TuplePage {
+
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    // the page itself; tuples are decoded from it on demand and written straight into it
+    final ByteBuffer data;
+    private TransactionId dirtyTid;
+    // bytes not taken by the header, the slot directory or live tuples, including gaps left by deletes
+    private int freeBytes;
+    // the first empty slot, or numSlots() if every slot is used
+    private int firstEmpty;
+
+    // the page as of the last setBeforeImage(), or null if it has not been written since
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk.
+     * The bytes are copied and kept as they are; tuples are only decoded
+     * when they are read.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.dirtyTid = null;
+        if (BufferPool.getPageSize() > 0xffff)
+            throw new IOException("page too large for a slotted page");
+
+        byte[] bytes = new byte[BufferPool.getPageSize()];
+        System.arraycopy(data, 0, bytes, 0, Math.min(data.length, bytes.length));
+        this.data = ByteBuffer.wrap(bytes);
+        this.oldData = null;
+
+        int used = 0;
+        this.firstEmpty = numSlots();
+        for (int i = numSlots() - 1; i >= 0; i--) {
+            if (isSlotUsed(i))
+                used += tupleLength(i);
+            else
+                this.firstEmpty = i;
+        }
+        this.freeBytes = bytes.length - HEADER_SIZE - numSlots() * SLOT_SIZE - used;
+    }
+
+    private int numSlots() {
+        return data.getChar(0);
+    }
+
+    private int dataStart() {
+        int start = data.getChar(2);
+        return start == 0 ? data.capacity() : start;
+    }
+
+    private int tupleOffset(int slotId) {
+        return data.getChar(HEADER_SIZE + slotId * SLOT_SIZE);
+    }
+
+    private int tupleLength(int slotId) {
+        return data.getChar(HEADER_SIZE + slotId * SLOT_SIZE + 2);
+    }
+
+    private void setSlot(int slotId, int offset, int length) {
+        data.putChar(HEADER_SIZE + slotId * SLOT_SIZE, (char) offset);
+        data.putChar(HEADER_SIZE + slotId * SLOT_SIZE + 2, (char) length);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedHeapPage getBeforeImage(){
+        try {
+            byte[] oldDataRef = null;
+            synchronized(oldDataLock)
+            {
+                // an unwritten page is its own before image
+                oldDataRef = oldData == null ? data.array() : oldData;
+                return new SlottedHeapPage(pid,oldDataRef);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public SlottedHeapPage copy() {
+        try {
+            return new SlottedHeapPage(pid, data.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        oldData = null;
+        }
+    }
+
+    private void captureBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == null)
+            oldData = data.array().clone();
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return this.pid;
+    }
+
+    /**
+     * @return the offset in the page of field i of the tuple in slot slotId
+     */
+    private int fieldOffset(int slotId, int i) {
+        int offset = tupleOffset(slotId);
+        for (int j = 0; j < i; j++)
+            offset += td.getFieldType(j).getLen(data, offset);
+        return offset;
+    }
+
+    /**
+     * @return the tuple in slot slotId, decoded from the page. The tuple
+     *   holds its own fields, so it does not change when the slot is later
+     *   cleared or reused, or the page is compacted.
+     */
+    private Tuple readTuple(int slotId) {
+        Tuple t = new Tuple(td);
+        int offset = tupleOffset(slotId);
+        for (int i = 0; i < td.numFields(); i++) {
+            Type type = td.getFieldType(i);
+            t.setField(i, type.parse(data, offset));
+            offset += type.getLen(data, offset);
+        }
+        t.setRecordId(new RecordId(pid, slotId));
+        return t;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Passing it to the SlottedHeapPage constructor produces an identical page.
+     */
+    public byte[] getPageData() {
+        return data.array().clone();
+    }
+
+    /**
+     * @return the number of bytes t takes on a page, not counting its slot
+     */
+    private int tupleSize(Tuple t) {
+        int size = 0;
+        for (int j = 0; j < td.numFields(); j++)
+            size += td.getFieldType(j).getLen(t.getField(j));
+        return size;
+    }
+
+    /**
+     * @return the number of bytes t takes on a page, counting its slot; it
+     *   fits on any page whose {@link #getFreeSpace} is at least this
+     */
+    static int spaceFor(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = SLOT_SIZE;
+        for (int j = 0; j < td.numFields(); j++)
+            size += td.getFieldType(j).getLen(t.getField(j));
+        return size;
+    }
+
+    /**
+     * Delete the specified tuple from the page. Its bytes are reclaimed
+     * when the page is next compacted.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        int tupleno = t.getRecordId().getTupleNumber();
+        if (!isSlotUsed(tupleno) || !(t.getRecordId().getPageId().equals(this.pid))) {
+            throw new DbException("Tuple not found");
+        }
+        captureBeforeImage();
+        freeBytes += tupleLength(tupleno);
+        setSlot(tupleno, 0, 0);
+        // drop empty entries from the end of the directory
+        int n = numSlots();
+        while (n > 0 && tupleOffset(n - 1) == 0) {
+            n--;
+            freeBytes += SLOT_SIZE;
+        }
+        data.putChar(0, (char) n);
+        firstEmpty = Math.min(Math.min(firstEmpty, tupleno), n);
+    }
+
+    /**
+     * Adds the specified tuple to the page, compacting the page first if
+     * the free space is fragmented; the tuple is updated to reflect that it
+     * is now stored on this page.
+     * @throws DbException if the page does not have room for the tuple or
+     *         tupledesc is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(this.td) || !hasRoomFor(t)) {
+            throw new DbException("Error inserting tuple");
+        }
+        captureBeforeImage();
+        int size = tupleSize(t);
+        int slot = firstEmpty;
+        int n = Math.max(numSlots(), slot + 1);
+        int need = size + (n - numSlots()) * SLOT_SIZE;
+        if (dataStart() - size < HEADER_SIZE + n * SLOT_SIZE)
+            compact();
+
+        int offset = dataStart() - size;
+        int pos = offset;
+        for (int j = 0; j < td.numFields(); j++) {
+            t.getField(j).serialize(data, pos);
+            pos += td.getFieldType(j).getLen(data, pos);
+        }
+        setSlot(slot, offset, size);
+        data.putChar(0, (char) n);
+        data.putChar(2, (char) offset);
+        freeBytes -= need;
+        firstEmpty = slot + 1;
+        while (firstEmpty < n && tupleOffset(firstEmpty) != 0)
+            firstEmpty++;
+        t.setRecordId(new RecordId(this.pid, slot));
+    }
+
+    /**
+     * Moves all tuples to the end of the page, so that the free space is one
+     * contiguous run between the slot directory and the tuple data.
+     */
+    private void compact() {
+        byte[] bytes = data.array();
+        byte[] copy = bytes.clone();
+        int end = bytes.length;
+        for (int i = 0; i < numSlots(); i++) {
+            if (!isSlotUsed(i))
+                continue;
+            int len = tupleLength(i);
+            end -= len;
+            System.arraycopy(copy, tupleOffset(i), bytes, end, len);
+            setSlot(i, end, len);
+        }
+        data.putChar(2, (char) (end == bytes.length ? 0 : end));
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        if (dirty) {
+            this.dirtyTid = tid;
+        } else {
+            this.dirtyTid = null;
+        }
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return this.dirtyTid;
+    }
+
+    /**
+     * Returns how many more tuples of the smallest size this page's
+     * TupleDesc allows would fit, each with a new slot.
+     */
+    public int getNumEmptySlots() {
+        return getFreeSpace() / (td.getMinSize() + SLOT_SIZE);
+    }
+
+    /**
+     * Returns the free bytes of this page, counting an empty slot as free
+     * even though the directory does not shrink to it.
+     */
+    public int getFreeSpace() {
+        return this.freeBytes + (this.firstEmpty < numSlots() ? SLOT_SIZE : 0);
+    }
+
+    /**
+     * Returns true if t, and a slot for it if none is empty, fit in the
+     * free space of this page.
+     */
+    public boolean hasRoomFor(Tuple t) {
+        return spaceFor(t) <= getFreeSpace();
+    }
+
+    /**
+     * @return the tuple in slot slotId, or null if the slot is empty
+     */
+    public Tuple getTuple(int slotId) {
+        return slotId >= 0 && isSlotUsed(slotId) ? readTuple(slotId) : null;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i < numSlots() && tupleOffset(i) != 0;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<>() {
+
+            private int idx = next(0);
+
+            private int next(int from) {
+                while (from < numSlots() && !isSlotUsed(from))
+                    from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return idx < numSlots();
+            }
+
+            @Override
+            public Tuple next() {
+                if (idx >= numSlots()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = readTuple(idx);
+                idx = next(idx + 1);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy every
+     *   predicate in predicates. Only the fields the predicates refer to are
+     *   decoded for the slots that do not match.
+     */
+    public Iterator<Tuple> iterator(List<Predicate> predicates) {
+        if (predicates.isEmpty()) {
+            return iterator();
+        }
+        return new Iterator<>() {
+
+            private Tuple next = next(0);
+
+            private Tuple next(int from) {
+                for (; from < numSlots(); from++) {
+                    if (isSlotUsed(from) && matches(from)) {
+                        return readTuple(from);
+                    }
+                }
+                return null;
+            }
+
+            private boolean matches(int slotId) {
+                for (Predicate p : predicates) {
+                    int field = p.getField();
+                    Field f = td.getFieldType(field).parse(data, fieldOffset(slotId, field));
+                    if (!f.compare(p.getOp(), p.getOperand())) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Tuple next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = next;
+                next = next(t.getRecordId().getTupleNumber() + 1);
+                return t;
+            }
+        };
+    }
+
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
@@ -66,6 +67,17 @@ public class StringField implements Field {
 			dos.write((byte) 0);
 	}
 
+	/**
+	 * Write this string into buf at offset, in the same format as
+	 * {@link #serialize(DataOutputStream)}.
+	 */
+	public void serialize(ByteBuffer buf, int offset) {
+		int len = Math.min(value.length(), maxSize);
+		buf.putInt(offset, len);
+		for (int i = 0; i < maxSize; i++)
+			buf.put(offset + 4 + i, i < len ? (byte) value.charAt(i) : 0);
+	}
+
 	/**
 	 * Compare the specified field to the value of this Field. Return semantics
 	 * are as specified by Field.compare
@@ -3,6 +3,7 @@ package simpledb;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -68,7 +69,10 @@ public class TableStats {
     private int numTups, numPages, ioCost;
     private HashMap<Integer, IntHistogram> intHistograms;
     private HashMap<Integer, StringHistogram> stringHistograms;
+    private HashMap<Integer, DoubleHistogram> doubleHistograms;
     private TupleDesc td;
+    // the number of pages of each column, if the table is a ColumnFile
+    private int[] columnPages;
 
     /**
      * Create a new TableStats object, that keeps track of statistics on each
@@ -92,11 +96,14 @@ public class TableStats {
         this.numTups = 0;
         this.intHistograms = new HashMap<>();
         this.stringHistograms = new HashMap<>();
+        this.doubleHistograms = new HashMap<>();
         this.numPages = 0;
         this.ioCost = ioCostPerPage;
         HashMap<Integer, Integer> intFieldMax = new HashMap<>();
         HashMap<Integer, Integer> intFieldMin = new HashMap<>();
-        HeapFile file = (HeapFile) Database.getCatalog().getDatabaseFile(tableid);
+        HashMap<Integer, Double> doubleFieldMax = new HashMap<>();
+        HashMap<Integer, Double> doubleFieldMin = new HashMap<>();
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
         this.td = file.getTupleDesc();
         DbFileIterator itr = file.iterator(new TransactionId());
         try {
@@ -120,6 +127,10 @@ public class TableStats {
                         if (value < intFieldMin.get(i)) {
                             intFieldMin.put(i, value);
                         }
+                    } else if (td.getFieldType(i).isNumeric()) {
+                        double value = ((NumericField) tup.getField(i)).doubleValue();
+                        doubleFieldMax.merge(i, value, Math::max);
+                        doubleFieldMin.merge(i, value, Math::min);
                     } else {
                         if (!this.stringHistograms.containsKey(i)) {
                             this.stringHistograms.put(i, new StringHistogram(NUM_HIST_BINS));
@@ -130,13 +141,26 @@ public class TableStats {
         } catch (DbException | TransactionAbortedException d) {
             d.printStackTrace();
         }
-        this.numPages = file.numPages();
+        if (file instanceof ColumnFile) {
+            ColumnFile cf = (ColumnFile) file;
+            this.numPages = cf.numPages();
+            this.columnPages = new int[this.td.numFields()];
+            for (int i = 0; i < this.columnPages.length; i++) {
+                this.columnPages[i] = cf.numPages(i);
+            }
+        } else {
+            this.numPages = file instanceof IndexFile ? ((IndexFile) file).numPages() : ((HeapFile) file).numPages();
+        }
         itr.close();
         for (int field : intFieldMax.keySet()) {
             int max = intFieldMax.get(field);
             int min = intFieldMin.get(field);
             this.intHistograms.put(field, new IntHistogram(NUM_HIST_BINS, min, max));
         }
+        for (int field : doubleFieldMax.keySet()) {
+            this.doubleHistograms.put(field,
+                    new DoubleHistogram(NUM_HIST_BINS, doubleFieldMin.get(field), doubleFieldMax.get(field)));
+        }
         try {
             itr.open();
             while (itr.hasNext()) {
@@ -146,6 +170,9 @@ public class TableStats {
                     if (td.getFieldType(i).equals(Type.INT_TYPE)) {
                         int value = ((IntField) tup.getField(i)).getValue();
                         this.intHistograms.get(i).addValue(value);
+                    } else if (td.getFieldType(i).isNumeric()) {
+                        double value = ((NumericField) tup.getField(i)).doubleValue();
+                        this.doubleHistograms.get(i).addValue(value);
                     } else {
                         String value = ((StringField) tup.getField(i)).getValue();
                         this.stringHistograms.get(i).addValue(value);
@@ -174,6 +201,64 @@ public class TableStats {
         return this.numPages * this.ioCost;
     }
 
+    /**
+     * Estimates the cost of a scan that reads only the given fields, which
+     * for a table stored in a {@link ColumnFile} is reading the pages of
+     * those columns, and otherwise a whole scan.
+     *
+     * @param columns
+     *            the fields of the table the scan reads
+     * @return The estimated cost of the scan, comparable to
+     *         {@link #estimateScanCost}.
+     */
+    public double estimateScanCost(Set<Integer> columns) {
+        if (this.columnPages == null) {
+            return estimateScanCost();
+        }
+        int pages = 0;
+        for (int i : columns) {
+            pages += this.columnPages[i];
+        }
+        return pages * this.ioCost;
+    }
+
+    /**
+     * Estimates the cost of reading the tuples of the table that satisfy a
+     * predicate on the key field of index, with the given selectivity,
+     * through an {@link IndexScan}. The lookup reads the index pages the
+     * file of the index estimates, and then a heap page for every matching
+     * tuple, as the table is not stored in key order.
+     *
+     * @param index
+     *            an index on this table
+     * @param selectivity
+     *            the selectivity of the predicate on the key field
+     * @return The estimated cost of the index scan, comparable to
+     *         {@link #estimateScanCost}.
+     * @see IndexFile#estimatePagesRead
+     */
+    public double estimateIndexScanCost(Index index, double selectivity) {
+        return (index.getFile().estimatePagesRead(selectivity) + selectivity * this.numTups)
+                * this.ioCost;
+    }
+
+    /**
+     * Estimates the cost of an index-only {@link IndexScan} of index, which
+     * reads the index pages the file of the index estimates for a predicate
+     * on the key field with the given selectivity, and no heap page.
+     *
+     * @param index
+     *            an index on this table
+     * @param selectivity
+     *            the selectivity of the predicate on the key field, or 1.0
+     *            for a scan of every entry
+     * @return The estimated cost of the scan, comparable to
+     *         {@link #estimateScanCost}.
+     */
+    public double estimateIndexOnlyScanCost(Index index, double selectivity) {
+        return index.getFile().estimatePagesRead(selectivity) * this.ioCost;
+    }
+
     /**
      * This method returns the number of tuples in the relation, given that a
      * predicate with selectivity selectivityFactor is applied.
@@ -220,6 +305,13 @@ public class TableStats {
             IntHistogram hist = this.intHistograms.get(field);
             int v = ((IntField) constant).getValue();
             return hist.estimateSelectivity(op, v);
+        } else if (this.td.getFieldType(field).isNumeric()) {
+            DoubleHistogram hist = this.doubleHistograms.get(field);
+            if (hist == null) {
+                // the table is empty
+                return 0;
+            }
+            return hist.estimateSelectivity(op, ((NumericField) constant).doubleValue());
         } else {
             StringHistogram hist = this.stringHistograms.get(field);
             String v = ((StringField) constant).getValue();
@@ -0,0 +1,124 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * TextScan reads tuples from a delimited text file, one tuple per line, in
+ * the format accepted by {@link HeapFileEncoder}. Blank lines are skipped.
+ */
+public class TextScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File f;
+    private final TupleDesc td;
+    private final char separator;
+    private transient BufferedReader reader;
+    private Tuple next;
+    private int lineNo;
+
+    /**
+     * Creates a scan over a text file.
+     *
+     * @param f
+     *            the file to read
+     * @param td
+     *            the schema of the tuples in the file
+     * @param separator
+     *            the character separating fields on a line
+     */
+    public TextScan(File f, TupleDesc td, char separator) {
+        this.f = f;
+        this.td = td;
+        this.separator = separator;
+    }
+
+    public void open() throws DbException {
+        try {
+            this.reader = new BufferedReader(new FileReader(this.f));
+        } catch (FileNotFoundException e) {
+            throw new DbException("cannot open " + this.f + ": " + e.getMessage());
+        }
+        this.next = null;
+        this.lineNo = 0;
+    }
+
+    public boolean hasNext() throws DbException {
+        if (this.next == null && this.reader != null) {
+            this.next = readNext();
+        }
+        return this.next != null;
+    }
+
+    public Tuple next() throws DbException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more lines in " + this.f);
+        }
+        Tuple t = this.next;
+        this.next = null;
+        return t;
+    }
+
+    /**
+     * Parses the next non-blank line, or returns null at the end of the file.
+     */
+    private Tuple readNext() throws DbException {
+        String line;
+        try {
+            do {
+                line = this.reader.readLine();
+                this.lineNo++;
+            } while (line != null && line.trim().isEmpty());
+        } catch (IOException e) {
+            throw new DbException("error reading " + this.f + ": " + e.getMessage());
+        }
+        if (line == null) {
+            return null;
+        }
+
+        Tuple t = new Tuple(this.td);
+        int start = 0;
+        for (int i = 0; i < this.td.numFields(); i++) {
+            int end = line.indexOf(this.separator, start);
+            if (end < 0) {
+                end = line.length();
+            }
+            if (start > line.length()) {
+                throw new DbException("line " + this.lineNo + " has fewer than " + this.td.numFields() + " fields");
+            }
+            t.setField(i, parseField(this.td.getFieldType(i), line.substring(start, end).trim()));
+            start = end + 1;
+        }
+        return t;
+    }
+
+    private Field parseField(Type type, String s) throws DbException {
+        try {
+            return type.parse(s);
+        } catch (IllegalArgumentException e) {
+            throw new DbException("line " + this.lineNo + ": bad " + type + " " + s);
+        }
+    }
+
+    public void rewind() throws DbException {
+        close();
+        open();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public void close() {
+        if (this.reader != null) {
+            try {
+                this.reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.reader = null;
+        }
+        this.next = null;
+    }
+}
@@ -9,15 +9,44 @@ import java.io.*;
 
 public class Transaction {
     private final TransactionId tid;
+    private final boolean optimistic;
+    private final boolean readOnly;
     volatile boolean started = false;
 
     public Transaction() {
+        this(false);
+    }
+
+    /**
+     * @param optimistic if true, run this transaction under optimistic
+     *   concurrency control: reads take no locks and are validated at commit.
+     *   Best suited to read-mostly transactions with few conflicts.
+     */
+    public Transaction(boolean optimistic) {
+        this(optimistic, false);
+    }
+
+    /**
+     * @param optimistic see {@link #Transaction(boolean)}
+     * @param readOnly if true, this transaction may only read pages. It
+     *   writes no log records and its commit does not force the log.
+     */
+    public Transaction(boolean optimistic, boolean readOnly) {
         tid = new TransactionId();
+        this.optimistic = optimistic;
+        this.readOnly = readOnly;
     }
 
     /** Start the transaction running */
     public void start() {
         started = true;
+        if (optimistic) {
+            Database.getBufferPool().beginOptimistic(tid);
+        }
+        if (readOnly) {
+            Database.getBufferPool().beginReadOnly(tid);
+            return;
+        }
         try {
             Database.getLogFile().logXactionBegin(tid);
         } catch (IOException e) {
@@ -29,8 +58,24 @@ public class Transaction {
         return tid;
     }
 
-    /** Finish the transaction */
-    public void commit() throws IOException {
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Finish the transaction
+     * @throws TransactionAbortedException if this is an optimistic
+     *   transaction that failed validation; it is aborted before throwing
+     */
+    public void commit() throws IOException, TransactionAbortedException {
+        if (optimistic && started && !Database.getBufferPool().validate(tid)) {
+            transactionComplete(true);
+            throw new TransactionAbortedException();
+        }
         transactionComplete(false);
     }
 
@@ -44,7 +89,7 @@ public class Transaction {
 
         if (started) {
             //write abort log record and rollback transaction
-            if (abort) {
+            if (abort && !readOnly) {
                 Database.getLogFile().logAbort(tid); //does rollback too
             } 
 
@@ -56,7 +101,7 @@ public class Transaction {
             }
             
             // write commit log record
-            if (!abort) {
+            if (!abort && !readOnly) {
             	Database.getLogFile().logCommit(tid);
             }
 
@@ -31,6 +31,20 @@ public class Tuple implements Serializable {
         this.fields = new Field[this.numFields];
     }
 
+    /**
+     * Create a tuple whose fields are supplied by a subclass on demand. No
+     * field array is allocated until a field is set.
+     *
+     * @param td
+     *            the schema of this tuple.
+     */
+    protected Tuple(TupleDesc td, RecordId rid) {
+        this.tupleDesc = td;
+        this.rid = rid;
+        this.numFields = td.numFields();
+        this.fields = null;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -67,6 +81,9 @@ public class Tuple implements Serializable {
     public void setField(int i, Field f) {
         assert i < this.numFields;
 
+        if (this.fields == null) {
+            this.fields = new Field[this.numFields];
+        }
         this.fields[i] = f;
     }
 
@@ -79,7 +96,7 @@ public class Tuple implements Serializable {
     public Field getField(int i) {
         assert i < this.numFields;
 
-        return this.fields[i];
+        return this.fields == null ? null : this.fields[i];
     }
 
     /**
@@ -91,10 +108,10 @@ public class Tuple implements Serializable {
      * where \t is any whitespace (except a newline)
      */
     public String toString() {
-        String result = this.fields[0].toString();
+        String result = getField(0).toString();
 
         for (int i = 1; i < this.numFields; i++) {
-            result += "\t" + this.fields[i].toString();
+            result += "\t" + getField(i).toString();
         }
         return result;
     }
@@ -119,7 +136,7 @@ public class Tuple implements Serializable {
 
             @Override
             public Field next() {
-                return fields[idx++];
+                return getField(idx++);
             }
         };
     }
@@ -190,12 +190,33 @@ public class TupleDesc implements Serializable {
 
     /**
      * @return The size (in bytes) of tuples corresponding to this TupleDesc.
-     *         Note that tuples from a given TupleDesc are of a fixed size.
+     *         Tuples with variable-length fields may take fewer bytes; this
+     *         is the largest they can be.
      */
     public int getSize() {
         return this.size;
     }
 
+    /**
+     * @return The fewest bytes a tuple corresponding to this TupleDesc can
+     *         be stored in.
+     */
+    public int getMinSize() {
+        int minSize = 0;
+        for (TDItem item : this.items) {
+            minSize += item.fieldType.getMinLen();
+        }
+        return minSize;
+    }
+
+    /**
+     * @return true if every tuple corresponding to this TupleDesc takes
+     *         getSize() bytes.
+     */
+    public boolean isFixedLength() {
+        return getMinSize() == this.size;
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
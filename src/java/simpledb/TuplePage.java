@@ -0,0 +1,63 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A page of tuples belonging to a HeapFile. HeapPage stores tuples of a
+ * fixed size in equal slots; SlottedHeapPage stores tuples with
+ * variable-length fields in as many bytes as each one needs.
+ *
+ * @see HeapFile
+ */
+public interface TuplePage extends Page {
+
+    /**
+     * Returns how many more tuples of the smallest possible size fit on this
+     * page; zero means the page is full.
+     */
+    public int getNumEmptySlots();
+
+    /**
+     * Returns the number of bytes this page has for new tuples, counting the
+     * slot each one needs: a tuple of a fixed-length TupleDesc fits if its
+     * size is at most this, and one with variable-length fields if
+     * {@link SlottedHeapPage#spaceFor} is.
+     */
+    public int getFreeSpace();
+
+    /**
+     * Returns true if t can be inserted into this page.
+     */
+    public boolean hasRoomFor(Tuple t);
+
+    /**
+     * Adds the specified tuple to the page and sets its RecordId.
+     * @throws DbException if the page is full or the tupledesc is mismatched
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Removes the specified tuple from the page.
+     * @throws DbException if this tuple is not on this page
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return the tuple in slot slotId, or null if the slot is empty
+     */
+    public Tuple getTuple(int slotId);
+
+    /**
+     * @return an iterator over all tuples on this page
+     */
+    public Iterator<Tuple> iterator();
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy every
+     *   predicate in predicates, which are evaluated on the page before a
+     *   tuple is returned for a slot
+     */
+    public Iterator<Tuple> iterator(List<Predicate> predicates);
+
+}
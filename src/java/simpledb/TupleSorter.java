@@ -0,0 +1,209 @@
+package simpledb;
+
+import java.io.*;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * Sorts tuples on one field in bounded memory, for the bulk loads and the
+ * clustering of a clustered HeapFile. Tuples are added one at a time and
+ * held in memory until there are as many as a run holds; the run is then
+ * sorted and written to a temporary file. {@link #iterator} merges the runs
+ * and the tuples still in memory in one pass, reading a buffer of each run
+ * at a time. Only the fields of the tuples are kept, not their RecordIds.
+ * <p>
+ * {@link #clear} deletes the runs, and must be called once the sorted
+ * tuples have been read.
+ */
+class TupleSorter {
+
+    /** The number of tuples a run holds by default */
+    static final int DEFAULT_RUN = 100000;
+
+    private final TupleDesc td;
+    private final TupleComparator order;
+    private final int run;
+    private final ArrayList<Tuple> memory = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    private int size;
+
+    /**
+     * Creates a sorter of tuples with TupleDesc td on field, ascending, that
+     * holds at most run tuples in memory.
+     */
+    TupleSorter(TupleDesc td, int field, int run) {
+        this.td = td;
+        this.order = new TupleComparator(field, true);
+        this.run = run;
+    }
+
+    /**
+     * @return the number of tuples added
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of runs written to temporary files so far
+     */
+    int numRuns() {
+        return this.runs.size();
+    }
+
+    /**
+     * Adds t, writing the tuples in memory out as a run if there are enough.
+     */
+    void add(Tuple t) throws IOException {
+        this.memory.add(t);
+        this.size++;
+        if (this.memory.size() == this.run) {
+            this.memory.sort(this.order);
+            File f = File.createTempFile("sort", ".run");
+            f.deleteOnExit();
+            this.runs.add(f);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+            try {
+                for (Tuple m : this.memory) {
+                    for (int i = 0; i < this.td.numFields(); i++) {
+                        m.getField(i).serialize(out);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            this.memory.clear();
+        }
+    }
+
+    /**
+     * Deletes the runs and drops the tuples in memory.
+     */
+    void clear() {
+        for (File f : this.runs) {
+            f.delete();
+        }
+        this.runs.clear();
+        this.memory.clear();
+        this.size = 0;
+    }
+
+    /**
+     * @return an iterator over the tuples added so far, in ascending order;
+     *   tuples with equal keys come in no particular order
+     */
+    OpIterator iterator() {
+        return new Merge();
+    }
+
+    /**
+     * The next tuple of a run, or of the tuples in memory if in is null.
+     */
+    private class Head {
+        final DataInputStream in;
+        final Iterator<Tuple> it;
+        int left;
+        Tuple tuple;
+
+        Head(DataInputStream in, Iterator<Tuple> it, int left) {
+            this.in = in;
+            this.it = it;
+            this.left = left;
+        }
+
+        /**
+         * @return false if the run is done
+         */
+        boolean advance() throws IOException, ParseException {
+            if (this.left == 0) {
+                return false;
+            }
+            this.left--;
+            if (this.in == null) {
+                this.tuple = this.it.next();
+                return true;
+            }
+            this.tuple = new Tuple(td);
+            for (int i = 0; i < td.numFields(); i++) {
+                this.tuple.setField(i, td.getFieldType(i).parse(this.in));
+            }
+            return true;
+        }
+    }
+
+    private class Merge extends Operator {
+
+        private static final long serialVersionUID = 1L;
+        private PriorityQueue<Head> heads;
+
+        public void open() throws DbException, TransactionAbortedException {
+            memory.sort(order);
+            this.heads = new PriorityQueue<Head>(runs.size() + 1, (a, b) -> order.compare(a.tuple, b.tuple));
+            try {
+                add(new Head(null, memory.iterator(), memory.size()));
+                for (File f : runs) {
+                    add(new Head(new DataInputStream(new BufferedInputStream(new FileInputStream(f))), null, run));
+                }
+            } catch (IOException | ParseException e) {
+                close();
+                throw new DbException("sort failed: " + e.getMessage());
+            }
+            super.open();
+        }
+
+        private void add(Head h) throws IOException, ParseException {
+            if (h.advance()) {
+                this.heads.add(h);
+            } else if (h.in != null) {
+                h.in.close();
+            }
+        }
+
+        protected Tuple fetchNext() throws DbException {
+            Head h = this.heads.poll();
+            if (h == null) {
+                return null;
+            }
+            Tuple t = h.tuple;
+            try {
+                add(h);
+            } catch (IOException | ParseException e) {
+                throw new DbException("sort failed: " + e.getMessage());
+            }
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            if (this.heads != null) {
+                for (Head h : this.heads) {
+                    if (h.in != null) {
+                        try {
+                            h.in.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                this.heads = null;
+            }
+        }
+
+        public OpIterator[] getChildren() {
+            return new OpIterator[0];
+        }
+
+        public void setChildren(OpIterator[] children) {
+        }
+
+        public TupleDesc getTupleDesc() {
+            return td;
+        }
+    }
+
+}
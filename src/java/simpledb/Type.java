@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,16 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new IntField(buf.getInt(offset));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return new IntField(Integer.parseInt(s));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +53,137 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            int strLen = buf.getInt(offset);
+            byte bs[] = new byte[strLen];
+            for (int i = 0; i < strLen; i++)
+                bs[i] = buf.get(offset + 4 + i);
+            return new StringField(new String(bs), STRING_LEN);
+        }
+
+        @Override
+        public Field parse(String s) {
+            return new StringField(s, STRING_LEN);
+        }
+    }, VARCHAR_TYPE() {
+        @Override
+        public int getLen() {
+            return STRING_LEN+2;
+        }
+
+        @Override
+        public int getMinLen() {
+            return 2;
+        }
+
+        @Override
+        public int getLen(Field f) {
+            return ((VarcharField) f).getLen();
+        }
+
+        @Override
+        public int getLen(ByteBuffer buf, int offset) {
+            return 2 + buf.getShort(offset);
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                byte bs[] = new byte[dis.readShort()];
+                dis.readFully(bs);
+                return new VarcharField(new String(bs));
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            int strLen = buf.getShort(offset);
+            byte bs[] = new byte[strLen];
+            for (int i = 0; i < strLen; i++)
+                bs[i] = buf.get(offset + 2 + i);
+            return new VarcharField(new String(bs));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return new VarcharField(s);
+        }
+    }, LONG_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new LongField(dis.readLong());
+            }  catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new LongField(buf.getLong(offset));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return new LongField(Long.parseLong(s));
+        }
+    }, DOUBLE_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DoubleField(dis.readDouble());
+            }  catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new DoubleField(buf.getDouble(offset));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return new DoubleField(Double.parseDouble(s));
+        }
+    }, DATE_TYPE() {
+        @Override
+        public int getLen() {
+            return 4;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DateField(dis.readInt());
+            }  catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new DateField(buf.getInt(offset));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return DateField.parse(s);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -51,6 +193,36 @@ public enum Type implements Serializable {
    */
     public abstract int getLen();
 
+  /**
+   * @return the fewest bytes a field of this type can be stored in; the
+   *   same as getLen() unless the type is variable length.
+   */
+    public int getMinLen() {
+        return getLen();
+    }
+
+  /**
+   * @return true if every field of this type is stored in getLen() bytes.
+   */
+    public boolean isFixedLength() {
+        return getMinLen() == getLen();
+    }
+
+  /**
+   * @return the number of bytes needed to store f, a field of this type.
+   */
+    public int getLen(Field f) {
+        return getLen();
+    }
+
+  /**
+   * @return the number of bytes taken by the field of this type stored in
+   *   buf at offset.
+   */
+    public int getLen(ByteBuffer buf, int offset) {
+        return getLen();
+    }
+
   /**
    * @return a Field object of the same type as this object that has contents
    *   read from the specified DataInputStream.
@@ -60,4 +232,28 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object whose contents
+   *   are read from buf, starting at offset, without moving its position.
+   * @param buf The buffer to read from
+   * @param offset The position in buf of the first byte of the field
+   */
+    public abstract Field parse(ByteBuffer buf, int offset);
+
+  /**
+   * @return a Field object of the same type as this object whose value is
+   *   given by its text form s, as written in a query or a data file.
+   * @param s The text to parse
+   * @throws IllegalArgumentException if s is not a value of this type
+   */
+    public abstract Field parse(String s);
+
+  /**
+   * @return true if fields of this type hold numbers or dates, which
+   *   implement NumericField.
+   */
+    public boolean isNumeric() {
+        return this != STRING_TYPE && this != VARCHAR_TYPE;
+    }
+
 }
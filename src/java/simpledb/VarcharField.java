@@ -0,0 +1,59 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Instance of Field that stores a String of up to Type.STRING_LEN characters
+ * in only as many bytes as it needs: a two byte length followed by the
+ * characters. VarcharFields compare and hash like StringFields with the same
+ * value.
+ */
+public class VarcharField extends StringField {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param s
+	 *            The value of this field, truncated to Type.STRING_LEN
+	 *            characters.
+	 */
+	public VarcharField(String s) {
+		super(s, Type.STRING_LEN);
+	}
+
+	/**
+	 * @return the number of bytes this field occupies on a page
+	 */
+	public int getLen() {
+		return 2 + getValue().length();
+	}
+
+	/**
+	 * Write this string to dos: two bytes of length followed by the string.
+	 */
+	public void serialize(DataOutputStream dos) throws IOException {
+		dos.writeShort(getValue().length());
+		dos.writeBytes(getValue());
+	}
+
+	/**
+	 * Write this string into buf at offset, in the same format as
+	 * {@link #serialize(DataOutputStream)}.
+	 */
+	public void serialize(ByteBuffer buf, int offset) {
+		String s = getValue();
+		buf.putShort(offset, (short) s.length());
+		for (int i = 0; i < s.length(); i++)
+			buf.put(offset + 2 + i, (byte) s.charAt(i));
+	}
+
+	/**
+	 * @return the Type for this Field
+	 */
+	public Type getType() {
+		return Type.VARCHAR_TYPE;
+	}
+}
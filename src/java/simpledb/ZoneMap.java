@@ -0,0 +1,116 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * The zone map of a HeapFile: the smallest and largest value of chosen INT
+ * columns on each page, so that a scan with a predicate on such a column can
+ * skip the pages whose range cannot satisfy it. It suits columns whose
+ * values grow with the order of insertion, as time stamps and keys of a
+ * clustered file do.
+ * <p>
+ * The ranges are kept in the side file file.zones, as the minimum and
+ * maximum (ints) of each column of each page. They are kept up to date as
+ * described in {@link PageSummary}.
+ *
+ * @see HeapFile#setZoneMap
+ */
+public class ZoneMap extends PageSummary {
+
+    // minimum and maximum of column i of page p at index p * columns.length + i
+    private int[] mins;
+    private int[] maxs;
+
+    /**
+     * Opens the zone map on the given INT columns of the heap file heap,
+     * with TupleDesc td, reading the ranges in its side file if it matches.
+     *
+     * @throws IllegalArgumentException if one of columns is not an INT column
+     */
+    public ZoneMap(File heap, TupleDesc td, int[] columns) {
+        super(heap, td, columns, ".zones");
+        for (int c : columns) {
+            if (td.getFieldType(c) != Type.INT_TYPE) {
+                throw new IllegalArgumentException("zone map on non-INT field " + c);
+            }
+        }
+        this.mins = new int[0];
+        this.maxs = new int[0];
+        load();
+    }
+
+    protected int entrySize() {
+        return 8 * this.columns.length;
+    }
+
+    protected void grow(int pno) {
+        int size = (pno + 1) * this.columns.length;
+        if (size > this.mins.length) {
+            size = Math.max(size, this.mins.length * 2);
+            this.mins = Arrays.copyOf(this.mins, size);
+            this.maxs = Arrays.copyOf(this.maxs, size);
+        }
+    }
+
+    protected void clear(int pno) {
+        int base = pno * this.columns.length;
+        Arrays.fill(this.mins, base, base + this.columns.length, Integer.MAX_VALUE);
+        Arrays.fill(this.maxs, base, base + this.columns.length, Integer.MIN_VALUE);
+    }
+
+    protected void add(int pno, Tuple t) {
+        for (int i = 0; i < this.columns.length; i++) {
+            int v = ((IntField) t.getField(this.columns[i])).getValue();
+            int idx = pno * this.columns.length + i;
+            this.mins[idx] = Math.min(this.mins[idx], v);
+            this.maxs[idx] = Math.max(this.maxs[idx], v);
+        }
+    }
+
+    protected void get(int pno, ByteBuffer buf, int offset) {
+        for (int i = 0; i < this.columns.length; i++) {
+            this.mins[pno * this.columns.length + i] = buf.getInt(offset + 8 * i);
+            this.maxs[pno * this.columns.length + i] = buf.getInt(offset + 8 * i + 4);
+        }
+    }
+
+    protected void put(int pno, ByteBuffer buf, int offset) {
+        for (int i = 0; i < this.columns.length; i++) {
+            buf.putInt(offset + 8 * i, this.mins[pno * this.columns.length + i]);
+            buf.putInt(offset + 8 * i + 4, this.maxs[pno * this.columns.length + i]);
+        }
+    }
+
+    protected boolean mayMatch(int pno, Predicate p) {
+        if (!(p.getOperand() instanceof IntField)) {
+            return true;
+        }
+        int i = this.column[p.getField()];
+        int min = this.mins[pno * this.columns.length + i];
+        int max = this.maxs[pno * this.columns.length + i];
+        if (min > max) {
+            // an empty page
+            return false;
+        }
+        int v = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+            return min <= v && v <= max;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        default:
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+  private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE });
+
+  private BTreeFile bf;
+
+  /**
+   * Register an empty B+ tree on small pages, so a few thousand tuples
+   * make a tree several levels deep.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    BufferPool.setPageSize(512);
+    Database.resetBufferPool(1000);
+    File f = File.createTempFile("btree", ".dat");
+    f.deleteOnExit();
+    f.delete();
+    bf = new BTreeFile(f, 0, TD);
+    Database.getCatalog().addTable(bf, "btree");
+  }
+
+  @After public void tearDown() {
+    BufferPool.resetPageSize();
+  }
+
+  private static Tuple tuple(int key, int value) {
+    Tuple t = new Tuple(TD);
+    t.setField(0, new IntField(key));
+    t.setField(1, new IntField(value));
+    return t;
+  }
+
+  private static int key(Tuple t) {
+    return ((IntField) t.getField(0)).getValue();
+  }
+
+  private static List<Tuple> scan(DbFileIterator it) throws Exception {
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    it.open();
+    while (it.hasNext()) {
+      tuples.add(it.next());
+    }
+    it.close();
+    return tuples;
+  }
+
+  /**
+   * Inserts n tuples with keys in random order, each key used twice.
+   */
+  private List<Tuple> insert(TransactionId tid, int n) throws Exception {
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = 0; i < n; i++) {
+      tuples.add(tuple(i / 2, i));
+    }
+    Collections.shuffle(tuples, new Random(0));
+    for (Tuple t : tuples) {
+      Database.getBufferPool().insertTuple(tid, bf.getId(), t);
+    }
+    return tuples;
+  }
+
+  /**
+   * The page keeps its own copies of tuples: changing a tuple after it is
+   * inserted, or one a scan returned, does not change the page.
+   */
+  @Test public void tuplesAreCopied() throws Exception {
+    TransactionId tid = new TransactionId();
+    Tuple inserted = tuple(1, 1);
+    Database.getBufferPool().insertTuple(tid, bf.getId(), inserted);
+    inserted.setField(1, new IntField(2));
+    Tuple read = scan(bf.iterator(tid)).get(0);
+    assertEquals("1\t1", read.toString());
+    assertEquals(inserted.getRecordId(), read.getRecordId());
+    read.setField(1, new IntField(3));
+    assertEquals("1\t1", scan(bf.iterator(tid)).get(0).toString());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Tuples come back in key order after splits at every level.
+   */
+  @Test public void insertSplits() throws Exception {
+    TransactionId tid = new TransactionId();
+    insert(tid, 5000);
+    List<Tuple> tuples = scan(bf.iterator(tid));
+    assertEquals(5000, tuples.size());
+    for (int i = 0; i < tuples.size(); i++) {
+      assertEquals(i / 2, key(tuples.get(i)));
+    }
+    BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(tid,
+        new BTreePageId(bf.getId(), 0, BTreePageId.ROOT_PTR), Permissions.READ_ONLY);
+    BTreeInternalPage root = (BTreeInternalPage) Database.getBufferPool().getPage(tid,
+        rootPtr.getRootId(), Permissions.READ_ONLY);
+    assertEquals(BTreePageId.INTERNAL, root.childCategory);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Every comparison returns exactly the matching tuples.
+   */
+  @Test public void rangeScans() throws Exception {
+    TransactionId tid = new TransactionId();
+    insert(tid, 3000);
+    for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+        Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ,
+        Predicate.Op.NOT_EQUALS }) {
+      for (int v : new int[] { -1, 0, 700, 1499, 1500 }) {
+        List<Tuple> tuples = scan(bf.indexIterator(tid, new IndexPredicate(op, new IntField(v))));
+        int expected = 0;
+        for (int k = 0; k < 1500; k++) {
+          if (new IntField(k).compare(op, new IntField(v))) {
+            expected += 2;
+          }
+        }
+        assertEquals(op + " " + v, expected, tuples.size());
+        for (Tuple t : tuples) {
+          assertTrue(t.getField(0).compare(op, new IntField(v)));
+        }
+      }
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * A point lookup locks, and so reads, one page per level plus the root
+   * pointer page, not the whole file.
+   */
+  @Test public void pointLookupReadsFewPages() throws Exception {
+    TransactionId tid = new TransactionId();
+    insert(tid, 20000);
+    Database.getBufferPool().transactionComplete(tid);
+
+    Database.getBufferPool().getLockStats().reset();
+    tid = new TransactionId();
+    List<Tuple> tuples = scan(bf.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(4321))));
+    assertEquals(2, tuples.size());
+    long pages = Database.getBufferPool().getLockStats().forTable(bf.getId()).getAcquisitions();
+    assertTrue(pages + " pages of " + bf.numPages(), pages <= 6);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Deleting most tuples merges pages, the rest can still be found, and
+   * the freed pages are reused rather than growing the file.
+   */
+  @Test public void deleteMerges() throws Exception {
+    Transaction t = new Transaction();
+    t.start();
+    List<Tuple> tuples = insert(t.getId(), 4000);
+    t.commit();
+    int pages = bf.numPages();
+
+    t = new Transaction();
+    t.start();
+    for (Tuple tup : tuples) {
+      if (key(tup) % 10 != 0) {
+        Database.getBufferPool().deleteTuple(t.getId(), tup);
+        assertNull(tup.getRecordId());
+      }
+    }
+    List<Tuple> left = scan(bf.iterator(t.getId()));
+    assertEquals(400, left.size());
+    for (int i = 0; i < left.size(); i++) {
+      assertEquals(i / 2 * 10, key(left.get(i)));
+    }
+    assertEquals(20, scan(bf.indexIterator(t.getId(),
+        new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(100)))).size());
+    t.commit();
+
+    t = new Transaction();
+    t.start();
+    insert(t.getId(), 3000);
+    t.commit();
+    // only a header page is added, to record the free pages
+    assertTrue(bf.numPages() + " pages, was " + pages, bf.numPages() <= pages + 1);
+  }
+
+  /**
+   * Aborting a transaction that split and merged pages leaves the tree as
+   * it was.
+   */
+  @Test public void abortRollsBack() throws Exception {
+    Transaction t = new Transaction();
+    t.start();
+    List<Tuple> tuples = insert(t.getId(), 1000);
+    t.commit();
+
+    t = new Transaction();
+    t.start();
+    for (int i = 0; i < 500; i++) {
+      Database.getBufferPool().insertTuple(t.getId(), bf.getId(), tuple(10000 + i, 0));
+      Database.getBufferPool().deleteTuple(t.getId(), tuples.get(i));
+    }
+    // force some of the changes to disk, so the log has to undo them
+    Database.getBufferPool().flushPages(t.getId());
+    t.abort();
+
+    TransactionId tid = new TransactionId();
+    List<Tuple> after = scan(bf.iterator(tid));
+    assertEquals(1000, after.size());
+    for (int i = 0; i < after.size(); i++) {
+      assertEquals(i / 2, key(after.get(i)));
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * The pages a transaction frees are only kept from it until it commits or
+   * aborts.
+   */
+  @Test public void freedPagesForgottenOnCompletion() throws Exception {
+    Transaction t = new Transaction();
+    t.start();
+    List<Tuple> tuples = insert(t.getId(), 2000);
+    t.commit();
+    // an abort rolls back to what is on disk
+    Database.getBufferPool().flushAllPages();
+
+    for (boolean commit : new boolean[] { false, true }) {
+      t = new Transaction();
+      t.start();
+      for (int i = 0; i < 1500; i++) {
+        Database.getBufferPool().deleteTuple(t.getId(), tuples.get(i));
+      }
+      assertTrue(bf.numFreedByRunning() > 0);
+      if (commit) {
+        t.commit();
+      } else {
+        t.abort();
+        // the deleted tuples are back, and their RecordIds have to be found again
+        TransactionId tid = new TransactionId();
+        tuples = scan(bf.iterator(tid));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(2000, tuples.size());
+      }
+      assertEquals(0, bf.numFreedByRunning());
+    }
+  }
+
+  /**
+   * A secondary index on a heap table follows inserts and deletes made
+   * through the BufferPool and finds the matching heap tuples.
+   */
+  @Test public void secondaryIndex() throws Exception {
+    File f = File.createTempFile("heap", ".dat");
+    f.deleteOnExit();
+    HeapFile hf = new HeapFile(f, TD);
+    Database.getCatalog().addTable(hf, "heap");
+    File idx = File.createTempFile("heap", ".idx");
+    idx.deleteOnExit();
+    idx.delete();
+    Index index = new Index(idx, hf.getId(), 1);
+    Database.getCatalog().addIndex(index);
+    assertEquals(index.getFile(), Database.getCatalog().getDatabaseFile(index.getFile().getId()));
+
+    TransactionId tid = new TransactionId();
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = 0; i < 2000; i++) {
+      Tuple t = tuple(i, i % 100);
+      Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+      tuples.add(t);
+    }
+    List<Tuple> found = scan(index.lookup(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(42))));
+    assertEquals(20, found.size());
+    for (Tuple t : found) {
+      assertEquals(42, key(t) % 100);
+    }
+
+    for (int i = 42; i < 2000; i += 200) {
+      Database.getBufferPool().deleteTuple(tid, tuples.get(i));
+    }
+    found = scan(index.lookup(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(42))));
+    assertEquals(10, found.size());
+    assertEquals(1990, scan(index.getFile().iterator(tid)).size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BTreeFileTest.class);
+  }
+
+}
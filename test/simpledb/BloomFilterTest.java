@@ -0,0 +1,140 @@
+package simpledb;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BloomFilterTest extends SimpleDbTestBase {
+  private static final int ROWS = 20000;
+  private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+      new String[] { "a", "b" });
+
+  private HeapFile heap;
+
+  /**
+   * A table with Bloom filters on a column of distinct values in no order,
+   * so that a zone map range of every page would cover nearly all of them.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    Database.resetBufferPool(1000);
+    heap = SystemTestUtil.createEmptyTable("t", TD);
+    heap.setBloomFilters(0);
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < ROWS; i++) {
+      Tuple t = new Tuple(heap.getTupleDesc());
+      t.setField(0, new IntField(i * 7919 % ROWS));
+      t.setField(1, new IntField(i % 10));
+      Database.getBufferPool().insertTuple(tid, heap.getId(), t);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+  }
+
+  private long pagesRead(int tableid) {
+    return Database.getBufferPool().getLockStats().forTable(tableid).getAcquisitions();
+  }
+
+  /**
+   * A scan with an equality predicate on the column reads only the page
+   * holding the value and the few that are false positives, and the
+   * filters are read back when the file is opened again.
+   */
+  @Test public void equalitySkipsPages() throws Exception {
+    assertTrue(heap.numPages() > 30);
+    Database.getBufferPool().getLockStats().reset();
+    TransactionId tid = new TransactionId();
+    List<Predicate> preds = Collections.singletonList(new Predicate(0, Predicate.Op.EQUALS, new IntField(1234)));
+    List<String> tuples = SystemTestUtil.sortedTupleStrings(new SeqScan(tid, heap.getId(), "t", preds));
+    assertEquals(Collections.singletonList("1234\t6"), tuples);
+    long pages = pagesRead(heap.getId());
+    assertTrue(pages + " of " + heap.numPages(), pages <= 4);
+
+    // the column without filters reads every page
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().getLockStats().reset();
+    tid = new TransactionId();
+    SystemTestUtil.sortedTupleStrings(new SeqScan(tid, heap.getId(), "t",
+        Collections.singletonList(new Predicate(1, Predicate.Op.EQUALS, new IntField(3)))));
+    assertEquals(heap.numPages(), pagesRead(heap.getId()));
+    Database.getBufferPool().transactionComplete(tid);
+
+    HeapFile reopened = new HeapFile(heap.getFile(), heap.getTupleDesc());
+    reopened.setBloomFilters(0);
+    int candidates = 0;
+    for (int pno = 0; pno < reopened.numPages(); pno++) {
+      if (reopened.getBloomFilters().mayMatch(pno, preds)) {
+        candidates++;
+      }
+    }
+    assertTrue(candidates + " of " + heap.numPages(), candidates >= 1 && candidates <= 4);
+  }
+
+  /**
+   * Tuples inserted since a page was written are found, and the filters of
+   * other columns are discarded from the side file.
+   */
+  @Test public void insertedValuesFound() throws Exception {
+    TransactionId tid = new TransactionId();
+    Tuple t = new Tuple(heap.getTupleDesc());
+    t.setField(0, new IntField(ROWS + 5));
+    t.setField(1, new IntField(42));
+    Database.getBufferPool().insertTuple(tid, heap.getId(), t);
+    List<Predicate> preds = Collections.singletonList(new Predicate(0, Predicate.Op.EQUALS, new IntField(ROWS + 5)));
+    assertEquals(Collections.singletonList((ROWS + 5) + "\t42"), SystemTestUtil.sortedTupleStrings(new SeqScan(tid, heap.getId(), "t", preds)));
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+
+    HeapFile other = new HeapFile(heap.getFile(), heap.getTupleDesc());
+    other.setBloomFilters(1);
+    assertFalse(other.getBloomFilters().getFile().exists());
+    for (int pno = 0; pno < other.numPages(); pno++) {
+      assertTrue(other.getBloomFilters().mayMatch(pno,
+          Collections.singletonList(new Predicate(1, Predicate.Op.EQUALS, new IntField(-1)))));
+    }
+  }
+
+  /**
+   * The probe side of a hash join reads only the pages whose filters may
+   * hold one of the keys of the build side.
+   */
+  @Test public void hashJoinProbeSkipsPages() throws Exception {
+    HeapFile keys = SystemTestUtil.createEmptyTable("k", TD);
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 5; i++) {
+      Tuple t = new Tuple(keys.getTupleDesc());
+      t.setField(0, new IntField(i * 1000 + 17));
+      t.setField(1, new IntField(i));
+      Database.getBufferPool().insertTuple(tid, keys.getId(), t);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+
+    Database.getBufferPool().getLockStats().reset();
+    tid = new TransactionId();
+    JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    List<String> joined = SystemTestUtil.sortedTupleStrings(new HashEquiJoin(p, new SeqScan(tid, keys.getId(), "k"),
+        new SeqScan(tid, heap.getId(), "t")));
+    assertEquals(5, joined.size());
+    long pages = pagesRead(heap.getId());
+    assertTrue(pages + " of " + heap.numPages(), pages <= 8);
+    assertEquals(SystemTestUtil.sortedTupleStrings(new Join(p, new SeqScan(tid, keys.getId(), "k"), new SeqScan(tid, heap.getId(), "t"))),
+        joined);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BloomFilterTest.class);
+  }
+
+}
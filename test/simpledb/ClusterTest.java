@@ -0,0 +1,251 @@
+package simpledb;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotNull;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ClusterTest extends SimpleDbTestBase {
+  private static final int ROWS = 5000;
+  private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+      new String[] { "a", "b" });
+
+  private HeapFile heap;
+
+  /**
+   * A table with a key inserted in no order, clustered on it but not yet
+   * in order.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    Database.resetBufferPool(1000);
+    heap = SystemTestUtil.createEmptyTable("t", TD);
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < ROWS; i++) {
+      Database.getBufferPool().insertTuple(tid, heap.getId(), SystemTestUtil.tuple(TD, i * 7919 % ROWS, i % 10));
+    }
+    Database.getBufferPool().transactionComplete(tid);
+    heap.setClusterKey(0);
+  }
+
+  private static List<Integer> keys(OpIterator it) throws Exception {
+    List<Integer> keys = new ArrayList<Integer>();
+    it.open();
+    while (it.hasNext()) {
+      keys.add(((IntField) it.next().getField(0)).getValue());
+    }
+    it.close();
+    return keys;
+  }
+
+  private static boolean ascending(List<Integer> keys) {
+    for (int i = 1; i < keys.size(); i++) {
+      if (keys.get(i - 1) > keys.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * CLUSTER stores the tuples in key order, which is remembered when the
+   * file is opened again, and a scan of a key range stops after it.
+   */
+  @Test public void clusterStopsRangeScans() throws Exception {
+    assertFalse(heap.isClustered());
+    assertEquals(-1, Database.getCatalog().getClusterKey(heap.getId()));
+    Parser p = new Parser();
+    p.processNextStatement("cluster t on a;");
+    assertTrue(heap.isClustered());
+    assertEquals(0, Database.getCatalog().getClusterKey(heap.getId()));
+
+    TransactionId tid = new TransactionId();
+    List<Integer> all = keys(new SeqScan(tid, heap.getId(), "t"));
+    assertEquals(ROWS, all.size());
+    assertTrue(ascending(all));
+    Database.getBufferPool().transactionComplete(tid);
+
+    HeapFile reopened = new HeapFile(heap.getFile(), TD);
+    reopened.setClusterKey(0);
+    assertTrue(reopened.isClustered());
+    reopened.setClusterKey(1);
+    assertFalse(reopened.isClustered());
+
+    Database.getBufferPool().getLockStats().reset();
+    tid = new TransactionId();
+    List<Predicate> preds = Collections.singletonList(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(100)));
+    assertEquals(100, keys(new SeqScan(tid, heap.getId(), "t", preds)).size());
+    assertEquals(1, Database.getBufferPool().getLockStats().forTable(heap.getId()).getAcquisitions());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Tuples of different sizes on slotted pages are stored in order too,
+   * though a smaller tuple would fit on a page the cluster has left.
+   */
+  @Test public void clusterVarchar() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE }, new String[] { "a", "pad" });
+    HeapFile hf = SystemTestUtil.createEmptyTable("v", td);
+    Random random = new Random(0);
+    int below = 0;
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 3000; i++) {
+      Tuple t = new Tuple(td);
+      int key = random.nextInt(100000);
+      below += key < 50000 ? 1 : 0;
+      t.setField(0, new IntField(key));
+      t.setField(1, new VarcharField("x".repeat(random.nextInt(120))));
+      Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+
+    assertEquals(3000, hf.cluster(0));
+    assertTrue(hf.isClustered());
+    tid = new TransactionId();
+    List<Integer> keys = keys(new SeqScan(tid, hf.getId(), "v"));
+    assertEquals(3000, keys.size());
+    assertTrue(ascending(keys));
+    List<Predicate> preds = Collections.singletonList(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(50000)));
+    assertEquals(below, keys(new SeqScan(tid, hf.getId(), "v", preds)).size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * CLUSTER sorts a table larger than a sort run in runs, and keeps every
+   * tuple.
+   */
+  @Test public void clusterSortsInRuns() throws Exception {
+    heap.setSortRun(700);
+    assertEquals(ROWS, heap.cluster(0));
+    assertTrue(heap.isClustered());
+    TransactionId tid = new TransactionId();
+    List<Integer> keys = keys(new SeqScan(tid, heap.getId(), "t"));
+    assertEquals(ROWS, new HashSet<Integer>(keys).size());
+    assertTrue(ascending(keys));
+    Database.getBufferPool().transactionComplete(tid);
+
+    TupleSorter sorter = new TupleSorter(TD, 0, 7);
+    for (int i = 0; i < 100; i++) {
+      sorter.add(SystemTestUtil.tuple(TD, i * 37 % 50, i));
+    }
+    assertEquals(14, sorter.numRuns());
+    OpIterator sorted = sorter.iterator();
+    keys = keys(sorted);
+    assertEquals(100, keys.size());
+    assertTrue(ascending(keys));
+    assertEquals(keys, keys(sorted));
+    sorter.clear();
+  }
+
+  /**
+   * Inserting a tuple ends the order; deleting does not.
+   */
+  @Test public void insertEndsOrder() throws Exception {
+    heap.cluster(0);
+    TransactionId tid = new TransactionId();
+    DbFileIterator it = heap.iterator(tid);
+    it.open();
+    Database.getBufferPool().deleteTuple(tid, it.next());
+    it.close();
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+    assertTrue(heap.isClustered());
+
+    tid = new TransactionId();
+    Database.getBufferPool().insertTuple(tid, heap.getId(), SystemTestUtil.tuple(TD, 0, 0));
+    Database.getBufferPool().transactionComplete(tid);
+    assertFalse(heap.isClustered());
+    HeapFile reopened = new HeapFile(heap.getFile(), TD);
+    reopened.setClusterKey(0);
+    assertFalse(reopened.isClustered());
+  }
+
+  private static void bulkLoad(HeapFile hf, int from, int to) throws Exception {
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = from; i < to; i++) {
+      tuples.add(SystemTestUtil.tuple(TD, to - 1 - (i - from), i));
+    }
+    TransactionId tid = new TransactionId();
+    OpIterator load = new BulkLoad(tid, new TupleIterator(TD, tuples), hf.getId());
+    load.open();
+    assertEquals(to - from, ((IntField) load.next().getField(0)).getValue());
+    load.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * A bulk load into a clustered table sorts its tuples on the key, and
+   * keeps the table in order unless it loads smaller keys.
+   */
+  @Test public void bulkLoadSorts() throws Exception {
+    HeapFile hf = SystemTestUtil.createEmptyTable("l", TD);
+    hf.setClusterKey(0);
+    hf.setSortRun(300);
+    assertTrue(hf.isClustered());
+    bulkLoad(hf, 0, 2000);
+    bulkLoad(hf, 2000, 3000);
+    assertTrue(hf.isClustered());
+    TransactionId tid = new TransactionId();
+    List<Integer> keys = keys(new SeqScan(tid, hf.getId(), "l"));
+    assertEquals(3000, keys.size());
+    assertTrue(ascending(keys));
+    Database.getBufferPool().transactionComplete(tid);
+
+    bulkLoad(hf, 0, 10);
+    assertFalse(hf.isClustered());
+  }
+
+  /**
+   * The planner drops an ascending ORDER BY on the key of a clustered
+   * table, and keeps any other.
+   */
+  @Test public void plannerElidesOrderBy() throws Exception {
+    heap.cluster(0);
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("t", new TableStats(heap.getId(), 1000));
+    TransactionId tid = new TransactionId();
+
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(heap.getId(), "t");
+    lp.addFilter("t.a", Predicate.Op.GREATER_THAN_OR_EQ, "4000");
+    lp.addProjectField("t.a", null);
+    lp.addOrderBy("t.a", true);
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    assertNull(SystemTestUtil.findOperator(plan, OrderBy.class));
+    assertTrue(lp.getScanCost("t") < stats.get("t").estimateScanCost());
+    List<Integer> keys = keys(plan);
+    assertEquals(ROWS - 4000, keys.size());
+    assertTrue(ascending(keys));
+
+    lp = new LogicalPlan();
+    lp.addScan(heap.getId(), "t");
+    lp.addProjectField("t.a", null);
+    lp.addOrderBy("t.a", false);
+    assertNotNull(SystemTestUtil.findOperator(lp.physicalPlan(tid, stats, false), OrderBy.class));
+
+    lp = new LogicalPlan();
+    lp.addScan(heap.getId(), "t");
+    lp.addProjectField("t.a", null);
+    lp.addProjectField("t.b", null);
+    lp.addOrderBy("t.b", true);
+    assertNotNull(SystemTestUtil.findOperator(lp.physicalPlan(tid, stats, false), OrderBy.class));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ClusterTest.class);
+  }
+
+}
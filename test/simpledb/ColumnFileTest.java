@@ -0,0 +1,194 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ColumnFileTest extends SimpleDbTestBase {
+  private static final TupleDesc TD = new TupleDesc(
+      new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.VARCHAR_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE },
+      new String[] { "key", "status", "cat", "ts", "price" });
+  private static final int ROWS = 10000;
+
+  private HeapFile heap;
+  private ColumnFile cf;
+
+  /**
+   * A wide heap table, converted to a column file: a sequential key, a
+   * status in long runs, a category with few values, a timestamp in a
+   * narrow range and a price that does not compress.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    Database.resetBufferPool(1000);
+    File f = File.createTempFile("columns", ".dat");
+    f.deleteOnExit();
+    heap = new HeapFile(f, TD);
+    Database.getCatalog().addTable(heap, "h");
+    Random r = new Random(0);
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < ROWS; i++) {
+      Tuple t = new Tuple(TD);
+      t.setField(0, new IntField(i));
+      t.setField(1, new IntField(i / 500));
+      t.setField(2, new VarcharField("category" + (i % 7)));
+      t.setField(3, new LongField(1500000000000L + i * 10));
+      t.setField(4, new DoubleField(r.nextDouble()));
+      Database.getBufferPool().insertTuple(tid, heap.getId(), t);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+
+    File cfile = File.createTempFile("columns", ".col");
+    cfile.deleteOnExit();
+    cf = ColumnFile.convert(heap, cfile);
+    Database.getCatalog().addTable(cf, "c");
+  }
+
+  private static List<String> run(DbFileIterator it) throws Exception {
+    List<String> tuples = new ArrayList<String>();
+    it.open();
+    while (it.hasNext()) {
+      tuples.add(it.next().toString());
+    }
+    it.rewind();
+    int count = 0;
+    while (it.hasNext()) {
+      it.next();
+      count++;
+    }
+    it.close();
+    assertEquals(tuples.size(), count);
+    return tuples;
+  }
+
+  /**
+   * The column file holds the rows of the heap file in order, and each
+   * column is stored in the encoding that suits its values.
+   */
+  @Test public void convertRoundTrip() throws Exception {
+    TransactionId tid = new TransactionId();
+    assertEquals(ROWS, cf.numRows());
+    assertEquals(run(heap.iterator(tid)), run(cf.iterator(tid)));
+
+    ColumnPage.Encoding[] expected = { ColumnPage.Encoding.FRAME_OF_REFERENCE,
+        ColumnPage.Encoding.RUN_LENGTH, ColumnPage.Encoding.DICTIONARY,
+        ColumnPage.Encoding.FRAME_OF_REFERENCE, ColumnPage.Encoding.PLAIN };
+    for (int i = 0; i < TD.numFields(); i++) {
+      ColumnPage p = cf.readPage(new HeapPageId(cf.getId(), cf.firstPage(i)));
+      assertEquals(TD.getFieldName(i), expected[i], p.getEncoding());
+    }
+    // the encoded columns take far fewer pages than the plain ones
+    assertEquals(1, cf.numPages(1));
+    assertTrue(cf.numPages(0) * 2 < cf.numPages(4));
+    assertTrue(cf.numPages() < heap.numPages());
+
+    ColumnFile reopened = new ColumnFile(cf.getFile(), TD);
+    assertEquals(ROWS, reopened.numRows());
+    assertEquals(cf.numPages(), reopened.numPages());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * A scan of some columns reads only their pages, and a predicate on
+   * another column is evaluated before the projected columns are read.
+   */
+  @Test public void scanReadsProjectedColumns() throws Exception {
+    Database.getBufferPool().getLockStats().reset();
+    TransactionId tid = new TransactionId();
+    SeqScan scan = new SeqScan(tid, cf.getId(), "c", Collections.<Predicate>emptyList(), new int[] { 2, 0 });
+    assertEquals("c.cat", scan.getTupleDesc().getFieldName(0));
+    List<String> tuples = SystemTestUtil.tupleStrings(scan);
+    assertEquals(ROWS, tuples.size());
+    assertEquals("category3\t3", tuples.get(3));
+    long pages = Database.getBufferPool().getLockStats().forTable(cf.getId()).getAcquisitions();
+    assertEquals(cf.numPages(0) + cf.numPages(2), pages);
+    Database.getBufferPool().transactionComplete(tid);
+
+    Database.getBufferPool().getLockStats().reset();
+    tid = new TransactionId();
+    List<Predicate> preds = Collections.singletonList(
+        new Predicate(1, Predicate.Op.EQUALS, new IntField(3)));
+    tuples = SystemTestUtil.tupleStrings(new SeqScan(tid, cf.getId(), "c", preds, new int[] { 4 }));
+    assertEquals(500, tuples.size());
+    pages = Database.getBufferPool().getLockStats().forTable(cf.getId()).getAcquisitions();
+    assertTrue(pages + " of " + cf.numPages(4), pages <= cf.numPages(1) + 2);
+    assertEquals(SystemTestUtil.tupleStrings(new Filter(preds.get(0), new SeqScan(tid, heap.getId(), "h"))).size(), tuples.size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Column files cannot be changed.
+   */
+  @Test(expected = DbException.class)
+  public void readOnly() throws Exception {
+    Tuple t = new Tuple(TD);
+    for (int i = 0; i < TD.numFields(); i++) {
+      t.setField(i, TD.getFieldType(i).parse("1"));
+    }
+    Database.getBufferPool().insertTuple(new TransactionId(), cf.getId(), t);
+  }
+
+  /**
+   * The planner scans only the columns of a column table the query uses,
+   * with the columns of its filters evaluated in the scan.
+   */
+  @Test public void plannerPrunesColumns() throws Exception {
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("c", new TableStats(cf.getId(), 1000));
+    TransactionId tid = new TransactionId();
+
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(cf.getId(), "c");
+    lp.addFilter("c.status", Predicate.Op.LESS_THAN, "2");
+    lp.addProjectField("c.cat", null);
+    lp.addProjectField("c.ts", null);
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    SeqScan scan = SystemTestUtil.findOperator(plan, SeqScan.class);
+    assertNotNull(scan);
+    assertTrue(Arrays.equals(new int[] { 2, 3 }, scan.getColumns()));
+    assertEquals(1, scan.getPredicates().size());
+    assertTrue(lp.getScanCost("c") < stats.get("c").estimateScanCost());
+    List<String> result = SystemTestUtil.tupleStrings(plan);
+    assertEquals(1000, result.size());
+    assertEquals("category1\t1500000000010", result.get(1));
+
+    OperatorCardinality.updateOperatorCardinality((Operator) plan,
+        lp.getTableAliasToIdMapping(), stats);
+    String tree = new QueryPlanVisualizer().getQueryPlanTree(plan);
+    assertTrue(tree, tree.contains("scan(c, c.status<2, cols 2/5)"));
+
+    lp = new LogicalPlan();
+    lp.addScan(cf.getId(), "c");
+    lp.addProjectField("c.cat", null);
+    lp.addProjectField("c.key", "count");
+    lp.addAggregate("count", "c.key", "c.cat");
+    plan = lp.physicalPlan(tid, stats, false);
+    assertTrue(Arrays.equals(new int[] { 0, 2 }, SystemTestUtil.findOperator(plan, SeqScan.class).getColumns()));
+    assertEquals(7, SystemTestUtil.tupleStrings(plan).size());
+
+    lp = new LogicalPlan();
+    lp.addScan(cf.getId(), "c");
+    lp.addProjectField("*", null);
+    assertNull(SystemTestUtil.findOperator(lp.physicalPlan(tid, stats, false), SeqScan.class).getColumns());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ColumnFileTest.class);
+  }
+
+}
@@ -0,0 +1,186 @@
+package simpledb;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+  private ArrayList<ArrayList<Integer>> tuples;
+  private HeapFile source;
+  private File dest;
+
+  /**
+   * Create a multi-page table of small values, which compresses well.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    tuples = new ArrayList<ArrayList<Integer>>();
+    source = SystemTestUtil.createRandomHeapFile(4, 5000, 100, null, tuples);
+    dest = File.createTempFile("compressed", ".dat");
+    dest.deleteOnExit();
+  }
+
+  /**
+   * A compressed copy has the same pages and tuples in much less space.
+   */
+  @Test public void compressAndScan() throws Exception {
+    CompressedHeapFile cf = CompressedHeapFile.compress(source, dest);
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    assertEquals(source.numPages(), cf.numPages());
+    assertTrue(dest.length() * 2 < source.getFile().length());
+    SystemTestUtil.matchTuples(cf, tuples);
+
+    // the page-offset index is read back when the file is reopened
+    cf = new CompressedHeapFile(dest, source.getTupleDesc());
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    assertEquals(source.numPages(), cf.numPages());
+    SystemTestUtil.matchTuples(cf, tuples);
+  }
+
+  /**
+   * Inserts and deletes through the BufferPool are written back compressed,
+   * including new pages appended to the file.
+   */
+  @Test public void writes() throws Exception {
+    CompressedHeapFile cf = CompressedHeapFile.compress(source, dest);
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    int pages = cf.numPages();
+
+    TransactionId tid = new TransactionId();
+    DbFileIterator it = cf.iterator(tid);
+    it.open();
+    Tuple victim = it.next();
+    it.close();
+    Database.getBufferPool().deleteTuple(tid, victim);
+    tuples.remove(SystemTestUtil.tupleToList(victim));
+    for (int i = 0; i < 1000; i++) {
+      Tuple t = Utility.getHeapTuple(new int[] { i, i, i, i });
+      Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+      tuples.add(SystemTestUtil.tupleToList(t));
+    }
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+    assertTrue(cf.numPages() > pages);
+
+    cf = new CompressedHeapFile(dest, source.getTupleDesc());
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    SystemTestUtil.matchTuples(cf, tuples);
+  }
+
+  /**
+   * A write that did not finish before a crash leaves bytes after the index
+   * the header points at; the file still opens with the pages as they were,
+   * and later writes ignore them.
+   */
+  @Test public void unfinishedWrite() throws Exception {
+    CompressedHeapFile.compress(source, dest);
+    RandomAccessFile file = new RandomAccessFile(dest, "rw");
+    file.seek(file.length());
+    file.write(new byte[1000]);
+    file.close();
+
+    CompressedHeapFile cf = new CompressedHeapFile(dest, source.getTupleDesc());
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    assertEquals(source.numPages(), cf.numPages());
+    SystemTestUtil.matchTuples(cf, tuples);
+
+    TransactionId tid = new TransactionId();
+    Tuple t = Utility.getHeapTuple(new int[] { -1, -1, -1, -1 });
+    Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+    tuples.add(SystemTestUtil.tupleToList(t));
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+    cf = new CompressedHeapFile(dest, source.getTupleDesc());
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    SystemTestUtil.matchTuples(cf, tuples);
+  }
+
+  /**
+   * A page written past the end of the file keeps its page number, with
+   * empty pages before it.
+   */
+  @Test public void writePastEnd() throws Exception {
+    CompressedHeapFile cf = CompressedHeapFile.compress(source, dest);
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    int pages = cf.numPages();
+    HeapPage page = new HeapPage(new HeapPageId(cf.getId(), pages + 2), HeapPage.createEmptyPageData());
+    page.insertTuple(Utility.getHeapTuple(new int[] { 7, 7, 7, 7 }));
+    cf.writePage(page);
+    assertEquals(pages + 3, cf.numPages());
+    assertFalse(((HeapPage) cf.readPage(new HeapPageId(cf.getId(), pages))).iterator().hasNext());
+    Tuple t = ((HeapPage) cf.readPage(new HeapPageId(cf.getId(), pages + 2))).iterator().next();
+    assertEquals(7, ((IntField) t.getField(0)).getValue());
+  }
+
+  /**
+   * A page that still fits in its extent is written in place, and pages
+   * rewritten many times with data that no longer fits do not make the
+   * file grow without bound.
+   */
+  @Test public void reclaimsSpace() throws Exception {
+    CompressedHeapFile cf = CompressedHeapFile.compress(source, dest);
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    int pages = cf.numPages();
+    long length = dest.length();
+    cf.writePage(new HeapPage(new HeapPageId(cf.getId(), 0), HeapPage.createEmptyPageData()));
+    assertEquals(length, dest.length());
+    assertFalse(((HeapPage) cf.readPage(new HeapPageId(cf.getId(), 0))).iterator().hasNext());
+
+    Random random = new Random(0);
+    int[][] last = new int[pages][];
+    for (int round = 0; round < 6; round++) {
+      for (int pno = 0; pno < pages; pno++) {
+        HeapPage page = new HeapPage(new HeapPageId(cf.getId(), pno), HeapPage.createEmptyPageData());
+        while (page.getNumEmptySlots() > 0) {
+          last[pno] = new int[] { random.nextInt(), random.nextInt(), random.nextInt(), random.nextInt() };
+          page.insertTuple(Utility.getHeapTuple(last[pno]));
+        }
+        cf.writePage(page);
+      }
+    }
+    assertTrue(dest.length() + " bytes", dest.length() < 3L * pages * BufferPool.getPageSize());
+
+    cf = new CompressedHeapFile(dest, source.getTupleDesc());
+    assertEquals(pages, cf.numPages());
+    for (int pno = 0; pno < pages; pno++) {
+      Tuple t = null;
+      for (Iterator<Tuple> it = ((HeapPage) cf.readPage(new HeapPageId(cf.getId(), pno))).iterator();
+          it.hasNext(); ) {
+        t = it.next();
+      }
+      assertEquals(last[pno][3], ((IntField) t.getField(3)).getValue());
+    }
+  }
+
+  /**
+   * An empty table compresses to an empty file that can be scanned.
+   */
+  @Test public void empty() throws Exception {
+    source = SystemTestUtil.createRandomHeapFile(2, 0, null, null);
+    CompressedHeapFile cf = CompressedHeapFile.compress(source, dest);
+    Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    SystemTestUtil.matchTuples(cf, new ArrayList<ArrayList<Integer>>());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+  }
+
+}
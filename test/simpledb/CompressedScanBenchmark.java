@@ -0,0 +1,95 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares the on-disk size and full scan time of a TPC-H lineitem-like
+ * table stored as a plain HeapFile and as a CompressedHeapFile. Scans start
+ * with an empty BufferPool, but the operating system's cache is warm, so
+ * the compressed times show the CPU cost of inflating pages rather than the
+ * I/O saved.
+ * <p>
+ * Run with: java -cp bin/src:bin/test:lib/* simpledb.CompressedScanBenchmark
+ */
+public class CompressedScanBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int RUNS = 5;
+    private static final String[] SHIP_MODES = { "AIR", "MAIL", "RAIL", "SHIP", "TRUCK", "REG AIR", "FOB" };
+    private static final String[] INSTRUCTIONS = { "DELIVER IN PERSON", "COLLECT COD", "NONE", "TAKE BACK RETURN" };
+
+    public static void main(String[] args) throws Exception {
+        TupleDesc td = new TupleDesc(
+                new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.DOUBLE_TYPE, Type.DOUBLE_TYPE,
+                        Type.STRING_TYPE, Type.DATE_TYPE, Type.DATE_TYPE, Type.STRING_TYPE, Type.STRING_TYPE },
+                new String[] { "orderkey", "partkey", "quantity", "extendedprice", "discount",
+                        "returnflag", "shipdate", "receiptdate", "shipinstruct", "shipmode" });
+        File f = File.createTempFile("lineitem", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, "lineitem");
+
+        Random rand = new Random(0);
+        ArrayList<Tuple> tuples = new ArrayList<>();
+        int shipdate = (int) DateField.parse("1992-01-01").getValue();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(td);
+            int quantity = 1 + rand.nextInt(50);
+            int day = shipdate + rand.nextInt(2500);
+            t.setField(0, new IntField(i / 4));
+            t.setField(1, new IntField(rand.nextInt(200000)));
+            t.setField(2, new IntField(quantity));
+            t.setField(3, new DoubleField(Math.round(quantity * (900 + rand.nextInt(100000) / 100.0) * 100) / 100.0));
+            t.setField(4, new DoubleField(rand.nextInt(11) / 100.0));
+            t.setField(5, new StringField(rand.nextBoolean() ? "N" : rand.nextBoolean() ? "R" : "A", Type.STRING_LEN));
+            t.setField(6, new DateField(day));
+            t.setField(7, new DateField(day + 1 + rand.nextInt(30)));
+            t.setField(8, new StringField(INSTRUCTIONS[rand.nextInt(INSTRUCTIONS.length)], Type.STRING_LEN));
+            t.setField(9, new StringField(SHIP_MODES[rand.nextInt(SHIP_MODES.length)], Type.STRING_LEN));
+            tuples.add(t);
+        }
+        Transaction load = new Transaction();
+        load.start();
+        TupleIterator it = new TupleIterator(td, tuples);
+        it.open();
+        hf.bulkLoad(load.getId(), it);
+        load.commit();
+        Database.getBufferPool().flushAllPages();
+
+        File cf = File.createTempFile("lineitem", ".z");
+        cf.deleteOnExit();
+        long start = System.nanoTime();
+        CompressedHeapFile chf = CompressedHeapFile.compress(hf, cf);
+        long compressNanos = System.nanoTime() - start;
+        Database.getCatalog().addTable(chf, "lineitem_z");
+
+        System.out.println("file\tpages\tKB\tscan ms");
+        System.out.printf("heap\t%d\t%d\t%.1f%n", hf.numPages(), f.length() / 1024, scan(hf));
+        System.out.printf("deflate\t%d\t%d\t%.1f%n", chf.numPages(), cf.length() / 1024, scan(chf));
+        System.out.printf("compressing took %.1f ms%n", compressNanos / 1e6);
+        System.exit(0);
+    }
+
+    /** @return the best time, in ms, to scan f starting from an empty buffer pool */
+    private static double scan(HeapFile f) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            SeqScan scan = new SeqScan(tid, f.getId());
+            scan.open();
+            double revenue = 0;
+            while (scan.hasNext()) {
+                Tuple t = scan.next();
+                revenue += ((DoubleField) t.getField(3)).getValue() * (1 - ((DoubleField) t.getField(4)).getValue());
+            }
+            scan.close();
+            best = Math.min(best, System.nanoTime() - start);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        return best / 1e6;
+    }
+}
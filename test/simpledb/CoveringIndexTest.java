@@ -0,0 +1,207 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CoveringIndexTest extends SimpleDbTestBase {
+  private static final int ROWS = 5000;
+  private static final TupleDesc TD = new TupleDesc(
+      new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE },
+      new String[] { "k", "v", "w", "pad" });
+
+  private HeapFile hf;
+  private Index index;
+
+  /**
+   * A wide heap table and a B+ tree index on v that includes w.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    hf = SystemTestUtil.createEmptyTable("t", TD);
+    File idx = File.createTempFile("covering", ".idx");
+    idx.deleteOnExit();
+    idx.delete();
+    index = new Index(idx, hf.getId(), 1, false, new int[] { 2 });
+    Database.getCatalog().addIndex(index);
+
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < ROWS; i++) {
+      Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(i, i % 10, i * 7919 % ROWS));
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  private static Tuple tuple(int k, int v, int w) {
+    Tuple t = new Tuple(TD);
+    t.setField(0, new IntField(k));
+    t.setField(1, new IntField(v));
+    t.setField(2, new IntField(w));
+    t.setField(3, new StringField("padding " + k, Type.STRING_LEN));
+    return t;
+  }
+
+  private long heapPagesRead() {
+    return Database.getBufferPool().getLockStats().forTable(hf.getId()).getAcquisitions();
+  }
+
+  /**
+   * An index-only scan returns the key and included fields of every
+   * matching tuple without reading the table.
+   */
+  @Test public void indexOnlyScan() throws Exception {
+    assertTrue(index.covers(Arrays.asList(1, 2)));
+    assertFalse(index.covers(Arrays.asList(0, 1)));
+
+    Database.getBufferPool().getLockStats().reset();
+    TransactionId tid = new TransactionId();
+    IndexScan scan = new IndexScan(tid, index, null, "a", new int[] { 2, 1 });
+    assertEquals("a.w", scan.getTupleDesc().getFieldName(0));
+    assertEquals(ROWS, SystemTestUtil.sortedTupleStrings(scan).size());
+    List<String> threes = SystemTestUtil.sortedTupleStrings(new IndexScan(tid, index,
+        new IndexPredicate(Predicate.Op.EQUALS, new IntField(3)), "a", new int[] { 1, 2 }));
+    assertEquals(ROWS / 10, threes.size());
+    assertEquals(0, heapPagesRead());
+
+    List<String> expected = new ArrayList<String>();
+    for (String s : SystemTestUtil.sortedTupleStrings(new Filter(new Predicate(1, Predicate.Op.EQUALS, new IntField(3)),
+        new SeqScan(tid, hf.getId(), "a")))) {
+      String[] fields = s.split("\t");
+      expected.add(fields[1] + "\t" + fields[2]);
+    }
+    Collections.sort(expected);
+    assertEquals(expected, threes);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Included values follow inserts and deletes.
+   */
+  @Test public void entriesFollowTable() throws Exception {
+    TransactionId tid = new TransactionId();
+    Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(ROWS, 3, -1));
+    DbFileIterator it = hf.iterator(tid);
+    it.open();
+    Database.getBufferPool().deleteTuple(tid, it.next());
+    it.close();
+    List<String> entries = SystemTestUtil.sortedTupleStrings(new IndexScan(tid, index,
+        new IndexPredicate(Predicate.Op.EQUALS, new IntField(3)), "a", new int[] { 2 }));
+    assertEquals(ROWS / 10 + 1, entries.size());
+    assertEquals("-1", entries.get(0));
+    List<String> zeros = SystemTestUtil.sortedTupleStrings(new IndexScan(tid, index,
+        new IndexPredicate(Predicate.Op.EQUALS, new IntField(0)), "a", new int[] { 1 }));
+    assertEquals(ROWS / 10 - 1, zeros.size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * VARCHAR keys and included fields are read back from the index as the
+   * VarcharFields the table holds.
+   */
+  @Test public void varcharFields() throws Exception {
+    HeapFile strings = SystemTestUtil.createEmptyTable("s", new TupleDesc(
+        new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE, Type.VARCHAR_TYPE }));
+    File idx = File.createTempFile("covering", ".idx");
+    idx.deleteOnExit();
+    idx.delete();
+    Index byName = new Index(idx, strings.getId(), 1, false, new int[] { 2 });
+    Database.getCatalog().addIndex(byName);
+    assertTrue(byName.covers(Arrays.asList(1, 2)));
+
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 100; i++) {
+      Tuple t = new Tuple(strings.getTupleDesc());
+      t.setField(0, new IntField(i));
+      t.setField(1, new VarcharField("name" + (i % 10)));
+      t.setField(2, new VarcharField("value " + i));
+      Database.getBufferPool().insertTuple(tid, strings.getId(), t);
+    }
+    IndexScan scan = new IndexScan(tid, byName,
+        new IndexPredicate(Predicate.Op.EQUALS, new VarcharField("name3")), "s", new int[] { 2, 1 });
+    assertEquals(Type.VARCHAR_TYPE, scan.getTupleDesc().getFieldType(0));
+    List<String> tuples = new ArrayList<String>();
+    scan.open();
+    while (scan.hasNext()) {
+      Tuple t = scan.next();
+      assertTrue(t.getField(0) instanceof VarcharField);
+      assertEquals(new VarcharField("name3"), t.getField(1));
+      tuples.add(t.toString());
+    }
+    scan.close();
+    Collections.sort(tuples);
+    assertEquals(10, tuples.size());
+    assertEquals("value 13\tname3", tuples.get(0));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * The planner answers a query that only uses the key and included fields
+   * from the index alone, with the filters on included fields applied to
+   * its output, and reads the table for any other query.
+   */
+  @Test public void plannerUsesCoveringIndex() throws Exception {
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("t", new TableStats(hf.getId(), 1000));
+    Database.getBufferPool().getLockStats().reset();
+    TransactionId tid = new TransactionId();
+
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(hf.getId(), "t");
+    lp.addProjectField("t.v", null);
+    lp.addProjectField("t.w", "count");
+    lp.addAggregate("count", "t.w", "t.v");
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    IndexScan scan = SystemTestUtil.findOperator(plan, IndexScan.class);
+    assertNotNull(scan);
+    assertNull(scan.getPredicate());
+    assertTrue(lp.getScanCost("t") < stats.get("t").estimateScanCost());
+    List<String> groups = SystemTestUtil.sortedTupleStrings(plan);
+    assertEquals(10, groups.size());
+    assertEquals("3\t" + ROWS / 10, groups.get(3));
+    assertEquals(0, heapPagesRead());
+
+    OperatorCardinality.updateOperatorCardinality((Operator) plan,
+        lp.getTableAliasToIdMapping(), stats);
+    String tree = new QueryPlanVisualizer().getQueryPlanTree(plan);
+    assertTrue(tree, tree.contains("index only"));
+
+    lp = new LogicalPlan();
+    lp.addScan(hf.getId(), "t");
+    lp.addFilter("t.v", Predicate.Op.EQUALS, "3");
+    lp.addFilter("t.w", Predicate.Op.LESS_THAN, "1000");
+    lp.addProjectField("t.w", null);
+    plan = lp.physicalPlan(tid, stats, false);
+    scan = SystemTestUtil.findOperator(plan, IndexScan.class);
+    assertNotNull(scan);
+    assertEquals(Predicate.Op.EQUALS, scan.getPredicate().getOp());
+    assertEquals(ROWS / 10 / 5, SystemTestUtil.sortedTupleStrings(plan).size());
+    assertEquals(0, heapPagesRead());
+
+    lp = new LogicalPlan();
+    lp.addScan(hf.getId(), "t");
+    lp.addProjectField("t.k", null);
+    lp.addProjectField("t.v", null);
+    scan = SystemTestUtil.findOperator(lp.physicalPlan(tid, stats, false), IndexScan.class);
+    assertTrue(scan == null || scan.getColumns() == null);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CoveringIndexTest.class);
+  }
+
+}
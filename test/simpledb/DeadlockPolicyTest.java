@@ -0,0 +1,131 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class DeadlockPolicyTest extends TestUtil.CreateHeapFile {
+  private PageId p0, p1;
+  private TransactionId older, younger;
+
+  /** Time to wait before checking the state of lock contention, in ms */
+  private static final int TIMEOUT = 200;
+
+  private BufferPool bp;
+
+  /**
+   * Set up initial resources for each unit test.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+    // populate the file with two pages
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 600; ++i) {
+      empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+    }
+    assertEquals(2, empty.numPages());
+
+    this.p0 = new HeapPageId(empty.getId(), 0);
+    this.p1 = new HeapPageId(empty.getId(), 1);
+    this.older = new TransactionId();
+    this.younger = new TransactionId();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+  }
+
+  private TestUtil.LockGrabber startGrabber(TransactionId tid, PageId pid, Permissions perm)
+      throws Exception {
+    TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid, pid, perm);
+    t.start();
+    Thread.sleep(TIMEOUT);
+    return t;
+  }
+
+  /**
+   * Under wait-die, a younger transaction requesting a lock held by an older
+   * one aborts immediately.
+   */
+  @Test public void waitDieYoungerDies() throws Exception {
+    bp.setDeadlockPolicy(LockManager.DeadlockPolicy.WAIT_DIE);
+    bp.getPage(older, p0, Permissions.READ_WRITE);
+    TestUtil.LockGrabber t = startGrabber(younger, p0, Permissions.READ_ONLY);
+    assertFalse(t.acquired());
+    assertNotNull(t.getError());
+  }
+
+  /**
+   * Under wait-die, an older transaction waits for a younger holder.
+   */
+  @Test public void waitDieOlderWaits() throws Exception {
+    bp.setDeadlockPolicy(LockManager.DeadlockPolicy.WAIT_DIE);
+    bp.getPage(younger, p0, Permissions.READ_WRITE);
+    TestUtil.LockGrabber t = startGrabber(older, p0, Permissions.READ_WRITE);
+    assertFalse(t.acquired());
+    assertNull(t.getError());
+
+    bp.transactionComplete(younger);
+    Thread.sleep(TIMEOUT);
+    assertTrue(t.acquired());
+  }
+
+  /**
+   * Under wound-wait, a younger holder blocked on a lock held by the older
+   * transaction that wounded it aborts, letting both proceed.
+   */
+  @Test public void woundWaitOlderWounds() throws Exception {
+    bp.setDeadlockPolicy(LockManager.DeadlockPolicy.WOUND_WAIT);
+    bp.getPage(older, p0, Permissions.READ_WRITE);
+    bp.getPage(younger, p1, Permissions.READ_WRITE);
+
+    TestUtil.LockGrabber o = startGrabber(older, p1, Permissions.READ_WRITE);
+    assertFalse(o.acquired());
+    TestUtil.LockGrabber y = startGrabber(younger, p0, Permissions.READ_WRITE);
+    assertNotNull(y.getError());
+
+    Thread.sleep(TIMEOUT);
+    assertTrue(o.acquired());
+    assertNull(o.getError());
+  }
+
+  /**
+   * Under wound-wait, a younger transaction waits for an older holder.
+   */
+  @Test public void woundWaitYoungerWaits() throws Exception {
+    bp.setDeadlockPolicy(LockManager.DeadlockPolicy.WOUND_WAIT);
+    bp.getPage(older, p0, Permissions.READ_WRITE);
+    TestUtil.LockGrabber t = startGrabber(younger, p0, Permissions.READ_WRITE);
+    assertFalse(t.acquired());
+    assertNull(t.getError());
+
+    bp.transactionComplete(older);
+    Thread.sleep(TIMEOUT);
+    assertTrue(t.acquired());
+  }
+
+  /**
+   * Under the timeout policy, a transaction aborts once it has waited longer
+   * than the lock timeout.
+   */
+  @Test public void timeoutAborts() throws Exception {
+    bp.setDeadlockPolicy(LockManager.DeadlockPolicy.TIMEOUT);
+    bp.setLockTimeout(TIMEOUT / 4);
+    bp.getPage(younger, p0, Permissions.READ_WRITE);
+    TestUtil.LockGrabber t = startGrabber(older, p0, Permissions.READ_ONLY);
+    assertFalse(t.acquired());
+    assertNotNull(t.getError());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(DeadlockPolicyTest.class);
+  }
+
+}
@@ -0,0 +1,61 @@
+package simpledb;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.Predicate.Op;
+
+public class DoubleHistogramTest {
+
+	/**
+	 * Uniform fractional values give range selectivities close to the true
+	 * fractions.
+	 */
+	@Test public void rangeTest() {
+		DoubleHistogram h = new DoubleHistogram(10, 0.0, 1.0);
+		for (int c = 0; c < 1000; c++) {
+			h.addValue(c / 1000.0);
+		}
+		Assert.assertEquals(0.25, h.estimateSelectivity(Op.LESS_THAN, 0.25), 0.01);
+		Assert.assertEquals(0.75, h.estimateSelectivity(Op.GREATER_THAN_OR_EQ, 0.25), 0.01);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.GREATER_THAN, 1.0), 0.0);
+		Assert.assertEquals(1.0, h.estimateSelectivity(Op.GREATER_THAN, -1.0), 0.0);
+	}
+
+	/**
+	 * Values far outside the int range, as LONG fields may have, are
+	 * histogrammed without overflow.
+	 */
+	@Test public void largeValuesTest() {
+		long base = 1L << 40;
+		DoubleHistogram h = new DoubleHistogram(100, base, base + 9999);
+		for (long c = base; c < base + 10000; c++) {
+			h.addValue(c);
+		}
+		Assert.assertEquals(0.5, h.estimateSelectivity(Op.LESS_THAN, base + 5000), 0.01);
+		Assert.assertEquals(0.0001, h.estimateSelectivity(Op.EQUALS, base + 42), 0.00005);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.EQUALS, base - 1), 0.0);
+	}
+
+	/**
+	 * Every value equal: the histogram has zero width.
+	 */
+	@Test public void singleValueTest() {
+		DoubleHistogram h = new DoubleHistogram(10, 7, 7);
+		for (int c = 0; c < 10; c++) {
+			h.addValue(7);
+		}
+		Assert.assertEquals(1.0, h.estimateSelectivity(Op.EQUALS, 7), 0.0);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.LESS_THAN, 7), 0.0);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.GREATER_THAN, 7), 0.0);
+	}
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(DoubleHistogramTest.class);
+	}
+}
@@ -0,0 +1,140 @@
+package simpledb;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class FreeSpaceMapTest extends TestUtil.CreateHeapFile {
+  private static final int PAGES = 5;
+
+  private int slots;
+
+  /**
+   * Fill a file with PAGES full pages.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    TransactionId tid = new TransactionId();
+    slots = ((HeapPage) empty.insertTuple(tid, Utility.getHeapTuple(0, 2)).get(0)).getNumEmptySlots() + 1;
+    for (int i = 1; i < PAGES * slots; ++i) {
+      bp.insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+    }
+    assertEquals(PAGES, empty.numPages());
+    bp.transactionComplete(tid);
+    bp.flushAllPages();
+  }
+
+  /**
+   * Inserting into a file of full pages only touches the new page.
+   */
+  @Test public void skipsFullPages() throws Exception {
+    TransactionId tid = new TransactionId();
+    empty.insertTuple(tid, Utility.getHeapTuple(-1, 2));
+    assertEquals(PAGES + 1, empty.numPages());
+    for (int pno = 0; pno < PAGES; pno++) {
+      assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(empty.getId(), pno)));
+    }
+  }
+
+  /**
+   * A delete makes its page a candidate for the next insert.
+   */
+  @Test public void reusesDeletedSlot() throws Exception {
+    TransactionId tid = new TransactionId();
+    HeapPageId pid = new HeapPageId(empty.getId(), 3);
+    HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+    empty.deleteTuple(tid, p.iterator().next());
+
+    Tuple t = Utility.getHeapTuple(-1, 2);
+    empty.insertTuple(tid, t);
+    assertEquals(PAGES, empty.numPages());
+    assertEquals(pid, t.getRecordId().getPageId());
+    assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(empty.getId(), 0)));
+  }
+
+  /**
+   * Space used by an aborted insert is found again.
+   */
+  @Test public void abortRestoresFreeSpace() throws Exception {
+    TransactionId tid = new TransactionId();
+    HeapPageId pid = new HeapPageId(empty.getId(), 2);
+    HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+    Database.getBufferPool().deleteTuple(tid, p.iterator().next());
+    Database.getBufferPool().transactionComplete(tid, true);
+    Database.getBufferPool().flushAllPages();
+
+    tid = new TransactionId();
+    Tuple t = Utility.getHeapTuple(-1, 2);
+    Database.getBufferPool().insertTuple(tid, empty.getId(), t);
+    Database.getBufferPool().transactionComplete(tid, false);
+
+    tid = new TransactionId();
+    t = Utility.getHeapTuple(-2, 2);
+    empty.insertTuple(tid, t);
+    assertEquals(pid, t.getRecordId().getPageId());
+    assertTrue(Database.getBufferPool().holdsLock(tid, pid));
+  }
+
+  /**
+   * A file that is opened again reads the free space of its pages from its
+   * side file, so an insert goes straight to the page with room.
+   */
+  @Test public void persistsAcrossReopen() throws Exception {
+    BufferPool bp = Database.getBufferPool();
+    TransactionId tid = new TransactionId();
+    HeapPageId pid = new HeapPageId(empty.getId(), 3);
+    HeapPage p = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+    bp.deleteTuple(tid, p.iterator().next());
+    bp.transactionComplete(tid);
+    bp.flushAllPages();
+
+    HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    // another transaction writing the full pages makes the insert wait if it reads one
+    bp.setDeadlockPolicy(LockManager.DeadlockPolicy.TIMEOUT);
+    bp.setLockTimeout(100);
+    TransactionId writer = new TransactionId();
+    for (int pno = 0; pno < PAGES; pno++) {
+      if (pno != 3) {
+        bp.getPage(writer, new HeapPageId(reopened.getId(), pno), Permissions.READ_WRITE);
+      }
+    }
+    tid = new TransactionId();
+    Tuple t = Utility.getHeapTuple(-1, 2);
+    reopened.insertTuple(tid, t);
+    assertEquals(pid, t.getRecordId().getPageId());
+    bp.transactionComplete(tid);
+    bp.transactionComplete(writer);
+  }
+
+  /**
+   * A side file that does not match the heap file, which was changed
+   * without it, is deleted and every page is checked again.
+   */
+  @Test public void ignoresStaleSideFile() throws Exception {
+    File fsm = new File(empty.getFile().getPath() + ".fsm");
+    assertTrue(fsm.exists());
+    assertTrue(empty.getFile().setLastModified(empty.getFile().lastModified() - 10000));
+    HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+    assertFalse(fsm.exists());
+
+    TransactionId tid = new TransactionId();
+    reopened.insertTuple(tid, Utility.getHeapTuple(-1, 2));
+    assertEquals(PAGES + 1, reopened.numPages());
+    assertTrue(fsm.exists());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+  }
+
+}
@@ -0,0 +1,282 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashFileTest extends SimpleDbTestBase {
+  private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+      new String[] { "k", "v" });
+
+  private HashFile hf;
+
+  /**
+   * Register an empty hash file on small pages, so a few thousand tuples
+   * split buckets until the directory cannot grow any further.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    BufferPool.setPageSize(512);
+    Database.resetBufferPool(1000);
+    File f = File.createTempFile("hash", ".dat");
+    f.deleteOnExit();
+    f.delete();
+    hf = new HashFile(f, 0, TD);
+    Database.getCatalog().addTable(hf, "hash");
+  }
+
+  @After public void tearDown() {
+    BufferPool.resetPageSize();
+  }
+
+  private static Tuple tuple(int key, int value) {
+    Tuple t = new Tuple(TD);
+    t.setField(0, new IntField(key));
+    t.setField(1, new IntField(value));
+    return t;
+  }
+
+  private static int key(Tuple t) {
+    return ((IntField) t.getField(0)).getValue();
+  }
+
+  private static List<Tuple> scan(DbFileIterator it) throws Exception {
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    it.open();
+    while (it.hasNext()) {
+      tuples.add(it.next());
+    }
+    it.close();
+    return tuples;
+  }
+
+  private List<Tuple> lookup(TransactionId tid, int key) throws Exception {
+    return scan(hf.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, new IntField(key))));
+  }
+
+  /**
+   * Inserts n tuples, each key used twice.
+   */
+  private List<Tuple> insert(TransactionId tid, int n) throws Exception {
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = 0; i < n; i++) {
+      tuples.add(tuple(i / 2, i));
+    }
+    Collections.shuffle(tuples, new Random(0));
+    for (Tuple t : tuples) {
+      Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+    }
+    return tuples;
+  }
+
+  /**
+   * The page keeps its own copies of tuples: changing a tuple after it is
+   * inserted, or one a scan returned, does not change the page.
+   */
+  @Test public void tuplesAreCopied() throws Exception {
+    TransactionId tid = new TransactionId();
+    Tuple inserted = tuple(1, 1);
+    Database.getBufferPool().insertTuple(tid, hf.getId(), inserted);
+    inserted.setField(1, new IntField(2));
+    Tuple read = lookup(tid, 1).get(0);
+    assertEquals("1\t1", read.toString());
+    assertEquals(inserted.getRecordId(), read.getRecordId());
+    read.setField(1, new IntField(3));
+    assertEquals("1\t1", lookup(tid, 1).get(0).toString());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Every tuple is found by its key after the directory has doubled up to
+   * its largest size and buckets continue on overflow pages.
+   */
+  @Test public void insertSplits() throws Exception {
+    TransactionId tid = new TransactionId();
+    insert(tid, 10000);
+    assertEquals(10000, scan(hf.iterator(tid)).size());
+    for (int k = -1; k <= 5000; k++) {
+      List<Tuple> tuples = lookup(tid, k);
+      assertEquals("key " + k, k < 0 || k == 5000 ? 0 : 2, tuples.size());
+      for (Tuple t : tuples) {
+        assertEquals(k, key(t));
+      }
+    }
+    HashDirectoryPage dir = (HashDirectoryPage) Database.getBufferPool().getPage(tid,
+        new HashPageId(hf.getId(), 0), Permissions.READ_ONLY);
+    assertEquals(HashDirectoryPage.getMaxDepth(), dir.getDepth());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Many tuples with one key go to overflow pages rather than splitting the
+   * bucket again and again.
+   */
+  @Test public void duplicatesOverflow() throws Exception {
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 1000; i++) {
+      Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(7, i));
+    }
+    Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(8, 0));
+    assertEquals(1000, lookup(tid, 7).size());
+    assertEquals(1, lookup(tid, 8).size());
+    HashDirectoryPage dir = (HashDirectoryPage) Database.getBufferPool().getPage(tid,
+        new HashPageId(hf.getId(), 0), Permissions.READ_ONLY);
+    assertTrue("depth " + dir.getDepth(), dir.getDepth() < HashDirectoryPage.getMaxDepth());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * A hash file only answers equality.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRanges() throws Exception {
+    assertFalse(hf.supports(Predicate.Op.LESS_THAN));
+    hf.indexIterator(new TransactionId(), new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(3)));
+  }
+
+  /**
+   * A point lookup locks, and so reads, the directory and one bucket page.
+   */
+  @Test public void pointLookupReadsTwoPages() throws Exception {
+    TransactionId tid = new TransactionId();
+    insert(tid, 3000);
+    Database.getBufferPool().transactionComplete(tid);
+
+    Database.getBufferPool().getLockStats().reset();
+    tid = new TransactionId();
+    assertEquals(2, lookup(tid, 1234).size());
+    long pages = Database.getBufferPool().getLockStats().forTable(hf.getId()).getAcquisitions();
+    assertEquals(pages + " pages of " + hf.numPages(), 2, pages);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Deleted tuples are no longer found and the others still are.
+   */
+  @Test public void deleteTuples() throws Exception {
+    Transaction t = new Transaction();
+    t.start();
+    List<Tuple> tuples = insert(t.getId(), 4000);
+    t.commit();
+
+    t = new Transaction();
+    t.start();
+    for (Tuple tup : tuples) {
+      if (key(tup) % 10 != 0) {
+        Database.getBufferPool().deleteTuple(t.getId(), tup);
+        assertNull(tup.getRecordId());
+      }
+    }
+    assertEquals(400, scan(hf.iterator(t.getId())).size());
+    assertEquals(0, lookup(t.getId(), 11).size());
+    assertEquals(2, lookup(t.getId(), 10).size());
+    t.commit();
+  }
+
+  /**
+   * Aborting a transaction that split buckets and doubled the directory
+   * leaves the file as it was.
+   */
+  @Test public void abortRollsBack() throws Exception {
+    Transaction t = new Transaction();
+    t.start();
+    List<Tuple> tuples = insert(t.getId(), 500);
+    t.commit();
+
+    t = new Transaction();
+    t.start();
+    for (int i = 0; i < 2000; i++) {
+      Database.getBufferPool().insertTuple(t.getId(), hf.getId(), tuple(10000 + i, 0));
+    }
+    for (int i = 0; i < 250; i++) {
+      Database.getBufferPool().deleteTuple(t.getId(), tuples.get(i));
+    }
+    // force some of the changes to disk, so the log has to undo them
+    Database.getBufferPool().flushPages(t.getId());
+    t.abort();
+
+    TransactionId tid = new TransactionId();
+    assertEquals(500, scan(hf.iterator(tid)).size());
+    for (Tuple tup : tuples) {
+      assertEquals(2, lookup(tid, key(tup)).size());
+    }
+    assertEquals(0, lookup(tid, 10000).size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * With both kinds of index on a column of a heap table, the planner reads
+   * an equality through the hash index and a range through the B+ tree, and
+   * the hash index follows inserts and deletes.
+   */
+  @Test public void plannerPicksHashIndex() throws Exception {
+    File f = File.createTempFile("heap", ".dat");
+    f.deleteOnExit();
+    HeapFile heap = new HeapFile(f, TD);
+    Database.getCatalog().addTable(heap, "t");
+    File idx = File.createTempFile("heap", ".idx");
+    idx.deleteOnExit();
+    idx.delete();
+    Index btree = new Index(idx, heap.getId(), 0);
+    Database.getCatalog().addIndex(btree);
+    File hidx = File.createTempFile("heap", ".hidx");
+    hidx.deleteOnExit();
+    hidx.delete();
+    Index hash = new Index(hidx, heap.getId(), 0, true);
+    Database.getCatalog().addIndex(hash);
+    assertTrue(hash.getFile() instanceof HashFile);
+
+    TransactionId tid = new TransactionId();
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = 0; i < 2000; i++) {
+      Tuple t = tuple(i * 7919 % 2000, i % 10);
+      Database.getBufferPool().insertTuple(tid, heap.getId(), t);
+      tuples.add(t);
+    }
+    Database.getBufferPool().deleteTuple(tid, tuples.get(1));
+    Database.getBufferPool().transactionComplete(tid);
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("t", new TableStats(heap.getId(), 1000));
+
+    tid = new TransactionId();
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(heap.getId(), "t");
+    lp.addFilter("t.k", Predicate.Op.EQUALS, "1234");
+    lp.addProjectField("t.v", null);
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    IndexScan scan = SystemTestUtil.findOperator(plan, IndexScan.class);
+    assertNotNull(scan);
+    assertTrue(scan.getIndex() == hash);
+    assertEquals(1, SystemTestUtil.countTuples(plan));
+    assertEquals(0, scan(hash.lookup(tid, new IndexPredicate(Predicate.Op.EQUALS, tuples.get(1).getField(0)))).size());
+
+    lp = new LogicalPlan();
+    lp.addScan(heap.getId(), "t");
+    lp.addFilter("t.k", Predicate.Op.LESS_THAN, "10");
+    lp.addProjectField("t.v", null);
+    scan = SystemTestUtil.findOperator(lp.physicalPlan(tid, stats, false), IndexScan.class);
+    assertNotNull(scan);
+    assertTrue(scan.getIndex() == btree);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashFileTest.class);
+  }
+
+}
@@ -0,0 +1,104 @@
+package simpledb;
+
+import java.io.*;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HeapFileEncoderTest extends SimpleDbTestBase {
+
+  private static File textFile(String contents) throws IOException {
+    File f = File.createTempFile("encoder", ".txt");
+    f.deleteOnExit();
+    Writer w = new FileWriter(f);
+    w.write(contents);
+    w.close();
+    return f;
+  }
+
+  /**
+   * Input spanning many chunks converts to fully packed pages holding every
+   * line, in order.
+   */
+  @Test public void manyChunks() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+    int rows = 0;
+    while (sb.length() < 3 * HeapFileEncoder.CHUNK_BYTES) {
+      sb.append(rows).append(',').append(-rows).append('\n');
+      ArrayList<Integer> tuple = new ArrayList<Integer>();
+      tuple.add(rows);
+      tuple.add(-rows);
+      tuples.add(tuple);
+      rows++;
+    }
+    File out = File.createTempFile("encoder", ".dat");
+    out.deleteOnExit();
+    HeapFileEncoder.convert(textFile(sb.toString()), out, BufferPool.getPageSize(), 2);
+
+    HeapFile hf = Utility.openHeapFile(2, out);
+    int perPage = BufferPool.getPageSize() * 8 / (2 * Type.INT_TYPE.getLen() * 8 + 1);
+    assertEquals((rows + perPage - 1) / perPage, hf.numPages());
+
+    TransactionId tid = new TransactionId();
+    DbFileIterator it = hf.iterator(tid);
+    it.open();
+    int i = 0;
+    while (it.hasNext()) {
+      assertEquals(tuples.get(i++), SystemTestUtil.tupleToList(it.next()));
+    }
+    assertEquals(rows, i);
+    it.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Blank lines and Windows line endings are ignored, strings are trimmed,
+   * and a last line without a newline is kept.
+   */
+  @Test public void mixedTypes() throws Exception {
+    File out = File.createTempFile("encoder", ".dat");
+    out.deleteOnExit();
+    HeapFileEncoder.convert(textFile("1| one \r\n\n2|two\n\r\n3|three"), out,
+        BufferPool.getPageSize(), 2, new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, '|');
+
+    TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+    HeapFile hf = new HeapFile(out, td);
+    Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+    assertEquals(1, hf.numPages());
+
+    TransactionId tid = new TransactionId();
+    DbFileIterator it = hf.iterator(tid);
+    it.open();
+    String[] expected = { "1\tone", "2\ttwo", "3\tthree" };
+    for (String e : expected) {
+      assertEquals(e, it.next().toString());
+    }
+    assertEquals(false, it.hasNext());
+    it.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * An empty input produces a single empty page.
+   */
+  @Test public void emptyInput() throws Exception {
+    File out = File.createTempFile("encoder", ".dat");
+    out.deleteOnExit();
+    HeapFileEncoder.convert(textFile(""), out, BufferPool.getPageSize(), 2);
+    assertEquals(BufferPool.getPageSize(), out.length());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HeapFileEncoderTest.class);
+  }
+
+}
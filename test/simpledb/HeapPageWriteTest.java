@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -126,6 +127,128 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getPageData() and getBeforeImage() after the
+     * page has been modified in place.
+     */
+    @Test public void pageDataAfterWrites() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        page.setBeforeImage();
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        Tuple addition = Utility.getHeapTuple(new int[] { 7, 8 });
+        page.insertTuple(addition);
+
+        HeapPage copy = new HeapPage(pid, page.getPageData());
+        assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+        Iterator<Tuple> a = page.iterator();
+        Iterator<Tuple> b = copy.iterator();
+        while (a.hasNext()) {
+            assertTrue(TestUtil.compareTuples(a.next(), b.next()));
+        }
+        assertTrue(!b.hasNext());
+
+        // the before image still holds the original page
+        assertTrue(java.util.Arrays.equals(HeapPageReadTest.EXAMPLE_DATA,
+                page.getBeforeImage().getPageData()));
+    }
+
+    /**
+     * A tuple read from a page keeps its values after it is deleted and its
+     * slot is reused.
+     */
+    @Test public void deletedTupleKeepsFields() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        Tuple copy = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA).iterator().next();
+        page.deleteTuple(first);
+        Tuple addition = Utility.getHeapTuple(new int[] { 7, 8 });
+        page.insertTuple(addition);
+        assertEquals(first.getRecordId(), addition.getRecordId());
+        assertTrue(TestUtil.compareTuples(copy, first));
+    }
+
+    /**
+     * Tuples returned by the page, and not yet read, keep their values when
+     * their slot is cleared and reused through another tuple.
+     */
+    @Test public void heldTupleKeepsFields() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple copy = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA).iterator().next();
+        Tuple held = page.iterator().next();
+        Tuple matched = page.iterator(Collections.singletonList(
+                new Predicate(0, Predicate.Op.EQUALS, copy.getField(0)))).next();
+        page.deleteTuple(page.getTuple(0));
+        page.insertTuple(Utility.getHeapTuple(new int[] { 999, 999 }));
+        assertTrue(TestUtil.compareTuples(copy, held));
+        assertTrue(TestUtil.compareTuples(copy, matched));
+    }
+
+    /**
+     * Setting a field of a tuple read from a page changes neither the page
+     * nor the other tuples read from it.
+     */
+    @Test public void tupleChangesStayOffPage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple t = page.getTuple(0);
+        Tuple other = page.getTuple(0);
+        t.setField(1, new IntField(-1));
+        assertEquals(new IntField(-1), t.getField(1));
+        assertTrue(TestUtil.compareTuples(other, page.getTuple(0)));
+        assertTrue(java.util.Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, page.getPageData()));
+    }
+
+    /**
+     * The before image is captured on the first write, and reset to the
+     * current contents by setBeforeImage().
+     */
+    @Test public void beforeImageOnWrite() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        assertTrue(java.util.Arrays.equals(HeapPageReadTest.EXAMPLE_DATA,
+                page.getBeforeImage().getPageData()));
+
+        page.insertTuple(Utility.getHeapTuple(new int[] { 7, 8 }));
+        page.insertTuple(Utility.getHeapTuple(new int[] { 9, 10 }));
+        assertTrue(java.util.Arrays.equals(HeapPageReadTest.EXAMPLE_DATA,
+                page.getBeforeImage().getPageData()));
+
+        page.setBeforeImage();
+        byte[] written = page.getPageData();
+        page.deleteTuple(page.iterator().next());
+        assertTrue(java.util.Arrays.equals(written, page.getBeforeImage().getPageData()));
+    }
+
+    /**
+     * Inserts fill the lowest empty slot, and the empty-slot count follows
+     * inserts and deletes across the whole header.
+     */
+    @Test public void insertFillsLowestEmptySlot() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        int slots = page.getNumEmptySlots();
+        for (int i = 0; i < slots; ++i) {
+            page.insertTuple(Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(0, page.getNumEmptySlots());
+
+        LinkedList<Tuple> tuples = new LinkedList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            tuples.add(it.next());
+        assertEquals(slots, tuples.size());
+
+        int[] holes = { slots - 1, 200, 70, 64, 3 };
+        for (int hole : holes) {
+            page.deleteTuple(tuples.get(hole));
+        }
+        assertEquals(holes.length, page.getNumEmptySlots());
+        for (int k = holes.length - 1; k >= 0; k--) {
+            Tuple t = Utility.getHeapTuple(-k, 2);
+            page.insertTuple(t);
+            assertEquals(holes[k], t.getRecordId().getTupleNumber());
+        }
+        assertEquals(0, page.getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
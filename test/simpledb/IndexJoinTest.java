@@ -0,0 +1,171 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotNull;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class IndexJoinTest extends SimpleDbTestBase {
+  private static final int ROWS = 10000;
+  private static final int OUTER_ROWS = 5;
+
+  private HeapFile inner;
+  private HeapFile outer;
+  private Index index;
+  private HashMap<String, TableStats> stats;
+
+  private static void insert(TransactionId tid, HeapFile hf, int a, int b) throws Exception {
+    Tuple t = new Tuple(hf.getTupleDesc());
+    t.setField(0, new IntField(a));
+    t.setField(1, new IntField(b));
+    Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+  }
+
+  /**
+   * A large inner table with a primary key, inserted out of key order,
+   * with an index on the key, and a small outer table.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    inner = SystemTestUtil.createEmptyTable("t",
+        new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, new String[] { "k", "v" }), "k");
+    File idx = File.createTempFile("indexjoin", ".idx");
+    idx.deleteOnExit();
+    idx.delete();
+    index = new Index(idx, inner.getId(), 0);
+    Database.getCatalog().addIndex(index);
+    outer = SystemTestUtil.createEmptyTable("o",
+        new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, new String[] { "a", "b" }), "a");
+
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < ROWS; i++) {
+      insert(tid, inner, i * 7919 % ROWS, i % 10);
+    }
+    for (int i = 0; i < OUTER_ROWS; i++) {
+      insert(tid, outer, i * 1000, i);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+
+    stats = new HashMap<String, TableStats>();
+    stats.put("t", new TableStats(inner.getId(), 1000));
+    stats.put("o", new TableStats(outer.getId(), 1000));
+  }
+
+  /**
+   * For every supported operator an IndexJoin returns the same tuples as a
+   * nested-loop Join, with the filters of the inner side applied.
+   */
+  @Test public void matchesJoin() throws Exception {
+    TransactionId tid = new TransactionId();
+    for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+        Predicate.Op.GREATER_THAN_OR_EQ }) {
+      JoinPredicate jp = new JoinPredicate(0, op, 0);
+      OpIterator innerScan = new Filter(new Predicate(1, Predicate.Op.NOT_EQUALS, new IntField(3)),
+          new SeqScan(tid, inner.getId(), "t"));
+      IndexJoin ij = new IndexJoin(jp, new SeqScan(tid, outer.getId(), "o"), innerScan, index);
+      Join j = new Join(jp, new SeqScan(tid, outer.getId(), "o"), innerScan);
+      assertEquals(j.getTupleDesc(), ij.getTupleDesc());
+      assertEquals("t.k", ij.getJoinField2Name());
+
+      List<Tuple> expected = SystemTestUtil.readTuples(j);
+      List<Tuple> actual = SystemTestUtil.readTuples(ij);
+      assertEquals(op.toString(), expected.size(), actual.size());
+      assertTrue(expected.size() > 0);
+      Set<String> want = new HashSet<String>();
+      for (Tuple t : expected) {
+        want.add(t.toString());
+      }
+      for (Tuple t : actual) {
+        assertTrue(want.contains(t.toString()));
+        assertTrue(((IntField) t.getField(3)).getValue() != 3);
+      }
+
+      ij.open();
+      while (ij.hasNext()) {
+        ij.next();
+      }
+      ij.rewind();
+      int count = 0;
+      while (ij.hasNext()) {
+        ij.next();
+        count++;
+      }
+      ij.close();
+      assertEquals(actual.size(), count);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * The index must be on the join field of the inner scan's table.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsWrongTable() throws Exception {
+    TransactionId tid = new TransactionId();
+    new IndexJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+        new SeqScan(tid, inner.getId(), "t"), new SeqScan(tid, outer.getId(), "o"), index);
+  }
+
+  private LogicalPlan joinPlan() throws Exception {
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(outer.getId(), "o");
+    lp.addScan(inner.getId(), "t");
+    lp.addJoin("o.a", "t.k", Predicate.Op.EQUALS);
+    lp.addProjectField("t.v", null);
+    return lp;
+  }
+
+  /**
+   * Joining a few outer tuples to the indexed table probes the index, and
+   * reads far fewer inner pages than a scan would.
+   */
+  @Test public void plannerPicksIndexJoin() throws Exception {
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = joinPlan();
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    assertNotNull(SystemTestUtil.findOperator(plan, IndexJoin.class));
+
+    OperatorCardinality.updateOperatorCardinality((Operator) plan,
+        lp.getTableAliasToIdMapping(), stats);
+    assertTrue(new QueryPlanVisualizer().getQueryPlanTree(plan).contains(QueryPlanVisualizer.INDEX_JOIN));
+
+    Database.getBufferPool().getLockStats().reset();
+    assertEquals(OUTER_ROWS, SystemTestUtil.readTuples(plan).size());
+    long pages = Database.getBufferPool().getLockStats().forTable(inner.getId()).getAcquisitions();
+    assertTrue(pages + " of " + inner.numPages(), pages < inner.numPages());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Without the index the plan falls back to a nested-loop Join.
+   */
+  @Test public void plannerWithoutIndex() throws Exception {
+    Database.getBufferPool().flushAllPages();
+    Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    Database.getCatalog().clear();
+    Database.getCatalog().addTable(inner, "t", "k");
+    Database.getCatalog().addTable(outer, "o", "a");
+    TransactionId tid = new TransactionId();
+    OpIterator plan = joinPlan().physicalPlan(tid, stats, false);
+    assertNull(SystemTestUtil.findOperator(plan, IndexJoin.class));
+    assertEquals(OUTER_ROWS, SystemTestUtil.readTuples(plan).size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IndexJoinTest.class);
+  }
+
+}
@@ -0,0 +1,176 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class IndexScanTest extends SimpleDbTestBase {
+  private static final int ROWS = 5000;
+  private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+      new String[] { "k", "v" });
+
+  private HeapFile hf;
+  private Index index;
+  private HashMap<String, TableStats> stats;
+
+  /**
+   * A heap table of ROWS tuples with unique keys, inserted out of key
+   * order, and an index on the key.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    File f = File.createTempFile("indexscan", ".dat");
+    f.deleteOnExit();
+    hf = new HeapFile(f, TD);
+    Database.getCatalog().addTable(hf, "t");
+    File idx = File.createTempFile("indexscan", ".idx");
+    idx.deleteOnExit();
+    idx.delete();
+    index = new Index(idx, hf.getId(), 0);
+    Database.getCatalog().addIndex(index);
+
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < ROWS; i++) {
+      Tuple t = new Tuple(TD);
+      t.setField(0, new IntField(i * 7919 % ROWS));
+      t.setField(1, new IntField(i % 10));
+      Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+
+    stats = new HashMap<String, TableStats>();
+    stats.put("t", new TableStats(hf.getId(), 1000));
+  }
+
+  /**
+   * An IndexScan returns exactly the matching tuples, in key order, with
+   * alias-qualified field names.
+   */
+  @Test public void scanMatches() throws Exception {
+    TransactionId tid = new TransactionId();
+    for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+        Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ }) {
+      IndexScan scan = new IndexScan(tid, index, new IndexPredicate(op, new IntField(1234)), "a");
+      assertEquals("a.k", scan.getTupleDesc().getFieldName(0));
+      int expected = 0;
+      for (int k = 0; k < ROWS; k++) {
+        if (new IntField(k).compare(op, new IntField(1234))) {
+          expected++;
+        }
+      }
+      scan.open();
+      int count = 0;
+      int last = -1;
+      while (scan.hasNext()) {
+        int k = ((IntField) scan.next().getField(0)).getValue();
+        assertTrue(new IntField(k).compare(op, new IntField(1234)));
+        assertTrue(k > last);
+        last = k;
+        count++;
+      }
+      assertEquals(op.toString(), expected, count);
+      scan.rewind();
+      assertTrue(expected == 0 || scan.hasNext());
+      scan.close();
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * A selective predicate on the indexed field is answered by the index,
+   * and the other predicates are still applied.
+   */
+  @Test public void plannerPicksIndex() throws Exception {
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(hf.getId(), "t");
+    lp.addFilter("t.v", Predicate.Op.NOT_EQUALS, "5");
+    lp.addFilter("t.k", Predicate.Op.EQUALS, "1234");
+    lp.addProjectField("t.k", null);
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+
+    IndexScan scan = SystemTestUtil.findOperator(plan, IndexScan.class);
+    assertNotNull(scan);
+    assertEquals(Predicate.Op.EQUALS, scan.getPredicate().getOp());
+    assertTrue(lp.getScanCost("t") < stats.get("t").estimateScanCost());
+    assertEquals(1, SystemTestUtil.countTuples(plan));
+
+    lp = new LogicalPlan();
+    lp.addScan(hf.getId(), "t");
+    lp.addFilter("t.v", Predicate.Op.NOT_EQUALS, "6");
+    lp.addFilter("t.k", Predicate.Op.EQUALS, "1234");
+    lp.addProjectField("t.k", null);
+    assertEquals(0, SystemTestUtil.countTuples(lp.physicalPlan(tid, stats, false)));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * A predicate that matches most of the table is cheaper to answer with
+   * a sequential scan.
+   */
+  @Test public void plannerPicksSeqScan() throws Exception {
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(hf.getId(), "t");
+    lp.addFilter("t.k", Predicate.Op.GREATER_THAN, "100");
+    lp.addProjectField("t.k", null);
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+
+    assertNull(SystemTestUtil.findOperator(plan, IndexScan.class));
+    assertNull(lp.getScanCost("t"));
+    assertEquals(ROWS - 101, SystemTestUtil.countTuples(plan));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * A DELETE through an index deletes every tuple with a duplicated key,
+   * for both B+ tree and hash indexes.
+   */
+  @Test public void deleteThroughIndex() throws Exception {
+    for (boolean hash : new boolean[] { false, true }) {
+      File f = File.createTempFile("indexscan", ".dat");
+      f.deleteOnExit();
+      HeapFile dups = new HeapFile(f, TD);
+      Database.getCatalog().addTable(dups, "dups" + hash);
+      File idx = File.createTempFile("indexscan", ".idx");
+      idx.deleteOnExit();
+      idx.delete();
+      Index byKey = new Index(idx, dups.getId(), 0, hash);
+      Database.getCatalog().addIndex(byKey);
+
+      TransactionId tid = new TransactionId();
+      for (int i = 0; i < 20; i++) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i < 10 ? 5 : i));
+        t.setField(1, new IntField(i));
+        Database.getBufferPool().insertTuple(tid, dups.getId(), t);
+      }
+      IndexPredicate fives = new IndexPredicate(Predicate.Op.EQUALS, new IntField(5));
+      Delete delete = new Delete(tid, new IndexScan(tid, byKey, fives, "d"));
+      delete.open();
+      assertEquals(new IntField(10), delete.next().getField(0));
+      delete.close();
+      assertEquals(0, SystemTestUtil.countTuples(new IndexScan(tid, byKey, fives, "d")));
+      assertEquals(10, SystemTestUtil.countTuples(new SeqScan(tid, dups.getId(), "d")));
+      Database.getBufferPool().transactionComplete(tid);
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IndexScanTest.class);
+  }
+
+}
@@ -0,0 +1,115 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class LockQueueTest extends TestUtil.CreateHeapFile {
+  private PageId p0;
+  private TransactionId tid1, tid2, tid3;
+
+  /** Time to wait before checking the state of lock contention, in ms */
+  private static final int TIMEOUT = 100;
+
+  private BufferPool bp;
+
+  /**
+   * Set up initial resources for each unit test.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+    // populate the file with a page
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 100; ++i) {
+      empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+    }
+    assertEquals(1, empty.numPages());
+
+    this.p0 = new HeapPageId(empty.getId(), 0);
+    this.tid1 = new TransactionId();
+    this.tid2 = new TransactionId();
+    this.tid3 = new TransactionId();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+  }
+
+  private TestUtil.LockGrabber startGrabber(TransactionId tid, PageId pid, Permissions perm)
+      throws Exception {
+    TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid, pid, perm);
+    t.start();
+    Thread.sleep(TIMEOUT);
+    return t;
+  }
+
+  /**
+   * A reader arriving after a queued writer waits behind it rather than
+   * sharing the page with the current readers.
+   */
+  @Test public void readerWaitsBehindQueuedWriter() throws Exception {
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    TestUtil.LockGrabber writer = startGrabber(tid2, p0, Permissions.READ_WRITE);
+    TestUtil.LockGrabber reader = startGrabber(tid3, p0, Permissions.READ_ONLY);
+    assertFalse(writer.acquired());
+    assertFalse(reader.acquired());
+
+    bp.transactionComplete(tid1);
+    Thread.sleep(TIMEOUT);
+    assertTrue(writer.acquired());
+    assertFalse(reader.acquired());
+
+    bp.transactionComplete(tid2);
+    Thread.sleep(TIMEOUT);
+    assertTrue(reader.acquired());
+  }
+
+  /**
+   * A shared holder upgrading to an exclusive lock is granted ahead of a
+   * writer that was already waiting.
+   */
+  @Test public void upgradeBeforeQueuedWriter() throws Exception {
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid2, p0, Permissions.READ_ONLY);
+    TestUtil.LockGrabber writer = startGrabber(tid3, p0, Permissions.READ_WRITE);
+    TestUtil.LockGrabber upgrade = startGrabber(tid1, p0, Permissions.READ_WRITE);
+    assertFalse(writer.acquired());
+    assertFalse(upgrade.acquired());
+
+    bp.transactionComplete(tid2);
+    Thread.sleep(TIMEOUT);
+    assertTrue(upgrade.acquired());
+    assertFalse(writer.acquired());
+
+    bp.transactionComplete(tid1);
+    Thread.sleep(TIMEOUT);
+    assertTrue(writer.acquired());
+  }
+
+  /**
+   * Two shared holders that both try to upgrade deadlock; one of them is
+   * aborted and the other gets the exclusive lock.
+   */
+  @Test public void competingUpgradesDeadlock() throws Exception {
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid2, p0, Permissions.READ_ONLY);
+    TestUtil.LockGrabber u1 = startGrabber(tid1, p0, Permissions.READ_WRITE);
+    assertFalse(u1.acquired());
+
+    // the aborted grabber releases tid2's shared lock, unblocking tid1
+    TestUtil.LockGrabber u2 = startGrabber(tid2, p0, Permissions.READ_WRITE);
+    assertNotNull(u2.getError());
+    assertTrue(u1.acquired());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LockQueueTest.class);
+  }
+
+}
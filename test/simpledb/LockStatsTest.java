@@ -0,0 +1,128 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class LockStatsTest extends TestUtil.CreateHeapFile {
+  private PageId p0, p1;
+  private TransactionId tid1, tid2;
+
+  /** Time to wait before checking the state of lock contention, in ms */
+  private static final int TIMEOUT = 100;
+
+  private BufferPool bp;
+
+  /**
+   * Set up initial resources for each unit test.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+    // populate the file with two pages
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 600; ++i) {
+      empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+    }
+    assertEquals(2, empty.numPages());
+
+    this.p0 = new HeapPageId(empty.getId(), 0);
+    this.p1 = new HeapPageId(empty.getId(), 1);
+    this.tid1 = new TransactionId();
+    this.tid2 = new TransactionId();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+  }
+
+  /**
+   * Uncontended locks are counted per page and per table, without waits.
+   */
+  @Test public void countsAcquisitions() throws Exception {
+    assertNull(bp.getLockStats().forPage(p0));
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid2, p0, Permissions.READ_ONLY);
+    bp.getPage(tid1, p1, Permissions.READ_WRITE);
+
+    LockStats.Counters page = bp.getLockStats().forPage(p0);
+    assertEquals(2, page.getAcquisitions());
+    assertEquals(0, page.getWaits());
+    assertEquals(3, bp.getLockStats().forTable(empty.getId()).getAcquisitions());
+  }
+
+  /**
+   * A blocked request is counted as a wait, with its wait time in the
+   * histogram, and the page shows up as a hot spot.
+   */
+  @Test public void countsWaits() throws Exception {
+    bp.getPage(tid1, p0, Permissions.READ_WRITE);
+    TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid2, p0, Permissions.READ_ONLY);
+    t.start();
+    Thread.sleep(TIMEOUT);
+    bp.transactionComplete(tid1);
+    Thread.sleep(TIMEOUT);
+    assertTrue(t.acquired());
+
+    LockStats.Counters page = bp.getLockStats().forPage(p0);
+    assertEquals(2, page.getAcquisitions());
+    assertEquals(1, page.getWaits());
+    assertTrue(page.getWaitNanos() >= TIMEOUT * 1000000L / 2);
+    long waits = 0;
+    for (long count : page.getWaitHistogram()) {
+      waits += count;
+    }
+    assertEquals(1, waits);
+    assertEquals(p0, bp.getLockStats().hotSpots(1).get(0));
+  }
+
+  /**
+   * An upgrade aborted by the deadlock policy counts as both a deadlock
+   * abort and an upgrade failure.
+   */
+  @Test public void countsUpgradeFailures() throws Exception {
+    bp.setDeadlockPolicy(LockManager.DeadlockPolicy.WAIT_DIE);
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid2, p0, Permissions.READ_ONLY);
+    TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid2, p0, Permissions.READ_WRITE);
+    t.start();
+    Thread.sleep(TIMEOUT);
+    assertNotNull(t.getError());
+
+    LockStats.Counters table = bp.getLockStats().forTable(empty.getId());
+    assertEquals(1, table.getDeadlockAborts());
+    assertEquals(1, table.getUpgradeFailures());
+  }
+
+  /**
+   * Only the most recently locked pages keep counters, while the table
+   * counts every page, and reset drops them all.
+   */
+  @Test public void boundsPages() throws Exception {
+    LockStats stats = new LockStats(2);
+    PageId p2 = new HeapPageId(empty.getId(), 2);
+    stats.acquired(p0);
+    stats.acquired(p1);
+    stats.acquired(p0);
+    stats.acquired(p2);
+    assertNull(stats.forPage(p1));
+    assertEquals(2, stats.forPage(p0).getAcquisitions());
+    assertEquals(1, stats.forPage(p2).getAcquisitions());
+    assertEquals(4, stats.forTable(empty.getId()).getAcquisitions());
+
+    stats.reset();
+    assertNull(stats.forPage(p0));
+    assertEquals(0, stats.forTable(empty.getId()).getAcquisitions());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LockStatsTest.class);
+  }
+
+}
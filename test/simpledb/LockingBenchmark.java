@@ -0,0 +1,171 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the throughput of two-phase locking, under each deadlock policy,
+ * and optimistic transactions over a range of conflict rates. Each
+ * transaction reads a handful of random pages and, with the given
+ * probability, writes one of them.
+ * <p>
+ * Also reports how long writers wait for an exclusive lock on a hot page
+ * that is continuously read by other threads.
+ * <p>
+ * Run with: java -cp bin/src:bin/test:lib/* simpledb.LockingBenchmark
+ */
+public class LockingBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int PAGES = 32;
+    private static final int READS_PER_XACTION = 8;
+    private static final long RUN_MILLIS = 2000;
+    private static final double[] CONFLICT_RATES = { 0.0, 0.01, 0.05, 0.2, 0.5 };
+
+    public static void main(String[] args) throws Exception {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        for (int i = 0; i < PAGES * 504; i++) {
+            tuples.add(new ArrayList<>(Arrays.asList(i, i)));
+        }
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 2);
+        HeapFile hf = Utility.openHeapFile(2, f);
+
+        LockManager.DeadlockPolicy[] policies = LockManager.DeadlockPolicy.values();
+        System.out.print("conflict");
+        for (LockManager.DeadlockPolicy policy : policies) {
+            System.out.print("\t" + policy);
+        }
+        System.out.println("\tOCC\t(committed xact/s, aborts)");
+        for (double rate : CONFLICT_RATES) {
+            System.out.printf("%.2f", rate);
+            for (LockManager.DeadlockPolicy policy : policies) {
+                print(run(hf, rate, false, policy));
+            }
+            print(run(hf, rate, true, LockManager.DeadlockPolicy.DETECTION));
+            System.out.println();
+        }
+
+        long[] waits = writerWaits(hf);
+        System.out.printf("writer wait on a hot page (ms): p50 %.2f, p99 %.2f, max %.2f%n",
+                waits[waits.length / 2] / 1e6, waits[waits.length * 99 / 100] / 1e6,
+                waits[waits.length - 1] / 1e6);
+        System.exit(0);
+    }
+
+    private static void print(int[] result) {
+        System.out.printf("\t%d, %d", result[0] * 1000 / RUN_MILLIS, result[1]);
+    }
+
+    /** @return the number of committed and aborted transactions */
+    private static int[] run(HeapFile hf, double conflictRate, boolean optimistic,
+            LockManager.DeadlockPolicy policy) throws InterruptedException {
+        Database.resetBufferPool(PAGES * 2).setDeadlockPolicy(policy);
+        AtomicInteger commits = new AtomicInteger();
+        AtomicInteger aborts = new AtomicInteger();
+        long stop = System.currentTimeMillis() + RUN_MILLIS;
+
+        Thread[] workers = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final Random rand = new Random(i);
+            workers[i] = new Thread(() -> {
+                while (System.currentTimeMillis() < stop) {
+                    Transaction t = new Transaction(optimistic);
+                    t.start();
+                    try {
+                        for (int r = 0; r < READS_PER_XACTION; r++) {
+                            PageId pid = new HeapPageId(hf.getId(), rand.nextInt(PAGES));
+                            Database.getBufferPool().getPage(t.getId(), pid, Permissions.READ_ONLY);
+                        }
+                        if (rand.nextDouble() < conflictRate) {
+                            PageId pid = new HeapPageId(hf.getId(), rand.nextInt(PAGES));
+                            Page p = Database.getBufferPool().getPage(t.getId(), pid, Permissions.READ_WRITE);
+                            p.markDirty(true, t.getId());
+                        }
+                        t.commit();
+                        commits.incrementAndGet();
+                    } catch (TransactionAbortedException e) {
+                        aborts.incrementAndGet();
+                        try {
+                            t.abort();
+                        } catch (java.io.IOException e2) {
+                            e2.printStackTrace();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        return;
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        return new int[] { commits.get(), aborts.get() };
+    }
+
+    /** @return the sorted times, in ns, writers waited for an exclusive lock on page 0 while readers hammer it */
+    private static long[] writerWaits(HeapFile hf) throws InterruptedException {
+        Database.resetBufferPool(PAGES * 2);
+        PageId hot = new HeapPageId(hf.getId(), 0);
+        long stop = System.currentTimeMillis() + RUN_MILLIS;
+        Thread[] readers = new Thread[THREADS - 1];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                while (System.currentTimeMillis() < stop) {
+                    TransactionId tid = new TransactionId();
+                    try {
+                        Database.getBufferPool().getPage(tid, hot, Permissions.READ_ONLY);
+                        Thread.sleep(1);
+                        Database.getBufferPool().transactionComplete(tid);
+                    } catch (TransactionAbortedException e) {
+                        try {
+                            Database.getBufferPool().transactionComplete(tid, false);
+                        } catch (java.io.IOException e2) {
+                            e2.printStackTrace();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        return;
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        ArrayList<Long> waits = new ArrayList<>();
+        while (System.currentTimeMillis() < stop) {
+            TransactionId tid = new TransactionId();
+            try {
+                long start = System.nanoTime();
+                Database.getBufferPool().getPage(tid, hot, Permissions.READ_WRITE);
+                waits.add(System.nanoTime() - start);
+                Database.getBufferPool().transactionComplete(tid, false);
+                Thread.sleep(5);
+            } catch (TransactionAbortedException e) {
+                try {
+                    Database.getBufferPool().transactionComplete(tid, false);
+                } catch (java.io.IOException e2) {
+                    e2.printStackTrace();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                break;
+            }
+        }
+        for (Thread r : readers) {
+            r.join();
+        }
+        long[] sorted = new long[waits.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = waits.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,143 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class NumericAggregatorTest extends SimpleDbTestBase {
+
+  private static final TupleDesc TD = new TupleDesc(
+      new Type[] { Type.INT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE, Type.DATE_TYPE });
+
+  private ArrayList<Tuple> tuples;
+
+  /**
+   * Groups 1 and 2, with longs that overflow an int.
+   */
+  @Before public void createTupleList() throws Exception {
+    tuples = new ArrayList<Tuple>();
+    add(1, 3000000000L, 1.5, "2024-01-01");
+    add(1, 5000000000L, 2.0, "2024-01-05");
+    add(2, -7L, 0.25, "1999-12-31");
+  }
+
+  private void add(int group, long l, double d, String date) {
+    Tuple t = new Tuple(TD);
+    t.setField(0, new IntField(group));
+    t.setField(1, new LongField(l));
+    t.setField(2, new DoubleField(d));
+    t.setField(3, DateField.parse(date));
+    tuples.add(t);
+  }
+
+  private ArrayList<Field> run(NumericAggregator agg, int resultField) throws Exception {
+    for (Tuple t : tuples) {
+      agg.mergeTupleIntoGroup(t);
+    }
+    ArrayList<Field> results = new ArrayList<Field>();
+    OpIterator it = agg.iterator();
+    it.open();
+    while (it.hasNext()) {
+      results.add(it.next().getField(resultField));
+    }
+    it.close();
+    return results;
+  }
+
+  /**
+   * Sums keep the aggregate field's type and do not overflow an int.
+   */
+  @Test public void sumByGroup() throws Exception {
+    ArrayList<Field> sums = run(new NumericAggregator(0, Type.INT_TYPE, 1, Type.LONG_TYPE, Aggregator.Op.SUM), 1);
+    assertEquals(new LongField(8000000000L), sums.get(0));
+    assertEquals(new LongField(-7L), sums.get(1));
+
+    sums = run(new NumericAggregator(Aggregator.NO_GROUPING, null, 2, Type.DOUBLE_TYPE, Aggregator.Op.SUM), 0);
+    assertEquals(1, sums.size());
+    assertEquals(new DoubleField(3.75), sums.get(0));
+  }
+
+  /**
+   * Averages of doubles are not truncated; averages of dates are dates.
+   */
+  @Test public void avg() throws Exception {
+    assertEquals(new DoubleField(1.75),
+        run(new NumericAggregator(0, Type.INT_TYPE, 2, Type.DOUBLE_TYPE, Aggregator.Op.AVG), 1).get(0));
+    assertEquals(DateField.parse("2024-01-03"),
+        run(new NumericAggregator(0, Type.INT_TYPE, 3, Type.DATE_TYPE, Aggregator.Op.AVG), 1).get(0));
+  }
+
+  /**
+   * MIN and MAX compare values, not text; COUNT is an INT.
+   */
+  @Test public void minMaxCount() throws Exception {
+    assertEquals(DateField.parse("1999-12-31"),
+        run(new NumericAggregator(Aggregator.NO_GROUPING, null, 3, Type.DATE_TYPE, Aggregator.Op.MIN), 0).get(0));
+    assertEquals(new LongField(5000000000L),
+        run(new NumericAggregator(Aggregator.NO_GROUPING, null, 1, Type.LONG_TYPE, Aggregator.Op.MAX), 0).get(0));
+    assertEquals(new IntField(2),
+        run(new NumericAggregator(0, Type.INT_TYPE, 2, Type.DOUBLE_TYPE, Aggregator.Op.COUNT), 1).get(0));
+  }
+
+  /**
+   * The Aggregate operator picks NumericAggregator and reports its result types.
+   */
+  @Test public void aggregateOperator() throws Exception {
+    Aggregate agg = new Aggregate(new TupleIterator(TD, tuples), 2, 0, Aggregator.Op.COUNT);
+    assertEquals(Type.INT_TYPE, agg.getTupleDesc().getFieldType(1));
+    agg = new Aggregate(new TupleIterator(TD, tuples), 1, 0, Aggregator.Op.MAX);
+    assertEquals(Type.LONG_TYPE, agg.getTupleDesc().getFieldType(1));
+    agg.open();
+    assertEquals(new LongField(5000000000L), agg.next().getField(1));
+    assertEquals(new LongField(-7L), agg.next().getField(1));
+    assertFalse(agg.hasNext());
+  }
+
+  /**
+   * Summing dates is meaningless.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void sumOfDates() {
+    new NumericAggregator(Aggregator.NO_GROUPING, null, 3, Type.DATE_TYPE, Aggregator.Op.SUM);
+  }
+
+  /**
+   * The planner rejects SUM over a DATE column with a ParsingException
+   * instead of failing to build the Aggregate.
+   */
+  @Test public void plannerRejectsSumOfDates() throws Exception {
+    HeapFile hf = SystemTestUtil.createEmptyTable("dates",
+        new TupleDesc(new Type[] { Type.INT_TYPE, Type.DATE_TYPE }, new String[] { "g", "d" }));
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("dates", new TableStats(hf.getId(), 1000));
+    for (String op : new String[] { "sum", "avg" }) {
+      LogicalPlan lp = new LogicalPlan();
+      lp.addScan(hf.getId(), "t");
+      lp.addProjectField("t.d", op);
+      lp.addAggregate(op, "t.d", null);
+      try {
+        lp.physicalPlan(new TransactionId(), stats, false);
+        assertEquals("avg", op);
+      } catch (ParsingException e) {
+        assertEquals("sum", op);
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(NumericAggregatorTest.class);
+  }
+}
@@ -0,0 +1,129 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class NumericFieldTest {
+
+  /**
+   * Each type is stored in a few fixed bytes and parsed back unchanged.
+   */
+  @Test public void encodings() throws Exception {
+    assertEquals(8, Type.LONG_TYPE.getLen());
+    assertEquals(8, Type.DOUBLE_TYPE.getLen());
+    assertEquals(4, Type.DATE_TYPE.getLen());
+
+    Field[] fields = { new LongField(Long.MIN_VALUE), new DoubleField(-0.125), DateField.parse("2000-02-29") };
+    ByteBuffer buf = ByteBuffer.allocate(20);
+    int offset = 0;
+    for (Field f : fields) {
+      f.serialize(buf, offset);
+      assertEquals(f, f.getType().parse(buf, offset));
+      offset += f.getType().getLen();
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      f.serialize(new DataOutputStream(out));
+      assertEquals(f.getType().getLen(), out.size());
+      assertEquals(f, f.getType().parse(new DataInputStream(new ByteArrayInputStream(out.toByteArray()))));
+    }
+  }
+
+  /**
+   * Values are parsed from and printed as text.
+   */
+  @Test public void text() {
+    assertEquals("2024-12-31", Type.DATE_TYPE.parse("2024-12-31").toString());
+    assertEquals(0, DateField.parse("1970-01-01").getValue());
+    assertEquals(new LongField(1L << 40), Type.LONG_TYPE.parse("1099511627776"));
+    assertEquals(new DoubleField(19.99), Type.DOUBLE_TYPE.parse("19.99"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badDate() {
+    Type.DATE_TYPE.parse("2023-02-29");
+  }
+
+  /**
+   * Predicates compare values numerically and chronologically.
+   */
+  @Test public void compare() {
+    assertTrue(new LongField(3000000000L).compare(Predicate.Op.GREATER_THAN, new LongField(-3000000000L)));
+    assertTrue(new DoubleField(0.1).compare(Predicate.Op.LESS_THAN, new DoubleField(0.2)));
+    assertFalse(new DoubleField(0.1).compare(Predicate.Op.EQUALS, new DoubleField(0.2)));
+    assertTrue(DateField.parse("2024-02-01").compare(Predicate.Op.GREATER_THAN_OR_EQ, DateField.parse("2024-01-31")));
+  }
+
+  /**
+   * INT, LONG and DOUBLE fields compare by value across types, even where a
+   * long has no exact double, and equal values are equal and hash alike.
+   */
+  @Test public void compareAcrossTypes() {
+    assertTrue(new LongField(5).compare(Predicate.Op.EQUALS, new IntField(5)));
+    assertTrue(new IntField(5).compare(Predicate.Op.LESS_THAN, new LongField(3000000000L)));
+    assertTrue(new IntField(-1).compare(Predicate.Op.GREATER_THAN, new LongField(-3000000000L)));
+    assertTrue(new DoubleField(2.5).compare(Predicate.Op.GREATER_THAN, new IntField(2)));
+    assertTrue(new IntField(3).compare(Predicate.Op.GREATER_THAN, new DoubleField(2.5)));
+    assertTrue(new LongField(Long.MAX_VALUE).compare(Predicate.Op.LESS_THAN, new DoubleField(0x1p63)));
+    assertTrue(new LongField((1L << 53) + 1).compare(Predicate.Op.GREATER_THAN, new DoubleField(0x1p53)));
+    assertTrue(new DoubleField(-0.5).compare(Predicate.Op.LESS_THAN, new LongField(0)));
+
+    Field[] equal = { new IntField(-7), new LongField(-7), new DoubleField(-7.0) };
+    for (Field a : equal) {
+      for (Field b : equal) {
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+      }
+    }
+    assertEquals(new LongField(3000000000L), new DoubleField(3e9));
+    assertEquals(new LongField(3000000000L).hashCode(), new DoubleField(3e9).hashCode());
+    assertFalse(new IntField(2).equals(new DoubleField(2.5)));
+    assertFalse(new IntField(0).equals(DateField.parse("1970-01-01")));
+  }
+
+  /**
+   * A DATE only compares with a DATE.
+   */
+  @Test(expected = ClassCastException.class)
+  public void dateDoesNotCompareWithInt() {
+    DateField.parse("1970-01-02").compare(Predicate.Op.EQUALS, new IntField(1));
+  }
+
+  /**
+   * A join of a LONG column with an INT column matches equal values.
+   */
+  @Test public void joinAcrossTypes() throws Exception {
+    TupleDesc longs = new TupleDesc(new Type[] { Type.LONG_TYPE });
+    java.util.ArrayList<Tuple> left = new java.util.ArrayList<Tuple>();
+    for (long v : new long[] { 1, 3000000000L, -2 }) {
+      Tuple t = new Tuple(longs);
+      t.setField(0, new LongField(v));
+      left.add(t);
+    }
+    OpIterator right = TestUtil.createTupleList(1, new int[] { -2, 1, 2 });
+    for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN_OR_EQ }) {
+      Join join = new Join(new JoinPredicate(0, op, 0), new TupleIterator(longs, left), right);
+      join.open();
+      int matches = 0;
+      while (join.hasNext()) {
+        Tuple t = join.next();
+        assertTrue(t.getField(0).compare(op, t.getField(1)));
+        matches++;
+      }
+      join.close();
+      assertEquals(op == Predicate.Op.EQUALS ? 2 : 5, matches);
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(NumericFieldTest.class);
+  }
+}
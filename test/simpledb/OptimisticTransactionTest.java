@@ -0,0 +1,204 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class OptimisticTransactionTest extends TestUtil.CreateHeapFile {
+  private PageId p0, p1;
+  private TransactionId tid1, tid2;
+
+  /** Time to wait before checking the state of lock contention, in ms */
+  private static final int TIMEOUT = 100;
+
+  private BufferPool bp;
+
+  /**
+   * Set up initial resources for each unit test.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+    // populate the file with two pages
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 600; ++i) {
+      empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+    }
+    assertEquals(2, empty.numPages());
+
+    this.p0 = new HeapPageId(empty.getId(), 0);
+    this.p1 = new HeapPageId(empty.getId(), 1);
+    this.tid1 = new TransactionId();
+    this.tid2 = new TransactionId();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+  }
+
+  /**
+   * An optimistic read must not block a writer on the same page.
+   */
+  @Test public void optimisticReadTakesNoLock() throws Exception {
+    bp.beginOptimistic(tid1);
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    assertFalse(bp.holdsLock(tid1, p0));
+
+    TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid2, p0, Permissions.READ_WRITE);
+    t.start();
+    Thread.sleep(TIMEOUT);
+    assertTrue(t.acquired());
+  }
+
+  /**
+   * With no conflicting writers, validation succeeds.
+   */
+  @Test public void validateWithoutConflict() throws Exception {
+    bp.beginOptimistic(tid1);
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid2, p1, Permissions.READ_WRITE);
+    bp.transactionComplete(tid2);
+    assertTrue(bp.validate(tid1));
+  }
+
+  /**
+   * A page written and committed by another transaction after it was read
+   * fails validation.
+   */
+  @Test public void validateAfterConflictingCommit() throws Exception {
+    bp.beginOptimistic(tid1);
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid2, p0, Permissions.READ_WRITE);
+    bp.transactionComplete(tid2);
+    assertFalse(bp.validate(tid1));
+  }
+
+  /**
+   * A page that was being written by another transaction when it was read
+   * fails validation, even after the writer finishes.
+   */
+  @Test public void validateAfterDirtyRead() throws Exception {
+    bp.getPage(tid2, p0, Permissions.READ_WRITE);
+    bp.beginOptimistic(tid1);
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    assertFalse(bp.validate(tid1));
+    bp.transactionComplete(tid2);
+    assertFalse(bp.validate(tid1));
+  }
+
+  /**
+   * Writes by an optimistic transaction still take exclusive locks, and its
+   * own writes never invalidate it.
+   */
+  @Test public void optimisticWriteLocks() throws Exception {
+    bp.beginOptimistic(tid1);
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.getPage(tid1, p0, Permissions.READ_WRITE);
+    assertTrue(bp.holdsLock(tid1, p0));
+    assertTrue(bp.validate(tid1));
+  }
+
+  /**
+   * A page an optimistic transaction has written is read in place, so it
+   * sees its own writes; other pages are read as copies.
+   */
+  @Test public void optimisticReadsOwnWrites() throws Exception {
+    bp.beginOptimistic(tid1);
+    Page written = bp.getPage(tid1, p0, Permissions.READ_WRITE);
+    assertSame(written, bp.getPage(tid1, p0, Permissions.READ_ONLY));
+    Page read = bp.getPage(tid1, p1, Permissions.READ_ONLY);
+    assertNotSame(read, bp.getPage(tid2, p1, Permissions.READ_ONLY));
+  }
+
+  /**
+   * An optimistic read gets a copy of the page, which a concurrent writer
+   * does not change, and the write still fails validation.
+   */
+  @Test public void optimisticReadIsSnapshot() throws Exception {
+    bp.beginOptimistic(tid1);
+    HeapPage read = (HeapPage) bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    int empty = read.getNumEmptySlots();
+    HeapPage written = (HeapPage) bp.getPage(tid2, p0, Permissions.READ_WRITE);
+    assertNotSame(read, written);
+    written.insertTuple(Utility.getHeapTuple(7, 2));
+    assertEquals(empty, read.getNumEmptySlots());
+    assertNull(read.getTuple(0));
+    assertFalse(bp.validate(tid1));
+  }
+
+  /**
+   * A page read while another transaction writes it is a copy of its
+   * committed contents.
+   */
+  @Test public void dirtyReadSeesCommittedPage() throws Exception {
+    HeapPage written = (HeapPage) bp.getPage(tid2, p0, Permissions.READ_WRITE);
+    written.insertTuple(Utility.getHeapTuple(7, 2));
+    bp.beginOptimistic(tid1);
+    HeapPage read = (HeapPage) bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    assertEquals(written.getNumEmptySlots() + 1, read.getNumEmptySlots());
+    assertNull(read.getTuple(0));
+    assertFalse(bp.validate(tid1));
+  }
+
+  /**
+   * Releasing a page early does not drop it from the read set.
+   */
+  @Test public void releaseKeepsRead() throws Exception {
+    bp.beginOptimistic(tid1);
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+    bp.releasePage(tid1, p0);
+    bp.getPage(tid2, p0, Permissions.READ_WRITE);
+    bp.transactionComplete(tid2);
+    assertFalse(bp.validate(tid1));
+  }
+
+  /**
+   * Versions are only kept for pages an active optimistic transaction has
+   * read.
+   */
+  @Test public void versionsArePruned() throws Exception {
+    LockManager lm = new LockManager();
+    lm.acquire(tid2, p0, Permissions.READ_WRITE);
+    lm.removeAllHeld(tid2);
+    assertEquals(0, lm.numVersions());
+
+    lm.beginOptimistic(tid1);
+    lm.recordRead(tid1, p0);
+    for (int i = 0; i < 3; i++) {
+      TransactionId tid = new TransactionId();
+      lm.acquire(tid, p0, Permissions.READ_WRITE);
+      lm.acquire(tid, p1, Permissions.READ_WRITE);
+      lm.removeAllHeld(tid);
+    }
+    assertEquals(1, lm.numVersions());
+    assertFalse(lm.validate(tid1));
+    lm.removeAllHeld(tid1);
+    assertEquals(0, lm.numVersions());
+  }
+
+  /**
+   * Transaction.commit() aborts an optimistic transaction that fails
+   * validation.
+   */
+  @Test(expected = TransactionAbortedException.class)
+  public void commitFailsValidation() throws Exception {
+    Transaction t = new Transaction(true);
+    t.start();
+    bp.getPage(t.getId(), p0, Permissions.READ_ONLY);
+    bp.getPage(tid2, p0, Permissions.READ_WRITE);
+    bp.transactionComplete(tid2);
+    t.commit();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OptimisticTransactionTest.class);
+  }
+
+}
@@ -0,0 +1,147 @@
+package simpledb;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PredicatePushdownTest extends SimpleDbTestBase {
+  private static final int ROWS = 2000;
+
+  private HeapFile ints;
+  private HeapFile strings;
+
+  /**
+   * A table of fixed-size tuples and one with a varchar column, which is
+   * stored on slotted pages.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    ints = SystemTestUtil.createEmptyTable("i",
+        new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, new String[] { "a", "b" }));
+    strings = SystemTestUtil.createEmptyTable("s",
+        new TupleDesc(new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE }, new String[] { "a", "b" }));
+
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < ROWS; i++) {
+      Tuple t = new Tuple(ints.getTupleDesc());
+      t.setField(0, new IntField(i * 7919 % ROWS));
+      t.setField(1, new IntField(i % 10));
+      Database.getBufferPool().insertTuple(tid, ints.getId(), t);
+      t = new Tuple(strings.getTupleDesc());
+      t.setField(0, new IntField(i));
+      t.setField(1, new VarcharField("v" + (i % 10)));
+      Database.getBufferPool().insertTuple(tid, strings.getId(), t);
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Checks that a SeqScan with predicates returns the same tuples as Filters
+   * over a plain SeqScan.
+   */
+  private static void assertSameAsFilter(TransactionId tid, HeapFile hf, Predicate... preds)
+      throws Exception {
+    OpIterator filtered = new SeqScan(tid, hf.getId(), "t");
+    for (Predicate p : preds) {
+      filtered = new Filter(p, filtered);
+    }
+    List<String> expected = SystemTestUtil.sortedTupleStrings(filtered);
+    assertEquals(expected, SystemTestUtil.sortedTupleStrings(new SeqScan(tid, hf.getId(), "t", Arrays.asList(preds))));
+  }
+
+  /**
+   * Predicates evaluated on fixed-size pages, and on slotted pages, select
+   * the same tuples as a Filter does.
+   */
+  @Test public void matchesFilter() throws Exception {
+    TransactionId tid = new TransactionId();
+    for (Predicate.Op op : Predicate.Op.values()) {
+      assertSameAsFilter(tid, ints, new Predicate(0, op, new IntField(ROWS / 3)));
+      assertSameAsFilter(tid, strings, new Predicate(0, op, new IntField(ROWS / 3)));
+    }
+    assertSameAsFilter(tid, ints, new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(100)),
+        new Predicate(1, Predicate.Op.EQUALS, new IntField(3)));
+    assertSameAsFilter(tid, strings, new Predicate(0, Predicate.Op.LESS_THAN, new IntField(500)),
+        new Predicate(1, Predicate.Op.EQUALS, new VarcharField("v3")));
+    assertSameAsFilter(tid, strings, new Predicate(1, Predicate.Op.LIKE, new VarcharField("3")));
+    assertEquals(0, SystemTestUtil.sortedTupleStrings(new SeqScan(tid, ints.getId(), "t",
+        Collections.singletonList(new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(9))))).size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Tuples returned through predicates evaluated on the page can still be
+   * deleted.
+   */
+  @Test public void deleteMatches() throws Exception {
+    TransactionId tid = new TransactionId();
+    List<Predicate> preds = Collections.singletonList(new Predicate(1, Predicate.Op.EQUALS, new IntField(4)));
+    Delete d = new Delete(tid, new SeqScan(tid, ints.getId(), "t", preds));
+    d.open();
+    assertEquals(ROWS / 10, ((IntField) d.next().getField(0)).getValue());
+    d.close();
+    assertEquals(0, SystemTestUtil.sortedTupleStrings(new SeqScan(tid, ints.getId(), "t", preds)).size());
+    assertEquals(ROWS - ROWS / 10, SystemTestUtil.sortedTupleStrings(new SeqScan(tid, ints.getId(), "t")).size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Without an index the planner pushes the filters of a table into its
+   * SeqScan, estimates the scan's cardinality with them and shows them in
+   * the plan.
+   */
+  @Test public void plannerPushesFilters() throws Exception {
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("i", new TableStats(ints.getId(), 1000));
+    stats.put("s", new TableStats(strings.getId(), 1000));
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(ints.getId(), "i");
+    lp.addScan(strings.getId(), "s");
+    lp.addJoin("i.a", "s.a", Predicate.Op.EQUALS);
+    lp.addFilter("i.b", Predicate.Op.EQUALS, "3");
+    lp.addFilter("i.a", Predicate.Op.LESS_THAN, "1000");
+    lp.addProjectField("s.b", null);
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    assertNull(SystemTestUtil.findOperator(plan, Filter.class));
+
+    OperatorCardinality.updateOperatorCardinality((Operator) plan,
+        lp.getTableAliasToIdMapping(), stats);
+    String tree = new QueryPlanVisualizer().getQueryPlanTree(plan);
+    assertTrue(tree, tree.contains("scan(i, i.b=3, i.a<1000)"));
+
+    List<String> result = SystemTestUtil.sortedTupleStrings(plan);
+    assertEquals(100, result.size());
+    for (String s : result) {
+      assertTrue(s, s.startsWith("v7"));
+    }
+
+    lp = new LogicalPlan();
+    lp.addScan(ints.getId(), "i");
+    lp.addFilter("i.b", Predicate.Op.EQUALS, "3");
+    lp.addProjectField("i.a", null);
+    plan = lp.physicalPlan(tid, stats, false);
+    OperatorCardinality.updateOperatorCardinality((Operator) plan,
+        lp.getTableAliasToIdMapping(), stats);
+    int card = ((Operator) plan).getEstimatedCardinality();
+    assertTrue(card + "", card > ROWS / 20 && card < ROWS / 5);
+    assertEquals(ROWS / 10, SystemTestUtil.sortedTupleStrings(plan).size());
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PredicatePushdownTest.class);
+  }
+
+}
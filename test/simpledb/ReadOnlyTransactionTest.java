@@ -0,0 +1,77 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReadOnlyTransactionTest extends TestUtil.CreateHeapFile {
+  private PageId p0;
+
+  private BufferPool bp;
+
+  /**
+   * Set up initial resources for each unit test.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+    // populate the file with a page
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 100; ++i) {
+      empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+    }
+    assertEquals(1, empty.numPages());
+
+    this.p0 = new HeapPageId(empty.getId(), 0);
+    bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+  }
+
+  /**
+   * A read-only transaction writes no log records.
+   */
+  @Test public void writesNoLogRecords() throws Exception {
+    int records = Database.getLogFile().getTotalRecords();
+    Transaction t = new Transaction(false, true);
+    t.start();
+    bp.getPage(t.getId(), p0, Permissions.READ_ONLY);
+    assertTrue(bp.holdsLock(t.getId(), p0));
+    t.commit();
+    assertFalse(bp.holdsLock(t.getId(), p0));
+    assertEquals(records, Database.getLogFile().getTotalRecords());
+  }
+
+  /**
+   * A read-only transaction may not lock a page for writing.
+   */
+  @Test(expected = DbException.class)
+  public void cannotWrite() throws Exception {
+    Transaction t = new Transaction(false, true);
+    t.start();
+    bp.getPage(t.getId(), p0, Permissions.READ_WRITE);
+  }
+
+  /**
+   * Aborting a read-only transaction releases its locks without logging.
+   */
+  @Test public void abortReleasesLocks() throws Exception {
+    int records = Database.getLogFile().getTotalRecords();
+    Transaction t = new Transaction(false, true);
+    t.start();
+    bp.getPage(t.getId(), p0, Permissions.READ_ONLY);
+    t.abort();
+    assertFalse(bp.holdsLock(t.getId(), p0));
+    assertEquals(records, Database.getLogFile().getTotalRecords());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ReadOnlyTransactionTest.class);
+  }
+
+}
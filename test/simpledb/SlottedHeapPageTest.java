@@ -0,0 +1,258 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+  private static final TupleDesc TD =
+      new TupleDesc(new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE });
+
+  private HeapFile hf;
+  private HeapPageId pid;
+
+  /**
+   * Register an empty table with a VARCHAR column.
+   */
+  @Before public void setUp() throws Exception {
+    File f = File.createTempFile("slotted", ".dat");
+    f.deleteOnExit();
+    hf = new HeapFile(f, TD);
+    Database.getCatalog().addTable(hf, "slotted");
+    pid = new HeapPageId(hf.getId(), 0);
+  }
+
+  private static Tuple tuple(int i, String s) {
+    Tuple t = new Tuple(TD);
+    t.setField(0, new IntField(i));
+    t.setField(1, new VarcharField(s));
+    return t;
+  }
+
+  private static String name(int i, int len) {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < len) {
+      sb.append((char) ('a' + (i + sb.length()) % 26));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Tuples survive a round trip through getPageData and keep their slots.
+   */
+  @Test public void roundTrip() throws Exception {
+    SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+    for (int i = 0; i < 50; i++) {
+      page.insertTuple(tuple(i, name(i, i % 20)));
+    }
+    page = new SlottedHeapPage(pid, page.getPageData());
+    Iterator<Tuple> it = page.iterator();
+    for (int i = 0; i < 50; i++) {
+      Tuple t = it.next();
+      assertEquals(new IntField(i), t.getField(0));
+      assertEquals(name(i, i % 20), ((StringField) t.getField(1)).getValue());
+      assertEquals(i, t.getRecordId().getTupleNumber());
+    }
+    assertFalse(it.hasNext());
+  }
+
+  /**
+   * Short strings pack many more tuples onto a page than fixed-size slots.
+   */
+  @Test public void packsShortStrings() throws Exception {
+    SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+    int n = 0;
+    while (page.getNumEmptySlots() > 0) {
+      page.insertTuple(tuple(n, name(n, 8)));
+      n++;
+    }
+    int fixed = BufferPool.getPageSize() * 8
+        / ((Type.INT_TYPE.getLen() + Type.STRING_TYPE.getLen()) * 8 + 1);
+    assertTrue(n > 5 * fixed);
+    assertFalse(page.hasRoomFor(tuple(0, name(0, 8))));
+  }
+
+  /**
+   * Space freed by deletes is reused by compacting the page, without moving
+   * the remaining tuples to other slots.
+   */
+  @Test public void compactsOnInsert() throws Exception {
+    SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+    ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+    while (page.hasRoomFor(tuple(0, name(0, 10)))) {
+      Tuple t = tuple(inserted.size(), name(inserted.size(), 10));
+      page.insertTuple(t);
+      inserted.add(t);
+    }
+    for (int i = 0; i < inserted.size(); i += 2) {
+      page.deleteTuple(inserted.get(i));
+    }
+    // each new tuple only fits in the space of two deleted ones
+    int added = 0;
+    while (page.hasRoomFor(tuple(-1, name(0, 20)))) {
+      page.insertTuple(tuple(-1, name(0, 20)));
+      added++;
+    }
+    assertTrue(added >= inserted.size() / 4);
+
+    page = new SlottedHeapPage(pid, page.getPageData());
+    int kept = 0;
+    for (Iterator<Tuple> it = page.iterator(); it.hasNext(); ) {
+      Tuple t = it.next();
+      int i = ((IntField) t.getField(0)).getValue();
+      if (i >= 0) {
+        assertEquals(1, i % 2);
+        assertEquals(i, t.getRecordId().getTupleNumber());
+        assertEquals(name(i, 10), ((StringField) t.getField(1)).getValue());
+        kept++;
+      }
+    }
+    assertEquals(inserted.size() / 2, kept);
+  }
+
+  /**
+   * Tuples returned by the page, and not yet read, keep their values when
+   * their slot is cleared and reused and the page is compacted.
+   */
+  @Test public void heldTupleKeepsFields() throws Exception {
+    SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+    while (page.hasRoomFor(tuple(0, name(0, 10)))) {
+      page.insertTuple(tuple(0, name(0, 10)));
+    }
+    Tuple held = page.iterator().next();
+    Tuple matched = page.iterator(Collections.singletonList(
+        new Predicate(1, Predicate.Op.EQUALS, new VarcharField(name(0, 10))))).next();
+    page.deleteTuple(page.getTuple(0));
+    page.deleteTuple(page.getTuple(1));
+    page.insertTuple(tuple(999, name(999, 20)));
+    assertEquals(0, page.getTuple(0).getRecordId().getTupleNumber());
+    for (Tuple t : new Tuple[] { held, matched }) {
+      assertEquals(new IntField(0), t.getField(0));
+      assertEquals(name(0, 10), ((StringField) t.getField(1)).getValue());
+    }
+  }
+
+  /**
+   * Inserts fill the lowest empty slot, and the free space the page reports
+   * agrees with hasRoomFor for tuples of any width.
+   */
+  @Test public void insertFillsLowestEmptySlot() throws Exception {
+    SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+    ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+    for (int i = 0; i < 40; i++) {
+      Tuple t = tuple(i, name(i, 10));
+      page.insertTuple(t);
+      inserted.add(t);
+    }
+    int[] holes = { 39, 25, 7, 3 };
+    for (int hole : holes) {
+      page.deleteTuple(inserted.get(hole));
+    }
+    page = new SlottedHeapPage(pid, page.getPageData());
+    for (int k = holes.length - 1; k >= 1; k--) {
+      Tuple t = tuple(-k, name(k, 10));
+      page.insertTuple(t);
+      assertEquals(holes[k], t.getRecordId().getTupleNumber());
+    }
+    Tuple t = tuple(-1, name(0, 10));
+    page.insertTuple(t);
+    assertEquals(39, t.getRecordId().getTupleNumber());
+
+    while (page.hasRoomFor(tuple(0, name(0, 10)))) {
+      page.insertTuple(tuple(0, name(0, 10)));
+    }
+    for (int len = 0; len < 200; len++) {
+      Tuple wide = tuple(0, name(0, len));
+      assertEquals(page.hasRoomFor(wide), SlottedHeapPage.spaceFor(wide) <= page.getFreeSpace());
+    }
+  }
+
+  /**
+   * An insert of a tuple wider than the free space of every page goes
+   * straight to a new page, without reading the pages that only have room
+   * for narrower tuples.
+   */
+  @Test public void wideInsertSkipsPagesWithoutRoom() throws Exception {
+    TransactionId tid = new TransactionId();
+    for (int i = 0; hf.numPages() < 3; i++) {
+      hf.insertTuple(tid, tuple(i, name(i, 12)));
+    }
+    Tuple wide = tuple(-1, name(0, Type.STRING_LEN));
+    SlottedHeapPage last;
+    do {
+      last = (SlottedHeapPage) hf.insertTuple(tid, tuple(-1, name(0, Type.STRING_LEN))).get(0);
+    } while (last.hasRoomFor(wide));
+    assertEquals(3, hf.numPages());
+    // room for narrow tuples, but not for another wide one
+    assertTrue(last.getNumEmptySlots() > 0);
+    Database.getBufferPool().transactionComplete(tid);
+
+    // another transaction writing the pages makes the insert wait if it reads one
+    BufferPool bp = Database.getBufferPool();
+    bp.setDeadlockPolicy(LockManager.DeadlockPolicy.TIMEOUT);
+    bp.setLockTimeout(100);
+    TransactionId writer = new TransactionId();
+    for (int pno = 0; pno < 3; pno++) {
+      bp.getPage(writer, new HeapPageId(hf.getId(), pno), Permissions.READ_WRITE);
+    }
+    tid = new TransactionId();
+    Tuple t = tuple(-2, name(0, Type.STRING_LEN));
+    hf.insertTuple(tid, t);
+    assertEquals(3, t.getRecordId().getPageId().getPageNumber());
+    bp.transactionComplete(tid);
+    bp.transactionComplete(writer);
+  }
+
+  /**
+   * A HeapFile with a VARCHAR column uses slotted pages and needs far fewer
+   * of them than the same rows stored as fixed-size strings.
+   */
+  @Test public void fewerPagesThanFixedStrings() throws Exception {
+    File f = File.createTempFile("fixed", ".dat");
+    f.deleteOnExit();
+    HeapFile fixed = new HeapFile(f, new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE }));
+    Database.getCatalog().addTable(fixed, "fixed");
+
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 1000; i++) {
+      hf.insertTuple(tid, tuple(i, name(i, 12)));
+      Tuple t = new Tuple(fixed.getTupleDesc());
+      t.setField(0, new IntField(i));
+      t.setField(1, new StringField(name(i, 12), Type.STRING_LEN));
+      fixed.insertTuple(tid, t);
+    }
+    assertTrue(Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY) instanceof SlottedHeapPage);
+    assertTrue(hf.numPages() * 5 < fixed.numPages());
+
+    DbFileIterator it = hf.iterator(tid);
+    it.open();
+    int i = 0;
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      assertEquals(new IntField(i), t.getField(0));
+      assertEquals(name(i, 12), ((StringField) t.getField(1)).getValue());
+      i++;
+    }
+    assertEquals(1000, i);
+    it.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+  }
+
+}
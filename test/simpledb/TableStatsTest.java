@@ -151,4 +151,30 @@ public class TableStatsTest extends SimpleDbTestBase {
 			Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.LESS_THAN_OR_EQ, belowMin), 0.001);
 		}
 	}
+
+	/**
+	 * DATE and DOUBLE columns get histograms too, so range predicates over
+	 * them are estimated rather than assumed to select everything.
+	 */
+	@Test public void numericSelectivityTest() throws Exception {
+		TupleDesc td = new TupleDesc(new Type[] { Type.DATE_TYPE, Type.DOUBLE_TYPE });
+		java.io.File file = java.io.File.createTempFile("numeric", ".dat");
+		file.deleteOnExit();
+		HeapFile hf = new HeapFile(file, td);
+		Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < 1000; i++) {
+			Tuple t = new Tuple(td);
+			t.setField(0, new DateField(i));
+			t.setField(1, new DoubleField(i / 100.0));
+			hf.insertTuple(tid, t);
+		}
+		Database.getBufferPool().transactionComplete(tid);
+
+		TableStats s = new TableStats(hf.getId(), IO_COST);
+		Assert.assertEquals(0.1, s.estimateSelectivity(0, Predicate.Op.LESS_THAN, DateField.parse("1970-04-11")), 0.01);
+		Assert.assertEquals(0.001, s.estimateSelectivity(0, Predicate.Op.EQUALS, new DateField(500)), 0.0005);
+		Assert.assertEquals(0.0, s.estimateSelectivity(0, Predicate.Op.GREATER_THAN, DateField.parse("2000-01-01")), 0.001);
+		Assert.assertEquals(0.75, s.estimateSelectivity(1, Predicate.Op.GREATER_THAN_OR_EQ, new DoubleField(2.5)), 0.01);
+	}
 }
@@ -0,0 +1,72 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares a full scan of the same table stored with a fixed-size STRING
+ * column on HeapPages and with a VARCHAR column on SlottedHeapPages. The
+ * strings are short names, as in a typical table, so most of every STRING
+ * slot is padding.
+ * <p>
+ * Run with: java -cp bin/src:bin/test:lib/* simpledb.VarcharScanBenchmark
+ */
+public class VarcharScanBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("type\tpages\tscan ms");
+        run(Type.STRING_TYPE);
+        run(Type.VARCHAR_TYPE);
+        System.exit(0);
+    }
+
+    private static void run(Type type) throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, type, Type.INT_TYPE });
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, type.toString());
+
+        Random rand = new Random(0);
+        ArrayList<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int c = 5 + rand.nextInt(16); c > 0; c--) {
+                name.append((char) ('a' + rand.nextInt(26)));
+            }
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, type == Type.VARCHAR_TYPE ? new VarcharField(name.toString())
+                    : new StringField(name.toString(), Type.STRING_LEN));
+            t.setField(2, new IntField(rand.nextInt(100)));
+            tuples.add(t);
+        }
+        Transaction load = new Transaction();
+        load.start();
+        TupleIterator it = new TupleIterator(td, tuples);
+        it.open();
+        hf.bulkLoad(load.getId(), it);
+        load.commit();
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            SeqScan scan = new SeqScan(tid, hf.getId());
+            scan.open();
+            long sum = 0;
+            while (scan.hasNext()) {
+                sum += ((StringField) scan.next().getField(1)).getValue().length();
+            }
+            scan.close();
+            best = Math.min(best, System.nanoTime() - start);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        System.out.printf("%s\t%d\t%.1f%n", type, hf.numPages(), best / 1e6);
+    }
+}
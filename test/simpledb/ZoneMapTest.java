@@ -0,0 +1,214 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+  private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+      new String[] { "k", "v" });
+  private static final int ROWS = 3000;
+
+  private File f;
+  private HeapFile hf;
+
+  /**
+   * A table on small pages, with tuples inserted in key order, as for
+   * time-ordered data, so each page holds a narrow range of keys.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    BufferPool.setPageSize(512);
+    Database.resetBufferPool(1000);
+    hf = SystemTestUtil.createEmptyTable("t", TD);
+    hf.setZoneMap(0, 1);
+    f = hf.getFile();
+
+    Transaction t = new Transaction();
+    t.start();
+    for (int i = 0; i < ROWS; i++) {
+      Database.getBufferPool().insertTuple(t.getId(), hf.getId(), SystemTestUtil.tuple(TD, i, i % 7));
+    }
+    t.commit();
+  }
+
+  @After public void tearDown() {
+    BufferPool.resetPageSize();
+  }
+
+  private static List<Predicate> range(int lo, int hi) {
+    return Arrays.asList(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(lo)),
+        new Predicate(0, Predicate.Op.LESS_THAN, new IntField(hi)));
+  }
+
+  /**
+   * Scans hf with predicates in a new transaction.
+   *
+   * @return the number of matching tuples and the number of pages read
+   */
+  private int[] scan(HeapFile hf, List<Predicate> predicates) throws Exception {
+    Database.getBufferPool().getLockStats().reset();
+    TransactionId tid = new TransactionId();
+    DbFileIterator it = hf.iterator(tid, predicates);
+    int count = 0;
+    it.open();
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      for (Predicate p : predicates) {
+        assertTrue(p.filter(t));
+      }
+      count++;
+    }
+    it.close();
+    Database.getBufferPool().transactionComplete(tid);
+    long pages = Database.getBufferPool().getLockStats().forTable(hf.getId()).getAcquisitions();
+    return new int[] { count, (int) pages };
+  }
+
+  /**
+   * A selective range reads only the pages whose keys overlap it, and a
+   * predicate on an unordered column reads every page.
+   */
+  @Test public void skipsPages() throws Exception {
+    int[] r = scan(hf, range(1000, 1100));
+    assertEquals(100, r[0]);
+    assertTrue(r[1] + " of " + hf.numPages(), r[1] <= 3);
+
+    r = scan(hf, Collections.singletonList(new Predicate(0, Predicate.Op.EQUALS, new IntField(ROWS))));
+    assertEquals(0, r[0]);
+    assertEquals(0, r[1]);
+
+    r = scan(hf, Collections.singletonList(new Predicate(1, Predicate.Op.EQUALS, new IntField(3))));
+    assertEquals((ROWS + 3) / 7, r[0]);
+    assertEquals(hf.numPages(), r[1]);
+  }
+
+  /**
+   * An insert widens the range of its page, before it is written.
+   */
+  @Test public void insertWidens() throws Exception {
+    Transaction t = new Transaction();
+    t.start();
+    Tuple deleted = null;
+    DbFileIterator it = hf.iterator(t.getId());
+    it.open();
+    while (deleted == null) {
+      Tuple tup = it.next();
+      if (((IntField) tup.getField(0)).getValue() == 10) {
+        deleted = tup;
+      }
+    }
+    it.close();
+    // frees a slot on the first page, so the next insert goes there
+    Database.getBufferPool().deleteTuple(t.getId(), deleted);
+    Database.getBufferPool().insertTuple(t.getId(), hf.getId(), SystemTestUtil.tuple(TD, -5, 0));
+    t.commit();
+    assertEquals(1, scan(hf, range(-10, 0))[0]);
+  }
+
+  /**
+   * Ranges narrowed by a delete written to disk are widened again when the
+   * abort writes the old page back.
+   */
+  @Test public void abortRestoresRanges() throws Exception {
+    Transaction t = new Transaction();
+    t.start();
+    DbFileIterator it = hf.iterator(t.getId(), range(500, 600));
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    it.open();
+    while (it.hasNext()) {
+      tuples.add(it.next());
+    }
+    it.close();
+    for (Tuple tup : tuples) {
+      Database.getBufferPool().deleteTuple(t.getId(), tup);
+    }
+    Database.getBufferPool().flushPages(t.getId());
+    assertEquals(0, scan(hf, range(500, 600))[0]);
+    t.abort();
+    assertEquals(100, scan(hf, range(500, 600))[0]);
+  }
+
+  /**
+   * The ranges are read back from the side file, unless the heap file was
+   * written without them.
+   */
+  @Test public void sideFile() throws Exception {
+    Database.getBufferPool().flushAllPages();
+    Database.resetBufferPool(1000);
+    HeapFile reopened = new HeapFile(f, TD);
+    reopened.setZoneMap(0, 1);
+    Database.getCatalog().addTable(reopened, "t");
+    int[] r = scan(reopened, range(1000, 1100));
+    assertEquals(100, r[0]);
+    assertTrue(r[1] + " of " + reopened.numPages(), r[1] <= 3);
+
+    // rewrite the heap file behind the zone map's back
+    ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+    for (int i = 0; i < ROWS; i++) {
+      rows.add(new ArrayList<Integer>(Arrays.asList(ROWS - i, 0)));
+    }
+    Database.resetBufferPool(1000);
+    HeapFileEncoder.convert(rows, f, BufferPool.getPageSize(), 2);
+    f.setLastModified(f.lastModified() + 1000);
+    reopened = new HeapFile(f, TD);
+    reopened.setZoneMap(0, 1);
+    Database.getCatalog().addTable(reopened, "t");
+    r = scan(reopened, range(1000, 1100));
+    assertEquals(100, r[0]);
+    assertEquals(reopened.numPages(), r[1]);
+  }
+
+  /**
+   * The ranges of pages written without a zone map are learned the first
+   * time a scan reads them.
+   */
+  @Test public void learnsRanges() throws Exception {
+    ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+    HeapFile encoded = SystemTestUtil.createRandomHeapFile(2, ROWS, null, rows);
+    encoded.setZoneMap(0);
+    encoded.getZoneMap().getFile().deleteOnExit();
+    List<Predicate> none = Collections.singletonList(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(-1)));
+    assertEquals(encoded.numPages(), scan(encoded, none)[1]);
+    assertEquals(0, scan(encoded, none)[1]);
+  }
+
+  /**
+   * A file keeps no zone map, and writes no side file, unless asked to, and
+   * dropping its zone map deletes the side file.
+   */
+  @Test public void optIn() throws Exception {
+    HeapFile plain = SystemTestUtil.createEmptyTable("plain", TD);
+    TransactionId tid = new TransactionId();
+    Database.getBufferPool().insertTuple(tid, plain.getId(), SystemTestUtil.tuple(TD, 1, 1));
+    Database.getBufferPool().transactionComplete(tid);
+    assertNull(plain.getZoneMap());
+    assertFalse(new File(plain.getFile().getPath() + ".zones").exists());
+    assertEquals(plain.numPages(), scan(plain, range(5, 6))[1]);
+
+    File side = hf.getZoneMap().getFile();
+    assertTrue(side.exists());
+    hf.setZoneMap();
+    assertNull(hf.getZoneMap());
+    assertFalse(side.exists());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ZoneMapTest.class);
+  }
+
+}
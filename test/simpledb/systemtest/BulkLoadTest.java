@@ -0,0 +1,126 @@
+package simpledb.systemtest;
+
+import java.io.*;
+import java.util.ArrayList;
+import simpledb.*;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class BulkLoadTest extends SimpleDbTestBase {
+    private void validateBulkLoad(int columns, int sourceRows, int destinationRows)
+                throws DbException, IOException, TransactionAbortedException {
+        // Create the two tables
+        ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(
+                columns, sourceRows, null, sourceTuples);
+        ArrayList<ArrayList<Integer>> destinationTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(
+                columns, destinationRows, null, destinationTuples);
+        int pages = destination.numPages();
+
+        // Load source into destination
+        Transaction t = new Transaction();
+        t.start();
+        BulkLoad load = new BulkLoad(t.getId(), new SeqScan(t.getId(), source.getId(), ""),
+                destination.getId());
+        load.open();
+        assertTrue(load.hasNext());
+        assertEquals(sourceRows, ((IntField) load.next().getField(0)).getValue());
+        assertFalse(load.hasNext());
+        load.close();
+
+        // loaded pages are appended after the existing ones
+        int perPage = BufferPool.getPageSize() * 8 / (columns * Type.INT_TYPE.getLen() * 8 + 1);
+        assertEquals(pages + (sourceRows + perPage - 1) / perPage, destination.numPages());
+
+        sourceTuples.addAll(destinationTuples);
+        SystemTestUtil.matchTuples(destination, t.getId(), sourceTuples);
+        t.commit();
+        SystemTestUtil.matchTuples(destination, sourceTuples);
+    }
+
+    @Test public void testEmptyToOne()
+            throws IOException, DbException, TransactionAbortedException {
+        validateBulkLoad(2, 0, 1);
+    }
+
+    @Test public void testManyPages()
+            throws IOException, DbException, TransactionAbortedException {
+        validateBulkLoad(2, 20000, 10);
+    }
+
+    @Test public void testManyBatches()
+            throws IOException, DbException, TransactionAbortedException {
+        validateBulkLoad(1, 100000, 0);
+    }
+
+    /** A load replaces the empty page a scan of an empty table cached. */
+    @Test public void testScanBeforeLoad()
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 10, null, sourceTuples);
+        File empty = File.createTempFile("bulkload", ".dat");
+        empty.deleteOnExit();
+        HeapFile destination = Utility.openHeapFile(2, empty);
+        SystemTestUtil.matchTuples(destination, new ArrayList<ArrayList<Integer>>());
+
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), source.getId(), "");
+        scan.open();
+        assertEquals(10, destination.bulkLoad(t.getId(), scan));
+        scan.close();
+        t.commit();
+        SystemTestUtil.matchTuples(destination, sourceTuples);
+    }
+
+    /** An aborted bulk load leaves no tuples behind. */
+    @Test public void testAbort()
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 2000, null, sourceTuples);
+        ArrayList<ArrayList<Integer>> destinationTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(2, 10, null, destinationTuples);
+
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), source.getId(), "");
+        scan.open();
+        assertEquals(2000, destination.bulkLoad(t.getId(), scan));
+        scan.close();
+        t.abort();
+        SystemTestUtil.matchTuples(destination, destinationTuples);
+    }
+
+    /** COPY loads a delimited text file through the parser. */
+    @Test public void testCopyStatement()
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile destination = SystemTestUtil.createRandomHeapFile(2, 0, null, tuples);
+        String name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(destination, name);
+        SystemTestUtil.matchTuples(destination, new ArrayList<ArrayList<Integer>>());
+
+        File text = File.createTempFile("copy", ".txt");
+        text.deleteOnExit();
+        PrintWriter w = new PrintWriter(new FileWriter(text));
+        for (int i = 0; i < 1000; i++) {
+            w.println(i + "|" + (-i));
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            tuple.add(i);
+            tuple.add(-i);
+            tuples.add(tuple);
+        }
+        w.close();
+
+        new Parser().processNextStatement("COPY " + name + " FROM '" + text.getAbsolutePath()
+                + "' DELIMITER '|';");
+        SystemTestUtil.matchTuples(destination, tuples);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BulkLoadTest.class);
+    }
+}
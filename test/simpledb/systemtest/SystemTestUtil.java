@@ -3,6 +3,7 @@ package simpledb.systemtest;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -81,6 +82,7 @@ public class SystemTestUtil {
         // Convert the tuples list to a heap file and open it
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
+        new File(temp.getPath() + ".fsm").deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
         return temp;
     }
@@ -146,6 +148,119 @@ public class SystemTestUtil {
         }
     }
 
+    /**
+     * @return the first operator of the given class in plan, searching the
+     *   children of each operator in order, or null if it has none
+     */
+    public static <T extends OpIterator> T findOperator(OpIterator plan, Class<T> c) {
+        if (c.isInstance(plan)) {
+            return c.cast(plan);
+        }
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                T found = findOperator(child, c);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens iterator, counts the tuples it returns and closes it.
+     */
+    public static int countTuples(OpIterator iterator)
+            throws DbException, TransactionAbortedException {
+        int count = 0;
+        iterator.open();
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        iterator.close();
+        return count;
+    }
+
+    /**
+     * Creates an empty HeapFile with TupleDesc td in a temporary file and
+     * adds it to the catalog as name, with primary key pkey. The file and
+     * the side files it may keep are deleted when the JVM exits.
+     */
+    public static HeapFile createEmptyTable(String name, TupleDesc td, String pkey) throws IOException {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        for (String side : new String[] { ".fsm", ".zones", ".bloom", ".cluster" }) {
+            new File(f.getPath() + side).deleteOnExit();
+        }
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, name, pkey);
+        return hf;
+    }
+
+    public static HeapFile createEmptyTable(String name, TupleDesc td) throws IOException {
+        return createEmptyTable(name, td, "");
+    }
+
+    /**
+     * @return a tuple with TupleDesc td, whose fields are all INTs, holding
+     *   values
+     */
+    public static Tuple tuple(TupleDesc td, int... values) {
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < values.length; i++) {
+            t.setField(i, new IntField(values[i]));
+        }
+        return t;
+    }
+
+    /**
+     * Opens iterator, reads its tuples, checks that it returns as many
+     * again after a rewind and closes it.
+     *
+     * @return the tuples, in the order the iterator returned them
+     */
+    public static List<Tuple> readTuples(OpIterator iterator)
+            throws DbException, TransactionAbortedException {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        iterator.open();
+        while (iterator.hasNext()) {
+            tuples.add(iterator.next());
+        }
+        iterator.rewind();
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        iterator.close();
+        Assert.assertEquals(tuples.size(), count);
+        return tuples;
+    }
+
+    /**
+     * As {@link #readTuples}, but returns the tuples as strings.
+     */
+    public static List<String> tupleStrings(OpIterator iterator)
+            throws DbException, TransactionAbortedException {
+        List<String> tuples = new ArrayList<String>();
+        for (Tuple t : readTuples(iterator)) {
+            tuples.add(t.toString());
+        }
+        return tuples;
+    }
+
+    /**
+     * As {@link #tupleStrings}, but sorts the strings, to compare the results
+     * of plans that return the same tuples in different orders.
+     */
+    public static List<String> sortedTupleStrings(OpIterator iterator)
+            throws DbException, TransactionAbortedException {
+        List<String> tuples = tupleStrings(iterator);
+        Collections.sort(tuples);
+        return tuples;
+    }
+
     /**
      * Returns number of bytes of RAM used by JVM after calling System.gc many times.
      * @return amount of RAM (in bytes) used by JVM